@@ -0,0 +1,100 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.RecommenderBuildException;
+import org.grouplens.lenskit.baseline.BaselineScorer;
+import org.grouplens.lenskit.baseline.ItemMeanRatingItemScorer;
+import org.grouplens.lenskit.baseline.UserMeanBaseline;
+import org.grouplens.lenskit.baseline.UserMeanItemScorer;
+import org.grouplens.lenskit.core.LenskitConfiguration;
+import org.grouplens.lenskit.core.LenskitRecommenderEngine;
+import org.grouplens.lenskit.data.dao.EventCollectionDAO;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.iterative.IterationCount;
+import org.grouplens.lenskit.knn.item.ItemItemScorer;
+import org.grouplens.lenskit.knn.user.UserUserItemScorer;
+import org.grouplens.lenskit.knn.user.UserVectorSimilarity;
+import org.grouplens.lenskit.mf.funksvd.FeatureCount;
+import org.grouplens.lenskit.mf.funksvd.FunkSVDItemScorer;
+import org.grouplens.lenskit.transform.normalize.BaselineSubtractingUserVectorNormalizer;
+import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
+import org.grouplens.lenskit.vectors.similarity.CosineVectorSimilarity;
+import org.grouplens.lenskit.vectors.similarity.VectorSimilarity;
+
+import java.util.List;
+
+/**
+ * The algorithm configurations benchmarked.  These match the configurations used by the
+ * integration tests.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public final class Algorithms {
+    private Algorithms() {}
+
+    /**
+     * Get the configuration for an algorithm.
+     * @param name The algorithm name ({@code item-item}, {@code user-user} or {@code funksvd}).
+     * @return The algorithm's configuration, without data.
+     */
+    public static LenskitConfiguration configure(String name) {
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(BaselineScorer.class, ItemScorer.class)
+              .to(UserMeanItemScorer.class);
+        config.bind(UserMeanBaseline.class, ItemScorer.class)
+              .to(ItemMeanRatingItemScorer.class);
+        if (name.equals("item-item")) {
+            config.bind(ItemScorer.class).to(ItemItemScorer.class);
+            config.bind(UserVectorNormalizer.class)
+                  .to(BaselineSubtractingUserVectorNormalizer.class);
+        } else if (name.equals("user-user")) {
+            config.bind(ItemScorer.class).to(UserUserItemScorer.class);
+            config.within(UserVectorSimilarity.class)
+                  .bind(VectorSimilarity.class)
+                  .to(CosineVectorSimilarity.class);
+            config.bind(UserVectorNormalizer.class)
+                  .to(BaselineSubtractingUserVectorNormalizer.class);
+        } else if (name.equals("funksvd")) {
+            config.bind(ItemScorer.class).to(FunkSVDItemScorer.class);
+            config.set(FeatureCount.class).to(25);
+            config.set(IterationCount.class).to(25);
+        } else {
+            throw new IllegalArgumentException("unknown algorithm " + name);
+        }
+        return config;
+    }
+
+    /**
+     * Build a recommender engine.
+     * @param name The algorithm name.
+     * @param ratings The ratings to train on.
+     * @return The recommender engine.
+     */
+    public static LenskitRecommenderEngine build(String name, List<Rating> ratings)
+            throws RecommenderBuildException {
+        LenskitConfiguration config = configure(name);
+        config.bind(EventDAO.class).to(EventCollectionDAO.create(ratings));
+        return LenskitRecommenderEngine.build(config);
+    }
+}
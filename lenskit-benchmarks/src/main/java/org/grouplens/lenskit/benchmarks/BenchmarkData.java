@@ -0,0 +1,127 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.text.DelimitedColumnEventFormat;
+import org.grouplens.lenskit.data.text.Fields;
+import org.grouplens.lenskit.data.text.TextEventDAO;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rating data for benchmarks.  Each data set is named by a benchmark parameter:
+ *
+ * <dl>
+ * <dt>synthetic</dt>
+ * <dd>Random ratings with the shape of the MovieLens 100K data set: 943 users, 1682 items,
+ * 100,000 ratings, with skewed user activity and item popularity.  This needs no external data,
+ * and is generated from a fixed seed so runs are comparable.</dd>
+ * <dt>ml-100k</dt>
+ * <dd>The MovieLens 100K data set, found in the directory named by the
+ * {@code lenskit.movielens.100k} system property (as for the integration tests).</dd>
+ * </dl>
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public final class BenchmarkData {
+    public static final String ML100K_PROPERTY = "lenskit.movielens.100k";
+
+    static final int USER_COUNT = 943;
+    static final int ITEM_COUNT = 1682;
+    static final int RATING_COUNT = 100000;
+    static final long SEED = 0x5EED1E55L;
+
+    private BenchmarkData() {}
+
+    /**
+     * Load a data set.
+     * @param name The data set name.
+     * @return The ratings in the data set.
+     * @throws FileNotFoundException if the data set requires a file that is not available.
+     */
+    public static List<Rating> load(String name) throws FileNotFoundException {
+        if (name.equals("synthetic")) {
+            return synthetic(USER_COUNT, ITEM_COUNT, RATING_COUNT, new Random(SEED));
+        } else if (name.equals("ml-100k")) {
+            return movieLens();
+        } else {
+            throw new IllegalArgumentException("unknown data set " + name);
+        }
+    }
+
+    /**
+     * Generate synthetic ratings.  Users and items are drawn from power-law distributions, so a
+     * few users rate many items and a few items are very popular, as in real rating data.
+     *
+     * @param nusers The number of users.
+     * @param nitems The number of items.
+     * @param nratings The number of ratings to generate.
+     * @param rng The random number generator.
+     * @return The list of ratings, with no duplicate (user, item) pairs.
+     */
+    public static List<Rating> synthetic(int nusers, int nitems, int nratings, Random rng) {
+        List<Rating> ratings = new ArrayList<Rating>(nratings);
+        LongSet seen = new LongOpenHashSet(nratings);
+        long timestamp = 0;
+        while (ratings.size() < nratings) {
+            long user = skewed(nusers, rng);
+            long item = skewed(nitems, rng);
+            if (seen.add(user * nitems + item)) {
+                // ratings cluster around 3.5, as in MovieLens
+                double value = Math.max(1, Math.min(5, Math.round(3.5 + rng.nextGaussian())));
+                ratings.add(Ratings.make(user + 1, item + 1, value, timestamp++));
+            }
+        }
+        return ratings;
+    }
+
+    /**
+     * Pick a number in [0,n) such that small numbers are more likely.
+     */
+    private static long skewed(int n, Random rng) {
+        double u = rng.nextDouble();
+        return (long) Math.floor(n * u * u);
+    }
+
+    private static List<Rating> movieLens() throws FileNotFoundException {
+        String dir = System.getProperty(ML100K_PROPERTY, "data/ml-100k");
+        File file = new File(dir, "u.data");
+        if (!file.exists()) {
+            throw new FileNotFoundException(file + " (set " + ML100K_PROPERTY +
+                                            " to the ML-100K directory)");
+        }
+        DelimitedColumnEventFormat format = DelimitedColumnEventFormat.create("rating");
+        format.setDelimiter("\t")
+              .setFields(Fields.user(), Fields.item(), Fields.rating(), Fields.timestamp());
+        EventDAO dao = TextEventDAO.create(file, format);
+        return Cursors.makeList(dao.streamEvents(Rating.class));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.data.dao.packed.BinaryFormatFlag;
+import org.grouplens.lenskit.data.dao.packed.BinaryRatingDAO;
+import org.grouplens.lenskit.data.dao.packed.BinaryRatingPacker;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of reading ratings from a {@link BinaryRatingDAO}.  The ratings are packed into a
+ * temporary file once per trial.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BinaryRatingDAOBenchmarks {
+    @Param({"synthetic", "ml-100k"})
+    public String dataSet;
+
+    private File file;
+    private BinaryRatingDAO dao;
+    private long[] users;
+    private long[] items;
+
+    @State(Scope.Thread)
+    public static class Position {
+        final Random rng = new Random(BenchmarkData.SEED);
+    }
+
+    @Setup(Level.Trial)
+    public void packRatings() throws IOException {
+        List<Rating> ratings = BenchmarkData.load(dataSet);
+        file = File.createTempFile("ratings", ".pack");
+        BinaryRatingPacker packer = BinaryRatingPacker.open(file, BinaryFormatFlag.TIMESTAMPS);
+        try {
+            packer.writeRatings(ratings);
+        } finally {
+            packer.close();
+        }
+        dao = BinaryRatingDAO.open(file);
+        users = new LongArrayList(dao.getUserIds()).toLongArray();
+        items = new LongArrayList(dao.getItemIds()).toLongArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() {
+        dao = null;
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public Object userHistory(Position pos) {
+        return dao.getEventsForUser(users[pos.rng.nextInt(users.length)]);
+    }
+
+    @Benchmark
+    public Object itemEvents(Position pos) {
+        return dao.getEventsForItem(items[pos.rng.nextInt(items.length)]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public double scanRatings() {
+        double sum = 0;
+        Cursor<Rating> cursor = dao.streamEvents(Rating.class);
+        try {
+            for (Rating r: cursor.fast()) {
+                sum += r.getValue();
+            }
+        } finally {
+            cursor.close();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @BenchmarkMode(Mode.AverageTime)
+    public int scanUsers() {
+        int n = 0;
+        Cursor<? extends List<Event>> cursor = dao.streamEventsByUser();
+        try {
+            for (List<Event> history: cursor) {
+                n += history.size();
+            }
+        } finally {
+            cursor.close();
+        }
+        return n;
+    }
+}
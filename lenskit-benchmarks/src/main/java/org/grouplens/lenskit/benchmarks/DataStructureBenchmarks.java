@@ -0,0 +1,139 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.collections.LongBitmapSet;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.util.TopNScoredItemAccumulator;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.TopNSelector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the key domain lookups, candidate filtering and top-N accumulation that underlie
+ * vectors and recommendation lists.  All work over a catalog of {@code items} item IDs; candidate
+ * filtering removes a history of {@code listSize} items from the catalog.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DataStructureBenchmarks {
+    @Param({"1682", "100000"})
+    public int items;
+
+    @Param({"10", "100"})
+    public int listSize;
+
+    private long[] keys;
+    private LongKeyDomain domain;
+    /**
+     * Keys to look up; about half are in the domain.
+     */
+    private long[] probes;
+    private double[] scores;
+    private SparseVector scoreVector;
+    private LongSortedSet packedCatalog;
+    private LongSortedSet bitmapCatalog;
+    private LongSet history;
+
+    @Setup
+    public void setup() {
+        Random rng = new Random(BenchmarkData.SEED);
+        keys = new long[items];
+        long next = 0;
+        for (int i = 0; i < items; i++) {
+            // IDs are sparse, like real item IDs
+            next += 1 + rng.nextInt(3);
+            keys[i] = next;
+        }
+        domain = LongKeyDomain.wrap(keys, items, true);
+
+        probes = new long[1000];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = 1 + (long) rng.nextInt((int) next);
+        }
+
+        scores = new double[items];
+        for (int i = 0; i < items; i++) {
+            scores[i] = rng.nextDouble() * 5;
+        }
+
+        MutableSparseVector msv = MutableSparseVector.create(keys);
+        for (int i = 0; i < items; i++) {
+            msv.set(keys[i], scores[i]);
+        }
+        scoreVector = msv.freeze();
+
+        packedCatalog = LongUtils.packedSet(keys);
+        bitmapCatalog = LongBitmapSet.fromCollection(packedCatalog);
+        history = LongUtils.randomSubset(packedCatalog, listSize, rng);
+    }
+
+    @Benchmark
+    public LongSortedSet packedCandidateFilter() {
+        return LongUtils.setDifference(packedCatalog, history);
+    }
+
+    @Benchmark
+    public LongSortedSet bitmapCandidateFilter() {
+        return LongUtils.setDifference(bitmapCatalog, history);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public int keyDomainLookup() {
+        int found = 0;
+        for (long key: probes) {
+            if (domain.getIndexIfActive(key) >= 0) {
+                found += 1;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public List<ScoredId> topNAccumulate() {
+        TopNScoredItemAccumulator accum = new TopNScoredItemAccumulator(listSize);
+        for (int i = 0; i < items; i++) {
+            accum.put(keys[i], scores[i]);
+        }
+        return accum.finish();
+    }
+
+    @Benchmark
+    public List<ScoredId> topNSelect() {
+        return new TopNSelector(listSize).select(scoreVector);
+    }
+}
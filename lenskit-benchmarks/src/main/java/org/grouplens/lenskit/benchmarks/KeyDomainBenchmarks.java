@@ -0,0 +1,109 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks locating the crossover point between binary search and the hashed key index in
+ * {@link org.grouplens.lenskit.collections.LongKeyDomain}.  Each benchmark looks up keys in a
+ * vector of {@code size} sparse keys; about half of the probes are in the vector.
+ * <p>
+ * {@link #binarySearch()} measures the plain binary search used by small domains, and
+ * {@link #hashedGet()} runs in a JVM with the hash threshold forced to 0, so it measures the hash
+ * index at every size.  {@link #vectorGet()} measures lookups with the default threshold.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class KeyDomainBenchmarks {
+    private static final int PROBE_COUNT = 1000;
+
+    @Param({"16", "64", "256", "1024", "4096", "16384", "65536"})
+    public int size;
+
+    private long[] keys;
+    private SparseVector vector;
+    private long[] probes;
+
+    @Setup
+    public void createVector() {
+        Random rng = new Random(BenchmarkData.SEED);
+        keys = new long[size];
+        long next = 0;
+        for (int i = 0; i < size; i++) {
+            next += 1 + rng.nextInt(3);
+            keys[i] = next;
+        }
+        MutableSparseVector msv = MutableSparseVector.create(keys);
+        msv.fill(1);
+        vector = msv.freeze();
+
+        probes = new long[PROBE_COUNT];
+        for (int i = 0; i < PROBE_COUNT; i++) {
+            probes[i] = 1 + (long) rng.nextInt((int) next);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBE_COUNT)
+    public int binarySearch() {
+        int found = 0;
+        for (long key: probes) {
+            if (Arrays.binarySearch(keys, key) >= 0) {
+                found += 1;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBE_COUNT)
+    public double vectorGet() {
+        double sum = 0;
+        for (long key: probes) {
+            sum += vector.get(key, 0);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBE_COUNT)
+    @Fork(value = 1, jvmArgsAppend = "-Dlenskit.collections.keyHashThreshold=0")
+    public double hashedGet() {
+        double sum = 0;
+        for (long key: probes) {
+            sum += vector.get(key, 0);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.ItemRecommender;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.RecommenderBuildException;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.core.LenskitRecommender;
+import org.grouplens.lenskit.core.LenskitRecommenderEngine;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of per-request scoring and recommendation throughput.  The model is built once per
+ * trial; each operation serves one request for a random user.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ScorerBenchmarks {
+    @Param({"item-item", "user-user", "funksvd"})
+    public String algorithm;
+
+    @Param({"synthetic", "ml-100k"})
+    public String dataSet;
+
+    /**
+     * The number of items to score in a small request, such as scoring a page of search results.
+     */
+    @Param({"20"})
+    public int requestSize;
+
+    private LenskitRecommenderEngine engine;
+    private long[] users;
+    private long[] items;
+
+    @State(Scope.Thread)
+    public static class Session {
+        final Random rng = new Random(BenchmarkData.SEED);
+        ItemScorer scorer;
+        ItemRecommender recommender;
+
+        @Setup(Level.Trial)
+        public void open(ScorerBenchmarks bench) {
+            LenskitRecommender rec = bench.engine.createRecommender();
+            scorer = rec.getItemScorer();
+            recommender = rec.getItemRecommender();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void buildModel() throws FileNotFoundException, RecommenderBuildException {
+        List<Rating> ratings = BenchmarkData.load(dataSet);
+        LongSet userSet = new LongOpenHashSet();
+        LongSet itemSet = new LongOpenHashSet();
+        for (Rating r: ratings) {
+            userSet.add(r.getUserId());
+            itemSet.add(r.getItemId());
+        }
+        users = new LongArrayList(userSet).toLongArray();
+        items = new LongArrayList(itemSet).toLongArray();
+        engine = Algorithms.build(algorithm, ratings);
+    }
+
+    private long pickUser(Random rng) {
+        return users[rng.nextInt(users.length)];
+    }
+
+    @Benchmark
+    public SparseVector scoreAllItems(Session session) {
+        return session.scorer.score(pickUser(session.rng), LongUtils.packedSet(items));
+    }
+
+    @Benchmark
+    public SparseVector scoreRequest(Session session) {
+        long[] request = new long[requestSize];
+        for (int i = 0; i < requestSize; i++) {
+            request[i] = items[session.rng.nextInt(items.length)];
+        }
+        return session.scorer.score(pickUser(session.rng), LongUtils.packedSet(request));
+    }
+
+    @Benchmark
+    public List<ScoredId> recommend(Session session) {
+        return session.recommender.recommend(pickUser(session.rng), 10);
+    }
+}
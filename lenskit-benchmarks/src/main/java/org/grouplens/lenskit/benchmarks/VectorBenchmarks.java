@@ -0,0 +1,182 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.benchmarks;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.vectors.Intersections;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+import org.grouplens.lenskit.vectors.Vectors;
+import org.grouplens.lenskit.vectors.similarity.CosineVectorSimilarity;
+import org.grouplens.lenskit.vectors.similarity.DistanceVectorSimilarity;
+import org.grouplens.lenskit.vectors.similarity.PearsonCorrelation;
+import org.grouplens.lenskit.vectors.similarity.SpearmanRankCorrelation;
+import org.grouplens.lenskit.vectors.similarity.VectorSimilarity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of sparse vector operations and vector similarity functions.  Each benchmark works
+ * on a pair of vectors with {@code size} entries drawn from a key space 4 times as large, so
+ * about a quarter of their keys are shared.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class VectorBenchmarks {
+    @Param({"20", "200", "2000"})
+    public int size;
+
+    private SparseVector v1;
+    private SparseVector v2;
+    private LongSortedSet domain;
+    private double[] values;
+
+    private final VectorSimilarity cosine = new CosineVectorSimilarity();
+    private final VectorSimilarity pearson = new PearsonCorrelation();
+    private final VectorSimilarity spearman = new SpearmanRankCorrelation();
+    private final VectorSimilarity distance = new DistanceVectorSimilarity();
+    private SparseVector small;
+
+    @Setup
+    public void createVectors() {
+        Random rng = new Random(BenchmarkData.SEED);
+        v1 = randomVector(rng);
+        v2 = randomVector(rng);
+        domain = v1.keySet();
+        // a vector much smaller than v1, so intersections gallop
+        MutableSparseVector sv = MutableSparseVector.create(
+                LongUtils.randomSubset(domain, Math.max(1, size / 20), rng));
+        sv.fill(1);
+        small = sv.freeze();
+        values = new double[domain.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rng.nextDouble();
+        }
+    }
+
+    private SparseVector randomVector(Random rng) {
+        LongSortedSet keys = LongUtils.packedSet(
+                LongUtils.randomSubset(LongUtils.packedSet(range(size * 4)), size, rng));
+        MutableSparseVector v = MutableSparseVector.create(keys);
+        LongIterator iter = keys.iterator();
+        while (iter.hasNext()) {
+            v.set(iter.nextLong(), 1 + rng.nextInt(5));
+        }
+        return v.freeze();
+    }
+
+    private static long[] range(int n) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        return keys;
+    }
+
+    @Benchmark
+    public double dot() {
+        return v1.dot(v2);
+    }
+
+    @Benchmark
+    public int countCommonKeys() {
+        return v1.countCommonKeys(v2);
+    }
+
+    @Benchmark
+    public double intersect() {
+        double sum = 0;
+        for (Pair<VectorEntry, VectorEntry> p: Vectors.fastIntersect(v1, v2)) {
+            sum += p.getLeft().getValue() * p.getRight().getValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double kernelDot() {
+        return Intersections.dot(v1, v2);
+    }
+
+    @Benchmark
+    public double kernelDotSkewed() {
+        return Intersections.dot(small, v1);
+    }
+
+    @Benchmark
+    public double distance() {
+        return distance.similarity(v1, v2);
+    }
+
+    @Benchmark
+    public double norm() {
+        return v1.norm();
+    }
+
+    @Benchmark
+    public double cosine() {
+        return cosine.similarity(v1, v2);
+    }
+
+    @Benchmark
+    public double pearson() {
+        return pearson.similarity(v1, v2);
+    }
+
+    @Benchmark
+    public double spearman() {
+        return spearman.similarity(v1, v2);
+    }
+
+    @Benchmark
+    public SparseVector createAndFill() {
+        MutableSparseVector v = MutableSparseVector.create(domain);
+        LongIterator iter = domain.iterator();
+        int i = 0;
+        while (iter.hasNext()) {
+            v.set(iter.nextLong(), values[i++]);
+        }
+        return v;
+    }
+
+    @Benchmark
+    public SparseVector addVectors() {
+        MutableSparseVector v = v1.mutableCopy();
+        v.add(v2);
+        return v;
+    }
+
+    @Benchmark
+    public SparseVector immutableCopy() {
+        return v1.mutableCopy().freeze();
+    }
+}
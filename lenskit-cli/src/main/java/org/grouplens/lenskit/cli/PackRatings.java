@@ -79,7 +79,7 @@ public class PackRatings implements Command {
         try {
             BinaryRatingPacker packer = closer.register(BinaryRatingPacker.open(getOutputFile(), flags));
             Cursor<Rating> ratings = closer.register(dao.streamEvents(Rating.class));
-            packer.writeRatings(ratings);
+            packer.writeRatings(ratings.fast());
             logger.info("packed {} ratings", packer.getRatingCount());
         } catch (Throwable th) { // NOSONAR using a closer
             throw closer.rethrow(th);
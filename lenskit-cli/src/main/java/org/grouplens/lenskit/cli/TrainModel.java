@@ -20,8 +20,10 @@
  */
 package org.grouplens.lenskit.cli;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Stopwatch;
 import com.google.common.io.Closer;
+import com.google.common.io.Files;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 import org.grouplens.lenskit.RecommenderBuildException;
@@ -29,6 +31,7 @@ import org.grouplens.lenskit.core.LenskitConfiguration;
 import org.grouplens.lenskit.core.LenskitRecommenderEngine;
 import org.grouplens.lenskit.core.LenskitRecommenderEngineBuilder;
 import org.grouplens.lenskit.core.ModelDisposition;
+import org.grouplens.lenskit.inject.ComponentBuildReport;
 import org.grouplens.lenskit.util.io.CompressionMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +40,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Writer;
 import java.util.List;
 
 /**
@@ -63,6 +67,10 @@ public class TrainModel implements Command {
         return options.get("output_file");
     }
 
+    public File getBuildReportFile() {
+        return options.get("build_report");
+    }
+
     @Override
     public void execute() throws IOException, RecommenderBuildException {
         LenskitConfiguration dataConfig = input.getConfiguration();
@@ -71,11 +79,16 @@ public class TrainModel implements Command {
             builder.addConfiguration(config);
         }
         builder.addConfiguration(dataConfig, ModelDisposition.EXCLUDED);
+        File reportFile = getBuildReportFile();
+        builder.setBuildReportEnabled(reportFile != null);
 
         Stopwatch timer = Stopwatch.createStarted();
         LenskitRecommenderEngine engine = builder.build();
         timer.stop();
         logger.info("built model in {}", timer);
+        if (reportFile != null) {
+            writeBuildReport(builder.getBuildReport(), reportFile);
+        }
         File output = getOutputFile();
         CompressionMode comp = CompressionMode.autodetect(output);
         logger.info("writing model to {}", output);
@@ -91,6 +104,23 @@ public class TrainModel implements Command {
         }
     }
 
+    /**
+     * Write the build report.  Files ending in {@code .json} get JSON; other files get a table.
+     */
+    private void writeBuildReport(ComponentBuildReport report, File file) throws IOException {
+        logger.info("writing build report to {}", file);
+        Writer writer = Files.newWriter(file, Charsets.UTF_8);
+        try {
+            if (file.getName().endsWith(".json")) {
+                report.writeJSON(writer);
+            } else {
+                report.writeTable(writer);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
     public static void configureArguments(ArgumentParser parser) {
         ScriptEnvironment.configureArguments(parser);
         InputData.configureArguments(parser);
@@ -99,6 +129,10 @@ public class TrainModel implements Command {
               .metavar("FILE")
               .setDefault("model.bin")
               .help("write trained model to FILE");
+        parser.addArgument("--build-report")
+              .type(File.class)
+              .metavar("FILE")
+              .help("write component build times and sizes to FILE (JSON if it ends in .json)");
         parser.addArgument("config")
               .type(File.class)
               .nargs("+")
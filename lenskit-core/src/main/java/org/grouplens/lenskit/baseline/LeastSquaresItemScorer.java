@@ -20,6 +20,8 @@
  */
 package org.grouplens.lenskit.baseline;
 
+import com.google.common.hash.HashCode;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.grouplens.lenskit.basic.AbstractItemScorer;
 import org.grouplens.lenskit.collections.CollectionUtils;
@@ -30,7 +32,10 @@ import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
 import org.grouplens.lenskit.iterative.LearningRate;
 import org.grouplens.lenskit.iterative.RegularizationTerm;
 import org.grouplens.lenskit.iterative.StoppingCondition;
+import org.grouplens.lenskit.iterative.TrainingCheckpointer;
 import org.grouplens.lenskit.iterative.TrainingLoopController;
+import org.grouplens.lenskit.util.io.Descriptions;
+import org.grouplens.lenskit.util.io.HashDescriptionWriter;
 import org.grouplens.lenskit.vectors.ImmutableSparseVector;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.grouplens.lenskit.vectors.VectorEntry;
@@ -41,6 +46,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collection;
 
@@ -86,10 +92,13 @@ public class LeastSquaresItemScorer extends AbstractItemScorer implements Serial
      * The builder for the least squares predictor.
      */
     public static class Builder implements Provider<LeastSquaresItemScorer> {
+        private static final String CHECKPOINT_NAME = LeastSquaresItemScorer.class.getName();
+
         private final double learningRate;
         private final double regularizationFactor;
         private PreferenceSnapshot snapshot;
         private StoppingCondition stoppingCondition;
+        private final TrainingCheckpointer checkpointer;
 
         /**
          * Create a new builder.
@@ -99,14 +108,32 @@ public class LeastSquaresItemScorer extends AbstractItemScorer implements Serial
          * @param data      The preference data
          * @param stop      The training loop condition.
          */
-        @Inject
         public Builder(@RegularizationTerm double regFactor, @LearningRate double lrate,
                        @Transient PreferenceSnapshot data,
                        StoppingCondition stop) {
+            this(regFactor, lrate, data, stop, TrainingCheckpointer.disabled());
+        }
+
+        /**
+         * Create a new builder that checkpoints its training progress.
+         *
+         * @param regFactor The regularization term
+         * @param lrate     The learning rate
+         * @param data      The preference data
+         * @param stop      The training loop condition.
+         * @param ckpt      The checkpointer for saving and resuming training.
+         * @since 2.2
+         */
+        @Inject
+        public Builder(@RegularizationTerm double regFactor, @LearningRate double lrate,
+                       @Transient PreferenceSnapshot data,
+                       StoppingCondition stop,
+                       @Transient TrainingCheckpointer ckpt) {
             regularizationFactor = regFactor;
             learningRate = lrate;
             snapshot = data;
             stoppingCondition = stop;
+            checkpointer = ckpt;
         }
 
         @Override
@@ -129,6 +156,23 @@ public class LeastSquaresItemScorer extends AbstractItemScorer implements Serial
 
             final TrainingLoopController trainingController = stoppingCondition.newLoop();
             double rmse = 0.0;
+            DoubleArrayList errors = new DoubleArrayList();
+            HashCode fingerprint = null;
+            if (checkpointer.isEnabled()) {
+                HashDescriptionWriter fp = Descriptions.sha1Writer();
+                fp.putField("learningRate", learningRate)
+                  .putField("regularization", regularizationFactor)
+                  .putField("ratings", TrainingCheckpointer.hashRatings(ratings).toString());
+                fingerprint = fp.finish();
+                TrainingState saved = checkpointer.restore(CHECKPOINT_NAME, fingerprint, TrainingState.class);
+                if (saved != null) {
+                    uoff = saved.userOffsets;
+                    ioff = saved.itemOffsets;
+                    errors.addElements(0, saved.errors);
+                    rmse = TrainingCheckpointer.resumeLoop(trainingController, rmse, saved.errors);
+                    logger.info("resuming training after {} iterations", saved.errors.length);
+                }
+            }
             while (trainingController.keepTraining(rmse)) {
                 double sse = 0;
                 for (IndexedPreference r : ratings) {
@@ -143,6 +187,18 @@ public class LeastSquaresItemScorer extends AbstractItemScorer implements Serial
                 rmse = Math.sqrt(sse / ratings.size());
 
                 logger.debug("finished iteration {} (RMSE={})", trainingController.getIterationCount(), rmse);
+                errors.add(rmse);
+                if (checkpointer.isDue()) {
+                    try {
+                        checkpointer.save(CHECKPOINT_NAME, fingerprint,
+                                          new TrainingState(uoff, ioff, errors.toDoubleArray()));
+                    } catch (IOException e) {
+                        logger.warn("cannot save training checkpoint", e);
+                    }
+                }
+            }
+            if (fingerprint != null) {
+                checkpointer.clear(CHECKPOINT_NAME, fingerprint);
             }
 
             logger.info("trained baseline on {} ratings in {} iterations (final rmse={})", ratings.size(), trainingController.getIterationCount(), rmse);
@@ -153,5 +209,22 @@ public class LeastSquaresItemScorer extends AbstractItemScorer implements Serial
             MutableSparseVector svioff = Vectors.fromArray(snapshot.itemIndex(), ioff);
             return new LeastSquaresItemScorer(svuoff.freeze(), svioff.freeze(), mean);
         }
+
+        /**
+         * Checkpointed training state: the offsets and the errors of the completed iterations.
+         */
+        private static class TrainingState implements Serializable {
+            private static final long serialVersionUID = 1L;
+
+            final double[] userOffsets;
+            final double[] itemOffsets;
+            final double[] errors;
+
+            TrainingState(double[] uoff, double[] ioff, double[] errs) {
+                userOffsets = uoff;
+                itemOffsets = ioff;
+                errors = errs;
+            }
+        }
     }
 }
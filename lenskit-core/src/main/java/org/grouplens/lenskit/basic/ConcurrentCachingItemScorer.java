@@ -0,0 +1,294 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.grapht.annotation.DefaultInteger;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.core.Parameter;
+import org.grouplens.lenskit.vectors.ImmutableSparseVector;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An item scorer that caches the scores computed for each user, so repeated requests for the same
+ * user do not recompute them.  Unlike {@link SimpleCachingItemScorer}, this scorer remembers many
+ * users and is safe to share between threads.
+ *
+ * <p>The cache is bounded by the total number of item scores it holds
+ * ({@link MaxCachedScores}); when it is full, the least-recently-used users are evicted first.
+ * The bound applies to the cache as a whole, so a single user may hold up to the full limit.
+ * Entries can also be given a lifetime ({@link CacheExpiration}).  If a user is cached but some
+ * requested items are not, only the missing items are scored and they are added to the cached
+ * scores.</p>
+ *
+ * <p>This scorer does not observe the data, so code that changes a user's data should call
+ * {@link #invalidate(long)} (or {@link #invalidateAll()} when the model changes).</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public class ConcurrentCachingItemScorer extends AbstractItemScorer {
+    /**
+     * Parameter: the maximum number of item scores to cache, summed over all users.
+     */
+    @Documented
+    @DefaultInteger(1000000)
+    @Parameter(Integer.class)
+    @Qualifier
+    @Target({ElementType.METHOD, ElementType.PARAMETER})
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface MaxCachedScores {
+    }
+
+    /**
+     * Parameter: the number of seconds to keep a user's cached scores.  If 0, scores are kept
+     * until they are evicted or invalidated.
+     */
+    @Documented
+    @DefaultInteger(0)
+    @Parameter(Integer.class)
+    @Qualifier
+    @Target({ElementType.METHOD, ElementType.PARAMETER})
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface CacheExpiration {
+    }
+
+    private final ItemScorer scorer;
+    private final Cache<Long, Entry> cache;
+    private final Ticker ticker;
+    private final long expireNanos;
+    /**
+     * Bumped by every invalidation, so scores computed before an invalidation are not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong partialHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong scoringNanos = new AtomicLong();
+
+    /**
+     * Construct a new caching item scorer.
+     *
+     * @param sc      The item scorer to cache.
+     * @param maxSize The maximum number of item scores to cache.
+     * @param expire  The number of seconds to keep cached scores, or 0 to keep them indefinitely.
+     */
+    @Inject
+    public ConcurrentCachingItemScorer(ItemScorer sc,
+                                       @MaxCachedScores int maxSize,
+                                       @CacheExpiration int expire) {
+        this(sc, maxSize, expire, TimeUnit.SECONDS, Ticker.systemTicker());
+    }
+
+    ConcurrentCachingItemScorer(ItemScorer sc, int maxSize, long expire, TimeUnit unit, Ticker tick) {
+        Preconditions.checkArgument(maxSize >= 0, "negative cache size");
+        Preconditions.checkArgument(expire >= 0, "negative expiration time");
+        scorer = sc;
+        ticker = tick;
+        expireNanos = unit.toNanos(expire);
+        // Guava splits the weight limit evenly between segments, so a user with more scores than
+        // a segment's share would never be cached; one segment keeps the whole limit usable.
+        // Reads do not lock, so this only serializes cache writes.
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                                                           .ticker(tick)
+                                                           .concurrencyLevel(1)
+                                                           .maximumWeight(maxSize);
+        if (expireNanos > 0) {
+            builder.expireAfterWrite(expireNanos, TimeUnit.NANOSECONDS);
+        }
+        cache = builder.recordStats()
+                       .weigher(new Weigher<Long, Entry>() {
+                           @Override
+                           public int weigh(Long key, Entry value) {
+                               return value.items.size();
+                           }
+                       })
+                       .build();
+    }
+
+    @Override
+    public void score(long user, @Nonnull MutableSparseVector scores) {
+        long gen = generation.get();
+        LongSortedSet reqItems = scores.keyDomain();
+        Entry entry = cache.getIfPresent(user);
+        if (entry != null && expireNanos > 0 && ticker.read() - entry.created >= expireNanos) {
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount.incrementAndGet();
+            long start = ticker.read();
+            scorer.score(user, scores);
+            scoringNanos.addAndGet(ticker.read() - start);
+            store(user, gen, new Entry(scores.immutable(), LongUtils.packedSet(reqItems), start));
+            return;
+        }
+
+        ImmutableSparseVector cached = entry.scores;
+        LongSortedSet cachedItems = entry.items;
+        if (cachedItems.containsAll(reqItems)) {
+            hitCount.incrementAndGet();
+        } else {
+            partialHitCount.incrementAndGet();
+            LongSortedSet diffItems = LongUtils.setDifference(reqItems, cachedItems);
+            long start = ticker.read();
+            SparseVector newScores = scorer.score(user, diffItems);
+            scoringNanos.addAndGet(ticker.read() - start);
+            cached = cached.combineWith(newScores);
+            // keep the original creation time so extending an entry does not extend its life
+            store(user, gen, new Entry(cached, LongUtils.setUnion(cachedItems, diffItems),
+                                       entry.created));
+        }
+        scores.set(cached);
+    }
+
+    private void store(long user, long gen, Entry entry) {
+        cache.put(user, entry);
+        if (generation.get() != gen) {
+            // an invalidation raced with our scoring; the scores may be stale
+            cache.invalidate(user);
+        }
+    }
+
+    /**
+     * Discard the cached scores for a user.  Call this when the user's data changes.
+     *
+     * @param user The user ID.
+     */
+    public void invalidate(long user) {
+        generation.incrementAndGet();
+        cache.invalidate(user);
+    }
+
+    /**
+     * Discard all cached scores.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Get the items whose scores are cached for a user.
+     *
+     * @param user The user ID.
+     * @return The items that have been scored for the user (including items the underlying scorer
+     *         could not score), or {@code null} if the user is not cached.
+     */
+    public LongSortedSet getCachedItems(long user) {
+        Entry entry = cache.getIfPresent(user);
+        return entry == null ? null : entry.items;
+    }
+
+    /**
+     * Get the cached scores for a user.
+     *
+     * @param user The user ID.
+     * @return The scores cached for the user, or {@code null} if the user is not cached.
+     */
+    public SparseVector getCachedScores(long user) {
+        Entry entry = cache.getIfPresent(user);
+        return entry == null ? null : entry.scores;
+    }
+
+    /**
+     * Get the number of requests answered entirely from the cache.
+     * @return The number of cache hits.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Get the number of requests for cached users that needed some items scored.
+     * @return The number of partial hits.
+     */
+    public long getPartialHitCount() {
+        return partialHitCount.get();
+    }
+
+    /**
+     * Get the number of requests for users who were not cached.
+     * @return The number of cache misses.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Get the fraction of requests answered entirely from the cache.
+     * @return The hit rate, or 1 if there have been no requests.
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + partialHitCount.get() + missCount.get();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    /**
+     * Get the number of users evicted from the cache because it was full or their entries expired.
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    /**
+     * Get the total time spent in the underlying scorer.
+     * @param unit The time unit.
+     * @return The time spent computing scores that were not cached.
+     */
+    public long getScoringTime(TimeUnit unit) {
+        return unit.convert(scoringNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    private static class Entry {
+        final ImmutableSparseVector scores;
+        /**
+         * The items that have been scored, including those the scorer could not score.
+         */
+        final LongSortedSet items;
+        final long created;
+
+        Entry(ImmutableSparseVector v, LongSortedSet is, long time) {
+            scores = v;
+            items = is;
+            created = time;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import org.grouplens.lenskit.ItemRecommender;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.util.metrics.Histogram;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.Timer;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Item recommender that records metrics for another recommender.  It times each request with the
+ * timer {@code <recommender class>.recommend} and records the number of recommendations returned
+ * in the histogram {@code <recommender class>.results}.  It is configured like
+ * {@link InstrumentedItemScorer}.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class InstrumentedItemRecommender implements ItemRecommender {
+    private final ItemRecommender delegate;
+    private final Timer timer;
+    private final Histogram resultCounts;
+
+    @Inject
+    public InstrumentedItemRecommender(ItemRecommender rec, MetricRegistry metrics) {
+        delegate = rec;
+        timer = metrics.timer(Metrics.name(rec.getClass(), "recommend"));
+        resultCounts = metrics.histogram(Metrics.name(rec.getClass(), "results"));
+    }
+
+    /**
+     * Get the recommender being instrumented.
+     * @return The underlying item recommender.
+     */
+    public ItemRecommender getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public List<ScoredId> recommend(long user) {
+        Timer.Context ctx = timer.start();
+        try {
+            return record(delegate.recommend(user));
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public List<ScoredId> recommend(long user, int n) {
+        Timer.Context ctx = timer.start();
+        try {
+            return record(delegate.recommend(user, n));
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public List<ScoredId> recommend(long user, @Nullable Set<Long> candidates) {
+        Timer.Context ctx = timer.start();
+        try {
+            return record(delegate.recommend(user, candidates));
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Override
+    public List<ScoredId> recommend(long user, int n, @Nullable Set<Long> candidates,
+                                    @Nullable Set<Long> exclude) {
+        Timer.Context ctx = timer.start();
+        try {
+            return record(delegate.recommend(user, n, candidates, exclude));
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    private List<ScoredId> record(List<ScoredId> results) {
+        resultCounts.update(results.size());
+        return results;
+    }
+}
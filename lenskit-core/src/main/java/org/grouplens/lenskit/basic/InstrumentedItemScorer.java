@@ -0,0 +1,78 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.util.metrics.Histogram;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.Timer;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+/**
+ * Item scorer that records metrics for another scorer.  It times each scoring request with the
+ * timer {@code <scorer class>.score} and records the number of items requested in the histogram
+ * {@code <scorer class>.items}.  To use it, bind it as the item scorer and bind the real scorer
+ * within it:
+ *
+ * <pre>{@code
+ * config.bind(ItemScorer.class).to(InstrumentedItemScorer.class);
+ * config.within(InstrumentedItemScorer.class)
+ *       .bind(ItemScorer.class).to(ItemItemScorer.class);
+ * }</pre>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class InstrumentedItemScorer extends AbstractItemScorer {
+    private final ItemScorer delegate;
+    private final Timer timer;
+    private final Histogram itemCounts;
+
+    @Inject
+    public InstrumentedItemScorer(ItemScorer scorer, MetricRegistry metrics) {
+        delegate = scorer;
+        timer = metrics.timer(Metrics.name(scorer.getClass(), "score"));
+        itemCounts = metrics.histogram(Metrics.name(scorer.getClass(), "items"));
+    }
+
+    /**
+     * Get the scorer being instrumented.
+     * @return The underlying item scorer.
+     */
+    public ItemScorer getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void score(long user, @Nonnull MutableSparseVector scores) {
+        itemCounts.update(scores.keyDomain().size());
+        Timer.Context ctx = timer.start();
+        try {
+            delegate.score(user, scores);
+        } finally {
+            ctx.stop();
+        }
+    }
+}
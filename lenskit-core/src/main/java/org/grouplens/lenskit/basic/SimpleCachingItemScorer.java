@@ -31,7 +31,9 @@ import javax.annotation.Nonnull;
 import javax.inject.Inject;
 
 /**
- * A simple cached item scorer that remembers the result for the last user id it scored.
+ * A simple cached item scorer that remembers the result for the last user id it scored.  It is
+ * not thread-safe; use {@link ConcurrentCachingItemScorer} for a cache that is shared between
+ * requests.
  *
  *  @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
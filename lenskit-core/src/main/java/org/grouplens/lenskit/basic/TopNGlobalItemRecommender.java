@@ -26,10 +26,8 @@ import org.grouplens.lenskit.GlobalItemScorer;
 import org.grouplens.lenskit.collections.LongUtils;
 import org.grouplens.lenskit.data.dao.ItemDAO;
 import org.grouplens.lenskit.scored.ScoredId;
-import org.grouplens.lenskit.util.ScoredItemAccumulator;
-import org.grouplens.lenskit.util.TopNScoredItemAccumulator;
 import org.grouplens.lenskit.vectors.SparseVector;
-import org.grouplens.lenskit.vectors.VectorEntry;
+import org.grouplens.lenskit.vectors.TopNSelector;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -95,17 +93,7 @@ public class TopNGlobalItemRecommender extends AbstractGlobalItemRecommender {
             return Collections.emptyList();
         }
 
-        if (n < 0) {
-            n = scores.size();
-        }
-
-        ScoredItemAccumulator accum = new TopNScoredItemAccumulator(n);
-        for (VectorEntry pred : scores) {
-            final double v = pred.getValue();
-            accum.put(pred.getKey(), v);
-        }
-
-        return accum.finish();
+        return new TopNSelector(n).select(scores);
     }
 
     /**
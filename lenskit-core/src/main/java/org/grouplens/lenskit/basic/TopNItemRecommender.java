@@ -21,31 +21,26 @@
 package org.grouplens.lenskit.basic;
 
 
-import com.google.common.collect.Lists;
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.longs.LongSets;
-import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.annotation.DefaultBoolean;
 import org.grouplens.lenskit.ItemRecommender;
 import org.grouplens.lenskit.ItemScorer;
 import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.core.Parameter;
 import org.grouplens.lenskit.data.dao.ItemDAO;
 import org.grouplens.lenskit.data.dao.UserEventDAO;
 import org.grouplens.lenskit.data.event.Event;
 import org.grouplens.lenskit.data.history.UserHistory;
 import org.grouplens.lenskit.scored.ScoredId;
-import org.grouplens.lenskit.scored.ScoredIdBuilder;
-import org.grouplens.lenskit.scored.ScoredIdListBuilder;
 import org.grouplens.lenskit.scored.ScoredIds;
-import org.grouplens.lenskit.symbols.Symbol;
-import org.grouplens.lenskit.symbols.TypedSymbol;
-import org.grouplens.lenskit.util.ScoredItemAccumulator;
-import org.grouplens.lenskit.util.TopNScoredItemAccumulator;
 import org.grouplens.lenskit.vectors.SparseVector;
-import org.grouplens.lenskit.vectors.VectorEntry;
+import org.grouplens.lenskit.vectors.TopNSelector;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
 import java.util.Collections;
 import java.util.List;
 
@@ -54,7 +49,10 @@ import java.util.List;
  * Implements all methods required by {@link AbstractItemRecommender}. The
  * default exclude set is all items rated by the user.
  *
- * <p>Recommendations are returned in descending order of score.
+ * <p>Recommendations are returned in descending order of score.  If the score vector has side
+ * channels, the recommendations carry them as well; channel values are looked up in the score
+ * vector when read, unless {@link IncludeChannels} is {@code false}, in which case they are
+ * dropped.
  *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  * @since 1.1
@@ -63,12 +61,42 @@ public class TopNItemRecommender extends AbstractItemRecommender {
     protected final UserEventDAO userEventDAO;
     protected final ItemDAO itemDAO;
     protected final ItemScorer scorer;
+    private final boolean includeChannels;
+
+    /**
+     * Parameter: whether recommendation lists carry the side channels of the score vector.
+     * Channel values are looked up lazily when read; set this to {@code false} to drop them
+     * entirely.
+     *
+     * @since 2.2
+     */
+    @Documented
+    @DefaultBoolean(true)
+    @Parameter(Boolean.class)
+    @Qualifier
+    @Target({ElementType.METHOD, ElementType.PARAMETER})
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface IncludeChannels {
+    }
 
-    @Inject
     public TopNItemRecommender(UserEventDAO uedao, ItemDAO idao, ItemScorer scorer) {
+        this(uedao, idao, scorer, true);
+    }
+
+    /**
+     * Construct a new top-N recommender.
+     * @param uedao The user event DAO.
+     * @param idao The item DAO.
+     * @param scorer The item scorer.
+     * @param channels Whether to include the score vector's side channels in recommendations.
+     */
+    @Inject
+    public TopNItemRecommender(UserEventDAO uedao, ItemDAO idao, ItemScorer scorer,
+                               @IncludeChannels boolean channels) {
         userEventDAO = uedao;
         itemDAO = idao;
         this.scorer = scorer;
+        includeChannels = channels;
     }
     
     public ItemScorer getScorer() {
@@ -103,52 +131,14 @@ public class TopNItemRecommender extends AbstractItemRecommender {
      * @return The top {@var n} items from {@var scores}, in descending
      *         order of score.
      */
-    @SuppressWarnings("unchecked")
     protected List<ScoredId> recommend(int n, SparseVector scores) {
         if (scores.isEmpty()) {
             return Collections.emptyList();
         }
 
-        if (n < 0) {
-            n = scores.size();
-        }
-
-        ScoredItemAccumulator accum = new TopNScoredItemAccumulator(n);
-        for (VectorEntry pred : scores) {
-            final double v = pred.getValue();
-            accum.put(pred.getKey(), v);
-        }
-
-        List<ScoredId> results = accum.finish();
-        if (!scores.getChannelSymbols().isEmpty()) {
-            ScoredIdListBuilder builder = ScoredIds.newListBuilder(results.size());
-            List<Pair<Symbol,SparseVector>> cvs = Lists.newArrayList();
-            List<Pair<TypedSymbol<?>, Long2ObjectMap<?>>> channels = Lists.newArrayList();
-            for (Symbol sym: scores.getChannelVectorSymbols()) {
-                builder.addChannel(sym, Double.NaN);
-                cvs.add(Pair.of(sym, scores.getChannelVector(sym)));
-            }
-            for (TypedSymbol<?> sym: scores.getChannelSymbols()) {
-                if (!sym.getType().equals(Double.class)) {
-                    builder.addChannel(sym);
-                    channels.add((Pair) Pair.of(sym, scores.getChannel(sym)));
-                }
-            }
-            for (ScoredId id: results) {
-                ScoredIdBuilder copy = ScoredIds.copyBuilder(id);
-                for (Pair<Symbol,SparseVector> pair: cvs) {
-                    if (pair.getRight().containsKey(id.getId())) {
-                        copy.addChannel(pair.getLeft(), pair.getRight().get(id.getId()));
-                    }
-                }
-                for (Pair<TypedSymbol<?>, Long2ObjectMap<?>> pair: channels) {
-                    if (pair.getRight().containsKey(id.getId())) {
-                        copy.addChannel((TypedSymbol) pair.getLeft(), pair.getRight().get(id.getId()));
-                    }
-                }
-                builder.add(copy.build());
-            }
-            return builder.finish();
+        List<ScoredId> results = new TopNSelector(n).select(scores);
+        if (includeChannels && !scores.getChannelSymbols().isEmpty()) {
+            return ScoredIds.withVectorChannels(results, scores);
         } else {
             return results;
         }
@@ -201,13 +191,21 @@ public class TopNItemRecommender extends AbstractItemRecommender {
         private final UserEventDAO userEventDAO;
         private final ItemDAO itemDAO;
         private final ItemScorer scorer;
+        private final boolean includeChannels;
 
-        @Inject
         public Provider(UserEventDAO uedao, ItemDAO idao,
                         @Nullable ItemScorer s) {
+            this(uedao, idao, s, true);
+        }
+
+        @Inject
+        public Provider(UserEventDAO uedao, ItemDAO idao,
+                        @Nullable ItemScorer s,
+                        @IncludeChannels boolean channels) {
             userEventDAO = uedao;
             itemDAO = idao;
             scorer = s;
+            includeChannels = channels;
         }
 
         @Override
@@ -215,7 +213,7 @@ public class TopNItemRecommender extends AbstractItemRecommender {
             if (scorer == null) {
                 return null;
             } else {
-                return new TopNItemRecommender(userEventDAO, itemDAO, scorer);
+                return new TopNItemRecommender(userEventDAO, itemDAO, scorer, includeChannels);
             }
         }
     }
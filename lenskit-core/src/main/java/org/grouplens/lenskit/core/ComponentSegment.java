@@ -0,0 +1,201 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.core;
+
+import org.grouplens.grapht.util.ClassLoaderContext;
+import org.grouplens.grapht.util.ClassLoaders;
+import org.grouplens.lenskit.util.io.CompressionMode;
+import org.grouplens.lenskit.util.io.CustomClassLoaderObjectInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A component stored in its own segment of a segmented engine file.  The component is
+ * deserialized the first time it is requested, and then retained so that all recommenders
+ * built from the engine share it.
+ *
+ * <p>A component that is also stored in another segment (for example, a baseline scorer used
+ * both on its own and inside a normalizer) is written as a {@linkplain Reference reference} to
+ * that segment, and resolved to the other segment's instance when loaded, so the sharing survives
+ * a round trip through the engine file.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+abstract class ComponentSegment implements Provider<Object> {
+    private static final Logger logger = LoggerFactory.getLogger(ComponentSegment.class);
+    private final CompressionMode compression;
+    @Nullable
+    private final ClassLoader classLoader;
+    private final List<? extends ComponentSegment> table;
+    private volatile Object instance;
+
+    /**
+     * Construct a new component segment.
+     * @param comp The compression mode of the segment's data.
+     * @param loader The class loader to use when deserializing the component.
+     * @param segs The segments of the engine, used to resolve references to other segments.  It
+     *             may still be filled in after this segment is constructed, but must be complete
+     *             before the segment is loaded.
+     */
+    protected ComponentSegment(CompressionMode comp, @Nullable ClassLoader loader,
+                               List<? extends ComponentSegment> segs) {
+        compression = comp;
+        classLoader = loader;
+        table = segs;
+    }
+
+    /**
+     * Open the payload of this segment.
+     * @return An input stream reading the segment's (possibly compressed) serialized data.
+     * @throws IOException if there is an error opening the segment.
+     */
+    protected abstract InputStream openPayload() throws IOException;
+
+    /**
+     * Query whether the component has been loaded yet.
+     * @return {@code true} if the component has been deserialized.
+     */
+    public boolean isLoaded() {
+        return instance != null;
+    }
+
+    /**
+     * Get the component, loading it if necessary.
+     * @return The component.
+     * @throws IOException if there is an error reading the component.
+     * @throws ClassNotFoundException if the component's class cannot be found.
+     */
+    public Object getInstance() throws IOException, ClassNotFoundException {
+        Object obj = instance;
+        if (obj == null) {
+            synchronized (this) {
+                obj = instance;
+                if (obj == null) {
+                    obj = load();
+                    instance = obj;
+                }
+            }
+        }
+        return obj;
+    }
+
+    @Override
+    public Object get() {
+        try {
+            return getInstance();
+        } catch (IOException e) {
+            throw new RuntimeException("error loading component segment", e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("error loading component segment", e);
+        }
+    }
+
+    private Object load() throws IOException, ClassNotFoundException {
+        logger.debug("loading component from {}", this);
+        InputStream payload = openPayload();
+        try {
+            ObjectInputStream in = openStream(compression.wrapInput(payload), classLoader, table);
+            ClassLoaderContext ctx = null;
+            if (classLoader != null) {
+                ctx = ClassLoaders.pushContext(classLoader);
+            }
+            try {
+                return in.readObject();
+            } finally {
+                if (ctx != null) {
+                    ctx.pop();
+                }
+            }
+        } finally {
+            payload.close();
+        }
+    }
+
+    /**
+     * Open an object stream that resolves segment references.
+     * @param in The (decompressed) input.
+     * @param loader The class loader.
+     * @param segs The segments of the engine.
+     * @return An object input stream.
+     * @throws IOException if there is an error opening the stream.
+     */
+    static ObjectInputStream openStream(InputStream in, @Nullable ClassLoader loader,
+                                        List<? extends ComponentSegment> segs) throws IOException {
+        return new ResolvingInputStream(in, loader, segs);
+    }
+
+    /**
+     * Serialized stand-in for a component stored in another segment.
+     */
+    static final class Reference implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+
+        Reference(int idx) {
+            index = idx;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+    }
+
+    /**
+     * Object input stream that replaces segment references with their segments' components.
+     */
+    private static class ResolvingInputStream extends CustomClassLoaderObjectInputStream {
+        private final List<? extends ComponentSegment> segments;
+
+        ResolvingInputStream(InputStream in, @Nullable ClassLoader loader,
+                             List<? extends ComponentSegment> segs) throws IOException {
+            super(in, loader);
+            segments = segs;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof Reference) {
+                int idx = ((Reference) obj).getIndex();
+                if (idx < 0 || idx >= segments.size()) {
+                    throw new IOException("reference to invalid segment " + idx);
+                }
+                try {
+                    return segments.get(idx).getInstance();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("cannot load referenced segment " + idx, e);
+                }
+            } else {
+                return obj;
+            }
+        }
+    }
+}
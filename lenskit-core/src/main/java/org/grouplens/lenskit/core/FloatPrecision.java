@@ -0,0 +1,48 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.core;
+
+import org.grouplens.grapht.annotation.DefaultBoolean;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.*;
+
+/**
+ * Parameter controlling whether a model builder stores the model's values in single
+ * ({@code float}) precision.  Single-precision models take about half the memory of
+ * double-precision ones, and are faster to scan, at the cost of rounding stored values to the
+ * nearest {@code float}; the models still present their values as doubles.  Model builders that
+ * support it document so; it defaults to {@code false}.
+ *
+ * <p>To select float storage for one model, set it within that model's context, e.g.
+ * {@code config.within(SlopeOneModel.class).set(FloatPrecision.class).to(true)}.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Documented
+@Qualifier
+@Parameter(Boolean.class)
+@DefaultBoolean(false)
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface FloatPrecision {
+}
@@ -111,6 +111,15 @@ public class LenskitRecommender implements Recommender {
         }
     }
 
+    /**
+     * Instantiate all of this recommender's root components up front.
+     *
+     * @throws InjectionException if there is an error instantiating a component.
+     */
+    void instantiateRoots() throws InjectionException {
+        injector.instantiateRoots();
+    }
+
     @Override
     public ItemScorer getItemScorer() {
         return get(ItemScorer.class);
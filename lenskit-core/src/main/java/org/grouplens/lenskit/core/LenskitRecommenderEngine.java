@@ -37,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.WillClose;
 import java.io.*;
+import java.util.Set;
 
 /**
  * LensKit implementation of a recommender engine.  It uses containers set up by
@@ -185,12 +186,102 @@ public final class LenskitRecommenderEngine implements RecommenderEngine {
         }
     }
 
+    /**
+     * Write this engine to a file in the segmented format.  In a segmented engine, each
+     * pre-instantiated component is stored in its own segment, separate from the configuration
+     * graph.  When the engine is loaded from a file, only the graph is read up front; each
+     * component is deserialized when a recommender first needs it, so processes that only use
+     * some components do not pay to load the rest.
+     *
+     * @param file The file to write.
+     * @param compressed The compression mode to apply to each segment.  The segmented file itself
+     *                   is not compressed; {@link CompressionMode#AUTO} selects the segment
+     *                   compression from the file name.
+     * @throws IOException if there is an error serializing the engine.
+     * @see LenskitRecommenderEngineLoader#setLazyLoading(boolean)
+     * @since 2.2
+     */
+    public void writeSegmented(@Nonnull File file, CompressionMode compressed) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            writeSegmented(out, compressed.getEffectiveCompressionMode(file.getName()));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write this engine to a stream in the segmented format.
+     *
+     * @param stream The stream to write to.
+     * @param compressed The compression mode to apply to each segment.
+     * @throws IOException if there is an error serializing the engine.
+     * @see #writeSegmented(File, CompressionMode)
+     * @since 2.2
+     */
+    public void writeSegmented(@Nonnull @WillClose OutputStream stream, CompressionMode compressed) throws IOException {
+        Preconditions.checkArgument(compressed != CompressionMode.AUTO,
+                                    "cannot auto-detect compression for streams");
+        try {
+            SegmentedEngineFormat.write(graph, stream, compressed);
+        } finally {
+            stream.close();
+        }
+    }
+
     @Override
     public LenskitRecommender createRecommender() {
         Preconditions.checkState(instantiable, "recommender engine does not have instantiable graph");
         return new LenskitRecommender(graph);
     }
 
+    /**
+     * Create a pool of reusable recommender sessions.  Request-handling code that would otherwise
+     * create a recommender for each request can acquire one from the pool instead.  If every
+     * component created per session is declared thread-safe, the pool shares one recommender.
+     *
+     * @param maxIdle The maximum number of idle recommenders for the pool to retain.
+     * @return A new session pool.
+     * @since 2.2
+     */
+    public RecommenderSessionPool createSessionPool(int maxIdle) {
+        Preconditions.checkState(instantiable, "recommender engine does not have instantiable graph");
+        return new RecommenderSessionPool(graph, maxIdle);
+    }
+
+    /**
+     * Create a pool of reusable recommender sessions that retains up to one idle recommender per
+     * available processor.
+     *
+     * @return A new session pool.
+     * @see #createSessionPool(int)
+     * @since 2.2
+     */
+    public RecommenderSessionPool createSessionPool() {
+        return createSessionPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a single recommender that can safely be used from multiple threads at once.
+     *
+     * @return A recommender whose components are all thread-safe.
+     * @throws IllegalStateException if any component created per recommender is not declared
+     *                               thread-safe (the message lists the offending components).
+     * @since 2.2
+     */
+    public LenskitRecommender createConcurrentRecommender() {
+        Preconditions.checkState(instantiable, "recommender engine does not have instantiable graph");
+        Set<DAGNode<Component, Dependency>> unsafe = GraphtUtils.getThreadUnsafeNodes(graph);
+        if (!unsafe.isEmpty()) {
+            StringBuilder msg = new StringBuilder("components are not declared thread-safe:");
+            for (DAGNode<Component, Dependency> node: unsafe) {
+                msg.append(' ').append(node.getLabel().getSatisfaction().getErasedType().getName());
+            }
+            throw new IllegalStateException(msg.toString());
+        }
+        return new LenskitRecommender(graph);
+    }
+
     /**
      * Construct a recommender with some additional configuration.  This can be used to do things
      * like add data source configuration on a per-recommender, rather than per-engine, basis.
@@ -20,6 +20,7 @@
  */
 package org.grouplens.lenskit.core;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.grapht.Component;
@@ -29,9 +30,13 @@ import org.grouplens.grapht.graph.DAGNode;
 import org.grouplens.grapht.solver.DependencySolver;
 import org.grouplens.grapht.util.ClassLoaders;
 import org.grouplens.lenskit.RecommenderBuildException;
+import org.grouplens.lenskit.inject.ComponentBuildReport;
 import org.grouplens.lenskit.inject.GraphtUtils;
+import org.grouplens.lenskit.inject.NodeInstantiator;
+import org.grouplens.lenskit.inject.ProfilingNodeInstantiator;
 import org.grouplens.lenskit.inject.RecommenderGraphBuilder;
 import org.grouplens.lenskit.inject.RecommenderInstantiator;
+import org.grouplens.lenskit.util.parallel.TaskGraphExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +61,9 @@ public class LenskitRecommenderEngineBuilder {
     private static final Logger logger = LoggerFactory.getLogger(LenskitRecommenderEngineBuilder.class);
     private ClassLoader classLoader = ClassLoaders.inferDefault(getClass());
     private List<Pair<LenskitConfiguration,ModelDisposition>> configurations = Lists.newArrayList();
+    private int threadCount = 1;
+    private boolean buildReportEnabled = false;
+    private ComponentBuildReport buildReport;
 
     /**
      * Get the class loader this builder will use.  By default, it uses the thread's current context
@@ -77,6 +85,68 @@ public class LenskitRecommenderEngineBuilder {
         return this;
     }
 
+    /**
+     * Get the number of threads this builder will use to instantiate components.
+     *
+     * @return The number of instantiation threads.
+     * @since 2.2
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Set the number of threads to use when instantiating components.  With more than one thread,
+     * shareable components that do not depend on each other (for example, a baseline and an
+     * item-item model) are built concurrently.  The default is 1, which builds components
+     * sequentially on the calling thread.
+     *
+     * @param n The number of threads.
+     * @return The builder (for chaining).
+     * @since 2.2
+     */
+    public LenskitRecommenderEngineBuilder setThreadCount(int n) {
+        Preconditions.checkArgument(n > 0, "thread count must be positive");
+        threadCount = n;
+        return this;
+    }
+
+    /**
+     * Query whether this builder records a build report.
+     *
+     * @return {@code true} if builds record a {@link ComponentBuildReport}.
+     * @since 2.2
+     */
+    public boolean isBuildReportEnabled() {
+        return buildReportEnabled;
+    }
+
+    /**
+     * Set whether to record a report of the time and memory used to build each shareable
+     * component.  The report is available from {@link #getBuildReport()} after {@link #build()}
+     * returns.  Recording timings is cheap, but estimating retained sizes walks the object graph
+     * of every component, so it is off by default.
+     *
+     * @param enabled Whether to record a build report.
+     * @return The builder (for chaining).
+     * @since 2.2
+     */
+    public LenskitRecommenderEngineBuilder setBuildReportEnabled(boolean enabled) {
+        buildReportEnabled = enabled;
+        return this;
+    }
+
+    /**
+     * Get the build report from the most recent {@link #build()}.
+     *
+     * @return The report of the most recent build, or {@code null} if no build has completed
+     *         with {@linkplain #setBuildReportEnabled(boolean) build reports enabled}.
+     * @since 2.2
+     */
+    public ComponentBuildReport getBuildReport() {
+        return buildReport;
+    }
+
     /**
      * Add a configuration to be included in the recommender engine.  This is the equivalent of
      * calling {@link #addConfiguration(LenskitConfiguration, ModelDisposition)} with the {@link ModelDisposition#INCLUDED}.
@@ -113,13 +183,30 @@ public class LenskitRecommenderEngineBuilder {
         for (Pair<LenskitConfiguration,ModelDisposition> cfg: configurations) {
             rgb.addConfiguration(cfg.getLeft());
         }
+        buildReport = null;
+        ProfilingNodeInstantiator profiler = null;
+        NodeInstantiator nodeInst = NodeInstantiator.create();
+        if (buildReportEnabled) {
+            profiler = ProfilingNodeInstantiator.create(nodeInst);
+            nodeInst = profiler;
+        }
         RecommenderInstantiator inst;
         try {
-            inst = RecommenderInstantiator.create(rgb.buildGraph());
+            inst = RecommenderInstantiator.create(rgb.buildGraph(), nodeInst);
         } catch (ResolutionException e) {
             throw new RecommenderBuildException("Cannot resolve recommender graph", e);
         }
-        DAGNode<Component, Dependency> graph = inst.instantiate();
+        DAGNode<Component, Dependency> graph;
+        if (threadCount > 1) {
+            logger.debug("instantiating graph with {} threads", threadCount);
+            graph = inst.instantiate(TaskGraphExecutor.create(threadCount, "instantiate"));
+        } else {
+            graph = inst.instantiate();
+        }
+        if (profiler != null) {
+            buildReport = profiler.getReport();
+            logger.debug("build report:\n{}", buildReport);
+        }
 
         graph = rewriteGraph(graph);
 
@@ -37,6 +37,7 @@ import org.grouplens.lenskit.util.io.LKFileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.annotation.WillClose;
 import java.io.*;
 import java.util.List;
@@ -53,6 +54,8 @@ public class LenskitRecommenderEngineLoader {
     private List<LenskitConfiguration> configurations = Lists.newArrayList();
     private EngineValidationMode validationMode = EngineValidationMode.IMMEDIATE;
     private CompressionMode compressionMode = CompressionMode.AUTO;
+    private boolean lazyLoading = true;
+    private int threadCount = 1;
 
     /**
      * Get the configured class loader.
@@ -107,13 +110,45 @@ public class LenskitRecommenderEngineLoader {
         compressionMode = comp;
     }
 
+    /**
+     * Set whether components of segmented engines are loaded lazily.  If {@code true} (the
+     * default), components stored in their own segments of an engine written with
+     * {@link LenskitRecommenderEngine#writeSegmented(File, CompressionMode)} are deserialized when
+     * a recommender first uses them.  If {@code false}, they are all loaded when the engine is
+     * loaded, using the {@linkplain #setThreadCount(int) configured number of threads}.  This
+     * setting has no effect on engines in the standard format.
+     *
+     * @param lazy Whether to load components lazily.
+     * @return The loader (for chaining).
+     * @since 2.2
+     */
+    public LenskitRecommenderEngineLoader setLazyLoading(boolean lazy) {
+        lazyLoading = lazy;
+        return this;
+    }
+
+    /**
+     * Set the number of threads to use when eagerly loading the components of a segmented engine.
+     * The default is 1.
+     *
+     * @param n The number of threads.
+     * @return The loader (for chaining).
+     * @see #setLazyLoading(boolean)
+     * @since 2.2
+     */
+    public LenskitRecommenderEngineLoader setThreadCount(int n) {
+        Preconditions.checkArgument(n > 0, "thread count must be positive");
+        threadCount = n;
+        return this;
+    }
+
     /**
      * Load a recommender engine from an input stream.
      * <p>
      * <strong>Note:</strong> this method is only capable of auto-detecting gzip-compressed data.
      * If the {@linkplain #setCompressionMode(CompressionMode) compression mode} is {@link CompressionMode#AUTO},
      * only gzip-compressed streams are supported.  Set the compression mode manually if you are
-     * using XZ compression.
+     * using XZ compression.  Segmented engines are detected automatically.
      * </p>
      *
      * @param stream The input stream.
@@ -124,6 +159,17 @@ public class LenskitRecommenderEngineLoader {
      *                     the configurations applied to it.
      */
     public LenskitRecommenderEngine load(@WillClose InputStream stream) throws IOException, RecommenderConfigurationException {
+        InputStream buffered = stream.markSupported() ? stream : new BufferedInputStream(stream);
+        if (SegmentedEngineFormat.isSegmented(buffered)) {
+            logger.info("loading segmented engine from stream");
+            try {
+                return loadSegmented(buffered, null);
+            } finally {
+                buffered.close();
+            }
+        }
+        stream = buffered;
+
         InputStream decomp;
         if (compressionMode == CompressionMode.AUTO) {
             decomp = LKFileUtils.transparentlyDecompress(stream);
@@ -145,6 +191,10 @@ public class LenskitRecommenderEngineLoader {
      */
     public LenskitRecommenderEngine load(File file) throws IOException, RecommenderConfigurationException {
         logger.info("Loading recommender engine from {}", file);
+        if (SegmentedEngineFormat.isSegmented(file)) {
+            logger.info("{} is a segmented engine", file);
+            return loadSegmented(null, file);
+        }
         FileInputStream input = new FileInputStream(file);
         try {
             CompressionMode effComp = compressionMode.getEffectiveCompressionMode(file.getName());
@@ -206,6 +256,43 @@ public class LenskitRecommenderEngineLoader {
             in.close();
         }
 
+        return finishLoading(graph);
+    }
+
+    /**
+     * Load a segmented recommender engine from a file or stream.
+     *
+     * @param stream The stream to read, if {@code file} is {@code null}.
+     * @param file The file to read.
+     * @return The recommender engine.
+     * @throws IOException If there is an I/O error reading the engine.
+     * @throws RecommenderConfigurationException If there is a configuration error.
+     */
+    private LenskitRecommenderEngine loadSegmented(@Nullable InputStream stream, @Nullable File file) throws IOException, RecommenderConfigurationException {
+        DAGNode<Component, Dependency> graph;
+        try {
+            if (file != null) {
+                graph = SegmentedEngineFormat.read(file, classLoader);
+            } else {
+                graph = SegmentedEngineFormat.read(stream, classLoader);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new RecommenderConfigurationException(e);
+        }
+        if (!lazyLoading) {
+            SegmentedEngineFormat.preload(graph, threadCount);
+        }
+        return finishLoading(graph);
+    }
+
+    /**
+     * Rewrite and validate a loaded graph to produce the recommender engine.
+     *
+     * @param graph The loaded graph.
+     * @return The recommender engine.
+     * @throws RecommenderConfigurationException If there is a configuration error.
+     */
+    private LenskitRecommenderEngine finishLoading(DAGNode<Component, Dependency> graph) throws RecommenderConfigurationException {
         if (!configurations.isEmpty()) {
             logger.info("rewriting with {} configurations", configurations.size());
             RecommenderGraphBuilder rgb = new RecommenderGraphBuilder();
@@ -0,0 +1,222 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.InjectionException;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.lenskit.RecommenderBuildException;
+import org.grouplens.lenskit.inject.GraphtUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of recommender sessions that can be shared by request-handling threads.  Creating a
+ * {@link LenskitRecommender} sets up a new injector and constructs all of its non-shared
+ * components, so creating one per request is expensive.  This pool hands out recommenders and
+ * takes them back when the caller is done, so that each is only constructed once:
+ *
+ * <pre>{@code
+ * LenskitRecommender rec = pool.acquire();
+ * try {
+ *     // use the recommender
+ * } finally {
+ *     pool.release(rec);
+ * }}</pre>
+ *
+ * <p>A recommender is only used by one thread at a time.  If every component that would be
+ * constructed for a session is declared thread-safe (with {@link ThreadSafe} or
+ * {@link javax.annotation.concurrent.Immutable}), the pool instead {@linkplain #isShared() shares}
+ * a single recommender between all callers.  Recommenders are fully instantiated when they are
+ * created, so the pool's creation statistics reflect the whole cost of setting up a session.</p>
+ *
+ * @since 2.2
+ * @see LenskitRecommenderEngine#createSessionPool(int)
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public class RecommenderSessionPool {
+    private static final Logger logger = LoggerFactory.getLogger(RecommenderSessionPool.class);
+
+    private final DAGNode<Component, Dependency> graph;
+    private final Set<DAGNode<Component, Dependency>> unsafeNodes;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<LenskitRecommender> idle;
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private volatile LenskitRecommender shared;
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong creationNanos = new AtomicLong();
+    private final AtomicLong acquireCount = new AtomicLong();
+
+    /**
+     * Create a new session pool.
+     * @param graph The (instantiable) recommender graph.
+     * @param max The maximum number of idle recommenders to retain.
+     */
+    RecommenderSessionPool(DAGNode<Component, Dependency> graph, int max) {
+        Preconditions.checkArgument(max >= 0, "maximum idle count is negative");
+        this.graph = graph;
+        maxIdle = max;
+        idle = new ConcurrentLinkedQueue<LenskitRecommender>();
+        unsafeNodes = ImmutableSet.copyOf(GraphtUtils.getThreadUnsafeNodes(graph));
+        if (unsafeNodes.isEmpty()) {
+            logger.info("all session components are thread-safe, sharing one recommender");
+        } else {
+            logger.info("{} session components are not thread-safe, pooling recommenders",
+                        unsafeNodes.size());
+            if (logger.isDebugEnabled()) {
+                for (DAGNode<Component, Dependency> node: unsafeNodes) {
+                    logger.debug("not thread-safe: {}", node.getLabel().getSatisfaction());
+                }
+            }
+        }
+    }
+
+    /**
+     * Query whether this pool shares a single recommender between all threads.
+     * @return {@code true} if all session components are thread-safe, so one recommender is
+     *         shared by all callers.
+     */
+    public boolean isShared() {
+        return unsafeNodes.isEmpty();
+    }
+
+    /**
+     * Get the graph nodes that prevent this pool from sharing a single recommender.
+     * @return The nodes whose components are not declared thread-safe.
+     */
+    public Set<DAGNode<Component, Dependency>> getThreadUnsafeNodes() {
+        return unsafeNodes;
+    }
+
+    /**
+     * Acquire a recommender from the pool.  If the pool is not {@linkplain #isShared() shared},
+     * the recommender must be used by only one thread until it is
+     * {@linkplain #release(LenskitRecommender) released}.
+     *
+     * @return A recommender.
+     * @throws RecommenderBuildException if there is an error instantiating a new recommender.
+     */
+    public LenskitRecommender acquire() throws RecommenderBuildException {
+        acquireCount.incrementAndGet();
+        if (isShared()) {
+            LenskitRecommender rec = shared;
+            if (rec == null) {
+                synchronized (this) {
+                    rec = shared;
+                    if (rec == null) {
+                        rec = createSession();
+                        shared = rec;
+                    }
+                }
+            }
+            return rec;
+        }
+
+        LenskitRecommender rec = idle.poll();
+        if (rec != null) {
+            idleCount.decrementAndGet();
+            return rec;
+        } else {
+            return createSession();
+        }
+    }
+
+    /**
+     * Return a recommender to the pool.  If the pool already has its maximum number of idle
+     * recommenders, the recommender is discarded.
+     *
+     * @param rec A recommender obtained from {@link #acquire()}.  The caller must not use it after
+     *            releasing it.
+     */
+    public void release(LenskitRecommender rec) {
+        Preconditions.checkNotNull(rec, "recommender");
+        if (isShared()) {
+            Preconditions.checkArgument(rec == shared, "recommender not from this pool");
+            return;
+        }
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(rec);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Get the number of recommender sessions this pool has created.
+     * @return The number of sessions created.
+     */
+    public long getCreatedSessionCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * Get the number of times a session has been acquired from this pool.
+     * @return The number of {@link #acquire()} calls.
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * Get the total time spent creating recommender sessions.
+     * @param unit The time unit.
+     * @return The time spent creating sessions, in {@code unit}.
+     */
+    public long getTotalCreationTime(TimeUnit unit) {
+        return unit.convert(creationNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of idle recommenders currently in the pool.
+     * @return The number of idle recommenders.
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    private LenskitRecommender createSession() throws RecommenderBuildException {
+        long start = System.nanoTime();
+        LenskitRecommender rec = new LenskitRecommender(graph);
+        try {
+            rec.instantiateRoots();
+        } catch (InjectionException e) {
+            throw new RecommenderBuildException("error instantiating recommender session", e);
+        }
+        long time = System.nanoTime() - start;
+        createdCount.incrementAndGet();
+        creationNanos.addAndGet(time);
+        logger.debug("created recommender session in {}ms",
+                     TimeUnit.NANOSECONDS.toMillis(time));
+        return rec;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.core;
+
+import com.google.common.base.Preconditions;
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.ConstructionException;
+import org.grouplens.grapht.Instantiator;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.reflect.SatisfactionVisitor;
+import org.grouplens.grapht.reflect.Satisfactions;
+import org.grouplens.grapht.util.ClassProxy;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Satisfaction for a component stored in a segment of a segmented engine file.  In the graph
+ * skeleton stored in the file, it records only the component type and segment number; the
+ * loader binds it to a {@link ComponentSegment} that deserializes the component on first use.
+ *
+ * <p>If a bound segment satisfaction is serialized (e.g. when an engine loaded from a segmented
+ * file is written in the standard format), it is replaced by an instance satisfaction with the
+ * loaded component.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+class SegmentSatisfaction implements Satisfaction, Serializable {
+    private static final long serialVersionUID = -1L;
+
+    private final Class<?> type;
+    private final int index;
+    @Nullable
+    private final transient ComponentSegment segment;
+
+    /**
+     * Create an unbound segment satisfaction.
+     * @param type The type of component stored in the segment.
+     * @param index The segment number.
+     */
+    SegmentSatisfaction(Class<?> type, int index) {
+        this(type, index, null);
+    }
+
+    private SegmentSatisfaction(Class<?> type, int index, @Nullable ComponentSegment seg) {
+        this.type = type;
+        this.index = index;
+        segment = seg;
+    }
+
+    /**
+     * Get the segment number.
+     * @return The index of this component's segment in the engine file.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the segment this satisfaction is bound to.
+     * @return The segment, or {@code null} if the satisfaction is unbound.
+     */
+    @Nullable
+    public ComponentSegment getSegment() {
+        return segment;
+    }
+
+    /**
+     * Bind this satisfaction to a segment.
+     * @param seg The segment containing the component.
+     * @return A new satisfaction that loads its component from {@code seg}.
+     */
+    public SegmentSatisfaction bind(ComponentSegment seg) {
+        Preconditions.checkNotNull(seg, "segment");
+        return new SegmentSatisfaction(type, index, seg);
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        if (segment == null) {
+            return new SerialProxy(type, index);
+        }
+        try {
+            return Satisfactions.instance(segment.getInstance());
+        } catch (IOException e) {
+            InvalidObjectException ex = new InvalidObjectException("cannot load component segment");
+            ex.initCause(e);
+            throw ex;
+        } catch (ClassNotFoundException e) {
+            InvalidObjectException ex = new InvalidObjectException("cannot load component segment");
+            ex.initCause(e);
+            throw ex;
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("segment satisfactions must use serial proxy");
+    }
+
+    @Override
+    public List<Desire> getDependencies() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public Class<?> getErasedType() {
+        return type;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Segment satisfactions stand for pre-instantiated components, so they report having an
+     * instance even before the component is loaded.</p>
+     */
+    @Override
+    public boolean hasInstance() {
+        return true;
+    }
+
+    @Override
+    public <T> T visit(SatisfactionVisitor<T> visitor) {
+        if (segment == null) {
+            return visitor.visitNull();
+        } else {
+            return visitor.visitProviderInstance(segment);
+        }
+    }
+
+    @Override
+    public CachePolicy getDefaultCachePolicy() {
+        return CachePolicy.MEMOIZE;
+    }
+
+    @Override
+    public Instantiator makeInstantiator(Map<Desire, Instantiator> dependencies) {
+        Preconditions.checkState(segment != null, "segment satisfaction is not bound");
+        return new SegmentInstantiator(type, segment);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SegmentSatisfaction that = (SegmentSatisfaction) o;
+        return index == that.index && type.equals(that.type) && segment == that.segment;
+    }
+
+    @Override
+    public int hashCode() {
+        return type.hashCode() * 31 + index;
+    }
+
+    @Override
+    public String toString() {
+        return "segment " + index + " of type " + type.getName();
+    }
+
+    private static class SegmentInstantiator implements Instantiator {
+        private final Class<?> type;
+        private final ComponentSegment segment;
+
+        SegmentInstantiator(Class<?> type, ComponentSegment seg) {
+            this.type = type;
+            segment = seg;
+        }
+
+        @Override
+        public Object instantiate() throws ConstructionException {
+            try {
+                return segment.getInstance();
+            } catch (IOException e) {
+                throw new ConstructionException(type, e);
+            } catch (ClassNotFoundException e) {
+                throw new ConstructionException(type, e);
+            }
+        }
+
+        @Override
+        public Class<?> getType() {
+            return type;
+        }
+    }
+
+    private static class SerialProxy implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final ClassProxy type;
+        private final int index;
+
+        private SerialProxy(Class<?> type, int index) {
+            this.type = ClassProxy.of(type);
+            this.index = index;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            try {
+                return new SegmentSatisfaction(type.resolve(), index);
+            } catch (ClassNotFoundException e) {
+                InvalidObjectException ex = new InvalidObjectException("class not found");
+                ex.initCause(e);
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,570 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.core;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.InjectionException;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.DAGNodeBuilder;
+import org.grouplens.grapht.reflect.AbstractSatisfactionVisitor;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.util.ClassLoaderContext;
+import org.grouplens.grapht.util.ClassLoaders;
+import org.grouplens.lenskit.inject.NodeProcessor;
+import org.grouplens.lenskit.inject.NodeProcessors;
+import org.grouplens.lenskit.util.io.ChunkedInputStream;
+import org.grouplens.lenskit.util.io.ChunkedOutputStream;
+import org.grouplens.lenskit.util.io.CompressionMode;
+import org.grouplens.lenskit.util.parallel.TaskGraphExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillNotClose;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reader and writer for segmented recommender engine files.  A segmented engine stores each
+ * pre-instantiated component in its own segment, separate from the skeleton of the
+ * configuration graph, so that loading an engine only reads the graph and components are
+ * deserialized when a recommender first needs them.
+ *
+ * <p>The file consists of a header (magic number, version, and the compression mode applied to
+ * each segment), followed by a sequence of frames, and finally a directory and trailer.  Each
+ * frame is a tag byte followed by a {@linkplain ChunkedOutputStream chunked} payload containing
+ * a (possibly compressed) serialized object: first one frame per component, then the graph
+ * skeleton.  The directory lists the offsets of these frames, and the trailer records the
+ * directory offset followed by the magic number again.  Files are read through the directory;
+ * streams are read frame by frame.</p>
+ *
+ * <p>Each instance is stored once, even if several nodes use it, and references to it from
+ * within other segments (or the skeleton) are stored as references to its segment, so that
+ * components shared in the original graph are still shared after loading.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+final class SegmentedEngineFormat {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedEngineFormat.class);
+    private static final byte[] MAGIC = "LKENGSEG".getBytes(Charsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int SEGMENT_FRAME = 'S';
+    private static final int GRAPH_FRAME = 'G';
+    private static final int DIRECTORY_FRAME = 'D';
+    private static final int TRAILER_SIZE = 8 + MAGIC.length;
+
+    private SegmentedEngineFormat() {}
+
+    /**
+     * Query whether a file is a segmented engine file.
+     * @param file The file to examine.
+     * @return {@code true} if the file starts with the segmented engine magic number.
+     * @throws IOException if there is an error reading the file.
+     */
+    static boolean isSegmented(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return hasMagic(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Query whether a stream contains a segmented engine.  The stream is reset to its original
+     * position.
+     * @param in The stream, which must support marking.
+     * @return {@code true} if the stream starts with the segmented engine magic number.
+     * @throws IOException if there is an error reading the stream.
+     */
+    static boolean isSegmented(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            return hasMagic(in);
+        } finally {
+            in.reset();
+        }
+    }
+
+    private static boolean hasMagic(InputStream in) throws IOException {
+        byte[] buf = new byte[MAGIC.length];
+        int n = ByteStreams.read(in, buf, 0, buf.length);
+        return n == buf.length && Arrays.equals(buf, MAGIC);
+    }
+
+    /**
+     * Write a graph as a segmented engine.
+     *
+     * @param graph The graph to write.
+     * @param stream The output stream.
+     * @param comp The compression mode to use for each segment.
+     * @throws IOException if there is an error writing the engine.
+     */
+    static void write(DAGNode<Component, Dependency> graph, @WillNotClose OutputStream stream,
+                      CompressionMode comp) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(stream));
+        DataOutputStream out = new DataOutputStream(counter);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(comp.name());
+
+        // assign every instance its segment up front, so that references to it from other
+        // segments can be written as segment references instead of copies.
+        final Map<Object,Integer> segmentIndexes = new IdentityHashMap<Object, Integer>();
+        List<Object> instances = Lists.newArrayList();
+        final Map<DAGNode<Component,Dependency>,Satisfaction> replacements = Maps.newLinkedHashMap();
+        for (DAGNode<Component,Dependency> node: graph.getSortedNodes()) {
+            Satisfaction sat = node.getLabel().getSatisfaction();
+            Object obj = getInstance(sat);
+            if (obj == null || isInlineValue(obj)) {
+                continue;
+            }
+            Integer index = segmentIndexes.get(obj);
+            if (index == null) {
+                index = instances.size();
+                segmentIndexes.put(obj, index);
+                instances.add(obj);
+            }
+            replacements.put(node, new SegmentSatisfaction(sat.getErasedType(), index));
+        }
+
+        List<Long> offsets = Lists.newArrayListWithCapacity(instances.size());
+        for (Object obj: instances) {
+            logger.debug("writing {} to segment {}", obj.getClass().getName(), offsets.size());
+            offsets.add(counter.getCount());
+            out.writeByte(SEGMENT_FRAME);
+            writePayload(out, comp, obj, segmentIndexes);
+        }
+
+        DAGNode<Component, Dependency> skeleton;
+        try {
+            skeleton = NodeProcessors.processNodes(graph, replacements.keySet(), new NodeProcessor() {
+                @Nonnull
+                @Override
+                public DAGNode<Component, Dependency> processNode(@Nonnull DAGNode<Component, Dependency> node,
+                                                                  @Nonnull DAGNode<Component, Dependency> original) {
+                    return relabel(node, replacements.get(original));
+                }
+            });
+        } catch (InjectionException e) {
+            throw new IOException("cannot build graph skeleton", e);
+        }
+
+        long graphOffset = counter.getCount();
+        out.writeByte(GRAPH_FRAME);
+        writePayload(out, comp, skeleton, segmentIndexes);
+
+        long dirOffset = counter.getCount();
+        out.writeByte(DIRECTORY_FRAME);
+        out.writeInt(offsets.size());
+        for (long off: offsets) {
+            out.writeLong(off);
+        }
+        out.writeLong(graphOffset);
+        out.writeLong(dirOffset);
+        out.write(MAGIC);
+        out.flush();
+        logger.info("wrote engine with {} component segments", offsets.size());
+    }
+
+    /**
+     * Read a segmented engine from a file.  Only the graph skeleton is read; components are
+     * loaded from the file on demand.
+     *
+     * @param file The file to read.
+     * @param loader The class loader to use.
+     * @return The engine graph.
+     * @throws IOException if there is an error reading the file.
+     * @throws ClassNotFoundException if a class in the graph cannot be found.
+     */
+    static DAGNode<Component,Dependency> read(File file, @Nullable ClassLoader loader) throws IOException, ClassNotFoundException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            CompressionMode comp = readHeader(raf);
+            long length = raf.length();
+            if (length < TRAILER_SIZE) {
+                throw new EOFException("truncated engine file");
+            }
+            raf.seek(length - TRAILER_SIZE);
+            long dirOffset = raf.readLong();
+            byte[] magic = new byte[MAGIC.length];
+            raf.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("invalid engine trailer");
+            }
+
+            raf.seek(dirOffset);
+            checkTag(raf.readUnsignedByte(), DIRECTORY_FRAME);
+            int n = raf.readInt();
+            List<ComponentSegment> segments = Lists.newArrayListWithCapacity(n);
+            for (int i = 0; i < n; i++) {
+                segments.add(new FileSegment(file, raf.readLong(), comp, loader, segments));
+            }
+            long graphOffset = raf.readLong();
+            logger.debug("{} has {} component segments", file, n);
+
+            raf.seek(graphOffset);
+            checkTag(raf.readUnsignedByte(), GRAPH_FRAME);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(raf.getChannel()));
+            return bind(readGraph(new ChunkedInputStream(in), comp, loader, segments), segments);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Read a segmented engine from a stream.  The stream is read sequentially, so component
+     * segments are read into memory; they are still deserialized on demand.
+     *
+     * @param stream The stream to read.
+     * @param loader The class loader to use.
+     * @return The engine graph.
+     * @throws IOException if there is an error reading the stream.
+     * @throws ClassNotFoundException if a class in the graph cannot be found.
+     */
+    static DAGNode<Component,Dependency> read(@WillNotClose InputStream stream, @Nullable ClassLoader loader) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(stream);
+        CompressionMode comp = readHeader(in);
+        List<ComponentSegment> segments = Lists.newArrayList();
+        DAGNode<Component,Dependency> graph = null;
+        int tag;
+        while ((tag = in.readUnsignedByte()) != DIRECTORY_FRAME) {
+            InputStream payload = new ChunkedInputStream(in);
+            switch (tag) {
+            case SEGMENT_FRAME:
+                segments.add(new MemorySegment(ByteStreams.toByteArray(payload), comp, loader, segments));
+                break;
+            case GRAPH_FRAME:
+                graph = readGraph(payload, comp, loader, segments);
+                break;
+            default:
+                throw new IOException("invalid frame tag " + tag);
+            }
+            payload.close();
+        }
+        if (graph == null) {
+            throw new IOException("engine stream has no graph");
+        }
+        return bind(graph, segments);
+    }
+
+    /**
+     * Deserialize all components of a graph that have not yet been loaded.
+     *
+     * @param graph The graph.
+     * @param nthreads The number of threads to use.
+     * @throws IOException if there is an error loading a component.
+     */
+    static void preload(DAGNode<Component,Dependency> graph, int nthreads) throws IOException {
+        DAGNodeBuilder<Callable<Object>,String> root = DAGNode.newBuilder(noopTask());
+        int n = 0;
+        for (DAGNode<Component,Dependency> node: graph.getReachableNodes()) {
+            Satisfaction sat = node.getLabel().getSatisfaction();
+            if (sat instanceof SegmentSatisfaction) {
+                final ComponentSegment seg = ((SegmentSatisfaction) sat).getSegment();
+                if (seg != null && !seg.isLoaded()) {
+                    Callable<Object> task = new Callable<Object>() {
+                        @Override
+                        public Object call() throws IOException, ClassNotFoundException {
+                            return seg.getInstance();
+                        }
+                    };
+                    root.addEdge(DAGNode.<Callable<Object>,String>singleton(task), "segment");
+                    n += 1;
+                }
+            }
+        }
+        logger.info("preloading {} components with {} threads", n, nthreads);
+        TaskGraphExecutor exec;
+        if (nthreads > 1) {
+            exec = TaskGraphExecutor.create(nthreads, "engine-loader");
+        } else {
+            exec = TaskGraphExecutor.singleThreaded();
+        }
+        try {
+            exec.execute(root.build());
+        } catch (ExecutionException e) {
+            throw new IOException("error loading engine components", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("engine loading interrupted");
+        }
+    }
+
+    private static Callable<Object> noopTask() {
+        return new Callable<Object>() {
+            @Override
+            public Object call() {
+                return null;
+            }
+        };
+    }
+
+    private static CompressionMode readHeader(DataInput in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a segmented engine");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported segmented engine version " + version);
+        }
+        String name = in.readUTF();
+        try {
+            return CompressionMode.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("unknown compression mode " + name, e);
+        }
+    }
+
+    private static void checkTag(int tag, int expected) throws IOException {
+        if (tag != expected) {
+            throw new IOException(String.format("expected frame %c, found %c", expected, tag));
+        }
+    }
+
+    private static void writePayload(DataOutputStream out, CompressionMode comp, Object obj,
+                                     Map<Object,Integer> segmentIndexes) throws IOException {
+        ObjectOutputStream oos = new ReferencingOutputStream(comp.wrapOutput(new ChunkedOutputStream(out)),
+                                                             segmentIndexes, obj);
+        try {
+            oos.writeObject(obj);
+        } finally {
+            // finishes the chunked frame, but leaves the output open
+            oos.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static DAGNode<Component,Dependency> readGraph(InputStream payload, CompressionMode comp,
+                                                          @Nullable ClassLoader loader,
+                                                          List<ComponentSegment> segments) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = ComponentSegment.openStream(comp.wrapInput(payload), loader, segments);
+        try {
+            ClassLoaderContext ctx = null;
+            if (loader != null) {
+                ctx = ClassLoaders.pushContext(loader);
+            }
+            try {
+                return (DAGNode) in.readObject();
+            } finally {
+                if (ctx != null) {
+                    ctx.pop();
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Bind the segment satisfactions in a graph skeleton to their segments.
+     */
+    private static DAGNode<Component,Dependency> bind(DAGNode<Component,Dependency> skeleton,
+                                                     final List<ComponentSegment> segments) throws IOException {
+        List<DAGNode<Component,Dependency>> nodes = Lists.newArrayList();
+        for (DAGNode<Component,Dependency> node: skeleton.getSortedNodes()) {
+            Satisfaction sat = node.getLabel().getSatisfaction();
+            if (sat instanceof SegmentSatisfaction) {
+                int idx = ((SegmentSatisfaction) sat).getIndex();
+                if (idx < 0 || idx >= segments.size()) {
+                    throw new IOException("graph references invalid segment " + idx);
+                }
+                nodes.add(node);
+            }
+        }
+        try {
+            return NodeProcessors.processNodes(skeleton, nodes, new NodeProcessor() {
+                @Nonnull
+                @Override
+                public DAGNode<Component, Dependency> processNode(@Nonnull DAGNode<Component, Dependency> node,
+                                                                  @Nonnull DAGNode<Component, Dependency> original) {
+                    SegmentSatisfaction sat = (SegmentSatisfaction) node.getLabel().getSatisfaction();
+                    return relabel(node, sat.bind(segments.get(sat.getIndex())));
+                }
+            });
+        } catch (InjectionException e) {
+            throw new IOException("cannot bind engine segments", e);
+        }
+    }
+
+    /**
+     * Replace the satisfaction of a node, keeping its cache policy and edges.
+     */
+    private static DAGNode<Component,Dependency> relabel(DAGNode<Component,Dependency> node, Satisfaction sat) {
+        Component label = Component.create(sat, node.getLabel().getCachePolicy());
+        DAGNodeBuilder<Component,Dependency> bld = DAGNode.newBuilder(label);
+        for (DAGEdge<Component,Dependency> edge: node.getOutgoingEdges()) {
+            bld.addEdge(edge.getTail(), edge.getLabel());
+        }
+        return bld.build();
+    }
+
+    /**
+     * Get the instance to store for a satisfaction.
+     * @return The instance, or {@code null} if the satisfaction is not an instance.
+     */
+    @Nullable
+    private static Object getInstance(Satisfaction sat) throws IOException {
+        if (sat instanceof SegmentSatisfaction) {
+            ComponentSegment seg = ((SegmentSatisfaction) sat).getSegment();
+            if (seg == null) {
+                return null;
+            }
+            try {
+                return seg.getInstance();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("cannot load component segment", e);
+            }
+        } else if (sat.hasInstance()) {
+            return sat.visit(new AbstractSatisfactionVisitor<Object>() {
+                @Override
+                public Object visitDefault() {
+                    return null;
+                }
+
+                @Override
+                public Object visitInstance(Object instance) {
+                    return instance;
+                }
+            });
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Query whether an instance is a simple value (such as a parameter) that should be left in
+     * the graph skeleton rather than stored in its own segment.
+     */
+    private static boolean isInlineValue(Object obj) {
+        return obj instanceof Number || obj instanceof String || obj instanceof Boolean
+               || obj instanceof Character || obj instanceof Enum;
+    }
+
+    /**
+     * Object output stream that writes components stored in other segments as references to
+     * those segments.  Objects with a {@code writeReplace} method are seen by
+     * {@link #replaceObject(Object)} only after their replacement, so they are still copied.
+     */
+    private static class ReferencingOutputStream extends ObjectOutputStream {
+        private final Map<Object,Integer> segmentIndexes;
+        private final Object root;
+
+        ReferencingOutputStream(OutputStream out, Map<Object,Integer> idxes, Object root) throws IOException {
+            super(out);
+            segmentIndexes = idxes;
+            this.root = root;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if (obj == root) {
+                return obj;
+            }
+            Integer idx = segmentIndexes.get(obj);
+            if (idx != null) {
+                return new ComponentSegment.Reference(idx);
+            } else {
+                return obj;
+            }
+        }
+    }
+
+    /**
+     * Segment read on demand from an engine file.
+     */
+    private static class FileSegment extends ComponentSegment {
+        private final File file;
+        private final long offset;
+
+        FileSegment(File file, long off, CompressionMode comp, @Nullable ClassLoader loader,
+                    List<ComponentSegment> segs) {
+            super(comp, loader, segs);
+            this.file = file;
+            offset = off;
+        }
+
+        @Override
+        protected InputStream openPayload() throws IOException {
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                raf.seek(offset);
+                checkTag(raf.readUnsignedByte(), SEGMENT_FRAME);
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+            InputStream in = new BufferedInputStream(Channels.newInputStream(raf.getChannel()));
+            return new FilterInputStream(new ChunkedInputStream(in)) {
+                @Override
+                public void close() throws IOException {
+                    raf.close();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s@%d", file, offset);
+        }
+    }
+
+    /**
+     * Segment whose data has been read into memory.
+     */
+    private static class MemorySegment extends ComponentSegment {
+        private final byte[] data;
+
+        MemorySegment(byte[] data, CompressionMode comp, @Nullable ClassLoader loader,
+                      List<ComponentSegment> segs) {
+            super(comp, loader, segs);
+            this.data = data;
+        }
+
+        @Override
+        protected InputStream openPayload() {
+            return new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("in-memory segment (%d bytes)", data.length);
+        }
+    }
+}
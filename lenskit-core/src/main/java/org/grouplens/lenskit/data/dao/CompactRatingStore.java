@@ -0,0 +1,529 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.FluentIterable;
+import com.google.common.primitives.Longs;
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntComparator;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.cursors.AbstractCursor;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.RatingBuilder;
+import org.grouplens.lenskit.data.history.AbstractUserHistory;
+import org.grouplens.lenskit.data.history.History;
+import org.grouplens.lenskit.data.history.ItemEventCollection;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.AbstractList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compact in-memory store of rating data, indexed by both user and item.  Ratings are stored in
+ * primitive arrays (user and item indexes, values, and timestamps) in user-major order, with
+ * offset tables for locating each user's ratings and an item-major permutation for locating each
+ * item's ratings.  This takes roughly 28 bytes per rating, instead of a boxed {@link Rating}
+ * object and its list entries.
+ *
+ * <p>User histories and item event lists are served as lightweight views that create rating
+ * objects on access.  Each user's ratings are sorted by timestamp, as required of user histories,
+ * and each user's history view is retained so that its memoized summaries are shared between
+ * requests.  The store can only hold ratings; {@link #fromEvents(Cursor)} returns
+ * {@code null} when it encounters any other kind of event, so callers can fall back to a general
+ * representation.  Unrate events are stored with a value of NaN, as in the binary pack format.
+ *
+ * <p>The store is used by {@link PrefetchingUserEventDAO} and {@link PrefetchingItemEventDAO};
+ * a single store can be shared by both, so the data is held only once.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public final class CompactRatingStore {
+    private static final Logger logger = LoggerFactory.getLogger(CompactRatingStore.class);
+
+    private final LongKeyDomain userDomain;
+    private final LongKeyDomain itemDomain;
+    /* rating data, in user-major order */
+    private final int[] users;
+    private final int[] items;
+    private final double[] values;
+    @Nullable
+    private final long[] timestamps;
+    /* user i's ratings are in [userOffsets[i], userOffsets[i+1]) */
+    private final int[] userOffsets;
+    /* item i's ratings are at itemPositions[itemOffsets[i]] to itemPositions[itemOffsets[i+1] - 1] */
+    private final int[] itemOffsets;
+    private final int[] itemPositions;
+    /* user history views, created on first request */
+    private final AtomicReferenceArray<UserHistoryView> userViews;
+
+    private CompactRatingStore(LongKeyDomain udom, LongKeyDomain idom,
+                               int[] us, int[] is, double[] vs, @Nullable long[] ts,
+                               int[] uoff, int[] ioff, int[] ipos) {
+        userDomain = udom;
+        itemDomain = idom;
+        users = us;
+        items = is;
+        values = vs;
+        timestamps = ts;
+        userOffsets = uoff;
+        itemOffsets = ioff;
+        itemPositions = ipos;
+        userViews = new AtomicReferenceArray<UserHistoryView>(udom.domainSize());
+    }
+
+    /**
+     * Build a compact store from a cursor of events.
+     *
+     * @param events The events.  The cursor is consumed but not closed.
+     * @return The store, or {@code null} if the cursor contains events that are not ratings.  In
+     *         that case, the cursor is only read up to the first such event.
+     */
+    @Nullable
+    public static CompactRatingStore fromEvents(Cursor<? extends Event> events) {
+        Builder bld = new Builder();
+        for (Event evt: events.fast()) {
+            if (!bld.add(evt)) {
+                logger.debug("found non-rating event {}, cannot use compact store", evt);
+                return null;
+            }
+        }
+        return bld.build();
+    }
+
+    /**
+     * Build a compact store from all events in a DAO.
+     *
+     * @param dao The DAO.
+     * @return The store, or {@code null} if the DAO contains events that are not ratings.
+     * @see #fromEvents(Cursor)
+     */
+    @Nullable
+    public static CompactRatingStore fromDAO(EventDAO dao) {
+        Cursor<Event> events = dao.streamEvents();
+        try {
+            return fromEvents(events);
+        } finally {
+            events.close();
+        }
+    }
+
+    /**
+     * Create a memoizing supplier that loads a compact store from a DAO on first use.  Pass the
+     * same supplier to several prefetching DAOs to share the store between them.
+     *
+     * @param dao The DAO.
+     * @return A supplier of the compact store.  The supplier returns {@code null} if the DAO
+     *         contains events that are not ratings.
+     */
+    public static Supplier<CompactRatingStore> supplier(final EventDAO dao) {
+        return Suppliers.memoize(new Supplier<CompactRatingStore>() {
+            @Override
+            public CompactRatingStore get() {
+                return fromDAO(dao);
+            }
+        });
+    }
+
+    /**
+     * Get the number of ratings in the store.
+     * @return The number of ratings.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Get the user IDs in the store.
+     * @return The set of user IDs.
+     */
+    public LongSet getUserIds() {
+        return userDomain.activeSetView();
+    }
+
+    /**
+     * Get the item IDs in the store.
+     * @return The set of item IDs.
+     */
+    public LongSet getItemIds() {
+        return itemDomain.activeSetView();
+    }
+
+    /**
+     * Get a user's history.
+     * @param user The user ID.
+     * @return The user's ratings, in timestamp order, or {@code null} if the user is unknown.
+     */
+    @Nullable
+    public UserHistory<Rating> getUserHistory(long user) {
+        int uidx = userDomain.getIndex(user);
+        if (uidx < 0) {
+            return null;
+        } else {
+            return userView(uidx);
+        }
+    }
+
+    /**
+     * Get the history view for a user index, creating it if necessary.
+     */
+    private UserHistoryView userView(int uidx) {
+        UserHistoryView view = userViews.get(uidx);
+        if (view == null) {
+            UserHistoryView nv = new UserHistoryView(uidx);
+            if (userViews.compareAndSet(uidx, null, nv)) {
+                view = nv;
+            } else {
+                view = userViews.get(uidx);
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Get an item's events.
+     * @param item The item ID.
+     * @return The item's ratings, in the order they were loaded, or {@code null} if the item is
+     *         unknown.
+     */
+    @Nullable
+    public ItemEventList getItemEvents(long item) {
+        int iidx = itemDomain.getIndex(item);
+        if (iidx < 0) {
+            return null;
+        } else {
+            return new ItemEventList(iidx);
+        }
+    }
+
+    /**
+     * Get the users who have rated an item.
+     * @param item The item ID.
+     * @return The set of users who have rated the item, or {@code null} if the item is unknown.
+     */
+    @Nullable
+    public LongSet getUsersForItem(long item) {
+        int iidx = itemDomain.getIndex(item);
+        if (iidx < 0) {
+            return null;
+        }
+        final int start = itemOffsets[iidx];
+        final int end = itemOffsets[iidx + 1];
+        LongSet result = new LongOpenHashSet(end - start);
+        for (int i = start; i < end; i++) {
+            result.add(userDomain.getKey(users[itemPositions[i]]));
+        }
+        return result;
+    }
+
+    /**
+     * Stream the user histories in the store, in order of user ID.
+     * @return A cursor of user histories.
+     */
+    public Cursor<UserHistory<Rating>> streamUserHistories() {
+        return new AbstractCursor<UserHistory<Rating>>(userDomain.domainSize()) {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < userDomain.domainSize();
+            }
+
+            @Nonnull
+            @Override
+            public UserHistory<Rating> next() {
+                return userView(next++);
+            }
+        };
+    }
+
+    /**
+     * Stream the item event lists in the store, in order of item ID.
+     * @return A cursor of item event lists.
+     */
+    public Cursor<ItemEventCollection<Rating>> streamItemEvents() {
+        return new AbstractCursor<ItemEventCollection<Rating>>(itemDomain.domainSize()) {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < itemDomain.domainSize();
+            }
+
+            @Nonnull
+            @Override
+            public ItemEventCollection<Rating> next() {
+                return new ItemEventList(next++);
+            }
+        };
+    }
+
+    /**
+     * Create the rating object at a position.
+     */
+    private Rating rating(int pos) {
+        RatingBuilder rb = new RatingBuilder();
+        rb.setUserId(userDomain.getKey(users[pos]))
+          .setItemId(itemDomain.getKey(items[pos]));
+        double v = values[pos];
+        if (!Double.isNaN(v)) {
+            rb.setRating(v);
+        }
+        if (timestamps != null) {
+            rb.setTimestamp(timestamps[pos]);
+        }
+        return rb.build();
+    }
+
+    /**
+     * View of a single user's ratings.
+     */
+    @SuppressWarnings("deprecation")
+    private class UserHistoryView extends AbstractUserHistory<Rating> {
+        private final int userIndex;
+
+        UserHistoryView(int uidx) {
+            userIndex = uidx;
+        }
+
+        @Override
+        public long getUserId() {
+            return userDomain.getKey(userIndex);
+        }
+
+        @Override
+        public Rating get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("index " + index);
+            }
+            return rating(userOffsets[userIndex] + index);
+        }
+
+        @Override
+        public int size() {
+            return userOffsets[userIndex + 1] - userOffsets[userIndex];
+        }
+
+        @Override
+        public LongSet itemSet() {
+            // no need to materialize the ratings to get the item set
+            final int start = userOffsets[userIndex];
+            final int end = userOffsets[userIndex + 1];
+            LongSet result = new LongOpenHashSet(end - start);
+            for (int i = start; i < end; i++) {
+                result.add(itemDomain.getKey(items[i]));
+            }
+            return result;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends Event> UserHistory<T> filter(Class<T> type) {
+            if (type.isAssignableFrom(Rating.class)) {
+                return (UserHistory<T>) this; // safe b/c we only hold ratings, are immutable
+            } else {
+                return History.forUser(getUserId());
+            }
+        }
+
+        @Override
+        public UserHistory<Rating> filter(Predicate<? super Rating> pred) {
+            return History.forUser(getUserId(), FluentIterable.from(this).filter(pred).toList());
+        }
+    }
+
+    /**
+     * View of a single item's ratings.
+     */
+    public final class ItemEventList extends AbstractList<Rating> implements ItemEventCollection<Rating> {
+        private final int itemIndex;
+
+        ItemEventList(int iidx) {
+            itemIndex = iidx;
+        }
+
+        @Override
+        public long getItemId() {
+            return itemDomain.getKey(itemIndex);
+        }
+
+        @Override
+        public Rating get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("index " + index);
+            }
+            return rating(itemPositions[itemOffsets[itemIndex] + index]);
+        }
+
+        @Override
+        public int size() {
+            return itemOffsets[itemIndex + 1] - itemOffsets[itemIndex];
+        }
+    }
+
+    /**
+     * Builder for compact rating stores.
+     */
+    public static class Builder {
+        private final LongArrayList userIds = new LongArrayList();
+        private final LongArrayList itemIds = new LongArrayList();
+        private final DoubleArrayList values = new DoubleArrayList();
+        private final LongArrayList timestamps = new LongArrayList();
+        private final LongSet userSet = new LongOpenHashSet();
+        private final LongSet itemSet = new LongOpenHashSet();
+        private boolean hasTimestamps = false;
+
+        /**
+         * Add an event to the store.
+         * @param evt The event.
+         * @return {@code true} if the event was added, {@code false} if it is not a rating.
+         */
+        public boolean add(Event evt) {
+            if (!(evt instanceof Rating)) {
+                return false;
+            }
+            Rating r = (Rating) evt;
+            userIds.add(r.getUserId());
+            itemIds.add(r.getItemId());
+            values.add(r.hasValue() ? r.getValue() : Double.NaN);
+            timestamps.add(r.getTimestamp());
+            userSet.add(r.getUserId());
+            itemSet.add(r.getItemId());
+            if (r.getTimestamp() >= 0) {
+                hasTimestamps = true;
+            }
+            return true;
+        }
+
+        /**
+         * Build the store.
+         * @return The compact rating store.
+         */
+        public CompactRatingStore build() {
+            final int n = values.size();
+            LongKeyDomain udom = LongKeyDomain.fromCollection(userSet, true);
+            LongKeyDomain idom = LongKeyDomain.fromCollection(itemSet, true);
+            final int nusers = udom.domainSize();
+            final int nitems = idom.domainSize();
+
+            // count ratings per user and item, and translate IDs into indexes
+            int[] uidxes = new int[n];
+            int[] iidxes = new int[n];
+            int[] userOffsets = new int[nusers + 1];
+            int[] itemOffsets = new int[nitems + 1];
+            for (int i = 0; i < n; i++) {
+                uidxes[i] = udom.getIndex(userIds.getLong(i));
+                iidxes[i] = idom.getIndex(itemIds.getLong(i));
+                userOffsets[uidxes[i] + 1] += 1;
+                itemOffsets[iidxes[i] + 1] += 1;
+            }
+            for (int u = 0; u < nusers; u++) {
+                userOffsets[u + 1] += userOffsets[u];
+            }
+            for (int it = 0; it < nitems; it++) {
+                itemOffsets[it + 1] += itemOffsets[it];
+            }
+
+            // scatter into user-major order (stable)
+            final int[] users = new int[n];
+            final int[] items = new int[n];
+            final double[] vals = new double[n];
+            final long[] times = hasTimestamps ? new long[n] : null;
+            // the load position of the rating at each position
+            final int[] origins = new int[n];
+            int[] ufill = new int[nusers];
+            for (int i = 0; i < n; i++) {
+                final int u = uidxes[i];
+                final int pos = userOffsets[u] + ufill[u]++;
+                users[pos] = u;
+                items[pos] = iidxes[i];
+                vals[pos] = values.getDouble(i);
+                if (times != null) {
+                    times[pos] = timestamps.getLong(i);
+                }
+                origins[pos] = i;
+            }
+
+            if (times != null) {
+                // sort each user's ratings by timestamp; merge sort is stable, like History.forUser
+                IntComparator byTime = new AbstractIntComparator() {
+                    @Override
+                    public int compare(int a, int b) {
+                        return Longs.compare(times[a], times[b]);
+                    }
+                };
+                Swapper swapper = new Swapper() {
+                    @Override
+                    public void swap(int a, int b) {
+                        int it = items[a];
+                        items[a] = items[b];
+                        items[b] = it;
+                        double v = vals[a];
+                        vals[a] = vals[b];
+                        vals[b] = v;
+                        long t = times[a];
+                        times[a] = times[b];
+                        times[b] = t;
+                        int o = origins[a];
+                        origins[a] = origins[b];
+                        origins[b] = o;
+                    }
+                };
+                for (int u = 0; u < nusers; u++) {
+                    Arrays.mergeSort(userOffsets[u], userOffsets[u + 1], byTime, swapper);
+                }
+            }
+
+            // index positions by item, in load order
+            int[] positions = new int[n];
+            for (int pos = 0; pos < n; pos++) {
+                positions[origins[pos]] = pos;
+            }
+            int[] itemPositions = new int[n];
+            int[] ifill = new int[nitems];
+            for (int i = 0; i < n; i++) {
+                final int it = iidxes[i];
+                itemPositions[itemOffsets[it] + ifill[it]++] = positions[i];
+            }
+
+            logger.debug("packed {} ratings from {} users and {} items", n, nusers, nitems);
+            return new CompactRatingStore(udom, idom, users, items, vals, times,
+                                          userOffsets, itemOffsets, itemPositions);
+        }
+    }
+}
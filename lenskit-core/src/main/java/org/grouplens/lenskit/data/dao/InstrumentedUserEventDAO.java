@@ -0,0 +1,102 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao;
+
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.util.metrics.Counter;
+import org.grouplens.lenskit.util.metrics.Histogram;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.Timer;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+/**
+ * User event DAO that records metrics for another DAO.  History fetches are timed with the timer
+ * {@code <DAO class>.getEventsForUser}, their sizes recorded in the histogram
+ * {@code <DAO class>.historySize}, and full scans counted by the counter
+ * {@code <DAO class>.streamEventsByUser}.  To use it, bind the real DAO within it:
+ *
+ * <pre>{@code
+ * config.bind(UserEventDAO.class).to(InstrumentedUserEventDAO.class);
+ * config.within(InstrumentedUserEventDAO.class)
+ *       .bind(UserEventDAO.class).to(PrefetchingUserEventDAO.class);
+ * }</pre>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class InstrumentedUserEventDAO implements UserEventDAO {
+    private final UserEventDAO delegate;
+    private final Timer fetchTimer;
+    private final Histogram historySizes;
+    private final Counter scanCount;
+
+    @Inject
+    public InstrumentedUserEventDAO(UserEventDAO dao, MetricRegistry metrics) {
+        delegate = dao;
+        fetchTimer = metrics.timer(Metrics.name(dao.getClass(), "getEventsForUser"));
+        historySizes = metrics.histogram(Metrics.name(dao.getClass(), "historySize"));
+        scanCount = metrics.counter(Metrics.name(dao.getClass(), "streamEventsByUser"));
+    }
+
+    @Override
+    public Cursor<UserHistory<Event>> streamEventsByUser() {
+        scanCount.increment();
+        return delegate.streamEventsByUser();
+    }
+
+    @Override
+    public <E extends Event> Cursor<UserHistory<E>> streamEventsByUser(Class<E> type) {
+        scanCount.increment();
+        return delegate.streamEventsByUser(type);
+    }
+
+    @Nullable
+    @Override
+    public UserHistory<Event> getEventsForUser(long user) {
+        Timer.Context ctx = fetchTimer.start();
+        try {
+            return record(delegate.getEventsForUser(user));
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    @Nullable
+    @Override
+    public <E extends Event> UserHistory<E> getEventsForUser(long user, Class<E> type) {
+        Timer.Context ctx = fetchTimer.start();
+        try {
+            return record(delegate.getEventsForUser(user, type));
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    private <E extends Event> UserHistory<E> record(UserHistory<E> history) {
+        historySizes.update(history == null ? 0 : history.size());
+        return history;
+    }
+}
@@ -43,7 +43,7 @@ public class ItemListItemDAO implements ItemDAO, Serializable {
     private final LongSortedSet itemSet;
 
     public ItemListItemDAO(Collection<Long> items) {
-        itemSet = LongUtils.packedSet(items);
+        itemSet = LongUtils.compactSet(items);
     }
 
     @Override
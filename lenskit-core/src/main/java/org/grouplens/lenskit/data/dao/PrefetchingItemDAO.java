@@ -25,6 +25,7 @@ import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.collections.LongUtils;
 import org.grouplens.lenskit.cursors.Cursor;
 import org.grouplens.lenskit.data.event.Event;
 import org.grouplens.lenskit.util.io.Describable;
@@ -90,7 +91,7 @@ public final class PrefetchingItemDAO implements ItemDAO, Describable {
             } finally {
                 events.close();
             }
-            return items;
+            return LongUtils.compactSet(items);
         }
     }
 
@@ -51,6 +51,7 @@ import java.util.Map;
  */
 public final class PrefetchingItemEventDAO implements ItemEventDAO, Describable {
     private final EventDAO eventDAO;
+    private final Supplier<CompactRatingStore> store;
     private final Supplier<Long2ObjectMap<List<Event>>> cache;
 
     /**
@@ -78,12 +79,33 @@ public final class PrefetchingItemEventDAO implements ItemEventDAO, Describable
 
     @Inject
     public PrefetchingItemEventDAO(EventDAO dao) {
+        this(dao, CompactRatingStore.supplier(dao));
+    }
+
+    /**
+     * Create a prefetching DAO that uses a (possibly shared) compact rating store.
+     *
+     * @param dao   The underlying event DAO.
+     * @param store A supplier of the compact store of {@code dao}'s events, as returned by
+     *              {@link CompactRatingStore#supplier(EventDAO)}.  If it supplies {@code null}
+     *              (because the DAO has events other than ratings), events are loaded into
+     *              ordinary in-memory lists instead.
+     * @since 2.2
+     */
+    public PrefetchingItemEventDAO(EventDAO dao, Supplier<CompactRatingStore> store) {
         eventDAO = dao;
+        this.store = store;
         cache = Suppliers.memoize(new ItemProfileScanner());
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public Cursor<ItemEventCollection<Event>> streamEventsByItem() {
+        CompactRatingStore ratings = store.get();
+        if (ratings != null) {
+            // safe, item collections are immutable
+            return (Cursor) ratings.streamItemEvents();
+        }
         Long2ObjectMap<List<Event>> map = cache.get();
         return Cursors.wrap(Iterators.transform(map.entrySet().iterator(),
                                                 ItemEventTransform.INSTANCE));
@@ -104,8 +126,13 @@ public final class PrefetchingItemEventDAO implements ItemEventDAO, Describable
         });
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public List<Event> getEventsForItem(long item) {
+        CompactRatingStore ratings = store.get();
+        if (ratings != null) {
+            return (List) ratings.getItemEvents(item);
+        }
         return cache.get().get(item);
     }
 
@@ -121,6 +148,11 @@ public final class PrefetchingItemEventDAO implements ItemEventDAO, Describable
 
     @Override
     public LongSet getUsersForItem(long item) {
+        CompactRatingStore ratings = store.get();
+        if (ratings != null) {
+            return ratings.getUsersForItem(item);
+        }
+
         List<Event> events = getEventsForItem(item);
         if (events == null) {
             return null;
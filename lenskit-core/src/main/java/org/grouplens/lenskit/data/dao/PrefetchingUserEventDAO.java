@@ -46,6 +46,7 @@ import java.util.List;
  */
 public final class PrefetchingUserEventDAO implements UserEventDAO, Describable {
     private final EventDAO eventDAO;
+    private final Supplier<CompactRatingStore> store;
     private final Supplier<Long2ObjectMap<UserHistory<Event>>> cache;
 
     /**
@@ -73,12 +74,33 @@ public final class PrefetchingUserEventDAO implements UserEventDAO, Describable
 
     @Inject
     public PrefetchingUserEventDAO(EventDAO dao) {
+        this(dao, CompactRatingStore.supplier(dao));
+    }
+
+    /**
+     * Create a prefetching DAO that uses a (possibly shared) compact rating store.
+     *
+     * @param dao   The underlying event DAO.
+     * @param store A supplier of the compact store of {@code dao}'s events, as returned by
+     *              {@link CompactRatingStore#supplier(EventDAO)}.  If it supplies {@code null}
+     *              (because the DAO has events other than ratings), events are loaded into
+     *              ordinary in-memory histories instead.
+     * @since 2.2
+     */
+    public PrefetchingUserEventDAO(EventDAO dao, Supplier<CompactRatingStore> store) {
         eventDAO = dao;
+        this.store = store;
         cache = Suppliers.memoize(new UserProfileScanner());
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public Cursor<UserHistory<Event>> streamEventsByUser() {
+        CompactRatingStore ratings = store.get();
+        if (ratings != null) {
+            // safe, histories are immutable
+            return (Cursor) ratings.streamUserHistories();
+        }
         return Cursors.wrap(cache.get().values());
     }
 
@@ -93,8 +115,13 @@ public final class PrefetchingUserEventDAO implements UserEventDAO, Describable
         });
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public UserHistory<Event> getEventsForUser(long user) {
+        CompactRatingStore ratings = store.get();
+        if (ratings != null) {
+            return (UserHistory) ratings.getUserHistory(user);
+        }
         return cache.get().get(user);
     }
 
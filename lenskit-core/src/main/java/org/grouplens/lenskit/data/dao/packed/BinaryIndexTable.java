@@ -20,6 +20,7 @@
  */
 package org.grouplens.lenskit.data.dao.packed;
 
+import com.google.common.base.Preconditions;
 import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.apache.commons.lang3.tuple.Pair;
@@ -102,6 +103,14 @@ class BinaryIndexTable implements Serializable {
         return keys.activeSetView();
     }
 
+    /**
+     * Get the table's key domain.  Key indexes are entry indexes in the table.
+     * @return The key domain, which must not be modified.
+     */
+    LongKeyDomain getKeyDomain() {
+        return keys;
+    }
+
     /**
      * Get the position list for a key.
      * @param key The key.
@@ -116,6 +125,38 @@ class BinaryIndexTable implements Serializable {
         return getEntryInternal(idx);
     }
 
+    /**
+     * Get the number of entries in the table.
+     * @return The number of keys.
+     */
+    public int size() {
+        return keys.domainSize();
+    }
+
+    /**
+     * Get the position list for the entry at an index in the table.
+     * @param idx The entry index (keys are in sorted order).
+     * @return The position list.
+     */
+    public IntList getEntryAt(int idx) {
+        Preconditions.checkElementIndex(idx, keys.domainSize());
+        return getEntryInternal(idx);
+    }
+
+    /**
+     * Count the positions stored in a range of entries.
+     * @param start The first entry index.
+     * @param end The end entry index (exclusive).
+     * @return The total number of positions in the entries.
+     */
+    public int positionCount(int start, int end) {
+        if (start >= end) {
+            return 0;
+        } else {
+            return offsets[end - 1] + sizes[end - 1] - offsets[start];
+        }
+    }
+
     private IntList getEntryInternal(int idx) {
         int offset = offsets[idx];
         int size = sizes[idx];
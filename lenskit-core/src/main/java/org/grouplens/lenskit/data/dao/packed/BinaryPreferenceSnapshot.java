@@ -0,0 +1,427 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao.packed;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongCollection;
+import org.grouplens.lenskit.collections.CollectionUtils;
+import org.grouplens.lenskit.data.pref.AbstractPreference;
+import org.grouplens.lenskit.data.pref.IndexedPreference;
+import org.grouplens.lenskit.data.snapshot.AbstractPreferenceSnapshot;
+import org.grouplens.lenskit.data.snapshot.IdDictionary;
+import org.grouplens.lenskit.indexes.IdIndexMapping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * A preference snapshot that reads rating data directly from the memory-mapped buffer of a
+ * {@link BinaryRatingDAO}.  Unlike {@link org.grouplens.lenskit.data.snapshot.PackedPreferenceSnapshot},
+ * this snapshot does not copy user IDs, item IDs, or rating values onto the Java heap; the only
+ * per-rating heap storage is a table of rating positions with the user and item index of each
+ * rating (and, if the snapshot is shuffled, a permutation of that table).  Its user and item
+ * indexes are those of the DAO's
+ * {@linkplain BinaryRatingDAO#getIdDictionary() ID dictionary}.
+ * <p>
+ * Pack files may contain multiple ratings for the same user-item pair, as well as unrate events.
+ * When the snapshot is created, each user's ratings are scanned in timestamp order so that only the
+ * most recent rating for each item is kept, and unrated items are dropped.
+ * <p>
+ * Preference indexes are positions in the snapshot's rating table, and are therefore in the range
+ * [0,<em>n</em>).  User ratings are contiguous in this table, so {@link #getUserRatings(long)} is
+ * cheap; {@link #getRatings()} iterates in a shuffled order if a random number generator was
+ * provided.
+ *
+ * @since 2.2
+ * @see BinaryPreferenceSnapshotBuilder
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public class BinaryPreferenceSnapshot extends AbstractPreferenceSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(BinaryPreferenceSnapshot.class);
+
+    private final ByteBuffer buffer;
+    private final boolean compactItems;
+    private final int ratingSize;
+    private final int itemOffset;
+    private final int valueOffset;
+
+    private final IdIndexMapping userIndex;
+    private final IdIndexMapping itemIndex;
+    /**
+     * The buffer position of each rating in the snapshot, grouped by user index.
+     */
+    private final int[] positions;
+    /**
+     * The user index of each rating in {@link #positions}.
+     */
+    private final int[] slotUsers;
+    /**
+     * The item index of each rating in {@link #positions}.
+     */
+    private final int[] slotItems;
+    /**
+     * The start of each user's ratings in {@link #positions}; has one more entry than there are
+     * users.
+     */
+    private final int[] userOffsets;
+    /**
+     * The iteration order for {@link #getRatings()}, or {@code null} to iterate by user.
+     */
+    @Nullable
+    private final int[] ratingOrder;
+    private volatile boolean closed;
+
+    private BinaryPreferenceSnapshot(BinaryRatingDAO dao, IdIndexMapping users, IdIndexMapping items,
+                                     int[] pos, int[] sitems, int[] offsets,
+                                     @Nullable int[] order) {
+        BinaryFormat format = dao.getHeader().getFormat();
+        buffer = dao.getRatingData();
+        compactItems = format.hasCompactItems();
+        ratingSize = format.getRatingSize();
+        itemOffset = idSize(format.hasCompactUsers());
+        valueOffset = itemOffset + idSize(compactItems);
+        userIndex = users;
+        itemIndex = items;
+        positions = pos;
+        slotItems = sitems;
+        userOffsets = offsets;
+        ratingOrder = order;
+        slotUsers = new int[pos.length];
+        for (int u = 0; u < offsets.length - 1; u++) {
+            Arrays.fill(slotUsers, offsets[u], offsets[u + 1], u);
+        }
+    }
+
+    /**
+     * Create a snapshot of a binary rating DAO.
+     *
+     * @param dao    The DAO to snapshot.
+     * @param random The random number generator to use for shuffling the rating order, or
+     *               {@code null} to leave ratings in user order.
+     * @return A snapshot backed by the DAO's rating buffer.
+     */
+    public static BinaryPreferenceSnapshot create(BinaryRatingDAO dao, @Nullable Random random) {
+        BinaryFormat format = dao.getHeader().getFormat();
+        ByteBuffer data = dao.getRatingData();
+        final int rsize = format.getRatingSize();
+        final int ioff = idSize(format.hasCompactUsers());
+        final int voff = ioff + idSize(format.hasCompactItems());
+        final boolean compactItems = format.hasCompactItems();
+
+        BinaryIndexTable userTable = dao.getUserTable();
+        // the DAO's dictionary indexes users and items by their positions in the index tables
+        IdDictionary dict = dao.getIdDictionary();
+        IdIndexMapping users = dict.getUserIndex();
+        IdIndexMapping items = dict.getItemIndex();
+        final int nusers = users.size();
+        assert nusers == userTable.size();
+
+        int[] pos = new int[dao.getHeader().getRatingCount()];
+        int[] sitems = new int[pos.length];
+        int[] offsets = new int[nusers + 1];
+        int n = 0;
+        // map of item IDs to slots for the current user
+        Long2IntMap slots = new Long2IntOpenHashMap();
+        slots.defaultReturnValue(-1);
+        for (int u = 0; u < nusers; u++) {
+            final int start = n;
+            offsets[u] = start;
+            IntList entry = userTable.getEntryAt(u);
+            boolean dirty = false;
+            slots.clear();
+            // the user table lists ratings in timestamp order, so later ratings win
+            for (int k = 0, sz = entry.size(); k < sz; k++) {
+                final int p = entry.getInt(k);
+                final int base = p * rsize;
+                long item = readId(data, base + ioff, compactItems);
+                int prev = slots.remove(item);
+                if (prev >= 0) {
+                    pos[prev] = -1;
+                    dirty = true;
+                }
+                if (Double.isNaN(data.getDouble(base + voff))) {
+                    dirty = true;
+                } else {
+                    slots.put(item, n);
+                    pos[n] = p;
+                    sitems[n] = items.getIndex(item);
+                    n += 1;
+                }
+            }
+            if (dirty) {
+                // squeeze out replaced ratings
+                int j = start;
+                for (int k = start; k < n; k++) {
+                    if (pos[k] >= 0) {
+                        pos[j] = pos[k];
+                        sitems[j] = sitems[k];
+                        j += 1;
+                    }
+                }
+                n = j;
+            }
+        }
+        offsets[nusers] = n;
+        if (n < pos.length) {
+            logger.debug("dropped {} superseded or unrate events", pos.length - n);
+            pos = Arrays.copyOf(pos, n);
+            sitems = Arrays.copyOf(sitems, n);
+        }
+
+        int[] order = null;
+        if (random != null) {
+            order = new int[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        }
+
+        logger.info("snapshotted {} ratings from {} users and {} items",
+                    n, nusers, items.size());
+        return new BinaryPreferenceSnapshot(dao, users, items, pos, sitems, offsets, order);
+    }
+
+    private static int idSize(boolean compact) {
+        return compact ? BinaryFormat.INT_SIZE : BinaryFormat.LONG_SIZE;
+    }
+
+    private static long readId(ByteBuffer buf, int offset, boolean compact) {
+        if (compact) {
+            return buf.getInt(offset);
+        } else {
+            return buf.getLong(offset);
+        }
+    }
+
+    private void requireValid() {
+        if (closed) {
+            throw new IllegalStateException("snapshot closed");
+        }
+    }
+
+    /**
+     * Get the number of ratings in this snapshot.
+     * @return The number of ratings.
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    @Override
+    public LongCollection getUserIds() {
+        return userIndex().getIdList();
+    }
+
+    @Override
+    public LongCollection getItemIds() {
+        return itemIndex().getIdList();
+    }
+
+    @Override
+    public IdIndexMapping userIndex() {
+        requireValid();
+        return userIndex;
+    }
+
+    @Override
+    public IdIndexMapping itemIndex() {
+        requireValid();
+        return itemIndex;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public org.grouplens.lenskit.collections.FastCollection<IndexedPreference> getRatings() {
+        requireValid();
+        return new RatingCollection(0, positions.length, -1);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public org.grouplens.lenskit.collections.FastCollection<IndexedPreference> getUserRatings(long userId) {
+        int uidx = userIndex().tryGetIndex(userId);
+        if (uidx < 0) {
+            return CollectionUtils.emptyFastCollection();
+        } else {
+            return new RatingCollection(userOffsets[uidx], userOffsets[uidx + 1], uidx);
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        closed = true;
+    }
+
+    /**
+     * A collection of ratings from a range of the rating table.  {@code FastCollection} is
+     * deprecated, so it is named in full rather than imported, which javac would warn about.
+     */
+    @SuppressWarnings("deprecation")
+    private class RatingCollection extends AbstractCollection<IndexedPreference>
+            implements org.grouplens.lenskit.collections.FastCollection<IndexedPreference> {
+        private final int start;
+        private final int end;
+        private final int user;
+
+        /**
+         * Create a rating collection.
+         * @param s The start slot.
+         * @param e The end slot.
+         * @param u The user index, or -1 for all users (in which case the range must be the whole
+         *          table, iterated in the snapshot's rating order).
+         */
+        RatingCollection(int s, int e, int u) {
+            start = s;
+            end = e;
+            user = u;
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+
+        @Nonnull
+        @Override
+        public Iterator<IndexedPreference> iterator() {
+            return new SlotIterator(false);
+        }
+
+        @Override
+        public Iterator<IndexedPreference> fastIterator() {
+            return new SlotIterator(true);
+        }
+
+        /**
+         * Iterator over the slots of this collection.
+         */
+        private class SlotIterator implements Iterator<IndexedPreference> {
+            @Nullable
+            private final int[] order = user < 0 ? ratingOrder : null;
+            @Nullable
+            private final BufferPreference flyweight;
+            private int i = start;
+
+            /**
+             * Create an iterator.
+             * @param fast Whether to re-use a single preference object for each rating.
+             */
+            SlotIterator(boolean fast) {
+                flyweight = fast ? new BufferPreference(0) : null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return i < end;
+            }
+
+            @Override
+            public IndexedPreference next() {
+                if (i >= end) {
+                    throw new NoSuchElementException();
+                }
+                int slot = order == null ? i : order[i];
+                i += 1;
+                if (flyweight == null) {
+                    return new BufferPreference(slot);
+                } else {
+                    flyweight.setSlot(slot);
+                    return flyweight;
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+
+    /**
+     * A preference that reads its data from the rating buffer.
+     */
+    private class BufferPreference extends AbstractPreference implements IndexedPreference {
+        private int slot;
+        private int base;
+
+        BufferPreference(int s) {
+            setSlot(s);
+        }
+
+        /**
+         * Point this preference at another slot.
+         * @param s The slot.
+         */
+        void setSlot(int s) {
+            slot = s;
+            base = positions[s] * ratingSize;
+        }
+
+        @Override
+        public long getUserId() {
+            return userIndex.getId(slotUsers[slot]);
+        }
+
+        @Override
+        public long getItemId() {
+            return readId(buffer, base + itemOffset, compactItems);
+        }
+
+        @Override
+        public double getValue() {
+            return buffer.getDouble(base + valueOffset);
+        }
+
+        @Override
+        public int getIndex() {
+            return slot;
+        }
+
+        @Override
+        public int getUserIndex() {
+            return slotUsers[slot];
+        }
+
+        @Override
+        public int getItemIndex() {
+            return slotItems[slot];
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao.packed;
+
+import org.grouplens.lenskit.core.Transient;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.snapshot.IdDictionary;
+import org.grouplens.lenskit.data.snapshot.PackedPreferenceSnapshotBuilder;
+import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.Random;
+
+/**
+ * Provider for preference snapshots that avoids copying rating data when the event DAO is a
+ * {@link BinaryRatingDAO}.  If the DAO is a binary DAO, this provider creates a
+ * {@link BinaryPreferenceSnapshot} over its rating buffer; otherwise, it falls back to packing the
+ * ratings in memory with {@link PackedPreferenceSnapshotBuilder}.  If an {@link IdDictionary} is
+ * configured that differs from the binary DAO's own dictionary, the ratings are also packed in
+ * memory, so that the snapshot uses the configured dictionary's indexes.  To use this provider,
+ * bind it as the provider of {@link PreferenceSnapshot}:
+ *
+ * <pre>{@code
+ * config.bind(PreferenceSnapshot.class)
+ *       .toProvider(BinaryPreferenceSnapshotBuilder.class);
+ * }</pre>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class BinaryPreferenceSnapshotBuilder implements Provider<PreferenceSnapshot> {
+    private static final Logger logger = LoggerFactory.getLogger(BinaryPreferenceSnapshotBuilder.class);
+
+    private final EventDAO dao;
+    private final Random random;
+    @Nullable
+    private final IdDictionary dictionary;
+
+    public BinaryPreferenceSnapshotBuilder(@Transient EventDAO dao, Random random) {
+        this(dao, random, null);
+    }
+
+    /**
+     * Create a snapshot provider.
+     *
+     * @param dao    The DAO to snapshot.
+     * @param random The random number generator for shuffling the ratings.
+     * @param dict   The ID dictionary whose indexes the snapshot should use, or {@code null} to
+     *               use the DAO's own indexes.
+     * @since 2.2
+     */
+    @Inject
+    public BinaryPreferenceSnapshotBuilder(@Transient EventDAO dao, Random random,
+                                           @Nullable IdDictionary dict) {
+        this.dao = dao;
+        this.random = random;
+        dictionary = dict;
+    }
+
+    @Override
+    public PreferenceSnapshot get() {
+        if (dao instanceof BinaryRatingDAO) {
+            BinaryRatingDAO bdao = (BinaryRatingDAO) dao;
+            if (dictionary == null || dictionary.equals(bdao.getIdDictionary())) {
+                logger.debug("creating snapshot over binary rating data");
+                return BinaryPreferenceSnapshot.create(bdao, random);
+            } else {
+                logger.debug("{} does not match binary DAO, packing snapshot in memory", dictionary);
+            }
+        } else {
+            logger.debug("{} is not a binary DAO, packing snapshot in memory", dao);
+        }
+        return new PackedPreferenceSnapshotBuilder(dao, random, dictionary).get();
+    }
+}
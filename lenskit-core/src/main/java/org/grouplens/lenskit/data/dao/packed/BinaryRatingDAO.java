@@ -24,21 +24,23 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.grouplens.lenskit.collections.CollectionUtils;
+import org.grouplens.lenskit.cursors.AbstractCursor;
 import org.grouplens.lenskit.cursors.Cursor;
 import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.cursors.SplittableCursor;
 import org.grouplens.lenskit.data.dao.*;
 import org.grouplens.lenskit.data.event.Event;
 import org.grouplens.lenskit.data.event.Rating;
 import org.grouplens.lenskit.data.history.History;
 import org.grouplens.lenskit.data.history.ItemEventCollection;
 import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.data.snapshot.IdDictionary;
 import org.grouplens.lenskit.util.io.Describable;
 import org.grouplens.lenskit.util.io.DescriptionWriter;
 import org.slf4j.Logger;
@@ -53,6 +55,7 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * DAO implementation using binary-packed data.  This DAO reads ratings from a compact binary format
@@ -82,6 +85,7 @@ public class BinaryRatingDAO implements EventDAO, UserEventDAO, ItemEventDAO, Us
     private final ByteBuffer ratingData;
     private final BinaryIndexTable userTable;
     private final BinaryIndexTable itemTable;
+    private final IdDictionary idDictionary;
 
     private BinaryRatingDAO(@Nullable File file, BinaryHeader hdr, ByteBuffer data, BinaryIndexTable users, BinaryIndexTable items) {
         Preconditions.checkArgument(data.position() == 0, "data is not at position 0");
@@ -90,6 +94,7 @@ public class BinaryRatingDAO implements EventDAO, UserEventDAO, ItemEventDAO, Us
         ratingData = data;
         userTable = users;
         itemTable = items;
+        idDictionary = IdDictionary.wrap(users.getKeyDomain(), items.getKeyDomain());
     }
 
     static BinaryRatingDAO fromBuffer(ByteBuffer buffer) {
@@ -135,6 +140,38 @@ public class BinaryRatingDAO implements EventDAO, UserEventDAO, ItemEventDAO, Us
         }
     }
 
+    BinaryHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Get a duplicate of the raw rating data buffer.
+     * @return The rating data buffer, positioned at the first rating.
+     */
+    ByteBuffer getRatingData() {
+        return ratingData.duplicate();
+    }
+
+    BinaryIndexTable getUserTable() {
+        return userTable;
+    }
+
+    BinaryIndexTable getItemTable() {
+        return itemTable;
+    }
+
+    /**
+     * Get the ID dictionary of this DAO's users and items.  User and item indexes are the
+     * positions of the users and items in the pack file's index tables, so the dictionary is
+     * stored in the file and shares the tables' keys.
+     *
+     * @return The ID dictionary.
+     * @since 2.2
+     */
+    public IdDictionary getIdDictionary() {
+        return idDictionary;
+    }
+
     private Object writeReplace() {
         return new SerialProxy(header, ratingData, userTable, itemTable);
     }
@@ -176,12 +213,10 @@ public class BinaryRatingDAO implements EventDAO, UserEventDAO, ItemEventDAO, Us
             cursor = getRatingList().cursor();
             break;
         case USER:
-            cursor = Cursors.concat(Iterables.transform(userTable.entries(),
-                                                        new EntryToCursorTransformer()));
+            cursor = new TableCursor(userTable, 0, userTable.size());
             break;
         case ITEM:
-            cursor = Cursors.concat(Iterables.transform(itemTable.entries(),
-                                                        new EntryToCursorTransformer()));
+            cursor = new TableCursor(itemTable, 0, itemTable.size());
             break;
         default:
             throw new IllegalArgumentException("unexpected sort order");
@@ -306,12 +341,75 @@ public class BinaryRatingDAO implements EventDAO, UserEventDAO, ItemEventDAO, Us
         writer.putField("header", header.render());
     }
 
-    private class EntryToCursorTransformer implements Function<Pair<Long, IntList>, Cursor<Rating>> {
+    /**
+     * Cursor over the ratings for a range of entries in an index table.  It splits on entry
+     * boundaries, so each user's (or item's) ratings stay together.
+     */
+    private class TableCursor extends AbstractCursor<Rating> implements SplittableCursor<Rating> {
+        private final BinaryIndexTable table;
+        private int nextEntry;
+        private final int endEntry;
+        @Nullable
+        private Cursor<Rating> current;
+
+        TableCursor(BinaryIndexTable tbl, int start, int end) {
+            table = tbl;
+            nextEntry = start;
+            endEntry = end;
+        }
+
+        @Override
+        public int getRowCount() {
+            int n = table.positionCount(nextEntry, endEntry);
+            if (current != null) {
+                n += current.getRowCount();
+            }
+            return n;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current == null || !current.hasNext()) {
+                if (nextEntry >= endEntry) {
+                    return false;
+                }
+                current = getRatingList(table.getEntryAt(nextEntry)).cursor();
+                nextEntry += 1;
+            }
+            return true;
+        }
+
+        @Nonnull
+        @Override
+        public Rating next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            assert current != null;
+            return current.next();
+        }
+
         @Nonnull
         @Override
-        public Cursor<Rating> apply(Pair<Long, IntList> input) {
-            Preconditions.checkNotNull(input, "input entry");
-            return Cursors.wrap(getRatingList(input.getRight()));
+        public Rating fastNext() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            assert current != null;
+            return current.fastNext();
+        }
+
+        @Nullable
+        @Override
+        public SplittableCursor<Rating> trySplit() {
+            if (current != null || endEntry - nextEntry < 2) {
+                // do not split in the middle of a group
+                return null;
+            }
+            int mid = (nextEntry + endEntry) >>> 1;
+            TableCursor prefix = new TableCursor(table, nextEntry, mid);
+            nextEntry = mid;
+            return prefix;
         }
     }
 
@@ -20,16 +20,17 @@
  */
 package org.grouplens.lenskit.data.dao.packed;
 
-import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.ints.IntList;
 import org.grouplens.lenskit.cursors.AbstractCursor;
-import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.cursors.SplittableCursor;
 import org.grouplens.lenskit.data.event.MutableRating;
 import org.grouplens.lenskit.data.event.Rating;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 import java.util.AbstractList;
+import java.util.NoSuchElementException;
 
 /**
  * A list of ratings backed by a buffer.  This is not thread-safe.
@@ -67,35 +68,79 @@ class BinaryRatingList extends AbstractList<Rating> {
         return format.readRating(buffer);
     }
 
-    private void populateRating(int pos, MutableRating rating) {
-        buffer.reset();
-        int bidx = buffer.position() + pos * ratingSize;
-        buffer.position(bidx);
-        format.readRating(buffer, rating);
-    }
-
     @Override
     public int size() {
         return positions.size();
     }
 
-    public Cursor<Rating> cursor() {
-        return new CursorImpl();
+    /**
+     * Get a cursor over this list.  The cursor can be split, and the resulting cursors can be used
+     * from different threads.
+     * @return A cursor over the ratings in this list.
+     */
+    public SplittableCursor<Rating> cursor() {
+        return new CursorImpl(0, positions.size());
     }
 
-    private class CursorImpl extends AbstractCursor<Rating> {
-        private MutableRating rating = new MutableRating();
-        private IntIterator posIter = positions.iterator();
+    private class CursorImpl extends AbstractCursor<Rating> implements SplittableCursor<Rating> {
+        private final ByteBuffer cursorBuffer;
+        private final int baseOffset;
+        private final MutableRating rating = new MutableRating();
+        private int next;
+        private final int end;
+
+        CursorImpl(int start, int end) {
+            // each cursor gets its own view of the buffer so split cursors are independent
+            cursorBuffer = buffer.duplicate();
+            cursorBuffer.reset();
+            baseOffset = cursorBuffer.position();
+            next = start;
+            this.end = end;
+        }
+
+        @Override
+        public int getRowCount() {
+            return end - next;
+        }
 
         @Override
         public boolean hasNext() {
-            return posIter.hasNext();
+            return next < end;
+        }
+
+        private void seek() {
+            if (next >= end) {
+                throw new NoSuchElementException();
+            }
+            cursorBuffer.position(baseOffset + positions.getInt(next) * ratingSize);
+            next += 1;
         }
 
         @Nonnull
         @Override
         public Rating next() {
-            return getRating(posIter.nextInt());
+            seek();
+            return format.readRating(cursorBuffer);
+        }
+
+        @Nonnull
+        @Override
+        public Rating fastNext() {
+            seek();
+            format.readRating(cursorBuffer, rating);
+            return rating;
+        }
+
+        @Nullable
+        @Override
+        public SplittableCursor<Rating> trySplit() {
+            if (end - next < 2) {
+                return null;
+            }
+            int mid = (next + end) >>> 1;
+            CursorImpl prefix = new CursorImpl(next, mid);
+            next = mid;
+            return prefix;
         }
     }
 }
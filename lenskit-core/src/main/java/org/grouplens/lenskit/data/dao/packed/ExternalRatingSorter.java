@@ -0,0 +1,299 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao.packed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import org.grouplens.lenskit.cursors.AbstractCursor;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.data.dao.DataAccessException;
+import org.grouplens.lenskit.data.event.Rating;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.WillClose;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Sort ratings with an external merge sort.  Ratings are read in runs of a bounded size; each run
+ * is sorted in memory and spilled to a temporary file in the binary rating format, and the runs are
+ * then merged.  If all the ratings fit in a single run, they are sorted in memory without touching
+ * the disk.
+ * <p>
+ * The sort is stable: ratings that compare equal are returned in input order.  This is important
+ * for the {@linkplain org.grouplens.lenskit.data.dao.SortOrder sort orders} used by DAOs, which sort
+ * by user or item and then by timestamp.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class ExternalRatingSorter {
+    private static final Logger logger = LoggerFactory.getLogger(ExternalRatingSorter.class);
+    /**
+     * The default number of ratings to sort in memory at a time.
+     */
+    public static final int DEFAULT_RUN_SIZE = 1 << 20;
+    /**
+     * The number of ratings to read or write at a time when working with run files.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    private final Comparator<? super Rating> comparator;
+    private final BinaryFormat format = BinaryFormat.create(PackHeaderFlag.TIMESTAMPS);
+    private int runSize = DEFAULT_RUN_SIZE;
+    @Nullable
+    private File tempDirectory;
+
+    /**
+     * Create a new external sorter.
+     * @param comp The comparator to sort with.
+     */
+    public ExternalRatingSorter(Comparator<? super Rating> comp) {
+        comparator = comp;
+    }
+
+    /**
+     * Set the number of ratings to sort in memory at a time.
+     * @param n The maximum number of ratings in a run.
+     * @return The sorter (for chaining).
+     */
+    public ExternalRatingSorter setRunSize(int n) {
+        Preconditions.checkArgument(n > 0, "run size must be positive");
+        runSize = n;
+        return this;
+    }
+
+    /**
+     * Set the directory for temporary run files.
+     * @param dir The directory, or {@code null} to use the system temporary directory.
+     * @return The sorter (for chaining).
+     */
+    public ExternalRatingSorter setTempDirectory(@Nullable File dir) {
+        tempDirectory = dir;
+        return this;
+    }
+
+    /**
+     * Sort ratings.
+     *
+     * @param ratings The ratings to sort.
+     * @return A cursor over the sorted ratings.  Closing it deletes any temporary files.
+     * @throws DataAccessException if there is an error writing temporary files.
+     */
+    public Cursor<Rating> sort(@WillClose Cursor<? extends Rating> ratings) {
+        List<File> runs = new ArrayList<File>();
+        List<Rating> buffer = new ArrayList<Rating>(Math.min(runSize, BLOCK_SIZE));
+        int total = 0;
+        boolean done = false;
+        try {
+            while (ratings.hasNext()) {
+                buffer.add(ratings.next());
+                total += 1;
+                if (buffer.size() >= runSize) {
+                    runs.add(writeRun(buffer));
+                    buffer.clear();
+                }
+            }
+            if (runs.isEmpty()) {
+                Collections.sort(buffer, comparator);
+                done = true;
+                return Cursors.wrap(buffer);
+            }
+            if (!buffer.isEmpty()) {
+                runs.add(writeRun(buffer));
+                buffer.clear();
+            }
+            logger.debug("merging {} ratings from {} runs", total, runs.size());
+            Cursor<Rating> merged = new MergeCursor(runs, total);
+            done = true;
+            return merged;
+        } catch (IOException e) {
+            throw new DataAccessException("error writing sort runs", e);
+        } finally {
+            ratings.close();
+            if (!done) {
+                deleteRuns(runs);
+            }
+        }
+    }
+
+    private File writeRun(List<Rating> ratings) throws IOException {
+        Collections.sort(ratings, comparator);
+        File file = File.createTempFile("lkrun", ".bin", tempDirectory);
+        logger.debug("writing run of {} ratings to {}", ratings.size(), file);
+        ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE * format.getRatingSize());
+        OutputStream out = new FileOutputStream(file);
+        boolean threw = true;
+        try {
+            for (Rating r: ratings) {
+                if (buf.remaining() < format.getRatingSize()) {
+                    out.write(buf.array(), 0, buf.position());
+                    buf.clear();
+                }
+                format.renderRating(r, buf);
+            }
+            out.write(buf.array(), 0, buf.position());
+            threw = false;
+        } finally {
+            Closeables.close(out, threw);
+            // the caller only cleans up runs that were written successfully
+            if (threw && !file.delete()) {
+                logger.warn("could not delete partial run file {}", file);
+            }
+        }
+        return file;
+    }
+
+    private static void deleteRuns(List<File> runs) {
+        for (File file: runs) {
+            if (file.exists() && !file.delete()) {
+                logger.warn("could not delete run file {}", file);
+            }
+        }
+    }
+
+    /**
+     * Reader for a single sorted run.
+     */
+    private class RunReader {
+        private final int index;
+        private final FileInputStream input;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private Rating head;
+
+        RunReader(int idx, File file) throws IOException {
+            index = idx;
+            input = new FileInputStream(file);
+            channel = input.getChannel();
+            buffer = ByteBuffer.allocate(BLOCK_SIZE * format.getRatingSize());
+            buffer.flip();
+        }
+
+        /**
+         * Advance to the next rating.
+         * @return {@code true} if there is a next rating (in {@link #head}).
+         */
+        boolean advance() throws IOException {
+            if (buffer.remaining() < format.getRatingSize()) {
+                buffer.compact();
+                while (buffer.position() < format.getRatingSize()) {
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+            }
+            if (buffer.remaining() < format.getRatingSize()) {
+                head = null;
+                return false;
+            } else {
+                head = format.readRating(buffer);
+                return true;
+            }
+        }
+
+        void close() throws IOException {
+            input.close();
+        }
+    }
+
+    private class MergeCursor extends AbstractCursor<Rating> {
+        private final List<File> runs;
+        private final List<RunReader> readers;
+        private final PriorityQueue<RunReader> queue;
+
+        MergeCursor(List<File> files, int n) throws IOException {
+            super(n);
+            runs = files;
+            readers = new ArrayList<RunReader>(files.size());
+            queue = new PriorityQueue<RunReader>(files.size(), new Comparator<RunReader>() {
+                @Override
+                public int compare(RunReader r1, RunReader r2) {
+                    int cmp = comparator.compare(r1.head, r2.head);
+                    if (cmp == 0) {
+                        // earlier runs hold earlier input, keep the sort stable
+                        cmp = r1.index - r2.index;
+                    }
+                    return cmp;
+                }
+            });
+            boolean opened = false;
+            try {
+                for (File file: files) {
+                    RunReader reader = new RunReader(readers.size(), file);
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+                opened = true;
+            } finally {
+                if (!opened) {
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Nonnull
+        @Override
+        public Rating next() {
+            RunReader reader = queue.poll();
+            if (reader == null) {
+                throw new NoSuchElementException();
+            }
+            Rating rating = reader.head;
+            try {
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            } catch (IOException e) {
+                throw new DataAccessException("error reading sort run", e);
+            }
+            return rating;
+        }
+
+        @Override
+        public void close() {
+            queue.clear();
+            for (RunReader reader: readers) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    logger.warn("error closing sort run", e);
+                }
+            }
+            readers.clear();
+            deleteRuns(runs);
+        }
+    }
+}
@@ -22,10 +22,12 @@ package org.grouplens.lenskit.data.history;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Ordering;
+import org.grouplens.lenskit.cursors.Cursor;
 import org.grouplens.lenskit.data.event.Event;
 import org.grouplens.lenskit.data.event.Events;
 
 import javax.annotation.Nonnull;
+import javax.annotation.WillCloseWhenClosed;
 import java.util.List;
 
 /**
@@ -104,4 +106,32 @@ public final class History {
         List<E> list = ImmutableList.of();
         return new BasicItemEventList<E>(id, list);
     }
+
+    /**
+     * Group a user-sorted stream of events into user histories.  Only one user's events are held
+     * in memory at a time.
+     *
+     * @param events The events, sorted by user (e.g. with
+     *               {@link org.grouplens.lenskit.data.dao.SortOrder#USER}).
+     * @param <E>    The type of event.
+     * @return A cursor of user histories; closing it closes {@code events}.
+     * @since 2.2
+     */
+    public static <E extends Event> Cursor<UserHistory<E>> groupByUser(@WillCloseWhenClosed Cursor<? extends E> events) {
+        return new UserHistoryCursor<E>(events);
+    }
+
+    /**
+     * Group an item-sorted stream of events into item event collections.  Only one item's events
+     * are held in memory at a time.
+     *
+     * @param events The events, sorted by item (e.g. with
+     *               {@link org.grouplens.lenskit.data.dao.SortOrder#ITEM}).
+     * @param <E>    The type of event.
+     * @return A cursor of item event collections; closing it closes {@code events}.
+     * @since 2.2
+     */
+    public static <E extends Event> Cursor<ItemEventCollection<E>> groupByItem(@WillCloseWhenClosed Cursor<? extends E> events) {
+        return new ItemCollectionCursor<E>(events);
+    }
 }
@@ -18,14 +18,12 @@
  * this program; if not, write to the Free Software Foundation, Inc., 51
  * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
  */
-package org.grouplens.lenskit.data.sql;
+package org.grouplens.lenskit.data.history;
 
 import com.google.common.collect.ImmutableList;
 import org.grouplens.lenskit.cursors.Cursor;
 import org.grouplens.lenskit.cursors.GroupingCursor;
 import org.grouplens.lenskit.data.event.Event;
-import org.grouplens.lenskit.data.history.History;
-import org.grouplens.lenskit.data.history.ItemEventCollection;
 
 import javax.annotation.Nonnull;
 import javax.annotation.WillCloseWhenClosed;
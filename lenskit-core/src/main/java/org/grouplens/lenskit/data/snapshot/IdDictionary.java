@@ -0,0 +1,162 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.snapshot;
+
+import com.google.common.base.Preconditions;
+import org.grouplens.grapht.annotation.DefaultNull;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.indexes.IdIndexMapping;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * A dictionary mapping user and item IDs to dense integer indexes, shared by the snapshots and
+ * models of a recommender.  When every component uses the same dictionary, a user or item index
+ * computed once can be used with all of them, and the hash tables used to look up large ID sets
+ * are built only once.
+ *
+ * <p>Indexes are positions of the IDs in sorted order, so they agree with the indexes of a
+ * {@link LongKeyDomain} or {@link IdIndexMapping#create(Collection) IdIndexMapping} over the same
+ * IDs.  A {@link org.grouplens.lenskit.data.dao.packed.BinaryRatingDAO} stores its IDs in sorted
+ * tables, so its dictionary ({@link org.grouplens.lenskit.data.dao.packed.BinaryRatingDAO#getIdDictionary()})
+ * is persisted with the pack file and costs nothing to load.
+ *
+ * <p>There is no default dictionary; components that can use one inject it as
+ * {@link javax.annotation.Nullable}, so it is used only when it is configured:
+ *
+ * <pre>{@code
+ * config.bind(IdDictionary.class)
+ *       .toProvider(IdDictionaryBuilder.class);
+ * }</pre>
+ *
+ * @since 2.2
+ * @see IdDictionaryBuilder
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Shareable
+@DefaultNull
+@Immutable
+public final class IdDictionary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final LongKeyDomain users;
+    private final LongKeyDomain items;
+    private final IdIndexMapping userIndex;
+    private final IdIndexMapping itemIndex;
+
+    private IdDictionary(LongKeyDomain us, LongKeyDomain is) {
+        users = us;
+        items = is;
+        userIndex = IdIndexMapping.fromDomain(us);
+        itemIndex = IdIndexMapping.fromDomain(is);
+    }
+
+    /**
+     * Create a dictionary of user and item IDs.
+     *
+     * @param users The user IDs.
+     * @param items The item IDs.
+     * @return The ID dictionary.
+     */
+    public static IdDictionary create(Collection<Long> users, Collection<Long> items) {
+        return new IdDictionary(LongKeyDomain.fromCollection(users, true),
+                                LongKeyDomain.fromCollection(items, true));
+    }
+
+    /**
+     * Create a dictionary over existing key domains.  This is used to share the key domains of
+     * stored data (such as the index tables of a binary pack file) without copying them.
+     *
+     * @param users The user ID domain.  All keys are included, regardless of active state.
+     * @param items The item ID domain.  All keys are included, regardless of active state.
+     * @return The ID dictionary, backed by the key domains.  The domains must not be modified.
+     */
+    public static IdDictionary wrap(LongKeyDomain users, LongKeyDomain items) {
+        Preconditions.checkNotNull(users, "user domain");
+        Preconditions.checkNotNull(items, "item domain");
+        return new IdDictionary(users, items);
+    }
+
+    /**
+     * Get the user index mapping.
+     * @return The mapping of user IDs to user indexes.
+     */
+    public IdIndexMapping getUserIndex() {
+        return userIndex;
+    }
+
+    /**
+     * Get the item index mapping.
+     * @return The mapping of item IDs to item indexes.
+     */
+    public IdIndexMapping getItemIndex() {
+        return itemIndex;
+    }
+
+    /**
+     * Create a key domain of the user IDs, for models that store per-user data.  Its indexes are
+     * the user indexes, and it shares the dictionary's hash index.
+     *
+     * @return A new key domain containing the user IDs, with all keys active.  The caller owns
+     *         the domain and may change its active keys.
+     */
+    public LongKeyDomain newUserDomain() {
+        return users.clone().setAllActive(true);
+    }
+
+    /**
+     * Create a key domain of the item IDs, for models that store per-item data.  Its indexes are
+     * the item indexes, and it shares the dictionary's hash index.
+     *
+     * @return A new key domain containing the item IDs, with all keys active.  The caller owns
+     *         the domain and may change its active keys.
+     */
+    public LongKeyDomain newItemDomain() {
+        return items.clone().setAllActive(true);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        } else if (o instanceof IdDictionary) {
+            IdDictionary od = (IdDictionary) o;
+            return userIndex.getIdList().equals(od.userIndex.getIdList())
+                   && itemIndex.getIdList().equals(od.itemIndex.getIdList());
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return userIndex.size() * 31 + itemIndex.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IdDictionary(%d users, %d items)",
+                             userIndex.size(), itemIndex.size());
+    }
+}
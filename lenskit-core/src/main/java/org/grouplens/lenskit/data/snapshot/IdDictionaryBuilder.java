@@ -0,0 +1,63 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.snapshot;
+
+import org.grouplens.lenskit.core.Transient;
+import org.grouplens.lenskit.data.dao.ItemDAO;
+import org.grouplens.lenskit.data.dao.UserDAO;
+import org.grouplens.lenskit.data.dao.packed.BinaryRatingDAO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Provider that builds an {@link IdDictionary} of the users and items in the DAOs.  If the user
+ * and item DAOs are the same {@link BinaryRatingDAO}, its stored dictionary is used instead.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class IdDictionaryBuilder implements Provider<IdDictionary> {
+    private static final Logger logger = LoggerFactory.getLogger(IdDictionaryBuilder.class);
+
+    private final UserDAO userDAO;
+    private final ItemDAO itemDAO;
+
+    @Inject
+    public IdDictionaryBuilder(@Transient UserDAO udao, @Transient ItemDAO idao) {
+        userDAO = udao;
+        itemDAO = idao;
+    }
+
+    @Override
+    public IdDictionary get() {
+        if (userDAO instanceof BinaryRatingDAO && userDAO == itemDAO) {
+            logger.debug("using ID dictionary of binary rating DAO");
+            return ((BinaryRatingDAO) userDAO).getIdDictionary();
+        } else {
+            IdDictionary dict = IdDictionary.create(userDAO.getUserIds(), itemDAO.getItemIds());
+            logger.debug("built {}", dict);
+            return dict;
+        }
+    }
+}
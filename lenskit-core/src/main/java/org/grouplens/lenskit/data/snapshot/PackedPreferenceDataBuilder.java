@@ -24,8 +24,11 @@ import com.google.common.base.Preconditions;
 import it.unimi.dsi.fastutil.ints.IntHeapPriorityQueue;
 import org.apache.commons.lang3.builder.Builder;
 import org.grouplens.lenskit.data.pref.Preference;
+import org.grouplens.lenskit.indexes.IdIndexMapping;
 import org.grouplens.lenskit.indexes.MutableIdIndexMapping;
 
+import javax.annotation.Nullable;
+
 import java.util.Arrays;
 import java.util.Random;
 
@@ -47,12 +50,30 @@ class PackedPreferenceDataBuilder implements Builder<PackedPreferenceData> {
 
     private MutableIdIndexMapping itemIndex;
     private MutableIdIndexMapping userIndex;
+    /**
+     * The fixed ID dictionary, or {@code null} if indexes are assigned as IDs are added.
+     */
+    @Nullable
+    private final IdDictionary dictionary;
     
     private IntHeapPriorityQueue freeList;
 
     public PackedPreferenceDataBuilder() {
-        itemIndex = new MutableIdIndexMapping();
-        userIndex = new MutableIdIndexMapping();
+        this(null);
+    }
+
+    /**
+     * Create a builder that uses the indexes of an ID dictionary.
+     *
+     * @param dict The ID dictionary, or {@code null} to assign indexes to IDs as they are added.
+     *             If a dictionary is used, every preference's user and item must be in it.
+     */
+    public PackedPreferenceDataBuilder(@Nullable IdDictionary dict) {
+        dictionary = dict;
+        if (dict == null) {
+            itemIndex = new MutableIdIndexMapping();
+            userIndex = new MutableIdIndexMapping();
+        }
         freeList = new IntHeapPriorityQueue();
         allocate(INITIAL_CHUNK_COUNT);
     }
@@ -99,8 +120,13 @@ class PackedPreferenceDataBuilder implements Builder<PackedPreferenceData> {
      * @param pref The preference data to set.
      */
     private void set(int ci, int ei, Preference pref) {
-        users[ci][ei] = userIndex.internId(pref.getUserId());
-        items[ci][ei] = itemIndex.internId(pref.getItemId());
+        if (dictionary == null) {
+            users[ci][ei] = userIndex.internId(pref.getUserId());
+            items[ci][ei] = itemIndex.internId(pref.getItemId());
+        } else {
+            users[ci][ei] = dictionary.getUserIndex().getIndex(pref.getUserId());
+            items[ci][ei] = dictionary.getItemIndex().getIndex(pref.getItemId());
+        }
         values[ci][ei] = pref.getValue();
     }
 
@@ -168,9 +194,15 @@ class PackedPreferenceDataBuilder implements Builder<PackedPreferenceData> {
     }
 
     private PackedPreferenceData internalBuild() {
-        return new PackedPreferenceData(users, items, values, nprefs,
-                                        userIndex.immutableCopy(),
-                                        itemIndex.immutableCopy());
+        IdIndexMapping uidx, iidx;
+        if (dictionary == null) {
+            uidx = userIndex.immutableCopy();
+            iidx = itemIndex.immutableCopy();
+        } else {
+            uidx = dictionary.getUserIndex();
+            iidx = dictionary.getItemIndex();
+        }
+        return new PackedPreferenceData(users, items, values, nprefs, uidx, iidx);
     }
 
     private void repack() {
@@ -33,6 +33,7 @@ import org.grouplens.lenskit.data.pref.Preference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import java.util.Random;
@@ -46,61 +47,41 @@ public class PackedPreferenceSnapshotBuilder implements Provider<PackedPreferenc
 
     private final EventDAO dao;
     private Random random;
+    @Nullable
+    private final IdDictionary dictionary;
 
-    @Inject
     public PackedPreferenceSnapshotBuilder(@Transient EventDAO dao, Random random) {
+        this(dao, random, null);
+    }
+
+    /**
+     * Create a snapshot builder.
+     *
+     * @param dao    The DAO to snapshot.
+     * @param random The random number generator for shuffling the ratings.
+     * @param dict   The ID dictionary whose indexes the snapshot should use, or {@code null} to
+     *               index the users and items in the rating data.
+     * @since 2.2
+     */
+    @Inject
+    public PackedPreferenceSnapshotBuilder(@Transient EventDAO dao, Random random,
+                                           @Nullable IdDictionary dict) {
         this.dao = dao;
         this.random = random;
+        dictionary = dict;
     }
 
     @Override
     public PackedPreferenceSnapshot get() {
         logger.debug("Packing preference snapshot");
 
-        PackedPreferenceDataBuilder bld = new PackedPreferenceDataBuilder();
-
-        // Track the indices where everything appears for finding previous
-        // rating info for a user-item pair
-        Long2ObjectMap<Long2IntMap> uiIndexes =
-                new Long2ObjectOpenHashMap<Long2IntMap>(2000);
+        PackedPreferenceDataBuilder bld = new PackedPreferenceDataBuilder(dictionary);
 
         // Since we iterate in timestamp order, we can just overwrite
         // old data for a user-item pair with new data.
         Cursor<Rating> ratings = dao.streamEvents(Rating.class, SortOrder.TIMESTAMP);
         try {
-            for (Rating r : ratings) {
-                final long user = r.getUserId();
-                final long item = r.getItemId();
-                final Preference p = r.getPreference();
-
-                // get the item -> index map for this user
-                Long2IntMap imap = uiIndexes.get(user);
-                if (imap == null) {
-                    imap = new Long2IntOpenHashMap();
-                    imap.defaultReturnValue(-1);
-                    uiIndexes.put(user, imap);
-                }
-
-                // have we seen the item?
-                final int index = imap.get(item);
-                if (index < 0) {    // we've never seen (user,item) before
-                    // if this is not an unrate (a no-op), add the pref
-                    if (p != null) {
-                        int idx = bld.add(p);
-                        imap.put(item, idx);
-                    }
-                } else {            // we have seen this rating before
-                    if (p == null) {
-                        // free the entry, no rating here
-                        bld.release(index);
-                        imap.put(item, -1);
-                    } else {
-                        // just overwrite the previous value
-                        bld.set(index, p);
-                    }
-                }
-            }
-
+            packRatings(ratings, bld);
             logger.debug("Packed {} ratings", bld.size());
         } finally {
             ratings.close();
@@ -111,4 +92,51 @@ public class PackedPreferenceSnapshotBuilder implements Provider<PackedPreferenc
 
         return new PackedPreferenceSnapshot(data);
     }
+
+    /**
+     * Add ratings to a data pack builder.  The ratings must be in timestamp order, so that later
+     * ratings replace earlier ones for the same user-item pair; unrate events remove the pair.
+     *
+     * @param ratings The ratings to pack.  This cursor is not closed.
+     * @param bld     The builder to receive the preferences.
+     */
+    static void packRatings(Cursor<Rating> ratings, PackedPreferenceDataBuilder bld) {
+        // Track the indices where everything appears for finding previous
+        // rating info for a user-item pair
+        Long2ObjectMap<Long2IntMap> uiIndexes =
+                new Long2ObjectOpenHashMap<Long2IntMap>(2000);
+
+        for (Rating r : ratings.fast()) {
+            final long user = r.getUserId();
+            final long item = r.getItemId();
+            final Preference p = r.getPreference();
+
+            // get the item -> index map for this user
+            Long2IntMap imap = uiIndexes.get(user);
+            if (imap == null) {
+                imap = new Long2IntOpenHashMap();
+                imap.defaultReturnValue(-1);
+                uiIndexes.put(user, imap);
+            }
+
+            // have we seen the item?
+            final int index = imap.get(item);
+            if (index < 0) {    // we've never seen (user,item) before
+                // if this is not an unrate (a no-op), add the pref
+                if (p != null) {
+                    int idx = bld.add(p);
+                    imap.put(item, idx);
+                }
+            } else {            // we have seen this rating before
+                if (p == null) {
+                    // free the entry, no rating here
+                    bld.release(index);
+                    imap.put(item, -1);
+                } else {
+                    // just overwrite the previous value
+                    bld.set(index, p);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.snapshot;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.builder.Builder;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.data.dao.DataAccessException;
+import org.grouplens.lenskit.data.event.Rating;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Build a packed preference snapshot from several partitions of the rating data, reading the
+ * partitions concurrently.
+ *
+ * <p>Each partition is a source of a rating cursor.  Partitions must be disjoint in their
+ * user-item pairs (e.g. each partition covers a range of users, or a range of items), and each
+ * partition's cursor must be in timestamp order.  Each partition is packed on its own thread,
+ * and the packed partitions are then merged (in the order they were added) into a single
+ * snapshot.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.2
+ */
+public class PartitionedPreferenceSnapshotBuilder implements Builder<PackedPreferenceSnapshot> {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedPreferenceSnapshotBuilder.class);
+
+    private final List<Callable<? extends Cursor<Rating>>> partitions = Lists.newArrayList();
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private Random random = new Random();
+    @Nullable
+    private IdDictionary dictionary;
+
+    /**
+     * Add a partition to the snapshot.
+     *
+     * @param source A callable that opens a cursor over the partition's ratings, in timestamp
+     *               order.  It will be invoked from a worker thread, and the cursor will be
+     *               closed when the partition has been read.
+     * @return The builder (for chaining).
+     */
+    public PartitionedPreferenceSnapshotBuilder addPartition(Callable<? extends Cursor<Rating>> source) {
+        Preconditions.checkNotNull(source, "partition source");
+        partitions.add(source);
+        return this;
+    }
+
+    /**
+     * Get the number of partitions added so far.
+     * @return The number of partitions.
+     */
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * Set the number of threads to use for reading partitions.  The default is the number of
+     * available processors.
+     *
+     * @param n The number of threads (at least 1).
+     * @return The builder (for chaining).
+     */
+    public PartitionedPreferenceSnapshotBuilder setThreadCount(int n) {
+        Preconditions.checkArgument(n > 0, "thread count is not positive");
+        threadCount = n;
+        return this;
+    }
+
+    /**
+     * Set the random number generator used to shuffle the snapshot.
+     *
+     * @param rng The random number generator.
+     * @return The builder (for chaining).
+     */
+    public PartitionedPreferenceSnapshotBuilder setRandom(Random rng) {
+        Preconditions.checkNotNull(rng, "random number generator");
+        random = rng;
+        return this;
+    }
+
+    /**
+     * Set the ID dictionary whose indexes the snapshot should use.  By default, the snapshot
+     * indexes the users and items in the rating data.
+     *
+     * @param dict The ID dictionary, or {@code null} to index the rating data.  It must contain
+     *             every user and item in the partitions.
+     * @return The builder (for chaining).
+     */
+    public PartitionedPreferenceSnapshotBuilder setIdDictionary(@Nullable IdDictionary dict) {
+        dictionary = dict;
+        return this;
+    }
+
+    /**
+     * Read all partitions and build the snapshot.
+     *
+     * @return The packed snapshot.
+     * @throws DataAccessException if a partition cannot be read.
+     *         The exception's cause is the partition's original exception.
+     */
+    @Override
+    public PackedPreferenceSnapshot build() {
+        int nthreads = Math.max(1, Math.min(threadCount, partitions.size()));
+        logger.debug("packing {} partitions on {} threads", partitions.size(), nthreads);
+        ExecutorService exec = Executors.newFixedThreadPool(nthreads, new ThreadFactoryBuilder()
+                .setNameFormat("snapshot-loader-%d")
+                .setDaemon(true)
+                .build());
+        PackedPreferenceDataBuilder bld = new PackedPreferenceDataBuilder(dictionary);
+        try {
+            List<Future<PackedPreferenceData>> results = Lists.newArrayListWithCapacity(partitions.size());
+            for (Callable<? extends Cursor<Rating>> part: partitions) {
+                results.add(exec.submit(new PartitionTask(part, dictionary)));
+            }
+            for (Future<PackedPreferenceData> result: results) {
+                PackedPreferenceData data = result.get();
+                // copy through a flyweight, so merging does no per-preference allocation
+                PackedPreferenceData.IndirectPreference pref = data.preference(-1);
+                final int n = data.size();
+                for (int i = 0; i < n; i++) {
+                    pref.setIndex(i);
+                    bld.add(pref);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("snapshot loading interrupted", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessException("error loading partition", e.getCause());
+        } finally {
+            exec.shutdownNow();
+        }
+
+        logger.debug("Packed {} ratings from {} partitions", bld.size(), partitions.size());
+        bld.shuffle(random);
+        return new PackedPreferenceSnapshot(bld.build());
+    }
+
+    /**
+     * Task to read and pack a single partition.
+     */
+    private static class PartitionTask implements Callable<PackedPreferenceData> {
+        private final Callable<? extends Cursor<Rating>> source;
+        @Nullable
+        private final IdDictionary dictionary;
+
+        PartitionTask(Callable<? extends Cursor<Rating>> src, @Nullable IdDictionary dict) {
+            source = src;
+            dictionary = dict;
+        }
+
+        @Override
+        public PackedPreferenceData call() throws Exception {
+            PackedPreferenceDataBuilder bld = new PackedPreferenceDataBuilder(dictionary);
+            Cursor<Rating> ratings = source.call();
+            try {
+                PackedPreferenceSnapshotBuilder.packRatings(ratings, bld);
+            } finally {
+                ratings.close();
+            }
+            return bld.build();
+        }
+    }
+}
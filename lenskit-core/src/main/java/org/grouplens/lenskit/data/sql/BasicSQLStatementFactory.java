@@ -33,7 +33,7 @@ import javax.annotation.Nullable;
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 @SuppressWarnings("unused")
-public class BasicSQLStatementFactory implements SQLStatementFactory {
+public class BasicSQLStatementFactory implements PartitionedSQLStatementFactory {
     private static final Logger logger =
             LoggerFactory.getLogger(BasicSQLStatementFactory.class);
     @Nonnull
@@ -238,6 +238,28 @@ public class BasicSQLStatementFactory implements SQLStatementFactory {
         return query.toString();
     }
 
+    @Override
+    public String prepareUserRangeEvents(SortOrder order) {
+        StringBuilder query = new StringBuilder();
+        rqAddSelectFrom(query);
+        query.append(" WHERE ").append(userColumn).append(" BETWEEN ? AND ?");
+        rqAddOrder(query, order);
+        rqFinish(query);
+        logger.debug("User range rating query: {}", query);
+        return query.toString();
+    }
+
+    @Override
+    public String prepareItemRangeEvents(SortOrder order) {
+        StringBuilder query = new StringBuilder();
+        rqAddSelectFrom(query);
+        query.append(" WHERE ").append(itemColumn).append(" BETWEEN ? AND ?");
+        rqAddOrder(query, order);
+        rqFinish(query);
+        logger.debug("Item range rating query: {}", query);
+        return query.toString();
+    }
+
     @Override
     public String prepareUserEvents() {
         StringBuilder query = new StringBuilder();
@@ -350,7 +350,7 @@ public class JDBCRatingDAO implements EventDAO, UserEventDAO, ItemEventDAO, User
 
     @Override
     public <E extends Event> Cursor<UserHistory<E>> streamEventsByUser(Class<E> type) {
-        return new UserHistoryCursor<E>(streamEvents(type, SortOrder.USER));
+        return History.groupByUser(streamEvents(type, SortOrder.USER));
     }
 
     @Override
@@ -360,7 +360,7 @@ public class JDBCRatingDAO implements EventDAO, UserEventDAO, ItemEventDAO, User
 
     @Override
     public <E extends Event> Cursor<ItemEventCollection<E>> streamEventsByItem(Class<E> type) {
-        return new ItemCollectionCursor<E>(streamEvents(type, SortOrder.USER));
+        return History.groupByItem(streamEvents(type, SortOrder.ITEM));
     }
 
 }
@@ -0,0 +1,273 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.sql;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.data.dao.SortOrder;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.snapshot.PackedPreferenceSnapshot;
+import org.grouplens.lenskit.data.snapshot.PartitionedPreferenceSnapshotBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Load a packed preference snapshot from a database by reading ranges of the user (or item) ID
+ * space concurrently.  The loader fetches the distinct IDs, splits them into contiguous ranges
+ * with roughly equal numbers of IDs, and reads each range with its own query on its own
+ * connection from the data source.
+ *
+ * <p>This is an alternative to {@link PackedPreferenceSnapshot#pack(org.grouplens.lenskit.data.dao.EventDAO)}
+ * over a {@link JDBCRatingDAO}, which streams the entire rating table through a single result
+ * set.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.2
+ */
+public class ParallelJDBCSnapshotLoader {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelJDBCSnapshotLoader.class);
+
+    /**
+     * The key on which to partition the rating table.
+     */
+    public static enum PartitionKey {
+        USER, ITEM
+    }
+
+    private final DataSource dataSource;
+    private final PartitionedSQLStatementFactory statementFactory;
+    private PartitionKey partitionKey = PartitionKey.USER;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private int partitionCount = -1;
+    private Random random = new Random();
+
+    /**
+     * Create a new loader.
+     *
+     * @param ds  The data source.  The loader opens one connection per partition while loading.
+     * @param fac The statement factory.
+     */
+    public ParallelJDBCSnapshotLoader(DataSource ds, PartitionedSQLStatementFactory fac) {
+        dataSource = ds;
+        statementFactory = fac;
+    }
+
+    public PartitionKey getPartitionKey() {
+        return partitionKey;
+    }
+
+    /**
+     * Set the key on which to partition the rating table.  The default is to partition by user.
+     * @param key The partition key.
+     * @return The loader (for chaining).
+     */
+    public ParallelJDBCSnapshotLoader setPartitionKey(PartitionKey key) {
+        Preconditions.checkNotNull(key, "partition key");
+        partitionKey = key;
+        return this;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Set the number of concurrent queries.  The default is the number of available processors.
+     * @param n The number of threads.
+     * @return The loader (for chaining).
+     */
+    public ParallelJDBCSnapshotLoader setThreadCount(int n) {
+        Preconditions.checkArgument(n > 0, "thread count is not positive");
+        threadCount = n;
+        return this;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount > 0 ? partitionCount : threadCount * 4;
+    }
+
+    /**
+     * Set the number of ID ranges to split the table into.  Using more partitions than threads
+     * smooths out differences in the number of ratings per range.  The default is four times
+     * the thread count.
+     *
+     * @param n The number of partitions.
+     * @return The loader (for chaining).
+     */
+    public ParallelJDBCSnapshotLoader setPartitionCount(int n) {
+        Preconditions.checkArgument(n > 0, "partition count is not positive");
+        partitionCount = n;
+        return this;
+    }
+
+    /**
+     * Set the random number generator used to shuffle the snapshot.
+     * @param rng The random number generator.
+     * @return The loader (for chaining).
+     */
+    public ParallelJDBCSnapshotLoader setRandom(Random rng) {
+        Preconditions.checkNotNull(rng, "random number generator");
+        random = rng;
+        return this;
+    }
+
+    /**
+     * Load the snapshot.
+     *
+     * @return The packed preference snapshot.
+     * @throws DatabaseAccessException if there is an error querying the database.
+     */
+    public PackedPreferenceSnapshot load() {
+        long[] ids = fetchKeys();
+        int nparts = Math.max(1, Math.min(getPartitionCount(), ids.length));
+        logger.info("loading {} ratings by {} ranges", partitionKey, nparts);
+        String query = partitionKey == PartitionKey.USER
+                ? statementFactory.prepareUserRangeEvents(SortOrder.TIMESTAMP)
+                : statementFactory.prepareItemRangeEvents(SortOrder.TIMESTAMP);
+
+        PartitionedPreferenceSnapshotBuilder bld = new PartitionedPreferenceSnapshotBuilder();
+        bld.setThreadCount(threadCount)
+           .setRandom(random);
+        for (int p = 0; p < nparts; p++) {
+            // split the sorted IDs into nparts ranges of nearly-equal length
+            int start = (int) ((long) ids.length * p / nparts);
+            int end = (int) ((long) ids.length * (p + 1) / nparts);
+            if (start < end) {
+                bld.addPartition(new RangeQuery(query, ids[start], ids[end - 1]));
+            }
+        }
+        return bld.build();
+    }
+
+    /**
+     * Get the sorted array of distinct partition key IDs.
+     */
+    private long[] fetchKeys() {
+        String sql = partitionKey == PartitionKey.USER
+                ? statementFactory.prepareUsers()
+                : statementFactory.prepareItems();
+        LongArrayList ids = new LongArrayList();
+        try {
+            Connection cxn = dataSource.getConnection();
+            try {
+                PreparedStatement stmt = cxn.prepareStatement(sql);
+                try {
+                    ResultSet results = stmt.executeQuery();
+                    try {
+                        while (results.next()) {
+                            ids.add(results.getLong(1));
+                        }
+                    } finally {
+                        results.close();
+                    }
+                } finally {
+                    stmt.close();
+                }
+            } finally {
+                cxn.close();
+            }
+        } catch (SQLException e) {
+            throw new DatabaseAccessException(e);
+        }
+        long[] array = ids.toLongArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    /**
+     * Open a cursor over a single range of the key space.
+     */
+    private class RangeQuery implements Callable<Cursor<Rating>> {
+        private final String sql;
+        private final long low;
+        private final long high;
+
+        RangeQuery(String sql, long lo, long hi) {
+            this.sql = sql;
+            low = lo;
+            high = hi;
+        }
+
+        @Override
+        public Cursor<Rating> call() throws SQLException {
+            logger.debug("querying {} range [{},{}]", partitionKey, low, high);
+            Connection cxn = dataSource.getConnection();
+            try {
+                PreparedStatement stmt = cxn.prepareStatement(sql);
+                try {
+                    stmt.setLong(1, low);
+                    stmt.setLong(2, high);
+                    return new RangeCursor(cxn, stmt);
+                } catch (SQLException e) {
+                    stmt.close();
+                    throw e;
+                } catch (RuntimeException e) {
+                    stmt.close();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                cxn.close();
+                throw e;
+            } catch (RuntimeException e) {
+                cxn.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Rating cursor that owns its statement and connection.
+     */
+    private static class RangeCursor extends ResultSetRatingCursor {
+        private final Connection connection;
+        private final PreparedStatement statement;
+
+        RangeCursor(Connection cxn, PreparedStatement stmt) throws SQLException {
+            super(stmt);
+            connection = cxn;
+            statement = stmt;
+        }
+
+        @Override
+        public void close() {
+            try {
+                super.close();
+            } finally {
+                try {
+                    statement.close();
+                    connection.close();
+                } catch (SQLException e) {
+                    throw new DatabaseAccessException(e);
+                }
+            }
+        }
+    }
+}
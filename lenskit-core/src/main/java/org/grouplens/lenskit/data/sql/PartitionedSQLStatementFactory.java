@@ -0,0 +1,57 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.sql;
+
+import org.grouplens.lenskit.data.dao.SortOrder;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Statement factory that can also produce queries over ranges of the user or item ID space.
+ * These queries let a loader split the rating table into disjoint partitions and read them over
+ * several connections at once.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.2
+ * @see ParallelJDBCSnapshotLoader
+ */
+@Immutable
+public interface PartitionedSQLStatementFactory extends SQLStatementFactory {
+    /**
+     * Prepare a statement to fetch the ratings of a contiguous range of users.  The returned rows
+     * should be as in {@link #prepareEvents(SortOrder)}, and the statement should take two
+     * parameters: the lowest and highest user ID in the range (both inclusive).
+     *
+     * @param order The sort order of ratings within the range.
+     * @return A string for a sql query returning the rating data for a range of users.
+     */
+    String prepareUserRangeEvents(SortOrder order);
+
+    /**
+     * Prepare a statement to fetch the ratings of a contiguous range of items.  The returned rows
+     * should be as in {@link #prepareEvents(SortOrder)}, and the statement should take two
+     * parameters: the lowest and highest item ID in the range (both inclusive).
+     *
+     * @param order The sort order of ratings within the range.
+     * @return A string for a sql query returning the rating data for a range of items.
+     */
+    String prepareItemRangeEvents(SortOrder order);
+}
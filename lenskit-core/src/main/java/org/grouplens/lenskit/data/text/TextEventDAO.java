@@ -27,7 +27,10 @@ import org.grouplens.lenskit.cursors.Cursors;
 import org.grouplens.lenskit.data.dao.DataAccessException;
 import org.grouplens.lenskit.data.dao.EventDAO;
 import org.grouplens.lenskit.data.dao.SortOrder;
+import org.grouplens.lenskit.data.dao.packed.ExternalRatingSorter;
 import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.RatingBuilder;
 import org.grouplens.lenskit.util.LineCursor;
 import org.grouplens.lenskit.util.io.CompressionMode;
 
@@ -124,6 +127,13 @@ public class TextEventDAO implements EventDAO {
             return streamEvents(type);
         }
 
+        if (producesRatings(type)) {
+            // ratings can be sorted on disk in bounded memory
+            @SuppressWarnings("unchecked")
+            Cursor<E> sorted = (Cursor<E>) new ExternalRatingSorter(evt).sort(streamEvents(Rating.class));
+            return sorted;
+        }
+
         Cursor<E> cursor = streamEvents(type);
         try {
             List<E> events = Lists.newArrayList(cursor);
@@ -134,6 +144,22 @@ public class TextEventDAO implements EventDAO {
         }
     }
 
+    /**
+     * Query whether a stream of events of a type is a stream of ratings.
+     * @param type The requested event type.
+     * @return {@code true} if the events of type {@code type} are exactly the ratings in the file.
+     */
+    private boolean producesRatings(Class<?> type) {
+        if (type.equals(Rating.class)) {
+            return true;
+        } else if (type.isAssignableFrom(Rating.class) && eventFormat instanceof DelimitedColumnEventFormat) {
+            EventTypeDefinition etd = ((DelimitedColumnEventFormat) eventFormat).getEventTypeDefinition();
+            return RatingBuilder.class.isAssignableFrom(etd.getBuilderType());
+        } else {
+            return false;
+        }
+    }
+
     private final class EventCursor extends AbstractCursor<Event> {
         private final LineCursor lines;
         private Object context;
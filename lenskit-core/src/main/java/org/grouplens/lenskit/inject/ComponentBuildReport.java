@@ -0,0 +1,312 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.inject;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Report of the resources used to build the shareable components of a recommender.  Each entry
+ * records the wall time, CPU time, and heap allocation spent instantiating one component, along
+ * with an estimate of the heap retained by the resulting object.  Measurements that the running
+ * JVM cannot provide are reported as -1.
+ *
+ * <p>Reports are produced by {@link ProfilingNodeInstantiator}; the usual way to get one is to
+ * enable {@linkplain org.grouplens.lenskit.core.LenskitRecommenderEngineBuilder#setBuildReportEnabled(boolean)
+ * build reports} on the engine builder.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public final class ComponentBuildReport implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Entry> entries;
+    private final long wallTime;
+
+    ComponentBuildReport(Collection<Entry> entries, long wallNanos) {
+        this.entries = ImmutableList.copyOf(entries);
+        wallTime = wallNanos;
+    }
+
+    /**
+     * Get the entries in this report, in the order in which their components finished building.
+     * @return The report entries.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Get the elapsed wall time from the start of the first component build to the end of the
+     * last.  With parallel instantiation this is less than the sum of the per-component times.
+     *
+     * @param unit The time unit.
+     * @return The elapsed build time.
+     */
+    public long getWallTime(TimeUnit unit) {
+        return unit.convert(wallTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the total estimated retained size of all components.
+     * @return The total retained size, in bytes, or -1 if sizes were not estimated.
+     */
+    public long getTotalRetainedSize() {
+        long total = 0;
+        for (Entry e: entries) {
+            if (e.getRetainedSize() < 0) {
+                return -1;
+            }
+            total += e.getRetainedSize();
+        }
+        return total;
+    }
+
+    /**
+     * Write this report as a plain-text table, one line per component.
+     *
+     * @param out The output to write to.
+     * @throws IOException if there is an error writing the table.
+     */
+    public void writeTable(Appendable out) throws IOException {
+        out.append(String.format(Locale.ROOT, "%-50s %10s %10s %12s %12s%n",
+                                 "Component", "Wall (ms)", "CPU (ms)", "Allocated", "Retained"));
+        for (Entry e: entries) {
+            out.append(String.format(Locale.ROOT, "%-50s %10s %10s %12s %12s%n",
+                                     e.getComponent(),
+                                     formatMillis(e.getWallTime()),
+                                     formatMillis(e.getCpuTime()),
+                                     formatBytes(e.getAllocatedBytes()),
+                                     formatBytes(e.getRetainedSize())));
+        }
+        out.append(String.format(Locale.ROOT, "%d components built in %s ms, retaining %s%n",
+                                 entries.size(), formatMillis(wallTime),
+                                 formatBytes(getTotalRetainedSize())));
+    }
+
+    /**
+     * Write this report as a JSON object.  The object has a {@code wallTime} field (in
+     * nanoseconds) and a {@code components} array of objects with {@code component},
+     * {@code type}, {@code wallTime}, {@code cpuTime}, {@code allocatedBytes}, and
+     * {@code retainedSize} fields.
+     *
+     * @param out The output to write to.
+     * @throws IOException if there is an error writing the report.
+     */
+    public void writeJSON(Appendable out) throws IOException {
+        out.append("{\"wallTime\":").append(Long.toString(wallTime))
+           .append(",\"components\":[");
+        boolean first = true;
+        for (Entry e: entries) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append("{\"component\":");
+            appendString(out, e.getComponent());
+            out.append(",\"type\":");
+            appendString(out, e.getType());
+            out.append(",\"wallTime\":").append(Long.toString(e.getWallTime()))
+               .append(",\"cpuTime\":").append(Long.toString(e.getCpuTime()))
+               .append(",\"allocatedBytes\":").append(Long.toString(e.getAllocatedBytes()))
+               .append(",\"retainedSize\":").append(Long.toString(e.getRetainedSize()))
+               .append('}');
+        }
+        out.append("]}");
+    }
+
+    /**
+     * Get this report in JSON format.
+     * @return The JSON representation of this report.
+     * @see #writeJSON(Appendable)
+     */
+    public String toJSON() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeJSON(sb);
+        } catch (IOException e) {
+            throw new AssertionError("string builder threw IOException");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeTable(sb);
+        } catch (IOException e) {
+            throw new AssertionError("string builder threw IOException");
+        }
+        return sb.toString();
+    }
+
+    private static String formatMillis(long nanos) {
+        if (nanos < 0) {
+            return "-";
+        } else {
+            return String.format(Locale.ROOT, "%.1f", nanos * 1.0e-6);
+        }
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 0) {
+            return "-";
+        } else if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KiB", bytes / 1024.0);
+        } else if (bytes < 1024L * 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f MiB", bytes / (1024.0 * 1024));
+        } else {
+            return String.format(Locale.ROOT, "%.1f GiB", bytes / (1024.0 * 1024 * 1024));
+        }
+    }
+
+    private static void appendString(Appendable out, String str) throws IOException {
+        out.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    out.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Build statistics for a single component.  Times are in nanoseconds; all values are -1 if
+     * unavailable.  The times and allocation of a component include any non-shareable objects
+     * built along with it, but not the shareable components it depends on, which have their own
+     * entries.
+     */
+    @Immutable
+    public static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String component;
+        private final String type;
+        private final long wallTime;
+        private final long cpuTime;
+        private final long allocatedBytes;
+        private final long retainedSize;
+
+        Entry(String component, String type, long wall, long cpu, long alloc, long retained) {
+            Preconditions.checkNotNull(component, "component");
+            Preconditions.checkNotNull(type, "type");
+            this.component = component;
+            this.type = type;
+            wallTime = wall;
+            cpuTime = cpu;
+            allocatedBytes = alloc;
+            retainedSize = retained;
+        }
+
+        /**
+         * Get a description of the component (its satisfaction).
+         * @return The component description.
+         */
+        public String getComponent() {
+            return component;
+        }
+
+        /**
+         * Get the name of the type of object built for the component.
+         * @return The class name of the component's instance.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Get the wall time spent building this component.
+         * @return The wall time, in nanoseconds.
+         */
+        public long getWallTime() {
+            return wallTime;
+        }
+
+        /**
+         * Get the CPU time the building thread spent on this component.  Work the component
+         * farms out to other threads is not included.
+         * @return The CPU time, in nanoseconds, or -1 if thread CPU time is not supported.
+         */
+        public long getCpuTime() {
+            return cpuTime;
+        }
+
+        /**
+         * Get the heap bytes the building thread allocated while building this component.
+         * Allocations made by other threads are not included.
+         * @return The allocated bytes, or -1 if the JVM does not track thread allocations.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Get the estimated heap retained by the component.  This is the size of the objects
+         * reachable from the component, not counting other components; it assumes a HotSpot-like
+         * object layout, so treat it as an approximation.
+         * @return The estimated size, in bytes, or -1 if sizes were not estimated.
+         */
+        public long getRetainedSize() {
+            return retainedSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %s ms wall, %s ms CPU, %s allocated, %s retained",
+                                 component, formatMillis(wallTime), formatMillis(cpuTime),
+                                 formatBytes(allocatedBytes), formatBytes(retainedSize));
+        }
+    }
+}
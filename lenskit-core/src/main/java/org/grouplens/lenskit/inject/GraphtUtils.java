@@ -287,4 +287,46 @@ public final class GraphtUtils {
 
         return shared;
     }
+
+    /**
+     * Find the nodes in a graph whose components are not declared thread-safe.  Components are
+     * declared thread-safe with the JSR 305 {@link javax.annotation.concurrent.ThreadSafe} or
+     * {@link javax.annotation.concurrent.Immutable} annotations.  Nodes that are already
+     * instantiated (and therefore shared by every recommender built from the graph) and null nodes
+     * are not considered; for provider-based nodes, the provided type must be declared thread-safe.
+     *
+     * @param graph The graph to analyze.
+     * @return The set of nodes that are not known to be thread-safe, in topological order.
+     * @since 2.2
+     */
+    public static LinkedHashSet<DAGNode<Component, Dependency>> getThreadUnsafeNodes(DAGNode<Component, Dependency> graph) {
+        LinkedHashSet<DAGNode<Component, Dependency>> unsafe = Sets.newLinkedHashSet();
+        for (DAGNode<Component, Dependency> node : graph.getSortedNodes()) {
+            Component label = node.getLabel();
+            if (label == null || label.getSatisfaction().hasInstance()) {
+                continue;
+            }
+            final Satisfaction sat = label.getSatisfaction();
+            boolean safe = sat.visit(new AbstractSatisfactionVisitor<Boolean>() {
+                @Override
+                public Boolean visitDefault() {
+                    return ThreadSafety.isThreadSafe(sat.getErasedType());
+                }
+
+                @Override
+                public Boolean visitNull() {
+                    return true;
+                }
+
+                @Override
+                public Boolean visitClass(Class<?> clazz) {
+                    return ThreadSafety.isThreadSafe(clazz);
+                }
+            });
+            if (!safe) {
+                unsafe.add(node);
+            }
+        }
+        return unsafe;
+    }
 }
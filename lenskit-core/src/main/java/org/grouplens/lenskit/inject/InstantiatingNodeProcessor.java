@@ -40,9 +40,21 @@ import javax.annotation.Nonnull;
 class InstantiatingNodeProcessor implements NodeProcessor {
     private static final Logger logger = LoggerFactory.getLogger(InstantiatingNodeProcessor.class);
     private final Function<DAGNode<Component, Dependency>, Object> instantiator;
+    private final boolean useOriginal;
 
     InstantiatingNodeProcessor(Function<DAGNode<Component,Dependency>,Object> inst) {
+        this(inst, false);
+    }
+
+    /**
+     * Create a new instantiating node processor.
+     * @param inst The function producing node instances.
+     * @param orig If {@code true}, the function is applied to the original node rather than the
+     *             node after earlier replacements (used when instances are computed in advance).
+     */
+    InstantiatingNodeProcessor(Function<DAGNode<Component,Dependency>,Object> inst, boolean orig) {
         instantiator = inst;
+        useOriginal = orig;
     }
 
     public DAGNode<Component, Dependency> processNode(@Nonnull DAGNode<Component, Dependency> node, @Nonnull DAGNode<Component, Dependency> original) {
@@ -51,7 +63,7 @@ class InstantiatingNodeProcessor implements NodeProcessor {
         if (satisfaction.hasInstance()) {
             return node;
         }
-        Object obj = instantiator.apply(node);
+        Object obj = instantiator.apply(useOriginal ? original : node);
 
         Satisfaction instanceSat;
         if (obj == null) {
@@ -47,6 +47,19 @@ public abstract class NodeInstantiator implements Function<DAGNode<Component,Dep
      */
     public abstract Object instantiate(DAGNode<Component, Dependency> node) throws InjectionException;
 
+    /**
+     * Prepare to instantiate the nodes of a graph from multiple threads.  After this method
+     * returns, concurrent calls to {@link #instantiate(DAGNode)} on nodes reachable from the graph
+     * must be safe.  The default implementation does nothing; instantiators that keep unsynchronized
+     * internal state should override it.
+     *
+     * @param graph The graph whose nodes will be instantiated.
+     * @throws InjectionException if there is an error preparing the nodes.
+     */
+    void prepareConcurrent(DAGNode<Component, Dependency> graph) throws InjectionException {
+        /* nothing to do by default */
+    }
+
     @Nonnull
     @Override
     public Object apply(@Nullable DAGNode<Component, Dependency> input) {
@@ -75,5 +88,18 @@ public abstract class NodeInstantiator implements Function<DAGNode<Component,Dep
         public Object instantiate(DAGNode<Component, Dependency> node) throws InjectionException {
             return container.makeInstantiator(node).instantiate();
         }
+
+        /**
+         * {@inheritDoc}
+         * <p>The injection container's instantiator cache is not thread-safe, so this creates
+         * instantiators for every reachable node up front.  Later lookups only read the cache, and
+         * the memoizing instantiators it holds synchronize their own instantiation.</p>
+         */
+        @Override
+        void prepareConcurrent(DAGNode<Component, Dependency> graph) throws InjectionException {
+            for (DAGNode<Component, Dependency> node: graph.getSortedNodes()) {
+                container.makeInstantiator(node);
+            }
+        }
     }
 }
@@ -0,0 +1,212 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.inject;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.InjectionException;
+import org.grouplens.grapht.graph.DAGNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Node instantiator that records the resources used to build each node.  It wraps another
+ * instantiator, and for each node it instantiates, records the wall time, the CPU time of the
+ * calling thread (if the JVM supports thread CPU time), and the bytes allocated by the calling
+ * thread (if the JVM supports allocation tracking, as HotSpot does).  Once instantiation is
+ * finished, {@link #getReport()} produces a {@link ComponentBuildReport}.
+ *
+ * <p>When used by {@link RecommenderInstantiator}, dependencies that are shareable components
+ * are built (and recorded) before the nodes that use them, so each entry covers the component
+ * itself and the non-shareable objects created for it.  This instantiator is safe to use from
+ * multiple threads if its delegate is.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public final class ProfilingNodeInstantiator extends NodeInstantiator {
+    private static final Logger logger = LoggerFactory.getLogger(ProfilingNodeInstantiator.class);
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final Method allocatedBytesMethod = findAllocatedBytesMethod();
+
+    private final NodeInstantiator delegate;
+    private final Queue<Record> records = new ConcurrentLinkedQueue<Record>();
+    private final boolean cpuTimeSupported;
+
+    private ProfilingNodeInstantiator(NodeInstantiator inst) {
+        delegate = inst;
+        boolean cpu = false;
+        try {
+            cpu = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+        } catch (UnsupportedOperationException e) {
+            /* no CPU time */
+        }
+        cpuTimeSupported = cpu;
+    }
+
+    /**
+     * Create a profiling instantiator.
+     * @param delegate The instantiator to use to actually instantiate nodes.
+     * @return An instantiator that profiles {@code delegate}.
+     */
+    public static ProfilingNodeInstantiator create(NodeInstantiator delegate) {
+        Preconditions.checkNotNull(delegate, "delegate instantiator");
+        return new ProfilingNodeInstantiator(delegate);
+    }
+
+    /**
+     * Create a profiling instantiator wrapping a new {@linkplain NodeInstantiator#create() default
+     * instantiator}.
+     * @return A new profiling instantiator.
+     */
+    public static ProfilingNodeInstantiator create() {
+        return create(NodeInstantiator.create());
+    }
+
+    @Override
+    public Object instantiate(DAGNode<Component, Dependency> node) throws InjectionException {
+        long startCpu = currentCpuTime();
+        long startAlloc = currentAllocatedBytes();
+        long start = System.nanoTime();
+        Object obj = delegate.instantiate(node);
+        long end = System.nanoTime();
+        long cpu = startCpu >= 0 ? currentCpuTime() - startCpu : -1;
+        long alloc = startAlloc >= 0 ? currentAllocatedBytes() - startAlloc : -1;
+        records.add(new Record(node, obj, start, end, cpu, alloc));
+        return obj;
+    }
+
+    @Override
+    void prepareConcurrent(DAGNode<Component, Dependency> graph) throws InjectionException {
+        delegate.prepareConcurrent(graph);
+    }
+
+    /**
+     * Build a report of the nodes instantiated so far, including retained size estimates.
+     * @return The build report.
+     */
+    public ComponentBuildReport getReport() {
+        return getReport(true);
+    }
+
+    /**
+     * Build a report of the nodes instantiated so far.
+     *
+     * @param estimateSizes Whether to estimate the retained size of each instance.  Estimation
+     *                      walks the object graph of each component, so it can take a while for
+     *                      large models; if {@code false}, sizes are reported as -1.
+     * @return The build report.
+     */
+    public ComponentBuildReport getReport(boolean estimateSizes) {
+        List<Record> recs = Lists.newArrayList(records);
+        RetainedSizeEstimator estimator = null;
+        if (estimateSizes) {
+            List<Object> instances = Lists.newArrayListWithCapacity(recs.size());
+            for (Record r: recs) {
+                if (r.instance != null) {
+                    instances.add(r.instance);
+                }
+            }
+            estimator = new RetainedSizeEstimator(instances);
+        }
+
+        List<ComponentBuildReport.Entry> entries = Lists.newArrayListWithCapacity(recs.size());
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (Record r: recs) {
+            first = Math.min(first, r.start);
+            last = Math.max(last, r.end);
+            long size = estimator == null ? -1 : estimator.estimate(r.instance);
+            String component = r.node.getLabel().getSatisfaction().getErasedType().getName();
+            String type = r.instance == null ? "null" : r.instance.getClass().getName();
+            entries.add(new ComponentBuildReport.Entry(component, type, r.end - r.start,
+                                                       r.cpuTime, r.allocated, size));
+        }
+        return new ComponentBuildReport(entries, recs.isEmpty() ? 0 : last - first);
+    }
+
+    private long currentCpuTime() {
+        return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long currentAllocatedBytes() {
+        if (allocatedBytesMethod == null) {
+            return -1;
+        }
+        try {
+            Object bytes = allocatedBytesMethod.invoke(threadBean, Thread.currentThread().getId());
+            return ((Number) bytes).longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Look up the HotSpot thread allocation method.  It is accessed reflectively so that LensKit
+     * still works on JVMs without {@code com.sun.management}.
+     */
+    private static Method findAllocatedBytesMethod() {
+        try {
+            Class<?> beanType = Class.forName("com.sun.management.ThreadMXBean");
+            if (!beanType.isInstance(threadBean)) {
+                return null;
+            }
+            Method supported = beanType.getMethod("isThreadAllocatedMemorySupported");
+            Method enabled = beanType.getMethod("isThreadAllocatedMemoryEnabled");
+            if (Boolean.TRUE.equals(supported.invoke(threadBean))
+                    && Boolean.TRUE.equals(enabled.invoke(threadBean))) {
+                return beanType.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (Exception e) {
+            logger.debug("thread allocation tracking unavailable: {}", e.toString());
+        }
+        return null;
+    }
+
+    private static class Record {
+        final DAGNode<Component,Dependency> node;
+        final Object instance;
+        final long start;
+        final long end;
+        final long cpuTime;
+        final long allocated;
+
+        Record(DAGNode<Component,Dependency> n, Object obj, long st, long e, long cpu, long alloc) {
+            node = n;
+            instance = obj;
+            start = st;
+            end = e;
+            cpuTime = cpu;
+            allocated = alloc;
+        }
+    }
+}
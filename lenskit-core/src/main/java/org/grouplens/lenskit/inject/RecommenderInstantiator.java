@@ -20,17 +20,28 @@
  */
 package org.grouplens.lenskit.inject;
 
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
 import org.grouplens.grapht.Component;
 import org.grouplens.grapht.Dependency;
 import org.grouplens.grapht.InjectionException;
 import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.DAGNodeBuilder;
 import org.grouplens.lenskit.RecommenderBuildException;
 import org.grouplens.lenskit.core.LenskitConfiguration;
 import org.grouplens.lenskit.core.RecommenderConfigurationException;
+import org.grouplens.lenskit.util.parallel.TaskGraphExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Process a recommender graph to deal with its shareable nodes.
@@ -90,6 +101,43 @@ public final class RecommenderInstantiator {
         }
     }
 
+    /**
+     * Instantiate the recommender graph, building independent shareable components concurrently.
+     * Each shareable node becomes a task that the executor runs once the shareable nodes it
+     * depends on have been built, so the wall time is bounded by the longest chain of dependent
+     * components rather than their sum.  The resulting graph is equivalent to the one produced by
+     * {@link #instantiate()}.
+     *
+     * <p>If this instantiator was created with a custom {@link NodeInstantiator}, that
+     * instantiator must support concurrent use.</p>
+     *
+     * @param executor The executor to use for running instantiation tasks.
+     * @return A new recommender graph with all shareable nodes pre-instantiated.
+     * @throws RecommenderBuildException If there is an error instantiating the graph.
+     * @since 2.2
+     */
+    public DAGNode<Component,Dependency> instantiate(TaskGraphExecutor executor) throws RecommenderBuildException {
+        ConcurrentMap<DAGNode<Component,Dependency>,Optional<Object>> instances =
+                new ConcurrentHashMap<DAGNode<Component, Dependency>, Optional<Object>>();
+        try {
+            instantiator.prepareConcurrent(graph);
+            executor.execute(makeTaskGraph(instances));
+        } catch (InjectionException e) {
+            throw new RecommenderBuildException("Recommender instantiation failed", e);
+        } catch (ExecutionException e) {
+            throw new RecommenderBuildException("Recommender instantiation failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecommenderBuildException("Recommender instantiation interrupted", e);
+        }
+
+        try {
+            return replaceShareableNodes(new InstantiatingNodeProcessor(new InstanceLookup(instances), true));
+        } catch (InjectionException e) {
+            throw new RecommenderBuildException("Recommender instantiation failed", e);
+        }
+    }
+
     /**
      * Simulate instantiating a graph.
      * @return The simulated graph.
@@ -119,4 +167,94 @@ public final class RecommenderInstantiator {
         logger.debug("final graph has {} nodes", result.getReachableNodes().size());
         return result;
     }
+
+    /**
+     * Build the task graph for parallel instantiation.  There is one task for each shareable node
+     * that is not already an instance, depending on the tasks for the shareable nodes reachable
+     * from it; a no-op root task depends on all of them.
+     *
+     * @param instances The map in which tasks store their instances.
+     * @return The root of the task graph.
+     */
+    private DAGNode<InstantiationTask,String> makeTaskGraph(ConcurrentMap<DAGNode<Component,Dependency>,Optional<Object>> instances) {
+        Set<DAGNode<Component,Dependency>> shared = GraphtUtils.getShareableNodes(graph);
+        // shareable nodes are in topological order, so dependencies are processed first
+        Map<DAGNode<Component,Dependency>,DAGNode<InstantiationTask,String>> tasks = Maps.newLinkedHashMap();
+        for (DAGNode<Component,Dependency> node: shared) {
+            if (node.getLabel().getSatisfaction().hasInstance()) {
+                continue;
+            }
+            DAGNodeBuilder<InstantiationTask,String> bld =
+                    DAGNode.newBuilder(new InstantiationTask(node, instances));
+            for (DAGNode<Component,Dependency> dep: node.getReachableNodes()) {
+                DAGNode<InstantiationTask,String> depTask = tasks.get(dep);
+                if (depTask != null) {
+                    bld.addEdge(depTask, "dependency");
+                }
+            }
+            tasks.put(node, bld.build());
+        }
+        logger.debug("scheduling {} instantiation tasks", tasks.size());
+
+        DAGNodeBuilder<InstantiationTask,String> root = DAGNode.newBuilder(new InstantiationTask(null, instances));
+        for (DAGNode<InstantiationTask,String> task: tasks.values()) {
+            root.addEdge(task, "dependency");
+        }
+        return root.build();
+    }
+
+    /**
+     * Task to instantiate a single node.
+     */
+    private class InstantiationTask implements Callable<Void> {
+        @Nullable
+        private final DAGNode<Component,Dependency> node;
+        private final ConcurrentMap<DAGNode<Component,Dependency>,Optional<Object>> instances;
+
+        /**
+         * Create a new instantiation task.
+         * @param n The node to instantiate, or {@code null} for a no-op task.
+         * @param map The map in which to store the instance.
+         */
+        InstantiationTask(@Nullable DAGNode<Component,Dependency> n,
+                          ConcurrentMap<DAGNode<Component,Dependency>,Optional<Object>> map) {
+            node = n;
+            instances = map;
+        }
+
+        @Override
+        public Void call() throws InjectionException {
+            if (node != null) {
+                logger.debug("instantiating {}", node.getLabel());
+                instances.put(node, Optional.fromNullable(instantiator.instantiate(node)));
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return node == null ? "instantiate graph" : "instantiate " + node.getLabel();
+        }
+    }
+
+    /**
+     * Function looking up pre-computed instances.
+     */
+    private static class InstanceLookup implements Function<DAGNode<Component,Dependency>,Object> {
+        private final Map<DAGNode<Component,Dependency>,Optional<Object>> instances;
+
+        InstanceLookup(Map<DAGNode<Component,Dependency>,Optional<Object>> map) {
+            instances = map;
+        }
+
+        @Nullable
+        @Override
+        public Object apply(@Nullable DAGNode<Component, Dependency> input) {
+            Optional<Object> inst = instances.get(input);
+            if (inst == null) {
+                throw new IllegalStateException("node " + input + " was not instantiated");
+            }
+            return inst.orNull();
+        }
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.inject;
+
+import com.google.common.collect.Maps;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Estimate the heap retained by component objects by walking their object graphs.  Sizes assume
+ * a HotSpot-style layout (object headers, 8-byte alignment, and compressed references on 64-bit
+ * JVMs with heaps under 32 GiB); field packing and padding are approximated.  Objects in the
+ * boundary set (other components) are not traversed, so each component is charged only for the
+ * objects it holds itself.  Classes, class loaders, threads, and enum constants are treated as
+ * shared and not counted.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+class RetainedSizeEstimator {
+    private static final boolean IS_64_BIT = !"32".equals(System.getProperty("sun.arch.data.model"));
+    private static final boolean COMPRESSED_REFS =
+            IS_64_BIT && Runtime.getRuntime().maxMemory() < 32L * 1024 * 1024 * 1024;
+    private static final int REF_SIZE = IS_64_BIT && !COMPRESSED_REFS ? 8 : 4;
+    private static final int OBJECT_HEADER = IS_64_BIT ? (COMPRESSED_REFS ? 12 : 16) : 8;
+    private static final int ARRAY_HEADER = OBJECT_HEADER + 4;
+
+    private final Set<Object> boundary;
+    private final Map<Class<?>,ClassLayout> layouts = Maps.newHashMap();
+
+    /**
+     * Create a new size estimator.
+     * @param boundary Objects that are never traversed (except when they are the root).
+     */
+    RetainedSizeEstimator(Collection<?> boundary) {
+        this.boundary = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        this.boundary.addAll(boundary);
+    }
+
+    /**
+     * Estimate the size of the objects reachable from an object.
+     * @param root The root object.
+     * @return The estimated size, in bytes.
+     */
+    long estimate(Object root) {
+        if (root == null || isShared(root)) {
+            return 0;
+        }
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        Deque<Object> work = new ArrayDeque<Object>();
+        seen.add(root);
+        work.push(root);
+        long size = 0;
+        while (!work.isEmpty()) {
+            Object obj = work.pop();
+            Class<?> type = obj.getClass();
+            if (type.isArray()) {
+                int len = Array.getLength(obj);
+                Class<?> ctype = type.getComponentType();
+                size += align(ARRAY_HEADER + (long) len * fieldSize(ctype));
+                if (!ctype.isPrimitive()) {
+                    for (Object elt: (Object[]) obj) {
+                        visit(elt, seen, work);
+                    }
+                }
+            } else {
+                ClassLayout layout = getLayout(type);
+                size += layout.size;
+                for (Field f: layout.references) {
+                    try {
+                        visit(f.get(obj), seen, work);
+                    } catch (IllegalAccessException e) {
+                        /* cannot read it, do not count it */
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private void visit(Object obj, Set<Object> seen, Deque<Object> work) {
+        if (obj != null && !boundary.contains(obj) && !isShared(obj) && seen.add(obj)) {
+            work.push(obj);
+        }
+    }
+
+    private static boolean isShared(Object obj) {
+        return obj instanceof Class
+                || obj instanceof ClassLoader
+                || obj instanceof Thread
+                || obj instanceof Enum;
+    }
+
+    private ClassLayout getLayout(Class<?> type) {
+        ClassLayout layout = layouts.get(type);
+        if (layout == null) {
+            long size = OBJECT_HEADER;
+            List<Field> refs = new ArrayList<Field>();
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field f: c.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers())) {
+                        continue;
+                    }
+                    size += fieldSize(f.getType());
+                    if (!f.getType().isPrimitive()) {
+                        try {
+                            f.setAccessible(true);
+                            refs.add(f);
+                        } catch (RuntimeException e) {
+                            /* inaccessible (e.g. module-restricted), count the reference only */
+                        }
+                    }
+                }
+            }
+            layout = new ClassLayout(align(size), refs);
+            layouts.put(type, layout);
+        }
+        return layout;
+    }
+
+    private static int fieldSize(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return REF_SIZE;
+        } else if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else {
+            return 1;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static class ClassLayout {
+        final long size;
+        final List<Field> references;
+
+        ClassLayout(long sz, List<Field> refs) {
+            size = sz;
+            references = refs;
+        }
+    }
+}
@@ -122,4 +122,17 @@ public class StaticInjector implements Injector {
     public <T> T getInstance(Annotation qualifier, Class<T> type) throws InjectionException {
         return getInstance(Qualifiers.match(qualifier), type);
     }
+
+    /**
+     * Instantiate all root components of the graph (and, transitively, their dependencies), so
+     * that later lookups of them do not need to construct anything.
+     *
+     * @throws InjectionException if there is an error instantiating a component.
+     * @since 2.2
+     */
+    public void instantiateRoots() throws InjectionException {
+        for (DAGEdge<Component, Dependency> edge: graph.getOutgoingEdges()) {
+            instantiator.instantiate(edge.getTail());
+        }
+    }
 }
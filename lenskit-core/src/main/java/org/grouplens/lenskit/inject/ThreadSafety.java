@@ -0,0 +1,146 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.inject;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Detect the JSR 305 concurrency annotations on classes.  {@link javax.annotation.concurrent.ThreadSafe}
+ * and {@link javax.annotation.concurrent.Immutable} have class retention, so they are not visible
+ * through reflection; instead, we look for their type descriptors in the class file's constant
+ * pool.  Since both annotations can only be applied to types, a class that references them is
+ * annotated with them.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+final class ThreadSafety {
+    private static final Logger logger = LoggerFactory.getLogger(ThreadSafety.class);
+    private static final String THREAD_SAFE = "Ljavax/annotation/concurrent/ThreadSafe;";
+    private static final String IMMUTABLE = "Ljavax/annotation/concurrent/Immutable;";
+
+    private static final LoadingCache<Class<?>,Boolean> cache =
+            CacheBuilder.newBuilder()
+                        .weakKeys()
+                        .build(new CacheLoader<Class<?>, Boolean>() {
+                            @Override
+                            public Boolean load(Class<?> key) {
+                                return scanClass(key);
+                            }
+                        });
+
+    private ThreadSafety() {}
+
+    /**
+     * Query whether a class is declared to be thread-safe.
+     * @param type The class.
+     * @return {@code true} if the class is annotated {@code @ThreadSafe} or {@code @Immutable}.
+     */
+    public static boolean isThreadSafe(Class<?> type) {
+        if (type.isPrimitive() || type.isArray()) {
+            return false;
+        }
+        return cache.getUnchecked(type);
+    }
+
+    private static boolean scanClass(Class<?> type) {
+        String resource = type.getName().replace('.', '/') + ".class";
+        ClassLoader loader = type.getClassLoader();
+        InputStream stream = loader == null
+                ? ClassLoader.getSystemResourceAsStream(resource)
+                : loader.getResourceAsStream(resource);
+        if (stream == null) {
+            logger.debug("cannot find class file for {}", type);
+            return false;
+        }
+        try {
+            try {
+                return referencesAnnotation(new DataInputStream(new BufferedInputStream(stream)));
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            logger.warn("error reading class file for {}: {}", type, e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Scan a class file's constant pool for the concurrency annotation descriptors.
+     */
+    private static boolean referencesAnnotation(DataInputStream in) throws IOException {
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("invalid class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+        int count = in.readUnsignedShort();
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+            case 1: // UTF-8
+                String str = in.readUTF();
+                if (str.equals(THREAD_SAFE) || str.equals(IMMUTABLE)) {
+                    return true;
+                }
+                break;
+            case 3: // integer
+            case 4: // float
+            case 9: // field ref
+            case 10: // method ref
+            case 11: // interface method ref
+            case 12: // name and type
+            case 17: // dynamic
+            case 18: // invoke dynamic
+                in.readInt();
+                break;
+            case 5: // long
+            case 6: // double
+                in.readLong();
+                i += 1; // 8-byte constants take two slots
+                break;
+            case 7: // class
+            case 8: // string
+            case 16: // method type
+            case 19: // module
+            case 20: // package
+                in.readUnsignedShort();
+                break;
+            case 15: // method handle
+                in.readUnsignedByte();
+                in.readUnsignedShort();
+                break;
+            default:
+                throw new IOException("unknown constant pool tag " + tag);
+            }
+        }
+        return false;
+    }
+}
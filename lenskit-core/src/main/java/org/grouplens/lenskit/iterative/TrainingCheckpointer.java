@@ -0,0 +1,275 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.iterative;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closer;
+import com.google.common.io.Files;
+import org.grouplens.lenskit.data.pref.IndexedPreference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.io.*;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Save and restore the state of long-running iterative training.  Model builders that train
+ * iteratively use a checkpointer to periodically save their progress to the {@linkplain
+ * CheckpointDirectory checkpoint directory}; when the builder is run again after an
+ * interruption, it restores the latest checkpoint and continues from there.
+ *
+ * <p>Each checkpoint is stored under a name chosen by the builder and a fingerprint of the
+ * training data and parameters; both are part of the checkpoint's file name, so builds of
+ * different data or hyperparameters sharing a directory do not overwrite each other's
+ * checkpoints.  A checkpoint is only restored if its fingerprint matches, so changing the data or
+ * the hyperparameters starts training afresh.  Builders should {@linkplain #clear(String, HashCode)
+ * clear} their checkpoint once training completes.</p>
+ *
+ * <p>If no checkpoint directory is configured, the checkpointer is disabled: nothing is saved and
+ * nothing is restored.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class TrainingCheckpointer {
+    private static final Logger logger = LoggerFactory.getLogger(TrainingCheckpointer.class);
+    private static final String SUFFIX = ".ckpt";
+
+    @Nullable
+    private final File directory;
+    private final long interval;
+    private volatile long lastSave;
+
+    /**
+     * Construct a new checkpointer.
+     *
+     * @param dir     The directory for checkpoints, or {@code null} to disable checkpointing.
+     * @param seconds The minimum number of seconds between checkpoints.
+     */
+    @Inject
+    public TrainingCheckpointer(@Nullable @CheckpointDirectory File dir,
+                                @CheckpointInterval int seconds) {
+        Preconditions.checkArgument(seconds >= 0, "checkpoint interval cannot be negative");
+        directory = dir;
+        interval = TimeUnit.SECONDS.toNanos(seconds);
+        lastSave = System.nanoTime();
+    }
+
+    /**
+     * Get a checkpointer that does not save or restore anything.
+     * @return A disabled checkpointer.
+     */
+    public static TrainingCheckpointer disabled() {
+        return new TrainingCheckpointer(null, 0);
+    }
+
+    /**
+     * Query whether this checkpointer saves checkpoints.
+     * @return {@code true} if a checkpoint directory is configured.
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Query whether a checkpoint is due, because the checkpoint interval has elapsed since the
+     * last save (or since the checkpointer was created).
+     *
+     * @return {@code true} if the builder should save a checkpoint.
+     */
+    public boolean isDue() {
+        return directory != null && System.nanoTime() - lastSave >= interval;
+    }
+
+    /**
+     * Restore a checkpoint.
+     *
+     * @param name        The checkpoint name.
+     * @param fingerprint The fingerprint of the current training data and parameters.
+     * @param type        The type of the checkpoint state.
+     * @param <T>         The type of the checkpoint state.
+     * @return The saved state, or {@code null} if checkpointing is disabled or there is no usable
+     *         checkpoint with the specified name and fingerprint.
+     */
+    @Nullable
+    public <T extends Serializable> T restore(String name, HashCode fingerprint, Class<T> type) {
+        if (directory == null) {
+            return null;
+        }
+        File file = getFile(name, fingerprint);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            Closer closer = Closer.create();
+            try {
+                ObjectInputStream in = closer.register(new ObjectInputStream(
+                        new BufferedInputStream(closer.register(new FileInputStream(file)))));
+                String fp = in.readUTF();
+                if (!fp.equals(fingerprint.toString())) {
+                    logger.info("checkpoint {} is for different data or parameters, ignoring", file);
+                    return null;
+                }
+                Object state = in.readObject();
+                if (!type.isInstance(state)) {
+                    logger.warn("checkpoint {} has unexpected type {}, ignoring",
+                                file, state == null ? null : state.getClass().getName());
+                    return null;
+                }
+                logger.info("restored training checkpoint from {}", file);
+                return type.cast(state);
+            } catch (Throwable th) { // NOSONAR using a closer
+                throw closer.rethrow(th, ClassNotFoundException.class);
+            } finally {
+                closer.close();
+            }
+        } catch (IOException e) {
+            logger.warn("cannot read checkpoint " + file + ", ignoring", e);
+            return null;
+        } catch (ClassNotFoundException e) {
+            logger.warn("cannot read checkpoint " + file + ", ignoring", e);
+            return null;
+        }
+    }
+
+    /**
+     * Save a checkpoint, replacing any previous checkpoint with the same name and fingerprint.
+     * The checkpoint is written to a uniquely-named temporary file and then moved into place, so an
+     * interrupted save leaves the previous checkpoint intact and concurrent saves do not write to
+     * the same file.  If checkpointing is disabled, this method does nothing.
+     *
+     * @param name        The checkpoint name.
+     * @param fingerprint The fingerprint of the training data and parameters.
+     * @param state       The training state to save.
+     * @throws IOException if there is an error writing the checkpoint.
+     */
+    public void save(String name, HashCode fingerprint, Serializable state) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create checkpoint directory " + directory);
+        }
+        File file = getFile(name, fingerprint);
+        File tmp = File.createTempFile(name + "-", SUFFIX + ".tmp", directory);
+        boolean moved = false;
+        try {
+            Closer closer = Closer.create();
+            try {
+                ObjectOutputStream out = closer.register(new ObjectOutputStream(
+                        new BufferedOutputStream(closer.register(new FileOutputStream(tmp)))));
+                out.writeUTF(fingerprint.toString());
+                out.writeObject(state);
+            } catch (Throwable th) { // NOSONAR using a closer
+                throw closer.rethrow(th);
+            } finally {
+                closer.close();
+            }
+            Files.move(tmp, file);
+            moved = true;
+        } finally {
+            if (!moved && tmp.exists() && !tmp.delete()) {
+                logger.warn("cannot delete temporary checkpoint {}", tmp);
+            }
+        }
+        lastSave = System.nanoTime();
+        logger.debug("saved training checkpoint to {}", file);
+    }
+
+    /**
+     * Delete a checkpoint.  Builders call this once training has finished.
+     * @param name        The checkpoint name.
+     * @param fingerprint The fingerprint the checkpoint was saved with.
+     */
+    public void clear(String name, HashCode fingerprint) {
+        if (directory == null) {
+            return;
+        }
+        File file = getFile(name, fingerprint);
+        if (file.exists() && !file.delete()) {
+            logger.warn("cannot delete checkpoint {}", file);
+        }
+    }
+
+    private File getFile(String name, HashCode fingerprint) {
+        return new File(directory, name + "-" + fingerprint + SUFFIX);
+    }
+
+    /**
+     * Compute a fingerprint of a collection of ratings, for use in a checkpoint fingerprint.  The
+     * fingerprint does not depend on the order of the ratings, so it is stable across snapshots
+     * that shuffle them, but it does depend on the user and item indexes, since checkpointed
+     * training state is usually stored by index.
+     *
+     * @param ratings The ratings.
+     * @return A hash of the user, item, indexes, and value of each rating.
+     */
+    public static HashCode hashRatings(Collection<IndexedPreference> ratings) {
+        HashFunction ratingHash = Hashing.murmur3_128();
+        long sum = 0;
+        long xor = 0;
+        for (IndexedPreference r: ratings) {
+            long h = ratingHash.newHasher()
+                               .putLong(r.getUserId())
+                               .putInt(r.getUserIndex())
+                               .putLong(r.getItemId())
+                               .putInt(r.getItemIndex())
+                               .putDouble(r.getValue())
+                               .hash().asLong();
+            // both combinations are commutative, so the order of the ratings does not matter
+            sum += h;
+            xor ^= h;
+        }
+        return Hashing.sha1().newHasher()
+                      .putInt(ratings.size())
+                      .putLong(sum)
+                      .putLong(xor)
+                      .hash();
+    }
+
+    /**
+     * Bring a fresh training loop controller to the state it had after a sequence of
+     * iterations, by replaying their errors.  Controllers decide when to stop based only on the
+     * errors they are given, so replaying the errors recorded in a checkpoint lets training resume
+     * under the same stopping condition.
+     *
+     * @param controller The new controller.
+     * @param initial    The error the training loop passes before the first iteration.
+     * @param errors     The errors of the iterations completed so far.
+     * @return The error to pass to the controller's next {@link TrainingLoopController#keepTraining(double)}
+     *         call: the last error in {@code errors}, or {@code initial} if there are none.
+     */
+    public static double resumeLoop(TrainingLoopController controller, double initial,
+                                    double[] errors) {
+        double err = initial;
+        for (double e: errors) {
+            controller.keepTraining(err);
+            err = e;
+        }
+        return err;
+    }
+}
@@ -45,6 +45,16 @@ public class AbsoluteThreshold implements Threshold, Serializable {
         this.value = threshold;
     }
 
+    /**
+     * Get the threshold value.
+     *
+     * @return The threshold value.
+     * @since 2.2
+     */
+    public double getValue() {
+        return value;
+    }
+
     @Override
     public boolean retain(double sim) {
         return Math.abs(sim) > value;
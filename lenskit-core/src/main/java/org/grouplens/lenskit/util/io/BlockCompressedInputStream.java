@@ -0,0 +1,227 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.io;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.WillCloseWhenClosed;
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream that reads data written by {@link BlockCompressedOutputStream}.  Blocks are read
+ * ahead from the underlying stream and decompressed in parallel.
+ *
+ * @see CompressionMode#BLOCK
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.2
+ */
+public class BlockCompressedInputStream extends InputStream {
+    private final DataInputStream input;
+    private final int threadCount;
+    private ExecutorService executor;
+    private final Deque<Future<byte[]>> pending;
+    private boolean endOfInput;
+    private byte[] block;
+    private int position;
+    private boolean closed;
+
+    /**
+     * Create a block-compressed input stream using one thread per available processor.
+     * @param in The input stream.
+     * @throws IOException if there is an error reading the stream header.
+     */
+    public BlockCompressedInputStream(@WillCloseWhenClosed InputStream in) throws IOException {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a block-compressed input stream.
+     * @param in The input stream.
+     * @param nthreads The number of threads to use for decompression.  Threads are only started
+     *                 once the stream has more than one block to decompress.
+     * @throws IOException if there is an error reading the stream header.
+     */
+    public BlockCompressedInputStream(@WillCloseWhenClosed InputStream in, int nthreads) throws IOException {
+        Preconditions.checkArgument(nthreads > 0, "thread count must be positive");
+        input = new DataInputStream(in);
+        threadCount = nthreads;
+        pending = new ArrayDeque<Future<byte[]>>();
+        int magic = input.readInt();
+        if (magic != BlockCompressedOutputStream.MAGIC) {
+            throw new IOException(String.format("invalid block stream magic %x", magic));
+        }
+        int version = input.readUnsignedByte();
+        if (version != BlockCompressedOutputStream.VERSION) {
+            throw new IOException("unsupported block stream version " + version);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return block == null ? 0 : block.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            input.close();
+        }
+    }
+
+    /**
+     * Make sure the current block has data.
+     * @return {@code true} if there is data, {@code false} at end of stream.
+     */
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("stream is closed");
+        }
+        while (block == null || position >= block.length) {
+            readAhead();
+            if (pending.isEmpty()) {
+                return false;
+            }
+            try {
+                block = pending.removeFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted decompressing block");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else {
+                    throw new IOException("error decompressing block", cause);
+                }
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Read blocks from the underlying stream until enough are pending decompression.
+     */
+    private void readAhead() throws IOException {
+        int limit = threadCount == 1 ? 1 : 2 * threadCount;
+        while (!endOfInput && pending.size() < limit) {
+            int rawLength = input.readInt();
+            if (rawLength == 0) {
+                endOfInput = true;
+                break;
+            }
+            int storedLength = input.readInt();
+            if (rawLength < 0 || storedLength <= 0 || storedLength > rawLength) {
+                throw new IOException("invalid block header");
+            }
+            byte[] data = new byte[storedLength];
+            input.readFully(data);
+            Callable<byte[]> task = new DecompressTask(data, rawLength);
+            if (pending.isEmpty() || threadCount == 1) {
+                // nothing to overlap with, so decompress in this thread
+                FutureTask<byte[]> future = new FutureTask<byte[]>(task);
+                future.run();
+                pending.addLast(future);
+            } else {
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                            .setNameFormat("block-decompressor-%d")
+                            .setDaemon(true)
+                            .build());
+                }
+                pending.addLast(executor.submit(task));
+            }
+        }
+    }
+
+    /**
+     * Task to decompress a block.
+     */
+    private static class DecompressTask implements Callable<byte[]> {
+        private final byte[] data;
+        private final int rawLength;
+
+        DecompressTask(byte[] data, int len) {
+            this.data = data;
+            rawLength = len;
+        }
+
+        @Override
+        public byte[] call() throws IOException {
+            if (data.length == rawLength) {
+                return data;
+            }
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                byte[] out = new byte[rawLength];
+                int n = 0;
+                while (n < rawLength && !inflater.finished()) {
+                    int k = inflater.inflate(out, n, rawLength - n);
+                    if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += k;
+                }
+                if (n != rawLength || !inflater.finished()) {
+                    throw new EOFException("corrupt or truncated compressed block");
+                }
+                return out;
+            } catch (DataFormatException e) {
+                throw new IOException("corrupt compressed block", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
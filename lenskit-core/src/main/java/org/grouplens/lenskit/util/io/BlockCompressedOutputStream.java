@@ -0,0 +1,272 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.io;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.WillCloseWhenClosed;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream that writes a framed, block-compressed stream.  Data is split into fixed-size
+ * blocks, each compressed independently with fast (low-level) deflate; blocks are compressed in
+ * parallel on a small thread pool and written in order.  Read the result with
+ * {@link BlockCompressedInputStream}, which can likewise decompress blocks in parallel.
+ *
+ * <p>The stream starts with the 4-byte {@linkplain #MAGIC magic number} and a version byte.  Each
+ * block is written as its uncompressed length, its stored length, and the stored bytes; a block
+ * whose stored length equals its uncompressed length is stored uncompressed.  A zero-length block
+ * marks the end of the stream.</p>
+ *
+ * @see CompressionMode#BLOCK
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.2
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+    /**
+     * The magic number at the start of a block-compressed stream ({@code LKBZ}).
+     */
+    public static final int MAGIC = 0x4C4B425A;
+    /**
+     * The format version.
+     */
+    static final int VERSION = 1;
+    /**
+     * The default block size (1 MiB).
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private final DataOutputStream output;
+    private final int blockSize;
+    private final int threadCount;
+    private ExecutorService executor;
+    private final Deque<Future<byte[]>> pending;
+    private byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Create a block-compressed stream with the default block size, using one thread per
+     * available processor.
+     * @param out The output stream.
+     */
+    public BlockCompressedOutputStream(@WillCloseWhenClosed OutputStream out) throws IOException {
+        this(out, DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a block-compressed stream.
+     * @param out The output stream.
+     * @param size The block size.
+     * @param nthreads The number of threads to use for compression.  Threads are only started
+     *                 once the stream has more than one block to compress.
+     */
+    public BlockCompressedOutputStream(@WillCloseWhenClosed OutputStream out, int size, int nthreads) throws IOException {
+        Preconditions.checkArgument(size > 0, "block size must be positive");
+        Preconditions.checkArgument(nthreads > 0, "thread count must be positive");
+        output = new DataOutputStream(out);
+        blockSize = size;
+        threadCount = nthreads;
+        pending = new ArrayDeque<Future<byte[]>>();
+        buffer = new byte[size];
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == blockSize) {
+            submitBlock();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == blockSize) {
+                submitBlock();
+            }
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Finish the current block, write all pending blocks, and flush the underlying stream.  Since
+     * this ends the current block, frequent flushing reduces compression efficiency.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        submitBlock();
+        drain(0);
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            submitBlock();
+            drain(0);
+            output.writeInt(0);
+        } finally {
+            closed = true;
+            try {
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Submit the current buffer for compression.
+     */
+    private void submitBlock() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        Callable<byte[]> task = new CompressTask(buffer, count);
+        buffer = new byte[blockSize];
+        count = 0;
+        if (threadCount == 1) {
+            writeBlock(runTask(task));
+        } else {
+            if (executor == null) {
+                executor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                        .setNameFormat("block-compressor-%d")
+                        .setDaemon(true)
+                        .build());
+            }
+            pending.addLast(executor.submit(task));
+            drain(2 * threadCount);
+        }
+    }
+
+    /**
+     * Write out finished blocks until at most {@code limit} blocks are pending.
+     */
+    private void drain(int limit) throws IOException {
+        while (pending.size() > limit) {
+            Future<byte[]> block = pending.removeFirst();
+            try {
+                writeBlock(block.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted compressing block");
+            } catch (ExecutionException e) {
+                throw new IOException("error compressing block", e.getCause());
+            }
+        }
+    }
+
+    private static byte[] runTask(Callable<byte[]> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("error compressing block", e);
+        }
+    }
+
+    /**
+     * Write a compressed block frame.  The frame's first 8 bytes are already the header.
+     */
+    private void writeBlock(byte[] frame) throws IOException {
+        output.write(frame);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream is closed");
+        }
+    }
+
+    /**
+     * Task to compress a block into a complete frame (header and data).
+     */
+    private static class CompressTask implements Callable<byte[]> {
+        private final byte[] data;
+        private final int length;
+
+        CompressTask(byte[] data, int len) {
+            this.data = data;
+            length = len;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                // we only keep the compressed data if it is smaller than the input
+                byte[] out = new byte[length + 8];
+                int stored = 0;
+                while (!deflater.finished() && stored < length) {
+                    stored += deflater.deflate(out, 8 + stored, length - stored);
+                }
+                if (!deflater.finished() || stored >= length) {
+                    System.arraycopy(data, 0, out, 8, length);
+                    stored = length;
+                }
+                writeInt(out, 0, length);
+                writeInt(out, 4, stored);
+                if (stored == length) {
+                    return out;
+                } else {
+                    byte[] frame = new byte[stored + 8];
+                    System.arraycopy(out, 0, frame, 0, stored + 8);
+                    return frame;
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private static void writeInt(byte[] buf, int pos, int v) {
+            buf[pos] = (byte) (v >>> 24);
+            buf[pos + 1] = (byte) (v >>> 16);
+            buf[pos + 2] = (byte) (v >>> 8);
+            buf[pos + 3] = (byte) v;
+        }
+    }
+}
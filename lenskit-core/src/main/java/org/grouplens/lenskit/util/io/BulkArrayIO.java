@@ -0,0 +1,171 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Utilities for writing primitive arrays in bulk.  Components with large numeric arrays can use
+ * these methods from their {@code writeObject} and {@code readObject} methods in place of
+ * per-element {@link DataOutput#writeDouble(double)} calls.  The encoding is identical
+ * (big-endian), so data written element-by-element can be read in bulk and vice versa; the bulk
+ * methods simply move data through the stream in large byte chunks.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.2
+ */
+public final class BulkArrayIO {
+    /**
+     * The size of the transfer buffer, in bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BulkArrayIO() {}
+
+    /**
+     * Write an array of doubles.
+     * @param out The output.
+     * @param data The array.
+     * @param off The offset of the first element to write.
+     * @param len The number of elements to write.
+     * @throws IOException if there is an error writing the data.
+     */
+    public static void writeDoubles(DataOutput out, double[] data, int off, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min((long) len * 8, BUFFER_SIZE));
+        int perChunk = buf.capacity() / 8;
+        while (len > 0) {
+            int n = Math.min(len, perChunk);
+            buf.clear();
+            buf.asDoubleBuffer().put(data, off, n);
+            out.write(buf.array(), 0, n * 8);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Read an array of doubles.
+     * @param in The input.
+     * @param data The array to fill.
+     * @param off The offset of the first element to read.
+     * @param len The number of elements to read.
+     * @throws IOException if there is an error reading the data.
+     */
+    public static void readDoubles(DataInput in, double[] data, int off, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min((long) len * 8, BUFFER_SIZE));
+        int perChunk = buf.capacity() / 8;
+        while (len > 0) {
+            int n = Math.min(len, perChunk);
+            in.readFully(buf.array(), 0, n * 8);
+            buf.clear();
+            buf.asDoubleBuffer().get(data, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Write an array of longs.
+     * @param out The output.
+     * @param data The array.
+     * @param off The offset of the first element to write.
+     * @param len The number of elements to write.
+     * @throws IOException if there is an error writing the data.
+     */
+    public static void writeLongs(DataOutput out, long[] data, int off, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min((long) len * 8, BUFFER_SIZE));
+        int perChunk = buf.capacity() / 8;
+        while (len > 0) {
+            int n = Math.min(len, perChunk);
+            buf.clear();
+            buf.asLongBuffer().put(data, off, n);
+            out.write(buf.array(), 0, n * 8);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Read an array of longs.
+     * @param in The input.
+     * @param data The array to fill.
+     * @param off The offset of the first element to read.
+     * @param len The number of elements to read.
+     * @throws IOException if there is an error reading the data.
+     */
+    public static void readLongs(DataInput in, long[] data, int off, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min((long) len * 8, BUFFER_SIZE));
+        int perChunk = buf.capacity() / 8;
+        while (len > 0) {
+            int n = Math.min(len, perChunk);
+            in.readFully(buf.array(), 0, n * 8);
+            buf.clear();
+            buf.asLongBuffer().get(data, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Write an array of ints.
+     * @param out The output.
+     * @param data The array.
+     * @param off The offset of the first element to write.
+     * @param len The number of elements to write.
+     * @throws IOException if there is an error writing the data.
+     */
+    public static void writeInts(DataOutput out, int[] data, int off, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min((long) len * 4, BUFFER_SIZE));
+        int perChunk = buf.capacity() / 4;
+        while (len > 0) {
+            int n = Math.min(len, perChunk);
+            buf.clear();
+            buf.asIntBuffer().put(data, off, n);
+            out.write(buf.array(), 0, n * 4);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Read an array of ints.
+     * @param in The input.
+     * @param data The array to fill.
+     * @param off The offset of the first element to read.
+     * @param len The number of elements to read.
+     * @throws IOException if there is an error reading the data.
+     */
+    public static void readInts(DataInput in, int[] data, int off, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min((long) len * 4, BUFFER_SIZE));
+        int perChunk = buf.capacity() / 4;
+        while (len > 0) {
+            int n = Math.min(len, perChunk);
+            in.readFully(buf.array(), 0, n * 4);
+            buf.clear();
+            buf.asIntBuffer().get(data, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.io;
+
+import javax.annotation.WillNotClose;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that reads data written by {@link ChunkedOutputStream}.  It reports end-of-stream
+ * when it reaches the terminating chunk, leaving the underlying stream positioned immediately
+ * after it.
+ *
+ * <p>Closing this stream skips any unread chunks but does <strong>not</strong> close the
+ * underlying stream.</p>
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.2
+ */
+public class ChunkedInputStream extends FilterInputStream {
+    private final DataInputStream input;
+    /**
+     * The number of bytes remaining in the current chunk, or -1 once the terminator is reached.
+     */
+    private int remaining;
+
+    /**
+     * Create a new chunked input stream.
+     * @param in The stream to read from.
+     */
+    public ChunkedInputStream(@WillNotClose InputStream in) {
+        super(in);
+        input = new DataInputStream(in);
+    }
+
+    /**
+     * Make sure there is data available in the current chunk.
+     * @return {@code true} if data is available, {@code false} at end of stream.
+     */
+    private boolean fill() throws IOException {
+        while (remaining == 0) {
+            int n = input.readInt();
+            if (n < 0) {
+                throw new IOException("invalid chunk length " + n);
+            } else if (n == 0) {
+                remaining = -1;
+            } else {
+                remaining = n;
+            }
+        }
+        return remaining > 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        int b = input.read();
+        if (b < 0) {
+            throw new EOFException("unexpected end of chunk");
+        }
+        remaining -= 1;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = input.read(b, off, Math.min(len, remaining));
+        if (n < 0) {
+            throw new EOFException("unexpected end of chunk");
+        }
+        remaining -= n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || !fill()) {
+            return 0;
+        }
+        int toSkip = (int) Math.min(n, remaining);
+        input.readFully(new byte[toSkip]);
+        remaining -= toSkip;
+        return toSkip;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return remaining > 0 ? Math.min(remaining, input.available()) : 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        /* mark is not supported */
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    /**
+     * Skip the remaining chunks.  The underlying stream is not closed.
+     * @throws IOException if there is an error reading the chunks.
+     */
+    @Override
+    public void close() throws IOException {
+        while (fill()) {
+            input.readFully(new byte[remaining]);
+            remaining = 0;
+        }
+    }
+}
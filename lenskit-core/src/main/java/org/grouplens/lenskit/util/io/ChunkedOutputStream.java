@@ -0,0 +1,137 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.io;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.WillNotClose;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that writes its data as a sequence of length-prefixed chunks, terminated by an
+ * empty chunk.  This allows a stream of unknown length (such as compressed or serialized data) to
+ * be embedded in a larger stream and later read back with {@link ChunkedInputStream} without
+ * over-reading.  Each chunk is written as a 4-byte big-endian length followed by the data.
+ *
+ * <p>Closing this stream writes the terminating chunk but does <strong>not</strong> close the
+ * underlying stream.</p>
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @since 2.2
+ */
+public class ChunkedOutputStream extends FilterOutputStream {
+    /**
+     * The default chunk size (64 KiB).
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final DataOutputStream output;
+    private final byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Create a chunked output stream with the default chunk size.
+     * @param out The stream to write to.
+     */
+    public ChunkedOutputStream(@WillNotClose OutputStream out) {
+        this(out, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a chunked output stream.
+     * @param out The stream to write to.
+     * @param size The maximum size of a chunk.
+     */
+    public ChunkedOutputStream(@WillNotClose OutputStream out, int size) {
+        super(out);
+        Preconditions.checkArgument(size > 0, "chunk size must be positive");
+        output = new DataOutputStream(out);
+        buffer = new byte[size];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            writeChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Write out the pending chunk, if any, and flush the underlying stream.
+     * @throws IOException if there is an error writing the chunk.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeChunk();
+        output.flush();
+    }
+
+    /**
+     * Write the pending chunk and the terminating chunk.  The underlying stream is flushed, but
+     * not closed.
+     * @throws IOException if there is an error writing the chunks.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            writeChunk();
+            output.writeInt(0);
+            output.flush();
+            closed = true;
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if (count > 0) {
+            output.writeInt(count);
+            output.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("chunked stream is closed");
+        }
+    }
+}
@@ -52,6 +52,27 @@ public enum CompressionMode {
      */
     XZ(CompressorStreamFactory.XZ),
 
+    /**
+     * Framed block compression, with blocks compressed and decompressed in parallel.  This is
+     * much faster than {@link #GZIP} for large outputs such as recommender models, at some cost in
+     * compression ratio.  Files with the extension {@code .lkz} are detected as using this mode.
+     *
+     * @see BlockCompressedOutputStream
+     * @see BlockCompressedInputStream
+     * @since 2.2
+     */
+    BLOCK {
+        @Override
+        public OutputStream wrapOutput(OutputStream out) throws IOException {
+            return new BlockCompressedOutputStream(out);
+        }
+
+        @Override
+        public InputStream wrapInput(InputStream in) throws IOException {
+            return new BlockCompressedInputStream(in);
+        }
+    },
+
     /**
      * Automatically infer compression from file extension.
      */
@@ -62,6 +83,8 @@ public enum CompressionMode {
                 return GZIP;
             } else if (XZUtils.isCompressedFilename(filename)) {
                 return XZ;
+            } else if (filename.endsWith(BLOCK_SUFFIX)) {
+                return BLOCK;
             } else {
                 return NONE;
             }
@@ -78,6 +101,8 @@ public enum CompressionMode {
         }
     };
 
+    private static final String BLOCK_SUFFIX = ".lkz";
+
     private String compName;
 
     private CompressionMode() {
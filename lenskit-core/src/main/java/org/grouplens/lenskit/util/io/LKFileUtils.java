@@ -159,7 +159,7 @@ public final class LKFileUtils {
 
     /**
      * Auto-detect whether a stream needs decompression.  Currently detects GZIP compression (using
-     * the GZIP magic in the header).
+     * the GZIP magic in the header) and {@linkplain CompressionMode#BLOCK block compression}.
      *
      * @param stream The stream to read.
      * @return A stream that will read from {@code stream}, decompressing if needed.  It may not be
@@ -176,22 +176,24 @@ public final class LKFileUtils {
             buffered = new BufferedInputStream(stream);
         }
 
-        // read the first 2 bytes for GZIP magic
-        buffered.mark(2);
-        int b1 = buffered.read();
-        if (b1 < 0) {
-            buffered.reset();
-            return buffered;
+        // read the first 4 bytes for GZIP and block magic
+        buffered.mark(4);
+        int[] bytes = new int[4];
+        int n = 0;
+        while (n < 4) {
+            int b = buffered.read();
+            if (b < 0) {
+                break;
+            }
+            bytes[n++] = b;
         }
-        int b2 = buffered.read();
-        if (b2 < 0) {
-            buffered.reset();
+        buffered.reset();
+        if (n < 2) {
             return buffered;
         }
-        buffered.reset();
 
         // they're in little-endian order
-        int magic = b1 | (b2 << 8);
+        int magic = bytes[0] | (bytes[1] << 8);
 
         logger.debug(String.format("found magic %x", magic));
         if (magic == GZIPInputStream.GZIP_MAGIC) {
@@ -199,6 +201,15 @@ public final class LKFileUtils {
             return new GZIPInputStream(buffered);
         }
 
+        if (n == 4) {
+            // block magic is big-endian
+            int blockMagic = (bytes[0] << 24) | (bytes[1] << 16) | (bytes[2] << 8) | bytes[3];
+            if (blockMagic == BlockCompressedOutputStream.MAGIC) {
+                logger.debug("stream is block-compressed, decompressing");
+                return new BlockCompressedInputStream(buffered);
+            }
+        }
+
         return buffered;
     }
 
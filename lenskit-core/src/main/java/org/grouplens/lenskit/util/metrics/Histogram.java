@@ -0,0 +1,67 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+/**
+ * A histogram, tracking the distribution of a non-negative value such as a result size.
+ * Implementations may approximate the distribution to keep updates cheap.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public interface Histogram {
+    /**
+     * Record a value.
+     * @param value The value to record.
+     */
+    void update(long value);
+
+    /**
+     * Get the number of values recorded.
+     * @return The number of values.
+     */
+    long getCount();
+
+    /**
+     * Get the smallest value recorded.
+     * @return The minimum value, or 0 if no values have been recorded.
+     */
+    long getMin();
+
+    /**
+     * Get the largest value recorded.
+     * @return The maximum value, or 0 if no values have been recorded.
+     */
+    long getMax();
+
+    /**
+     * Get the mean of the recorded values.
+     * @return The mean value, or 0 if no values have been recorded.
+     */
+    double getMean();
+
+    /**
+     * Estimate a percentile of the recorded values.
+     * @param p The percentile, in the range [0,1].
+     * @return The estimated value at percentile {@code p}.
+     */
+    long getPercentile(double p);
+}
@@ -0,0 +1,225 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publish the metrics in a {@link SimpleMetricRegistry} over JMX.  The registry is exposed as a
+ * single MBean named {@code org.grouplens.lenskit:type=Metrics,name=<name>}, with read-only
+ * attributes for each metric: a counter {@code c} appears as {@code c}; a histogram {@code h} as
+ * {@code h.count}, {@code h.mean}, {@code h.min}, {@code h.max}, {@code h.p50} and {@code h.p99};
+ * and a timer {@code t} has the same attributes in milliseconds.  The attributes are computed
+ * when they are read, so metrics registered after the exporter are published too.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class JmxMetricsExporter implements DynamicMBean {
+    private static final double NANOS_PER_MILLI = 1.0e6;
+
+    private final SimpleMetricRegistry registry;
+    private final ObjectName objectName;
+    private MBeanServer server;
+
+    /**
+     * Create a new exporter.
+     * @param reg The registry to export.
+     * @param name The name under which to export it.
+     */
+    public JmxMetricsExporter(SimpleMetricRegistry reg, String name) {
+        registry = reg;
+        try {
+            objectName = new ObjectName("org.grouplens.lenskit", makeNameTable(name));
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("invalid metrics name " + name, e);
+        }
+    }
+
+    private static Hashtable<String, String> makeNameTable(String name) {
+        Hashtable<String, String> table = new Hashtable<String, String>();
+        table.put("type", "Metrics");
+        table.put("name", ObjectName.quote(name));
+        return table;
+    }
+
+    /**
+     * Get the object name under which the registry is exported.
+     * @return The MBean object name.
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Register the exporter with the platform MBean server.
+     * @throws JMException if the MBean cannot be registered.
+     */
+    public void register() throws JMException {
+        register(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * Register the exporter with an MBean server.
+     * @param srv The MBean server.
+     * @throws JMException if the MBean cannot be registered.
+     */
+    public synchronized void register(MBeanServer srv) throws JMException {
+        Preconditions.checkState(server == null, "exporter already registered");
+        srv.registerMBean(this, objectName);
+        server = srv;
+    }
+
+    /**
+     * Unregister the exporter, if it is registered.
+     * @throws JMException if the MBean cannot be unregistered.
+     */
+    public synchronized void unregister() throws JMException {
+        if (server != null) {
+            server.unregisterMBean(objectName);
+            server = null;
+        }
+    }
+
+    /**
+     * Compute the current attributes.
+     */
+    private Map<String, Supplier<?>> attributes() {
+        Map<String, Supplier<?>> attrs = new LinkedHashMap<String, Supplier<?>>();
+        for (Map.Entry<String, Object> e: registry.getMetrics().entrySet()) {
+            String name = e.getKey();
+            Object metric = e.getValue();
+            if (metric instanceof Counter) {
+                final Counter c = (Counter) metric;
+                attrs.put(name, new Supplier<Long>() {
+                    @Override
+                    public Long get() {
+                        return c.getCount();
+                    }
+                });
+            } else if (metric instanceof Timer) {
+                addHistogram(attrs, name, ((Timer) metric).getDurations(), NANOS_PER_MILLI);
+            } else if (metric instanceof Histogram) {
+                addHistogram(attrs, name, (Histogram) metric, 1);
+            }
+        }
+        return attrs;
+    }
+
+    private static void addHistogram(Map<String, Supplier<?>> attrs, String name,
+                                     final Histogram h, final double scale) {
+        attrs.put(name + ".count", new Supplier<Long>() {
+            @Override
+            public Long get() {
+                return h.getCount();
+            }
+        });
+        attrs.put(name + ".mean", new Supplier<Double>() {
+            @Override
+            public Double get() {
+                return h.getMean() / scale;
+            }
+        });
+        attrs.put(name + ".min", new Supplier<Double>() {
+            @Override
+            public Double get() {
+                return h.getMin() / scale;
+            }
+        });
+        attrs.put(name + ".max", new Supplier<Double>() {
+            @Override
+            public Double get() {
+                return h.getMax() / scale;
+            }
+        });
+        attrs.put(name + ".p50", new Supplier<Double>() {
+            @Override
+            public Double get() {
+                return h.getPercentile(0.5) / scale;
+            }
+        });
+        attrs.put(name + ".p99", new Supplier<Double>() {
+            @Override
+            public Double get() {
+                return h.getPercentile(0.99) / scale;
+            }
+        });
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Supplier<?> sup = attributes().get(attribute);
+        if (sup == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return sup.get();
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        Map<String, Supplier<?>> attrs = attributes();
+        AttributeList list = new AttributeList();
+        for (String name: names) {
+            Supplier<?> sup = attrs.get(name);
+            if (sup != null) {
+                list.add(new Attribute(name, sup.get()));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("metric attributes are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+        throw new MBeanException(new UnsupportedOperationException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> infos = new ArrayList<MBeanAttributeInfo>();
+        for (Map.Entry<String, Supplier<?>> e: attributes().entrySet()) {
+            Object value = e.getValue().get();
+            infos.add(new MBeanAttributeInfo(e.getKey(), value.getClass().getName(),
+                                             e.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "LensKit metrics (times in ms)",
+                             infos.toArray(new MBeanAttributeInfo[infos.size()]),
+                             null, null, null);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram that counts values in power-of-two buckets.  Bucket 0 holds 0, and bucket
+ * <var>i</var> holds values in [2<sup><var>i</var>-1</sup>, 2<sup><var>i</var></sup>).  Percentile
+ * estimates are therefore accurate to within a factor of 2, which is plenty for latencies and
+ * sizes, and updating the histogram is a few atomic operations.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+class LogHistogram implements Histogram {
+    private static final int BUCKETS = 65;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    static int bucket(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    @Override
+    public void update(long value) {
+        Preconditions.checkArgument(value >= 0, "negative histogram value");
+        buckets.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long cur = min.get();
+        while (value < cur && !min.compareAndSet(cur, value)) {
+            cur = min.get();
+        }
+        cur = max.get();
+        while (value > cur && !max.compareAndSet(cur, value)) {
+            cur = max.get();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public long getMin() {
+        long v = min.get();
+        return v == Long.MAX_VALUE ? 0 : v;
+    }
+
+    @Override
+    public long getMax() {
+        long v = max.get();
+        return v == Long.MIN_VALUE ? 0 : v;
+    }
+
+    @Override
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    @Override
+    public long getPercentile(double p) {
+        Preconditions.checkArgument(p >= 0 && p <= 1, "percentile out of range");
+        long n = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * n));
+        long seen = 0;
+        int i = 0;
+        while (i < BUCKETS - 1) {
+            seen += counts[i];
+            if (seen >= rank) {
+                break;
+            }
+            i++;
+        }
+        // report the top of the bucket, bounded by the values actually seen
+        long top = i == 0 ? 0 : (i >= 64 ? Long.MAX_VALUE : (1L << i) - 1);
+        return Math.max(getMin(), Math.min(top, getMax()));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Histogram(n=%d, mean=%.3f, max=%d)", getCount(), getMean(), getMax());
+    }
+}
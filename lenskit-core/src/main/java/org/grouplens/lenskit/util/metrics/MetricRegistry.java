@@ -0,0 +1,65 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import org.grouplens.grapht.annotation.DefaultImplementation;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A source of named metrics.  Components that are instrumented depend on a metric registry and
+ * look up their metrics when they are constructed.  Asking for the same name twice returns the
+ * same metric.  Metric names are conventionally built with {@link Metrics#name(Class, String...)}.
+ *
+ * <p>Registries are used from many threads, and the metrics they return must be thread-safe.  When
+ * building a recommender engine, the registry is usually not part of the model; bind it in a
+ * configuration with {@link org.grouplens.lenskit.core.ModelDisposition#EXCLUDED} and add it when
+ * loading the engine, as is done for DAOs.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@DefaultImplementation(NoopMetricRegistry.class)
+public interface MetricRegistry {
+    /**
+     * Get a counter.
+     * @param name The counter name.
+     * @return The counter with the specified name.
+     */
+    @Nonnull
+    Counter counter(String name);
+
+    /**
+     * Get a timer.
+     * @param name The timer name.
+     * @return The timer with the specified name.
+     */
+    @Nonnull
+    Timer timer(String name);
+
+    /**
+     * Get a histogram.
+     * @param name The histogram name.
+     * @return The histogram with the specified name.
+     */
+    @Nonnull
+    Histogram histogram(String name);
+}
@@ -0,0 +1,84 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer that measures operations with {@link System#nanoTime()} and records their durations in
+ * a {@link LogHistogram}.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+class NanoTimer implements Timer {
+    private final LogHistogram durations = new LogHistogram();
+    private final AtomicCounter total = new AtomicCounter();
+
+    @Override
+    public Context start() {
+        return new TimerContext(System.nanoTime());
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        long nanos = unit.toNanos(duration);
+        durations.update(nanos);
+        total.add(nanos);
+    }
+
+    @Override
+    public long getCount() {
+        return durations.getCount();
+    }
+
+    @Override
+    public long getTotalTime(TimeUnit unit) {
+        return unit.convert(total.getCount(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Histogram getDurations() {
+        return durations;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Timer(n=%d, total=%.3fs)", getCount(), total.getCount() * 1.0e-9);
+    }
+
+    private class TimerContext implements Context {
+        private final long startTime;
+
+        TimerContext(long start) {
+            startTime = start;
+        }
+
+        @Override
+        public long stop() {
+            long elapsed = System.nanoTime() - startTime;
+            update(elapsed, TimeUnit.NANOSECONDS);
+            return elapsed;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import org.grouplens.lenskit.core.Shareable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import javax.inject.Inject;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A metric registry that discards all measurements.  This is the default registry; its metrics do
+ * nothing, and its timers do not read the clock, so instrumented components cost very little when
+ * metrics are not wanted.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Shareable
+@Immutable
+public final class NoopMetricRegistry implements MetricRegistry, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Inject
+    public NoopMetricRegistry() {}
+
+    @Nonnull
+    @Override
+    public Counter counter(String name) {
+        return NoopCounter.INSTANCE;
+    }
+
+    @Nonnull
+    @Override
+    public Timer timer(String name) {
+        return NoopTimer.INSTANCE;
+    }
+
+    @Nonnull
+    @Override
+    public Histogram histogram(String name) {
+        return NoopHistogram.INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "NoopMetricRegistry";
+    }
+
+    private static enum NoopCounter implements Counter {
+        INSTANCE;
+
+        @Override
+        public void increment() {}
+
+        @Override
+        public void add(long n) {}
+
+        @Override
+        public long getCount() {
+            return 0;
+        }
+    }
+
+    private static enum NoopHistogram implements Histogram {
+        INSTANCE;
+
+        @Override
+        public void update(long value) {}
+
+        @Override
+        public long getCount() {
+            return 0;
+        }
+
+        @Override
+        public long getMin() {
+            return 0;
+        }
+
+        @Override
+        public long getMax() {
+            return 0;
+        }
+
+        @Override
+        public double getMean() {
+            return 0;
+        }
+
+        @Override
+        public long getPercentile(double p) {
+            return 0;
+        }
+    }
+
+    private static enum NoopTimer implements Timer, Timer.Context {
+        INSTANCE;
+
+        @Override
+        public Context start() {
+            return this;
+        }
+
+        @Override
+        public long stop() {
+            return 0;
+        }
+
+        @Override
+        public void update(long duration, TimeUnit unit) {}
+
+        @Override
+        public long getCount() {
+            return 0;
+        }
+
+        @Override
+        public long getTotalTime(TimeUnit unit) {
+            return 0;
+        }
+
+        @Override
+        public Histogram getDurations() {
+            return NoopHistogram.INSTANCE;
+        }
+    }
+}
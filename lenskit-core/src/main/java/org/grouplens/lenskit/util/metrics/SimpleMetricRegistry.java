@@ -0,0 +1,177 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A metric registry that keeps its metrics in memory.  Counters and timers are backed by atomic
+ * variables, and histograms by power-of-two buckets, so updates never block.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public class SimpleMetricRegistry implements MetricRegistry {
+    private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<String, Object>();
+
+    @Inject
+    public SimpleMetricRegistry() {}
+
+    /**
+     * {@inheritDoc}
+     * @throws IllegalArgumentException if the name is already used by a metric of another type.
+     */
+    @Nonnull
+    @Override
+    public Counter counter(String name) {
+        Object m = metrics.get(name);
+        if (m == null) {
+            Counter nc = new AtomicCounter();
+            m = metrics.putIfAbsent(name, nc);
+            if (m == null) {
+                return nc;
+            }
+        }
+        return checkType(name, m, Counter.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws IllegalArgumentException if the name is already used by a metric of another type.
+     */
+    @Nonnull
+    @Override
+    public Timer timer(String name) {
+        Object m = metrics.get(name);
+        if (m == null) {
+            Timer nt = new NanoTimer();
+            m = metrics.putIfAbsent(name, nt);
+            if (m == null) {
+                return nt;
+            }
+        }
+        return checkType(name, m, Timer.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws IllegalArgumentException if the name is already used by a metric of another type.
+     */
+    @Nonnull
+    @Override
+    public Histogram histogram(String name) {
+        Object m = metrics.get(name);
+        if (m == null) {
+            Histogram nh = new LogHistogram();
+            m = metrics.putIfAbsent(name, nh);
+            if (m == null) {
+                return nh;
+            }
+        }
+        return checkType(name, m, Histogram.class);
+    }
+
+    private static <M> M checkType(String name, Object metric, Class<M> type) {
+        if (type.isInstance(metric)) {
+            return type.cast(metric);
+        } else {
+            throw new IllegalArgumentException(String.format("metric %s is a %s, not a %s", name,
+                                                             describe(metric), type.getSimpleName()));
+        }
+    }
+
+    private static String describe(Object metric) {
+        if (metric instanceof Counter) {
+            return "Counter";
+        } else if (metric instanceof Timer) {
+            return "Timer";
+        } else {
+            return "Histogram";
+        }
+    }
+
+    /**
+     * Get the counters in this registry.
+     * @return A snapshot of the registered counters, sorted by name.
+     */
+    public SortedMap<String, Counter> getCounters() {
+        return select(Counter.class);
+    }
+
+    /**
+     * Get the timers in this registry.
+     * @return A snapshot of the registered timers, sorted by name.
+     */
+    public SortedMap<String, Timer> getTimers() {
+        return select(Timer.class);
+    }
+
+    /**
+     * Get the histograms in this registry.
+     * @return A snapshot of the registered histograms, sorted by name.
+     */
+    public SortedMap<String, Histogram> getHistograms() {
+        return select(Histogram.class);
+    }
+
+    private <M> SortedMap<String, M> select(Class<M> type) {
+        ImmutableSortedMap.Builder<String, M> bld = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, Object> e: metrics.entrySet()) {
+            if (type.isInstance(e.getValue())) {
+                bld.put(e.getKey(), type.cast(e.getValue()));
+            }
+        }
+        return bld.build();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SimpleMetricRegistry(");
+        sb.append(getCounters().size()).append(" counters, ")
+          .append(getTimers().size()).append(" timers, ")
+          .append(getHistograms().size()).append(" histograms)");
+        return sb.toString();
+    }
+
+    /**
+     * Look up a metric by name, regardless of its type.
+     * @return The metric, or {@code null} if there is no such metric.
+     */
+    Object lookup(String name) {
+        return metrics.get(name);
+    }
+
+    /**
+     * Get all metrics, by name.  Each name is used by at most one metric.
+     */
+    Map<String, Object> getMetrics() {
+        return ImmutableSortedMap.copyOf(metrics);
+    }
+}
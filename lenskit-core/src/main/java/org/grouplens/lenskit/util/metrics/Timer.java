@@ -0,0 +1,82 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timer, tracking how long an operation takes.  Typical use:
+ *
+ * <pre>{@code
+ * Timer.Context ctx = timer.start();
+ * try {
+ *     // do the work
+ * } finally {
+ *     ctx.stop();
+ * }}</pre>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public interface Timer {
+    /**
+     * Start timing an operation.
+     * @return A context to stop when the operation is finished.
+     */
+    Context start();
+
+    /**
+     * Record the duration of an operation.
+     * @param duration The duration.
+     * @param unit The duration's time unit.
+     */
+    void update(long duration, TimeUnit unit);
+
+    /**
+     * Get the number of operations timed.
+     * @return The number of operations.
+     */
+    long getCount();
+
+    /**
+     * Get the total time of all timed operations.
+     * @param unit The time unit.
+     * @return The total time.
+     */
+    long getTotalTime(TimeUnit unit);
+
+    /**
+     * Get the durations of the timed operations, in nanoseconds.
+     * @return The histogram of operation durations.
+     */
+    Histogram getDurations();
+
+    /**
+     * A single timed operation.
+     */
+    interface Context {
+        /**
+         * Stop timing and record the operation's duration.
+         * @return The operation's duration, in nanoseconds.
+         */
+        long stop();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+/**
+ * Lightweight instrumentation of recommender components.
+ *
+ * <p>Components that want to report timings or counts depend on a
+ * {@link org.grouplens.lenskit.util.metrics.MetricRegistry}.  By default this is the
+ * {@link org.grouplens.lenskit.util.metrics.NoopMetricRegistry}, which records nothing; to collect
+ * metrics, bind a {@link org.grouplens.lenskit.util.metrics.SimpleMetricRegistry} (or another
+ * implementation) in the configuration, and optionally publish it over JMX with
+ * {@link org.grouplens.lenskit.util.metrics.JmxMetricsExporter}.</p>
+ */
+package org.grouplens.lenskit.util.metrics;
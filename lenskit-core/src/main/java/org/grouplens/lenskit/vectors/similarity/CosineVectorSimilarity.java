@@ -21,6 +21,7 @@
 package org.grouplens.lenskit.vectors.similarity;
 
 import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.vectors.Intersections;
 import org.grouplens.lenskit.vectors.SparseVector;
 
 import javax.inject.Inject;
@@ -32,7 +33,7 @@ import java.io.Serializable;
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 @Shareable
-public class CosineVectorSimilarity implements VectorSimilarity, Serializable {
+public class CosineVectorSimilarity implements DotProductVectorSimilarity, Serializable {
     private static final long serialVersionUID = 1L;
 
     private final double dampingFactor;
@@ -55,10 +56,34 @@ public class CosineVectorSimilarity implements VectorSimilarity, Serializable {
         dampingFactor = damping;
     }
 
+    /**
+     * Get the damping term added to the denominator.
+     *
+     * @return The damping factor.
+     * @since 2.2
+     */
+    public double getDampingFactor() {
+        return dampingFactor;
+    }
+
     @Override
     public double similarity(SparseVector vec1, SparseVector vec2) {
-        final double dot = vec1.dot(vec2);
-        final double denom = vec1.norm() * vec2.norm() + dampingFactor;
+        return cosine(Intersections.dot(vec1, vec2), vec1.norm(), vec2.norm());
+    }
+
+    @Override
+    public double similarity(SparseVector vec1, VectorStatistics stats1,
+                             SparseVector vec2, VectorStatistics stats2) {
+        return cosine(Intersections.dot(vec1, vec2), stats1.getNorm(), stats2.getNorm());
+    }
+
+    @Override
+    public double similarityFromDotProduct(double dot, VectorStatistics stats1, VectorStatistics stats2) {
+        return cosine(dot, stats1.getNorm(), stats2.getNorm());
+    }
+
+    private double cosine(double dot, double norm1, double norm2) {
+        final double denom = norm1 * norm2 + dampingFactor;
         if (denom == 0) {
             return 0;
         }
@@ -20,10 +20,8 @@
  */
 package org.grouplens.lenskit.vectors.similarity;
 
-import it.unimi.dsi.fastutil.longs.LongSet;
-import org.grouplens.lenskit.collections.LongUtils;
 import org.grouplens.lenskit.core.Shareable;
-import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.Intersections;
 import org.grouplens.lenskit.vectors.SparseVector;
 
 import javax.inject.Inject;
@@ -35,7 +33,7 @@ import java.io.Serializable;
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 @Shareable
-public class DistanceVectorSimilarity implements VectorSimilarity, Serializable {
+public class DistanceVectorSimilarity implements StatisticsVectorSimilarity, Serializable {
     private static final long serialVersionUID = 1L;
 
 
@@ -50,21 +48,24 @@ public class DistanceVectorSimilarity implements VectorSimilarity, Serializable
 
     @Override
     public double similarity(SparseVector vec1, SparseVector vec2) {
+        return distanceSimilarity(vec1, vec1.norm(), vec2, vec2.norm());
+    }
+
+    @Override
+    public double similarity(SparseVector vec1, VectorStatistics stats1,
+                             SparseVector vec2, VectorStatistics stats2) {
+        return distanceSimilarity(vec1, stats1.getNorm(), vec2, stats2.getNorm());
+    }
+
+    private double distanceSimilarity(SparseVector vec1, double norm1,
+                                      SparseVector vec2, double norm2) {
         final double distance;
         // One of the vector is empty
-        if (vec1.norm() == 0 || vec2.norm() == 0){
+        if (norm1 == 0 || norm2 == 0){
             return Double.NaN;
         }
-
-        LongSet ts = LongUtils.setUnion(vec1.keySet(),vec2.keySet());
-
-        MutableSparseVector v1 = MutableSparseVector.create(ts);
-        v1.fill(0);
-        v1.set(vec1);
-        v1.multiply(1.0 / v1.norm());
-        v1.addScaled(vec2, -1.0 / vec2.norm());
-
-        distance = v1.norm();
+        // distance between the unit vectors, computed over the union of keys without building it
+        distance = Intersections.normOfScaledSum(vec1, 1.0 / norm1, vec2, -1.0 / norm2);
         return 1-distance;
     }
 
@@ -0,0 +1,50 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors.similarity;
+
+/**
+ * A sparse vector similarity that is a function of the dot product of the two vectors and their
+ * {@linkplain VectorStatistics statistics}.  Model builders can compute all the dot products at
+ * once with a sparse matrix product and then turn each one into a similarity with
+ * {@link #similarityFromDotProduct(double, VectorStatistics, VectorStatistics)}, instead of
+ * intersecting every pair of vectors.
+ *
+ * <p>For any two vectors, {@code similarityFromDotProduct(v1.dot(v2), stats1, stats2)} must
+ * return the same value as {@link #similarity(org.grouplens.lenskit.vectors.SparseVector,
+ * org.grouplens.lenskit.vectors.SparseVector) similarity(v1, v2)}.  Implementations must be
+ * {@linkplain #isSparse() sparse}, and the similarity must be nondecreasing in the dot product
+ * for fixed statistics, so that a bound on the dot product of two vectors bounds their
+ * similarity.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public interface DotProductVectorSimilarity extends StatisticsVectorSimilarity {
+    /**
+     * Compute a similarity from the dot product of two vectors.
+     *
+     * @param dot    The dot product of the two vectors.
+     * @param stats1 The statistics of the left vector.
+     * @param stats2 The statistics of the right vector.
+     * @return The similarity between the vectors.
+     */
+    double similarityFromDotProduct(double dot, VectorStatistics stats1, VectorStatistics stats2);
+}
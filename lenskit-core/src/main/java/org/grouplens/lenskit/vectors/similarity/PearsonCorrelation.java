@@ -20,11 +20,9 @@
  */
 package org.grouplens.lenskit.vectors.similarity;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.vectors.Intersections;
 import org.grouplens.lenskit.vectors.SparseVector;
-import org.grouplens.lenskit.vectors.VectorEntry;
-import org.grouplens.lenskit.vectors.Vectors;
 
 import javax.inject.Inject;
 import java.io.Serializable;
@@ -68,49 +66,50 @@ public class PearsonCorrelation implements VectorSimilarity, Serializable {
         }
 
         /*
-         * Basic similarity: walk in parallel across the two vectors, computing
-         * the dot product and simultaneously computing the variance within each
-         * vector of the items also contained in the other vector.  Pearson
-         * correlation only considers items shared by both vectors; other items
-         * are discarded for the purpose of similarity computation.
+         * Basic similarity: gather the values of the items contained in both vectors, then
+         * compute the means, variances and dot product of those values.  Pearson correlation
+         * only considers items shared by both vectors; other items are discarded for the
+         * purpose of similarity computation.
          */
+        SimilarityScratch scratch = SimilarityScratch.get(Math.min(vec1.size(), vec2.size()));
+        int n = Intersections.gatherValues(vec1, vec2, scratch.x, scratch.y);
+        return correlation(scratch.x, scratch.y, n);
+    }
 
-        // first compute means of common items
-        double sum1 = 0;
-        double sum2 = 0;
-        int n = 0;
-        for (Pair<VectorEntry,VectorEntry> pair: Vectors.fastIntersect(vec1, vec2)) {
-            sum1 += pair.getLeft().getValue();
-            sum2 += pair.getRight().getValue();
-            n += 1;
-        }
-
+    /**
+     * Compute the correlation of paired values.
+     *
+     * @param xs The first values.
+     * @param ys The second values.
+     * @param n  The number of pairs.
+     * @return The (damped) correlation, or 0 if there are no pairs.
+     */
+    double correlation(double[] xs, double[] ys, int n) {
         if (n == 0) {
             return 0;
         }
 
+        // first compute means of common items
+        double sum1 = 0;
+        double sum2 = 0;
+        for (int i = 0; i < n; i++) {
+            sum1 += xs[i];
+            sum2 += ys[i];
+        }
         final double mu1 = sum1 / n;
         final double mu2 = sum2 / n;
 
         double var1 = 0;
         double var2 = 0;
         double dot = 0;
-        int nCoratings = 0;
-
-        for (Pair<VectorEntry,VectorEntry> pair: Vectors.fastIntersect(vec1, vec2)) {
-            final double v1 = pair.getLeft().getValue() - mu1;
-            final double v2 = pair.getRight().getValue() - mu2;
+        for (int i = 0; i < n; i++) {
+            final double v1 = xs[i] - mu1;
+            final double v2 = ys[i] - mu2;
             var1 += v1 * v1;
             var2 += v2 * v2;
             dot += v1 * v2;
-            nCoratings += 1;
-        }
-
-        if (nCoratings == 0) {
-            return 0;
-        } else {
-            return dot / (sqrt(var1 * var2) + shrinkage);
         }
+        return dot / (sqrt(var1 * var2) + shrinkage);
     }
 
     @Override
@@ -21,6 +21,7 @@
 package org.grouplens.lenskit.vectors.similarity;
 
 import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.vectors.Intersections;
 import org.grouplens.lenskit.vectors.SparseVector;
 
 import javax.inject.Inject;
@@ -47,7 +48,7 @@ import static java.lang.Math.max;
  * @see SigWeightThreshold
  */
 @Shareable
-public class SignificanceWeightedVectorSimilarity implements VectorSimilarity, Serializable {
+public class SignificanceWeightedVectorSimilarity implements StatisticsVectorSimilarity, Serializable {
 
     private static final long serialVersionUID = 1L;
 
@@ -72,7 +73,31 @@ public class SignificanceWeightedVectorSimilarity implements VectorSimilarity, S
     @Override
     public double similarity(SparseVector vec1, SparseVector vec2) {
         double s = delegate.similarity(vec1, vec2);
-        int n = vec1.countCommonKeys(vec2);
+        int n = Intersections.countCommonKeys(vec1, vec2);
+        s *= n;
+        return s / max(n, threshold);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The statistics are passed on to the delegate if it can use them.  The common keys are
+     * only counted if the delegate similarity is nonzero, since the weight cannot change a zero
+     * similarity.</p>
+     */
+    @Override
+    public double similarity(SparseVector vec1, VectorStatistics stats1,
+                             SparseVector vec2, VectorStatistics stats2) {
+        double s;
+        if (delegate instanceof StatisticsVectorSimilarity) {
+            s = ((StatisticsVectorSimilarity) delegate).similarity(vec1, stats1, vec2, stats2);
+        } else {
+            s = delegate.similarity(vec1, vec2);
+        }
+        if (s == 0 && threshold > 0) {
+            return 0;
+        }
+        int n = Intersections.countCommonKeys(vec1, vec2);
         s *= n;
         return s / max(n, threshold);
     }
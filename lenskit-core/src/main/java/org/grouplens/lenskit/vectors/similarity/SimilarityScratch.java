@@ -0,0 +1,99 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors.similarity;
+
+import com.google.common.primitives.Doubles;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+
+/**
+ * Per-thread scratch arrays for similarity functions, so that computing a similarity does not
+ * allocate.  Similarity functions are shareable and may be used from many threads at once, so
+ * each thread gets its own buffers; they grow as needed and are never shrunk.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+final class SimilarityScratch {
+    private static final ThreadLocal<SimilarityScratch> INSTANCE = new ThreadLocal<SimilarityScratch>() {
+        @Override
+        protected SimilarityScratch initialValue() {
+            return new SimilarityScratch();
+        }
+    };
+
+    double[] x = new double[64];
+    double[] y = new double[64];
+    double[] ranks1 = new double[64];
+    double[] ranks2 = new double[64];
+    double[] rankValues = new double[64];
+    int[] pos1 = new int[64];
+    int[] pos2 = new int[64];
+    int[] order = new int[64];
+    final DecreasingValueOrder valueOrder = new DecreasingValueOrder();
+
+    private SimilarityScratch() {}
+
+    /**
+     * Get the scratch space for the current thread, with the pair arrays ({@link #x}, {@link #y},
+     * {@link #pos1}, {@link #pos2}) holding at least {@code n} elements.
+     *
+     * @param n The required capacity.
+     * @return The scratch space.
+     */
+    static SimilarityScratch get(int n) {
+        SimilarityScratch s = INSTANCE.get();
+        if (s.x.length < n) {
+            int cap = Math.max(n, s.x.length * 2);
+            s.x = new double[cap];
+            s.y = new double[cap];
+            s.pos1 = new int[cap];
+            s.pos2 = new int[cap];
+        }
+        return s;
+    }
+
+    /**
+     * Ensure the ranking arrays ({@link #ranks1}, {@link #ranks2}, {@link #rankValues},
+     * {@link #order}) hold at least
+     * {@code n} elements.
+     *
+     * @param n The required capacity.
+     */
+    void ensureRankCapacity(int n) {
+        if (ranks1.length < n) {
+            int cap = Math.max(n, ranks1.length * 2);
+            ranks1 = new double[cap];
+            ranks2 = new double[cap];
+            rankValues = new double[cap];
+            order = new int[cap];
+        }
+    }
+
+    /**
+     * Comparator ordering positions by decreasing value in {@link #rankValues}.
+     */
+    final class DecreasingValueOrder extends AbstractIntComparator {
+        @Override
+        public int compare(int p1, int p2) {
+            return Doubles.compare(rankValues[p2], rankValues[p1]);
+        }
+    }
+}
@@ -21,9 +21,11 @@
 package org.grouplens.lenskit.vectors.similarity;
 
 import com.google.common.primitives.Doubles;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.longs.AbstractLongComparator;
 import it.unimi.dsi.fastutil.longs.LongArrays;
 import org.grouplens.lenskit.core.Shareable;
+import org.grouplens.lenskit.vectors.Intersections;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.grouplens.lenskit.vectors.SparseVector;
 
@@ -93,7 +95,63 @@ public class SpearmanRankCorrelation implements VectorSimilarity, Serializable {
 
     @Override
     public double similarity(SparseVector vec1, SparseVector vec2) {
-        return pearson.similarity(rank(vec1), rank(vec2));
+        // Same result as pearson.similarity(rank(vec1), rank(vec2)), without building rank vectors
+        if (vec1.isEmpty() || vec2.isEmpty()) {
+            return 0;
+        }
+        final int n1 = vec1.size();
+        final int n2 = vec2.size();
+        SimilarityScratch scratch = SimilarityScratch.get(Math.min(n1, n2));
+        int n = Intersections.gatherPositions(vec1, vec2, scratch.pos1, scratch.pos2);
+        if (n == 0) {
+            return 0;
+        }
+        scratch.ensureRankCapacity(Math.max(n1, n2));
+        computeRanks(vec1, scratch.ranks1, scratch);
+        computeRanks(vec2, scratch.ranks2, scratch);
+        for (int i = 0; i < n; i++) {
+            scratch.x[i] = scratch.ranks1[scratch.pos1[i]];
+            scratch.y[i] = scratch.ranks2[scratch.pos2[i]];
+        }
+        return pearson.correlation(scratch.x, scratch.y, n);
+    }
+
+    /**
+     * Compute the ranks of a vector's values, as {@link #rank(SparseVector)} does.
+     *
+     * @param vec     The vector.
+     * @param ranks   The array to receive the rank of each value, by position in key order.
+     * @param scratch The scratch space, with rank capacity for the vector.
+     */
+    private static void computeRanks(SparseVector vec, double[] ranks, SimilarityScratch scratch) {
+        final double[] values = scratch.rankValues;
+        final int[] order = scratch.order;
+        final int n = Intersections.copyValues(vec, values);
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        // sort positions by value (decreasing)
+        IntArrays.quickSort(order, 0, n, scratch.valueOrder);
+        for (int i = 0; i < n; i++) {
+            ranks[order[i]] = i + 1;
+        }
+        // average ranks for items with same values
+        int i = 0;
+        while (i < n) {
+            int j;
+            for (j = i + 1; j < n; j++) {
+                if (values[order[j]] != values[order[i]]) {
+                    break;
+                }
+            }
+            if (j - i > 1) {
+                double r2 = (ranks[order[i]] + ranks[order[j - 1]]) / (j - i);
+                for (int k = i; k < j; k++) {
+                    ranks[order[k]] = r2;
+                }
+            }
+            i = j;
+        }
     }
 
     @Override
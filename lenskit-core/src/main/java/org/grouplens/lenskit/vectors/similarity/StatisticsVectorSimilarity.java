@@ -0,0 +1,48 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors.similarity;
+
+import org.grouplens.lenskit.vectors.SparseVector;
+
+/**
+ * A vector similarity that can use precomputed {@linkplain VectorStatistics statistics} of its
+ * arguments.  Model builders that compare each vector against many others compute the statistics
+ * once per vector and call {@link #similarity(SparseVector, VectorStatistics, SparseVector,
+ * VectorStatistics)}, so that the per-pair cost is only the pass over the common keys.
+ *
+ * <p>Both similarity methods must return the same result for the same vectors.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public interface StatisticsVectorSimilarity extends VectorSimilarity {
+    /**
+     * Compute the similarity between two vectors using their precomputed statistics.
+     *
+     * @param vec1   The left vector to compare.
+     * @param stats1 The statistics of {@code vec1}.
+     * @param vec2   The right vector to compare.
+     * @param stats2 The statistics of {@code vec2}.
+     * @return The similarity, in the range [-1,1].
+     */
+    double similarity(SparseVector vec1, VectorStatistics stats1,
+                      SparseVector vec2, VectorStatistics stats2);
+}
@@ -0,0 +1,126 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors.similarity;
+
+import com.google.common.base.MoreObjects;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import org.grouplens.lenskit.vectors.SparseVector;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+
+/**
+ * Summary statistics of a sparse vector: its size, sum, sum of squares, and L2 norm.  Code that
+ * compares the same vector many times (such as an item-item model build) computes these once per
+ * vector and passes them to a {@link StatisticsVectorSimilarity} so that each comparison only has
+ * to walk the intersection of the two vectors.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public final class VectorStatistics implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int size;
+    private final double sum;
+    private final double sumOfSquares;
+    private final double norm;
+
+    private VectorStatistics(int n, double s, double ssq, double l2) {
+        size = n;
+        sum = s;
+        sumOfSquares = ssq;
+        norm = l2;
+    }
+
+    /**
+     * Compute the statistics of a vector.
+     *
+     * @param vec The vector.
+     * @return The statistics of {@code vec}.  They are computed the same way as the corresponding
+     *         {@link SparseVector} methods, so similarities using them give exactly the same
+     *         results as ones computing the statistics on each call.
+     */
+    public static VectorStatistics of(SparseVector vec) {
+        double ssq = 0;
+        DoubleIterator iter = vec.values().iterator();
+        while (iter.hasNext()) {
+            final double v = iter.nextDouble();
+            ssq += v * v;
+        }
+        return new VectorStatistics(vec.size(), vec.sum(), ssq, vec.norm());
+    }
+
+    /**
+     * Get the number of entries in the vector.
+     *
+     * @return The vector's size.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the sum of the vector's values.
+     *
+     * @return The sum of the values.
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Get the sum of the squares of the vector's values.
+     *
+     * @return The sum of squared values.
+     */
+    public double getSumOfSquares() {
+        return sumOfSquares;
+    }
+
+    /**
+     * Get the Euclidean (L2) norm of the vector.
+     *
+     * @return The vector's norm.
+     */
+    public double getNorm() {
+        return norm;
+    }
+
+    /**
+     * Get the mean of the vector's values.
+     *
+     * @return The mean value, or {@link Double#NaN} if the vector is empty.
+     */
+    public double getMean() {
+        return size == 0 ? Double.NaN : sum / size;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                      .add("size", size)
+                      .add("sum", sum)
+                      .add("norm", norm)
+                      .toString();
+    }
+}
@@ -25,8 +25,10 @@ import org.grouplens.grapht.graph.DAGNode
 import org.grouplens.grapht.reflect.Satisfaction
 import org.grouplens.grapht.reflect.internal.InstanceSatisfaction
 import org.grouplens.grapht.solver.DesireChain
+import org.grouplens.lenskit.GlobalItemRecommender
 import org.grouplens.lenskit.ItemRecommender
 import org.grouplens.lenskit.ItemScorer
+import org.grouplens.lenskit.RatingPredictor
 import org.grouplens.lenskit.RecommenderBuildException
 import org.grouplens.lenskit.baseline.*
 import org.grouplens.lenskit.basic.SimpleRatingPredictor
@@ -35,18 +37,23 @@ import org.grouplens.lenskit.data.dao.EventCollectionDAO
 import org.grouplens.lenskit.data.dao.EventDAO
 import org.grouplens.lenskit.data.event.Event
 import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot
+import org.grouplens.lenskit.inject.RecommenderInstantiator
 import org.grouplens.lenskit.iterative.StoppingThreshold
 import org.grouplens.lenskit.iterative.ThresholdStoppingCondition
+import org.grouplens.lenskit.transform.normalize.BaselineSubtractingUserVectorNormalizer
 import org.grouplens.lenskit.transform.normalize.MeanVarianceNormalizer
+import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer
 import org.grouplens.lenskit.transform.normalize.VectorNormalizer
 import org.grouplens.lenskit.util.io.CompressionMode
 import org.grouplens.lenskit.basic.PrecomputedItemScorer
 import org.junit.Before
 import org.junit.Test
 
+import javax.annotation.concurrent.ThreadSafe
 import javax.inject.Inject
 import javax.inject.Provider
 import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
 
 import static groovy.test.GroovyAssert.shouldFail
 import static org.hamcrest.Matchers.*
@@ -176,7 +183,147 @@ public class LenskitRecommenderEngineTest {
                    sameInstance(rec2.get(UserMeanBaseline.class, ItemScorer.class)))
     }
 
+    @Test
+    public void testParallelBuild() throws RecommenderBuildException {
+        LenskitConfiguration config = new LenskitConfiguration()
+        config.bind(EventDAO.class).to(dao)
+        config.bind(UserMeanBaseline.class, ItemScorer.class)
+              .to(GlobalMeanRatingItemScorer.class)
+        config.bind(ItemScorer.class)
+              .to(UserMeanItemScorer.class)
+        config.addRoot(RootComp.class)
+        config.bind(ByteBuffer.class)
+              .toProvider(BufferProvider.class)
+        config.bind(InputStream.class)
+              .toProvider(StreamProvider.class)
+
+        LenskitRecommenderEngine engine =
+            LenskitRecommenderEngine.newBuilder()
+                                    .addConfiguration(config)
+                                    .setThreadCount(4)
+                                    .build()
+        LenskitRecommenderEngine seqEngine = LenskitRecommenderEngine.build(config)
+        assertThat(engine.getGraph().getReachableNodes().size(),
+                   equalTo(seqEngine.getGraph().getReachableNodes().size()))
+
+        LenskitRecommender rec1 = engine.createRecommender()
+        LenskitRecommender rec2 = engine.createRecommender()
+        assertThat(rec1.getItemScorer(),
+                   instanceOf(UserMeanItemScorer.class))
+        assertThat(rec1.getItemScorer(),
+                   not(sameInstance(rec2.getItemScorer())))
+        // shareable components are built once and shared
+        assertThat(rec1.get(UserMeanBaseline.class, ItemScorer.class),
+                   sameInstance(rec2.get(UserMeanBaseline.class, ItemScorer.class)))
+        assertThat(rec1.get(RootComp).getBuffer(),
+                   sameInstance(rec2.get(RootComp).getBuffer()))
+        assertThat(rec1.get(RootComp).getStream(),
+                   not(sameInstance(rec2.get(RootComp).getStream())))
+    }
+
+    @Test
+    public void testBuildReport() throws RecommenderBuildException {
+        LenskitConfiguration config = new LenskitConfiguration()
+        config.bind(EventDAO.class).to(dao)
+        config.bind(UserMeanBaseline.class, ItemScorer.class)
+              .to(GlobalMeanRatingItemScorer.class)
+        config.bind(ItemScorer.class)
+              .to(UserMeanItemScorer.class)
+
+        def builder = LenskitRecommenderEngine.newBuilder()
+                                              .addConfiguration(config)
+        builder.build()
+        assertThat(builder.getBuildReport(), nullValue())
+
+        builder.setBuildReportEnabled(true)
+        builder.build()
+        def report = builder.getBuildReport()
+        assertThat(report, notNullValue())
+        def entry = report.getEntries().find {
+            it.getType() == GlobalMeanRatingItemScorer.class.getName()
+        }
+        assertThat(entry, notNullValue())
+        assertThat(entry.getWallTime(), greaterThanOrEqualTo(0L))
+        assertThat(entry.getRetainedSize(), greaterThan(0L))
+        assertThat(report.getTotalRetainedSize(), greaterThanOrEqualTo(entry.getRetainedSize()))
+        assertThat(report.toJSON(), containsString(GlobalMeanRatingItemScorer.class.getName()))
+        assertThat(report.toString(), containsString(GlobalMeanRatingItemScorer.class.getName()))
+    }
+
     @SuppressWarnings("unchecked")
+    @Test
+    public void testSessionPoolReuse() throws RecommenderBuildException {
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(configureBasicRecommender(true))
+        RecommenderSessionPool pool = engine.createSessionPool(2)
+        assertThat pool.isShared(), equalTo(false)
+        assertThat pool.getThreadUnsafeNodes(), not(empty())
+
+        LenskitRecommender rec = pool.acquire()
+        verifyBasicRecommender(rec)
+        LenskitRecommender rec2 = pool.acquire()
+        assertThat rec2, not(sameInstance(rec))
+        pool.release(rec)
+        pool.release(rec2)
+        assertThat pool.getIdleCount(), equalTo(2)
+
+        // released sessions are reused rather than rebuilt
+        LenskitRecommender again = pool.acquire()
+        assertThat again, anyOf(sameInstance(rec), sameInstance(rec2))
+        assertThat pool.getCreatedSessionCount(), equalTo(2L)
+        assertThat pool.getAcquireCount(), equalTo(3L)
+        assertThat pool.getTotalCreationTime(TimeUnit.NANOSECONDS), greaterThan(0L)
+    }
+
+    @Test
+    public void testSessionPoolMaxIdle() throws RecommenderBuildException {
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(configureBasicRecommender(true))
+        RecommenderSessionPool pool = engine.createSessionPool(1)
+        LenskitRecommender rec = pool.acquire()
+        LenskitRecommender rec2 = pool.acquire()
+        pool.release(rec)
+        pool.release(rec2)
+        assertThat pool.getIdleCount(), equalTo(1)
+    }
+
+    @Test
+    public void testSharedSessionPool() throws RecommenderBuildException {
+        LenskitConfiguration config = new LenskitConfiguration()
+        config.addRoot(SafeRoot)
+        config.bind(ItemScorer).to(ConstantItemScorer)
+        config.set(ConstantItemScorer.Value).to(3.5)
+        config.bind(ItemRecommender).toNull()
+        config.bind(GlobalItemRecommender).toNull()
+        config.bind(RatingPredictor).toNull()
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(config)
+        RecommenderSessionPool pool = engine.createSessionPool()
+        assertThat pool.getThreadUnsafeNodes(), empty()
+        assertThat pool.isShared(), equalTo(true)
+
+        LenskitRecommender rec = pool.acquire()
+        assertThat rec.get(SafeRoot), notNullValue()
+        assertThat pool.acquire(), sameInstance(rec)
+        pool.release(rec)
+        assertThat pool.getCreatedSessionCount(), equalTo(1L)
+
+        LenskitRecommender concurrent = engine.createConcurrentRecommender()
+        assertThat concurrent.get(SafeRoot), notNullValue()
+    }
+
+    @Test
+    public void testConcurrentRecommenderRejectsUnsafe() throws RecommenderBuildException {
+        LenskitRecommenderEngine engine = LenskitRecommenderEngine.build(configureBasicRecommender(true))
+        def ex = shouldFail(IllegalStateException) {
+            engine.createConcurrentRecommender()
+        }
+        assertThat ex.message, containsString(TopNItemRecommender.name)
+    }
+
+    @ThreadSafe
+    public static class SafeRoot {
+        @Inject
+        public SafeRoot(ItemScorer scorer) {}
+    }
+
     @Test
     public void testParameter() throws RecommenderBuildException {
         LenskitConfiguration config = new LenskitConfiguration()
@@ -287,6 +434,159 @@ public class LenskitRecommenderEngineTest {
         }
     }
 
+    private LenskitRecommenderEngine buildBaselineEngine() {
+        LenskitConfiguration config = new LenskitConfiguration()
+        config.bind(UserMeanBaseline.class, ItemScorer.class)
+              .to(GlobalMeanRatingItemScorer.class)
+        config.bind(ItemScorer.class)
+              .to(UserMeanItemScorer.class)
+        return LenskitRecommenderEngine.newBuilder()
+                                       .addConfiguration(config)
+                                       .addConfiguration(makeDAOConfig(null), ModelDisposition.EXCLUDED)
+                                       .build()
+    }
+
+    private static List<ComponentSegment> findSegments(LenskitRecommenderEngine engine) {
+        return engine.getGraph().getReachableNodes()
+                     .collect { it.getLabel().getSatisfaction() }
+                     .findAll { it instanceof SegmentSatisfaction }
+                     .collect { ((SegmentSatisfaction) it).getSegment() }
+    }
+
+    @Test
+    public void testSegmentedLazyLoad() {
+        def engine = buildBaselineEngine()
+        File tfile = File.createTempFile("lenskit", "engine")
+        try {
+            engine.writeSegmented(tfile, CompressionMode.GZIP)
+            def e2 = LenskitRecommenderEngine.newLoader()
+                                             .addConfiguration(makeDAOConfig(null))
+                                             .load(tfile)
+            def segments = findSegments(e2)
+            assertThat(segments, not(empty()))
+            assertThat(segments.any { it.isLoaded() }, equalTo(false))
+
+            LenskitRecommender rec1 = e2.createRecommender()
+            LenskitRecommender rec2 = e2.createRecommender()
+            assertThat(rec1.getItemScorer(), instanceOf(UserMeanItemScorer))
+            def baseline = rec1.get(UserMeanBaseline, ItemScorer)
+            assertThat(baseline, instanceOf(GlobalMeanRatingItemScorer))
+            assertThat(rec2.get(UserMeanBaseline, ItemScorer), sameInstance(baseline))
+            assertThat(segments.any { it.isLoaded() }, equalTo(true))
+        } finally {
+            tfile.delete()
+        }
+    }
+
+    @Test
+    public void testSegmentedEagerLoad() {
+        def engine = buildBaselineEngine()
+        File tfile = File.createTempFile("lenskit", "engine")
+        try {
+            engine.writeSegmented(tfile, CompressionMode.NONE)
+            def e2 = LenskitRecommenderEngine.newLoader()
+                                             .addConfiguration(makeDAOConfig(null))
+                                             .setLazyLoading(false)
+                                             .setThreadCount(2)
+                                             .load(tfile)
+            def segments = findSegments(e2)
+            assertThat(segments, not(empty()))
+            assertThat(segments.every { it.isLoaded() }, equalTo(true))
+            assertThat(e2.createRecommender().get(UserMeanBaseline, ItemScorer),
+                       instanceOf(GlobalMeanRatingItemScorer))
+        } finally {
+            tfile.delete()
+        }
+    }
+
+    @Test
+    public void testSegmentedStream() {
+        def engine = buildBaselineEngine()
+        def out = new ByteArrayOutputStream()
+        engine.writeSegmented(out, CompressionMode.XZ)
+        def e2 = LenskitRecommenderEngine.newLoader()
+                                         .addConfiguration(makeDAOConfig(null))
+                                         .load(new ByteArrayInputStream(out.toByteArray()))
+        LenskitRecommender rec = e2.createRecommender()
+        assertThat(rec.getItemScorer(), instanceOf(UserMeanItemScorer))
+        assertThat(rec.get(UserMeanBaseline, ItemScorer),
+                   instanceOf(GlobalMeanRatingItemScorer))
+
+        // a loaded segmented engine can be written in the standard format
+        def deferred = LenskitRecommenderEngine.newLoader()
+                                               .setValidationMode(EngineValidationMode.DEFERRED)
+                                               .load(new ByteArrayInputStream(out.toByteArray()))
+        def out2 = new ByteArrayOutputStream()
+        deferred.write(out2)
+        def e3 = LenskitRecommenderEngine.newLoader()
+                                         .addConfiguration(makeDAOConfig(null))
+                                         .load(new ByteArrayInputStream(out2.toByteArray()))
+        assertThat(findSegments(e3), empty())
+        assertThat(e3.createRecommender().get(UserMeanBaseline, ItemScorer),
+                   instanceOf(GlobalMeanRatingItemScorer))
+    }
+
+    @Test
+    public void testSegmentedSharedInstances() {
+        LenskitConfiguration config = new LenskitConfiguration()
+        config.bind(BaselineScorer, ItemScorer)
+              .to(GlobalMeanRatingItemScorer)
+        config.bind(UserVectorNormalizer)
+              .to(BaselineSubtractingUserVectorNormalizer)
+        config.addRoot(UserVectorNormalizer)
+        def engine = LenskitRecommenderEngine.newBuilder()
+                                             .addConfiguration(config)
+                                             .addConfiguration(makeDAOConfig(null), ModelDisposition.EXCLUDED)
+                                             .build()
+        def out = new ByteArrayOutputStream()
+        engine.writeSegmented(out, CompressionMode.NONE)
+        def e2 = LenskitRecommenderEngine.newLoader()
+                                         .addConfiguration(makeDAOConfig(null))
+                                         .load(new ByteArrayInputStream(out.toByteArray()))
+        LenskitRecommender rec = e2.createRecommender()
+        def norm = rec.get(UserVectorNormalizer)
+        assertThat(norm, instanceOf(BaselineSubtractingUserVectorNormalizer))
+        def baseline = rec.get(BaselineScorer, ItemScorer)
+        assertThat(baseline, instanceOf(GlobalMeanRatingItemScorer))
+        // the normalizer's scorer is the top-level component, not a copy of it
+        assertThat(norm.baselineScorer, sameInstance(baseline))
+    }
+
+    @Test
+    public void testSegmentedInstantiateKeepsLazy() {
+        def engine = buildBaselineEngine()
+        def out = new ByteArrayOutputStream()
+        engine.writeSegmented(out, CompressionMode.NONE)
+        def e2 = LenskitRecommenderEngine.newLoader()
+                                         .addConfiguration(makeDAOConfig(null))
+                                         .load(new ByteArrayInputStream(out.toByteArray()))
+        def segments = findSegments(e2)
+        assertThat(segments, not(empty()))
+        // segment nodes are already instances, so re-instantiating the graph does not load them
+        def graph = RecommenderInstantiator.create(e2.getGraph()).instantiate()
+        assertThat(segments.any { it.isLoaded() }, equalTo(false))
+        assertThat(graph.getReachableNodes().findAll {
+            it.getLabel().getSatisfaction() instanceof SegmentSatisfaction
+        }.size(), equalTo(segments.size()))
+    }
+
+    @Test
+    public void testSerializeBlockCompressed() {
+        def engine = buildBaselineEngine()
+        // block compression is detected from the stream, regardless of file name
+        File tfile = File.createTempFile("lenskit", "engine")
+        try {
+            engine.write(tfile, CompressionMode.BLOCK)
+            def e2 = LenskitRecommenderEngine.newLoader()
+                                             .addConfiguration(makeDAOConfig(null))
+                                             .load(tfile)
+            assertThat(e2.createRecommender().get(UserMeanBaseline, ItemScorer),
+                       instanceOf(GlobalMeanRatingItemScorer))
+        } finally {
+            tfile.delete()
+        }
+    }
+
     @Test
     public void testDeserializeValidate() throws RecommenderBuildException, IOException, ClassNotFoundException {
         LenskitConfiguration config = configureBasicRecommender(false)
@@ -90,4 +90,12 @@ class JDBCRatingDAOTest {
                                      Ratings.make(1, 1, 4.5, 50),
                                      Ratings.make(1, 2, 3.5, 51))
     }
+
+    @Test
+    public void testStreamEventsByItem() {
+        def items = Cursors.makeList(dao.streamEventsByItem())
+        assertThat items*.itemId, contains(1l, 2l)
+        assertThat items[0]*.userId, containsInAnyOrder(1l, 3l)
+        assertThat items[1]*.userId, contains(1l)
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.sql
+
+import groovy.sql.Sql
+import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import javax.sql.DataSource
+import java.sql.Connection
+import java.sql.DriverManager
+
+import static org.hamcrest.Matchers.*
+import static org.junit.Assert.assertThat
+
+/**
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+class ParallelJDBCSnapshotLoaderTest {
+    private static final String URL = "jdbc:h2:mem:snapshot-loader"
+    // keeps the in-memory database alive between the loader's connections
+    private Connection cxn
+    private DataSource dataSource
+    private BasicSQLStatementFactory factory
+
+    @Before
+    public void makeDatabase() {
+        cxn = DriverManager.getConnection(URL)
+        def sql = new Sql(cxn)
+        sql.execute('CREATE TABLE ratings (userId INTEGER NOT NULL, itemId INTEGER NOT NULL, rating REAL NOT NULL, ratingTime BIGINT NOT NULL)')
+        def ratings = sql.dataSet('ratings')
+        ratings.add userId: 1, itemId: 1, rating: 4.5, ratingTime: 50
+        ratings.add userId: 1, itemId: 2, rating: 3.5, ratingTime: 51
+        ratings.add userId: 1, itemId: 2, rating: 2.0, ratingTime: 60
+        ratings.add userId: 3, itemId: 1, rating: 2.5, ratingTime: 40
+        ratings.add userId: 4, itemId: 3, rating: 5.0, ratingTime: 42
+        ratings.add userId: 7, itemId: 2, rating: 1.0, ratingTime: 45
+        ratings.add userId: 7, itemId: 3, rating: 3.0, ratingTime: 46
+
+        factory = new BasicSQLStatementFactory()
+        factory.tableName = 'ratings'
+        factory.userColumn = 'userId'
+        factory.itemColumn = 'itemId'
+        factory.ratingColumn = 'rating'
+        factory.timestampColumn = 'ratingTime'
+
+        dataSource = [getConnection: { DriverManager.getConnection(URL) }] as DataSource
+    }
+
+    @After
+    public void dropDatabase() {
+        new Sql(cxn).execute('DROP TABLE ratings')
+        cxn.close()
+    }
+
+    private static void checkSnapshot(PreferenceSnapshot snap) {
+        assertThat snap.ratings, hasSize(6)
+        assertThat snap.userIds, containsInAnyOrder(1l, 3l, 4l, 7l)
+        assertThat snap.itemIds, containsInAnyOrder(1l, 2l, 3l)
+        def user1 = snap.getUserRatings(1).collectEntries { [it.itemId, it.value] }
+        // the later rating replaces the earlier one
+        assertThat user1, equalTo([(1l): 4.5d, (2l): 2.0d])
+        assertThat snap.getUserRatings(7)*.itemId, containsInAnyOrder(2l, 3l)
+    }
+
+    @Test
+    public void testLoadByUser() {
+        def loader = new ParallelJDBCSnapshotLoader(dataSource, factory)
+                .setThreadCount(2)
+                .setPartitionCount(3)
+        checkSnapshot loader.load()
+    }
+
+    @Test
+    public void testLoadByItem() {
+        def loader = new ParallelJDBCSnapshotLoader(dataSource, factory)
+                .setPartitionKey(ParallelJDBCSnapshotLoader.PartitionKey.ITEM)
+                .setThreadCount(2)
+                .setPartitionCount(2)
+        checkSnapshot loader.load()
+    }
+
+    @Test
+    public void testMorePartitionsThanUsers() {
+        def loader = new ParallelJDBCSnapshotLoader(dataSource, factory)
+                .setThreadCount(3)
+                .setPartitionCount(10)
+        checkSnapshot loader.load()
+    }
+
+    @Test
+    public void testEmptyTable() {
+        new Sql(cxn).execute('DELETE FROM ratings')
+        def snap = new ParallelJDBCSnapshotLoader(dataSource, factory).load()
+        assertThat snap.ratings, hasSize(0)
+        assertThat snap.userIds, hasSize(0)
+    }
+}
@@ -27,6 +27,8 @@ import org.grouplens.grapht.reflect.Satisfactions
 import org.grouplens.lenskit.core.Shareable
 import org.junit.Test
 
+import javax.annotation.concurrent.Immutable
+import javax.annotation.concurrent.ThreadSafe
 import javax.inject.Provider
 
 import static org.junit.Assert.*
@@ -99,9 +101,40 @@ class GraphtUtilsTest {
         assertThat GraphtUtils.isShareable(node), equalTo(false)
     }
 
+    @Test
+    public void testThreadUnsafeNodes() {
+        def safe = DAGNode.newBuilder(Component.create(Satisfactions.type(ThreadSafeImpl),
+                                                       CachePolicy.NO_PREFERENCE))
+                          .build()
+        def imm = DAGNode.newBuilder(Component.create(Satisfactions.type(ImmutableImpl),
+                                                      CachePolicy.NO_PREFERENCE))
+                         .build()
+        def unsafe = DAGNode.newBuilder(Component.create(Satisfactions.type(UnshareableImpl),
+                                                         CachePolicy.NO_PREFERENCE))
+                            .build()
+        def inst = DAGNode.newBuilder(Component.create(Satisfactions.instance(new UnshareableImpl()),
+                                                       CachePolicy.NO_PREFERENCE))
+                          .build()
+        def root = DAGNode.newBuilder(Component.create(Satisfactions.nullOfType(Object),
+                                                       CachePolicy.NO_PREFERENCE))
+                          .addEdge(safe, "safe")
+                          .addEdge(imm, "imm")
+                          .addEdge(unsafe, "unsafe")
+                          .addEdge(inst, "inst")
+                          .build()
+        // instances are already built, so their thread-safety is the caller's concern
+        assertThat GraphtUtils.getThreadUnsafeNodes(root), contains(unsafe)
+    }
+
     @Shareable
     private static class ShareableImpl {}
 
+    @ThreadSafe
+    private static class ThreadSafeImpl {}
+
+    @Immutable
+    private static class ImmutableImpl {}
+
     private static class UnshareableImpl {}
 
     private static class ShareableProvider implements Provider<List> {
@@ -0,0 +1,72 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.inject
+
+import org.junit.Test
+
+import static org.hamcrest.Matchers.*
+import static org.junit.Assert.assertThat
+
+class RetainedSizeEstimatorTest {
+    @Test
+    public void testNull() {
+        def est = new RetainedSizeEstimator([])
+        assertThat est.estimate(null), equalTo(0L)
+    }
+
+    @Test
+    public void testPrimitiveArray() {
+        def est = new RetainedSizeEstimator([])
+        long size = est.estimate(new long[1000])
+        assertThat size, greaterThanOrEqualTo(8000L)
+        assertThat size, lessThan(8100L)
+        assertThat size % 8, equalTo(0L)
+    }
+
+    @Test
+    public void testSharedReferenceCountedOnce() {
+        def est = new RetainedSizeEstimator([])
+        def data = new double[500]
+        long one = est.estimate([data, null] as Object[])
+        long both = est.estimate([data, data] as Object[])
+        assertThat both, equalTo(one)
+        assertThat one, greaterThan(est.estimate(data))
+    }
+
+    @Test
+    public void testBoundaryExcluded() {
+        def other = [new double[500], null] as Object[]
+        def est = new RetainedSizeEstimator([other])
+        long with = est.estimate([null, other] as Object[])
+        assertThat with, lessThan(100L)
+        // the boundary object itself is still measured as a root
+        assertThat est.estimate(other), greaterThanOrEqualTo(4000L)
+    }
+
+    @Test
+    public void testCycle() {
+        Object[] a = new Object[2]
+        Object[] b = [a, null] as Object[]
+        a[1] = b
+        def est = new RetainedSizeEstimator([])
+        assertThat est.estimate(a), equalTo(est.estimate(b))
+    }
+}
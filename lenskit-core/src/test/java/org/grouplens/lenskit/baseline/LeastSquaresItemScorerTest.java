@@ -28,20 +28,29 @@ import org.grouplens.lenskit.data.snapshot.PackedPreferenceSnapshot;
 import org.grouplens.lenskit.data.snapshot.PackedPreferenceSnapshotBuilder;
 import org.grouplens.lenskit.iterative.StoppingCondition;
 import org.grouplens.lenskit.iterative.ThresholdStoppingCondition;
+import org.grouplens.lenskit.iterative.TrainingCheckpointer;
+import org.grouplens.lenskit.iterative.TrainingLoopController;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import javax.inject.Provider;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class LeastSquaresItemScorerTest {
 
     private static final double EPSILON = 1.0e-2;
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
     private PackedPreferenceSnapshot snapshot;
     private LeastSquaresItemScorer predictor;
 
@@ -113,4 +122,67 @@ public class LeastSquaresItemScorerTest {
         assertEquals(3.20, output.get(5), EPSILON);
         assertEquals(3.13, output.get(6), EPSILON);
     }
+
+    @Test
+    public void testResumeFromCheckpoint() {
+        final StoppingCondition stop = new ThresholdStoppingCondition(0.1, 10);
+        File dir = tempDir.getRoot();
+        try {
+            new LeastSquaresItemScorer.Builder(0.001, 0.003, snapshot, new CrashingCondition(stop, 5),
+                                               new TrainingCheckpointer(dir, 0)).get();
+            fail("training should have been interrupted");
+        } catch (IllegalStateException e) {
+            /* expected */
+        }
+        // the checkpoint is named for the builder and the training fingerprint
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().startsWith(LeastSquaresItemScorer.class.getName() + "-"));
+        assertTrue(files[0].getName().endsWith(".ckpt"));
+
+        LeastSquaresItemScorer resumed =
+                new LeastSquaresItemScorer.Builder(0.001, 0.003, snapshot, stop,
+                                                   new TrainingCheckpointer(dir, 0)).get();
+        MutableSparseVector expected = MutableSparseVector.create(1, 2, 3, 4, 5, 6);
+        MutableSparseVector actual = MutableSparseVector.create(1, 2, 3, 4, 5, 6);
+        predictor.score(3, expected);
+        resumed.score(3, actual);
+        for (long item = 1; item <= 6; item++) {
+            assertEquals(expected.get(item), actual.get(item), 1.0e-10);
+        }
+        // the checkpoint is removed once training finishes
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    /**
+     * Stopping condition that simulates a crash after a number of iterations.
+     */
+    private static class CrashingCondition implements StoppingCondition {
+        private final StoppingCondition delegate;
+        private final int crashAfter;
+
+        CrashingCondition(StoppingCondition stop, int n) {
+            delegate = stop;
+            crashAfter = n;
+        }
+
+        @Override
+        public TrainingLoopController newLoop() {
+            final TrainingLoopController loop = delegate.newLoop();
+            return new TrainingLoopController() {
+                @Override
+                public boolean keepTraining(double error) {
+                    if (loop.getIterationCount() >= crashAfter) {
+                        throw new IllegalStateException("simulated crash");
+                    }
+                    return loop.keepTraining(error);
+                }
+
+                @Override
+                public int getIterationCount() {
+                    return loop.getIterationCount();
+                }
+            };
+        }
+    }
 }
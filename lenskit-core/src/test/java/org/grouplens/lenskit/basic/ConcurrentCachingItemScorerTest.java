@@ -0,0 +1,172 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import com.google.common.base.Ticker;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ConcurrentCachingItemScorerTest {
+    CountingScorer baseScorer;
+    FakeTicker ticker;
+    ConcurrentCachingItemScorer cachedScorer;
+
+    @Before
+    public void setup() {
+        ItemScorer scores = PrecomputedItemScorer.newBuilder()
+                                                 .addScore(1, 3, 3.5)
+                                                 .addScore(2, 4, 5)
+                                                 .addScore(2, 6, 3)
+                                                 .addScore(3, 1, 5)
+                                                 .addScore(3, 2, 4.5)
+                                                 .addScore(3, 3, 2.5)
+                                                 .addScore(3, 4, 1)
+                                                 .build();
+        baseScorer = new CountingScorer(scores);
+        ticker = new FakeTicker();
+        cachedScorer = new ConcurrentCachingItemScorer(baseScorer, 100, 10, TimeUnit.SECONDS, ticker);
+    }
+
+    @Test
+    public void testScore() {
+        assertThat(cachedScorer.score(1, 3), equalTo(3.5));
+        assertThat(cachedScorer.score(1, 3), equalTo(3.5));
+        assertThat(baseScorer.calls, equalTo(1));
+        assertThat(cachedScorer.getMissCount(), equalTo(1L));
+        assertThat(cachedScorer.getHitCount(), equalTo(1L));
+        assertThat(cachedScorer.getHitRate(), closeTo(0.5, 1.0e-6));
+    }
+
+    @Test
+    public void testMultipleUsers() {
+        assertThat(cachedScorer.score(1, 3), equalTo(3.5));
+        assertThat(cachedScorer.score(2, 6), equalTo(3.0));
+        assertThat(cachedScorer.score(1, 3), equalTo(3.5));
+        assertThat(cachedScorer.score(2, 6), equalTo(3.0));
+        assertThat(baseScorer.calls, equalTo(2));
+    }
+
+    @Test
+    public void testPartialHit() {
+        cachedScorer.score(3, LongUtils.packedSet(1, 2));
+        SparseVector v = cachedScorer.score(3, LongUtils.packedSet(2, 4));
+        assertThat(v.get(2), equalTo(4.5));
+        assertThat(v.get(4), equalTo(1.0));
+        assertThat(baseScorer.lastItems, contains(4L));
+        assertThat(cachedScorer.getPartialHitCount(), equalTo(1L));
+        assertThat(cachedScorer.getCachedItems(3),
+                   equalTo(LongUtils.packedSet(1, 2, 4)));
+    }
+
+    @Test
+    public void testUnscoredItemsRemembered() {
+        // item 5 has no score, but we should not ask for it again
+        SparseVector v = cachedScorer.score(3, LongUtils.packedSet(1, 5));
+        assertThat(v.containsKey(5), equalTo(false));
+        cachedScorer.score(3, LongUtils.packedSet(1, 5));
+        assertThat(baseScorer.calls, equalTo(1));
+    }
+
+    @Test
+    public void testInvalidate() {
+        cachedScorer.score(1, 3);
+        cachedScorer.score(2, 6);
+        cachedScorer.invalidate(1);
+        assertThat(cachedScorer.getCachedScores(1), nullValue());
+        assertThat(cachedScorer.getCachedScores(2), notNullValue());
+        cachedScorer.invalidateAll();
+        assertThat(cachedScorer.getCachedScores(2), nullValue());
+    }
+
+    @Test
+    public void testExpire() {
+        cachedScorer.score(3, LongUtils.packedSet(1, 2));
+        ticker.advance(6, TimeUnit.SECONDS);
+        cachedScorer.score(3, LongUtils.packedSet(3));
+        assertThat(baseScorer.calls, equalTo(2));
+        // extending the cached scores does not extend their lifetime
+        ticker.advance(6, TimeUnit.SECONDS);
+        cachedScorer.score(3, LongUtils.packedSet(1));
+        assertThat(baseScorer.calls, equalTo(3));
+        assertThat(cachedScorer.getMissCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testEvict() {
+        ConcurrentCachingItemScorer small =
+                new ConcurrentCachingItemScorer(baseScorer, 2, 0, TimeUnit.SECONDS, ticker);
+        small.score(3, LongUtils.packedSet(1, 2));
+        small.score(2, LongUtils.packedSet(4, 6));
+        assertThat(small.getCachedScores(3), nullValue());
+        assertThat(small.getCachedScores(2), notNullValue());
+        assertThat(small.getEvictionCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testUserCanFillCache() {
+        ConcurrentCachingItemScorer small =
+                new ConcurrentCachingItemScorer(baseScorer, 4, 0, TimeUnit.SECONDS, ticker);
+        small.score(3, LongUtils.packedSet(1, 2, 3, 4));
+        assertThat(small.getCachedItems(3), equalTo(LongUtils.packedSet(1, 2, 3, 4)));
+        assertThat(small.getEvictionCount(), equalTo(0L));
+    }
+
+    private static class CountingScorer extends AbstractItemScorer {
+        private final ItemScorer delegate;
+        int calls;
+        LongSortedSet lastItems;
+
+        CountingScorer(ItemScorer d) {
+            delegate = d;
+        }
+
+        @Override
+        public void score(long user, @Nonnull MutableSparseVector scores) {
+            calls += 1;
+            lastItems = scores.keyDomain();
+            scores.set(delegate.score(user, scores.keyDomain()));
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long time;
+
+        @Override
+        public long read() {
+            return time;
+        }
+
+        void advance(long amt, TimeUnit unit) {
+            time += unit.toNanos(amt);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.SimpleMetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class InstrumentedItemScorerTest {
+    @Test
+    public void testRecordScores() {
+        ItemScorer base = PrecomputedItemScorer.newBuilder()
+                                               .addScore(1, 3, 3.5)
+                                               .addScore(1, 4, 2.5)
+                                               .build();
+        SimpleMetricRegistry registry = new SimpleMetricRegistry();
+        InstrumentedItemScorer scorer = new InstrumentedItemScorer(base, registry);
+
+        assertThat(scorer.score(1, 3), equalTo(3.5));
+        SparseVector v = scorer.score(1, LongUtils.packedSet(3, 4, 5));
+        assertThat(v.get(4), equalTo(2.5));
+
+        Timer timer = registry.timer(Metrics.name(PrecomputedItemScorer.class, "score"));
+        assertThat(timer.getCount(), equalTo(2L));
+        assertThat(registry.histogram(Metrics.name(PrecomputedItemScorer.class, "items")).getMax(),
+                   equalTo(3L));
+    }
+}
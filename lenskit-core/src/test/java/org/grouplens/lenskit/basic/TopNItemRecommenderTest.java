@@ -0,0 +1,103 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.basic;
+
+import org.grouplens.lenskit.ItemRecommender;
+import org.grouplens.lenskit.ItemScorer;
+import org.grouplens.lenskit.RecommenderBuildException;
+import org.grouplens.lenskit.baseline.BaselineScorer;
+import org.grouplens.lenskit.baseline.FallbackItemScorer;
+import org.grouplens.lenskit.baseline.GlobalMeanRatingItemScorer;
+import org.grouplens.lenskit.baseline.PrimaryScorer;
+import org.grouplens.lenskit.baseline.ScoreSource;
+import org.grouplens.lenskit.core.LenskitConfiguration;
+import org.grouplens.lenskit.core.LenskitRecommender;
+import org.grouplens.lenskit.data.dao.EventCollectionDAO;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TopNItemRecommenderTest {
+    private LenskitConfiguration config;
+
+    @Before
+    public void setUp() {
+        List<Rating> rs = new ArrayList<Rating>();
+        rs.add(Ratings.make(1, 40, 3));
+        rs.add(Ratings.make(2, 10, 4));
+        rs.add(Ratings.make(2, 20, 2));
+        rs.add(Ratings.make(2, 30, 5));
+        EventDAO dao = EventCollectionDAO.create(rs);
+
+        ItemScorer primary = PrecomputedItemScorer.newBuilder()
+                                                  .addScore(1, 10, 4.5)
+                                                  .addScore(1, 20, 2.5)
+                                                  .build();
+        config = new LenskitConfiguration();
+        config.bind(EventDAO.class).to(dao);
+        config.bind(ItemScorer.class).to(FallbackItemScorer.class);
+        config.bind(PrimaryScorer.class, ItemScorer.class).to(primary);
+        config.bind(BaselineScorer.class, ItemScorer.class).to(GlobalMeanRatingItemScorer.class);
+    }
+
+    @Test
+    public void testIncludesChannelsByDefault() throws RecommenderBuildException {
+        ItemRecommender irec = LenskitRecommender.build(config).getItemRecommender();
+        List<ScoredId> recs = irec.recommend(1);
+        assertThat(recs, hasSize(3));
+        for (ScoredId id: recs) {
+            assertThat(id.hasChannel(FallbackItemScorer.SCORE_SOURCE_SYMBOL),
+                       equalTo(true));
+        }
+        assertThat(recs.get(0).getId(), equalTo(10L));
+        assertThat(recs.get(0).getChannelValue(FallbackItemScorer.SCORE_SOURCE_SYMBOL),
+                   equalTo(ScoreSource.PRIMARY));
+        assertThat(recs.get(1).getId(), equalTo(30L));
+        assertThat(recs.get(1).getChannelValue(FallbackItemScorer.SCORE_SOURCE_SYMBOL),
+                   equalTo(ScoreSource.BASELINE));
+    }
+
+    @Test
+    public void testExcludeChannels() throws RecommenderBuildException {
+        config.set(TopNItemRecommender.IncludeChannels.class).to(false);
+        ItemRecommender irec = LenskitRecommender.build(config).getItemRecommender();
+        List<ScoredId> recs = irec.recommend(1);
+        assertThat(recs, hasSize(3));
+        assertThat(recs.get(0).getId(), equalTo(10L));
+        assertThat(recs.get(1).getId(), equalTo(30L));
+        assertThat(recs.get(2).getId(), equalTo(20L));
+        for (ScoredId id: recs) {
+            assertThat(id.getChannelSymbols(), hasSize(0));
+            assertThat(id.getUnboxedChannelSymbols(), hasSize(0));
+            assertThat(id.hasChannel(FallbackItemScorer.SCORE_SOURCE_SYMBOL),
+                       equalTo(false));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao;
+
+import com.google.common.collect.Lists;
+import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Events;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class CompactRatingStoreTest {
+    private List<Event> events;
+    private CompactRatingStore store;
+
+    @Before
+    public void createStore() {
+        events = Lists.<Event>newArrayList(
+                Ratings.make(5, 2, 3.5, 10),
+                Ratings.make(1, 3, 4, 12),
+                Ratings.make(1, 2, 2, 11),
+                Ratings.newBuilder().setUserId(5).setItemId(3).setTimestamp(13).build(),
+                Ratings.make(39, 2, 4.5, 14)
+        );
+        store = CompactRatingStore.fromEvents(Cursors.wrap(events));
+    }
+
+    @Test
+    public void testIds() {
+        assertThat(store.size(), equalTo(5));
+        assertThat(store.getUserIds(), containsInAnyOrder(1L, 5L, 39L));
+        assertThat(store.getItemIds(), containsInAnyOrder(2L, 3L));
+    }
+
+    @Test
+    public void testUserHistory() {
+        UserHistory<Rating> user1 = store.getUserHistory(1);
+        assertThat(user1.getUserId(), equalTo(1L));
+        // histories are in timestamp order, not load order
+        assertThat(user1, contains(Ratings.make(1, 2, 2, 11),
+                                   Ratings.make(1, 3, 4, 12)));
+        assertThat(user1.itemSet(), containsInAnyOrder(2L, 3L));
+        // the view is retained, so memoized summaries are shared
+        assertThat(store.getUserHistory(1), sameInstance(user1));
+        assertThat(store.getUserHistory(2), nullValue());
+    }
+
+    @Test
+    public void testUnrate() {
+        UserHistory<Rating> user5 = store.getUserHistory(5);
+        assertThat(user5, hasSize(2));
+        assertThat(user5.get(0).hasValue(), equalTo(true));
+        assertThat(user5.get(1).hasValue(), equalTo(false));
+        assertThat(user5.get(1).getTimestamp(), equalTo(13L));
+    }
+
+    @Test
+    public void testItemEvents() {
+        CompactRatingStore.ItemEventList item2 = store.getItemEvents(2);
+        assertThat(item2.getItemId(), equalTo(2L));
+        assertThat(item2, contains(Ratings.make(5, 2, 3.5, 10),
+                                   Ratings.make(1, 2, 2, 11),
+                                   Ratings.make(39, 2, 4.5, 14)));
+        assertThat(store.getUsersForItem(2), containsInAnyOrder(1L, 5L, 39L));
+        assertThat(store.getItemEvents(7), nullValue());
+        assertThat(store.getUsersForItem(7), nullValue());
+    }
+
+    @Test
+    public void testStreams() {
+        assertThat(Cursors.makeList(store.streamUserHistories()), hasSize(3));
+        assertThat(Cursors.makeList(store.streamItemEvents()), hasSize(2));
+    }
+
+    @Test
+    public void testNonRatingEvents() {
+        events.add(Events.like(1, 7));
+        assertThat(CompactRatingStore.fromEvents(Cursors.wrap(events)), nullValue());
+    }
+
+    @Test
+    public void testPrefetchingFallback() {
+        events.add(Events.like(1, 7));
+        EventDAO dao = EventCollectionDAO.create(events);
+        PrefetchingUserEventDAO udao = new PrefetchingUserEventDAO(dao);
+        assertThat(udao.getEventsForUser(1), hasSize(3));
+        PrefetchingItemEventDAO idao = new PrefetchingItemEventDAO(dao);
+        assertThat(idao.getEventsForItem(7), hasSize(1));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao.packed;
+
+import com.google.common.collect.ImmutableList;
+import org.grouplens.lenskit.data.dao.EventCollectionDAO;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.apache.commons.lang3.SerializationUtils;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.data.pref.IndexedPreference;
+import org.grouplens.lenskit.data.snapshot.IdDictionary;
+import org.grouplens.lenskit.data.snapshot.IdDictionaryBuilder;
+import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class BinaryPreferenceSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    List<Rating> ratings;
+
+    @Before
+    public void createRatingList() {
+        ImmutableList.Builder<Rating> bld = ImmutableList.builder();
+        bld.add(Ratings.make(42, 105, 3.5, 100L))
+           .add(Ratings.make(42, 120, 2.5, 110L))
+           .add(Ratings.make(39, 120, 4.5, 120L))
+           .add(Ratings.make(42, 105, 4.0, 130L))
+           .add(Ratings.make(39, 105, 1.5, 140L))
+           .add(Ratings.newBuilder().setUserId(39).setItemId(120).setTimestamp(150L).build())
+           .add(Ratings.make(57, 130, 5.0, 160L));
+        ratings = bld.build();
+    }
+
+    private BinaryRatingDAO pack(BinaryFormatFlag... flags) throws IOException {
+        File file = folder.newFile("ratings.bin");
+        BinaryRatingPacker packer = BinaryRatingPacker.open(file, flags);
+        try {
+            packer.writeRatings(ratings);
+        } finally {
+            packer.close();
+        }
+        return BinaryRatingDAO.open(file);
+    }
+
+    @Test
+    public void testEmptySnapshot() throws IOException {
+        File file = folder.newFile("ratings.bin");
+        BinaryRatingPacker.open(file).close();
+        BinaryPreferenceSnapshot snap = BinaryPreferenceSnapshot.create(BinaryRatingDAO.open(file), null);
+        assertThat(snap.getRatings(), hasSize(0));
+        assertThat(snap.getUserIds(), hasSize(0));
+        assertThat(snap.getUserRatings(42), hasSize(0));
+    }
+
+    @Test
+    public void testDeduplicatedRatings() throws IOException {
+        BinaryPreferenceSnapshot snap = BinaryPreferenceSnapshot.create(pack(BinaryFormatFlag.TIMESTAMPS), null);
+        assertThat(snap.size(), equalTo(4));
+        assertThat(snap.getUserIds(), containsInAnyOrder(39L, 42L, 57L));
+        assertThat(snap.getItemIds(), containsInAnyOrder(105L, 120L, 130L));
+
+        SparseVector v42 = snap.userRatingVector(42);
+        assertThat(v42.size(), equalTo(2));
+        assertThat(v42.get(105), closeTo(4.0, 1.0e-6));
+        assertThat(v42.get(120), closeTo(2.5, 1.0e-6));
+
+        // the unrate removes 39's rating of 120
+        SparseVector v39 = snap.userRatingVector(39);
+        assertThat(v39.keySet(), contains(105L));
+        assertThat(v39.get(105), closeTo(1.5, 1.0e-6));
+
+        assertThat(snap.getUserRatings(57), hasSize(1));
+        assertThat(snap.getUserRatings(100), hasSize(0));
+    }
+
+    @Test
+    public void testIndexes() throws IOException {
+        BinaryPreferenceSnapshot snap = BinaryPreferenceSnapshot.create(pack(BinaryFormatFlag.TIMESTAMPS),
+                                                                        new Random(42));
+        BitSet seen = new BitSet();
+        for (IndexedPreference pref: snap.getRatings()) {
+            assertThat(pref.getIndex(), allOf(greaterThanOrEqualTo(0), lessThan(snap.size())));
+            assertThat(seen.get(pref.getIndex()), equalTo(false));
+            seen.set(pref.getIndex());
+            assertThat(snap.userIndex().getId(pref.getUserIndex()),
+                       equalTo(pref.getUserId()));
+            assertThat(snap.itemIndex().getId(pref.getItemIndex()),
+                       equalTo(pref.getItemId()));
+            assertThat(snap.userRatingVector(pref.getUserId()).get(pref.getItemId()),
+                       closeTo(pref.getValue(), 1.0e-6));
+        }
+        assertThat(seen.cardinality(), equalTo(4));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testFastIteration() throws IOException {
+        BinaryPreferenceSnapshot snap = BinaryPreferenceSnapshot.create(pack(BinaryFormatFlag.TIMESTAMPS),
+                                                                        new Random(42));
+        Iterator<IndexedPreference> slow = snap.getRatings().iterator();
+        Iterator<IndexedPreference> fast = snap.getRatings().fastIterator();
+        IndexedPreference first = null;
+        while (slow.hasNext()) {
+            assertThat(fast.hasNext(), equalTo(true));
+            IndexedPreference exp = slow.next();
+            IndexedPreference act = fast.next();
+            if (first == null) {
+                first = act;
+            } else {
+                assertThat(act, sameInstance(first));
+            }
+            assertThat(act.getIndex(), equalTo(exp.getIndex()));
+            assertThat(act.getUserIndex(), equalTo(exp.getUserIndex()));
+            assertThat(act.getItemIndex(), equalTo(exp.getItemIndex()));
+            assertThat(act.getUserId(), equalTo(exp.getUserId()));
+            assertThat(act.getItemId(), equalTo(exp.getItemId()));
+            assertThat(act.getValue(), equalTo(exp.getValue()));
+        }
+        assertThat(fast.hasNext(), equalTo(false));
+    }
+
+    @Test
+    public void testCompactFormat() throws IOException {
+        // no timestamps, so file order decides which duplicate wins
+        BinaryPreferenceSnapshot snap = BinaryPreferenceSnapshot.create(pack(), null);
+        assertThat(snap.size(), equalTo(4));
+        assertThat(snap.userRatingVector(42).get(105), closeTo(4.0, 1.0e-6));
+    }
+
+    @Test
+    public void testBuilderFallsBack() {
+        PreferenceSnapshot snap = new BinaryPreferenceSnapshotBuilder(EventCollectionDAO.create(ratings),
+                                                                      new Random()).get();
+        assertThat(snap, not(instanceOf(BinaryPreferenceSnapshot.class)));
+        assertThat(snap.getRatings(), hasSize(4));
+    }
+
+    @Test
+    public void testBuilderUsesBinary() throws IOException {
+        PreferenceSnapshot snap = new BinaryPreferenceSnapshotBuilder(pack(BinaryFormatFlag.TIMESTAMPS),
+                                                                      new Random()).get();
+        assertThat(snap, instanceOf(BinaryPreferenceSnapshot.class));
+        assertThat(snap.getRatings(), hasSize(4));
+    }
+
+    @Test
+    public void testDictionaryFromPackFile() throws IOException {
+        BinaryRatingDAO dao = pack(BinaryFormatFlag.TIMESTAMPS);
+        IdDictionary dict = dao.getIdDictionary();
+        assertThat(dict.getUserIndex().getIdList(), contains(39L, 42L, 57L));
+        assertThat(dict.getItemIndex().getIdList(), contains(105L, 120L, 130L));
+        assertThat(new IdDictionaryBuilder(dao, dao).get(), sameInstance(dict));
+
+        BinaryPreferenceSnapshot snap = BinaryPreferenceSnapshot.create(dao, null);
+        assertThat(snap.userIndex(), sameInstance(dict.getUserIndex()));
+        assertThat(snap.itemIndex(), sameInstance(dict.getItemIndex()));
+
+        // the dictionary is restored with the DAO
+        BinaryRatingDAO copy = SerializationUtils.clone(dao);
+        assertThat(copy.getIdDictionary(), equalTo(dict));
+    }
+
+    @Test
+    public void testBuilderWithDictionary() throws IOException {
+        BinaryRatingDAO dao = pack(BinaryFormatFlag.TIMESTAMPS);
+        PreferenceSnapshot snap = new BinaryPreferenceSnapshotBuilder(dao, new Random(),
+                                                                      dao.getIdDictionary()).get();
+        assertThat(snap, instanceOf(BinaryPreferenceSnapshot.class));
+
+        // a different dictionary requires packing in memory
+        IdDictionary dict = IdDictionary.create(LongUtils.packedSet(39, 42, 57, 60),
+                                                LongUtils.packedSet(105, 120, 130));
+        snap = new BinaryPreferenceSnapshotBuilder(dao, new Random(), dict).get();
+        assertThat(snap, not(instanceOf(BinaryPreferenceSnapshot.class)));
+        assertThat(snap.userIndex(), sameInstance(dict.getUserIndex()));
+        assertThat(snap.getRatings(), hasSize(4));
+    }
+}
@@ -23,6 +23,7 @@ package org.grouplens.lenskit.data.dao.packed;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang3.SerializationUtils;
+import org.grouplens.lenskit.cursors.Cursor;
 import org.grouplens.lenskit.cursors.Cursors;
 import org.grouplens.lenskit.data.dao.SortOrder;
 import org.grouplens.lenskit.data.event.Event;
@@ -167,6 +168,66 @@ public class BinaryRatingDAOTest {
         verifySimpleDAO(clone);
     }
 
+    @Test
+    public void testFastIteration() throws IOException {
+        File file = folder.newFile("ratings.bin");
+        BinaryRatingPacker packer = BinaryRatingPacker.open(file, BinaryFormatFlag.TIMESTAMPS);
+        try {
+            packer.writeRatings(ratings);
+        } finally {
+            packer.close();
+        }
+
+        BinaryRatingDAO dao = BinaryRatingDAO.open(file);
+        for (SortOrder order: SortOrder.values()) {
+            // grouped orders concatenate one cursor (and one reused rating) per group
+            boolean singleCursor = order == SortOrder.ANY || order == SortOrder.TIMESTAMP;
+            Cursor<Rating> cursor = dao.streamEvents(Rating.class, order);
+            try {
+                List<Rating> copies = new ArrayList<Rating>();
+                Rating last = null;
+                for (Rating r: cursor.fast()) {
+                    if (singleCursor && last != null) {
+                        assertThat(r, sameInstance(last));
+                    }
+                    last = r;
+                    copies.add(Ratings.copyBuilder(r).build());
+                }
+                assertThat(copies, containsInAnyOrder(ratings.toArray()));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSplitCursors() throws IOException {
+        File file = folder.newFile("ratings.bin");
+        BinaryRatingPacker packer = BinaryRatingPacker.open(file, BinaryFormatFlag.TIMESTAMPS);
+        try {
+            packer.writeRatings(ratings);
+        } finally {
+            packer.close();
+        }
+
+        BinaryRatingDAO dao = BinaryRatingDAO.open(file);
+        List<Cursor<Rating>> parts = Cursors.split(dao.streamEvents(Rating.class), 4);
+        assertThat(parts, hasSize(3));
+        List<Rating> all = new ArrayList<Rating>();
+        for (Cursor<Rating> part: parts) {
+            all.addAll(Cursors.makeList(part));
+        }
+        assertThat(all, equalTo(ratings));
+
+        // user-sorted streams split between users
+        parts = Cursors.split(dao.streamEvents(Rating.class, SortOrder.USER), 4);
+        assertThat(parts, hasSize(2));
+        assertThat(Cursors.makeList(parts.get(0)),
+                   contains(ratings.get(2)));
+        assertThat(Cursors.makeList(parts.get(1)),
+                   contains(ratings.get(0), ratings.get(1)));
+    }
+
     private void verifySimpleDAO(BinaryRatingDAO dao) {
         assertThat(Cursors.makeList(dao.streamEvents()),
                    hasSize(3));
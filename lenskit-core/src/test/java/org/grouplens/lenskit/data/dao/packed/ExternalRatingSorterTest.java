@@ -0,0 +1,144 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.dao.packed;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.grouplens.lenskit.cursors.Cursor;
+import org.grouplens.lenskit.cursors.Cursors;
+import org.grouplens.lenskit.data.dao.SortOrder;
+import org.grouplens.lenskit.data.event.Event;
+import org.grouplens.lenskit.data.event.Events;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.history.History;
+import org.grouplens.lenskit.data.history.UserHistory;
+import org.grouplens.lenskit.data.text.TextEventDAO;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class ExternalRatingSorterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    List<Rating> ratings;
+
+    @Before
+    public void createRatings() {
+        Random rng = new Random(42);
+        ratings = new ArrayList<Rating>();
+        for (int i = 0; i < 500; i++) {
+            long user = rng.nextInt(20);
+            long item = rng.nextInt(50);
+            long ts = rng.nextInt(100);
+            if (i % 25 == 0) {
+                ratings.add(Ratings.newBuilder().setUserId(user).setItemId(item).setTimestamp(ts).build());
+            } else {
+                ratings.add(Ratings.make(user, item, rng.nextInt(10) / 2.0, ts));
+            }
+        }
+    }
+
+    private List<Rating> expected(SortOrder order) {
+        List<Rating> sorted = new ArrayList<Rating>(ratings);
+        Collections.sort(sorted, order.getEventComparator());
+        return sorted;
+    }
+
+    @Test
+    public void testInMemorySort() {
+        ExternalRatingSorter sorter = new ExternalRatingSorter(Events.USER_TIME_COMPARATOR);
+        Cursor<Rating> sorted = sorter.sort(Cursors.wrap(ratings));
+        assertThat(Cursors.makeList(sorted), equalTo(expected(SortOrder.USER)));
+    }
+
+    @Test
+    public void testExternalSort() throws IOException {
+        File dir = folder.newFolder("runs");
+        for (SortOrder order: new SortOrder[]{SortOrder.USER, SortOrder.ITEM, SortOrder.TIMESTAMP}) {
+            ExternalRatingSorter sorter = new ExternalRatingSorter(order.getEventComparator())
+                    .setRunSize(37)
+                    .setTempDirectory(dir);
+            Cursor<Rating> sorted = sorter.sort(Cursors.wrap(ratings));
+            assertThat(dir.list().length, greaterThan(1));
+            assertThat(sorted.getRowCount(), equalTo(ratings.size()));
+            // the sort is stable, so the output matches a stable in-memory sort exactly
+            assertThat(Cursors.makeList(sorted), equalTo(expected(order)));
+            assertThat(dir.list(), emptyArray());
+        }
+    }
+
+    @Test
+    public void testGroupSortedRatings() {
+        ExternalRatingSorter sorter = new ExternalRatingSorter(Events.USER_TIME_COMPARATOR).setRunSize(50);
+        Cursor<UserHistory<Rating>> histories = History.groupByUser(sorter.sort(Cursors.wrap(ratings)));
+        int n = 0;
+        long last = Long.MIN_VALUE;
+        for (UserHistory<Rating> history: histories) {
+            assertThat(history.getUserId(), greaterThan(last));
+            last = history.getUserId();
+            for (Rating r: history) {
+                assertThat(r.getUserId(), equalTo(last));
+            }
+            n += history.size();
+        }
+        assertThat(n, equalTo(ratings.size()));
+    }
+
+    @Test
+    public void testSortedTextDAO() throws IOException {
+        File file = folder.newFile("ratings.csv");
+        StringBuilder text = new StringBuilder();
+        for (Rating r: ratings) {
+            if (r.hasValue()) {
+                text.append(String.format("%d,%d,%s,%d\n", r.getUserId(), r.getItemId(),
+                                          r.getValue(), r.getTimestamp()));
+            }
+        }
+        Files.write(text, file, Charsets.UTF_8);
+
+        TextEventDAO dao = TextEventDAO.ratings(file, ",");
+        List<Event> events = Cursors.makeList(dao.streamEvents(Event.class, SortOrder.ITEM));
+        assertThat(events, hasSize(480));
+        for (Event e: events) {
+            assertThat(e, instanceOf(Rating.class));
+        }
+        for (int i = 1; i < events.size(); i++) {
+            assertThat(Events.ITEM_TIME_COMPARATOR.compare(events.get(i - 1), events.get(i)),
+                       lessThanOrEqualTo(0));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.data.snapshot;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.data.dao.EventCollectionDAO;
+import org.grouplens.lenskit.data.dao.EventDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingItemDAO;
+import org.grouplens.lenskit.data.dao.PrefetchingUserDAO;
+import org.grouplens.lenskit.data.event.Rating;
+import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.pref.IndexedPreference;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class IdDictionaryTest {
+    private EventDAO dao;
+
+    @Before
+    public void createDAO() {
+        List<Rating> rs = new ArrayList<Rating>();
+        rs.add(Ratings.make(5, 20, 3.0, 1));
+        rs.add(Ratings.make(3, 10, 4.0, 2));
+        rs.add(Ratings.make(5, 10, 2.5, 3));
+        rs.add(Ratings.make(8, 30, 5.0, 4));
+        dao = EventCollectionDAO.create(rs);
+    }
+
+    @Test
+    public void testCreate() {
+        IdDictionary dict = IdDictionary.create(LongUtils.packedSet(42, 7, 19),
+                                                LongUtils.packedSet(3, 1));
+        assertThat(dict.getUserIndex().size(), equalTo(3));
+        assertThat(dict.getUserIndex().getIdList(), contains(7L, 19L, 42L));
+        assertThat(dict.getUserIndex().getIndex(42), equalTo(2));
+        assertThat(dict.getUserIndex().tryGetIndex(8), lessThan(0));
+        assertThat(dict.getItemIndex().getIdList(), contains(1L, 3L));
+        assertThat(dict.getItemIndex().getId(1), equalTo(3L));
+    }
+
+    @Test
+    public void testNewDomain() {
+        IdDictionary dict = IdDictionary.create(LongUtils.packedSet(42, 7, 19),
+                                                LongUtils.packedSet(3, 1));
+        LongKeyDomain users = dict.newUserDomain();
+        assertThat(users.domainSize(), equalTo(3));
+        assertThat(users.size(), equalTo(3));
+        assertThat(users.getIndex(19), equalTo(dict.getUserIndex().getIndex(19)));
+
+        // modifying the copy does not affect the dictionary
+        users.setAllActive(false);
+        assertThat(dict.newUserDomain().size(), equalTo(3));
+        assertThat(dict.newItemDomain().activeSetView(), contains(1L, 3L));
+    }
+
+    @Test
+    public void testEqualsAndSerialize() {
+        IdDictionary dict = IdDictionary.create(LongUtils.packedSet(42, 7, 19),
+                                                LongUtils.packedSet(3, 1));
+        IdDictionary same = IdDictionary.create(LongUtils.packedSet(7, 19, 42),
+                                                LongUtils.packedSet(1, 3));
+        IdDictionary other = IdDictionary.create(LongUtils.packedSet(7, 19),
+                                                 LongUtils.packedSet(1, 3));
+        assertThat(dict, equalTo(same));
+        assertThat(dict, not(equalTo(other)));
+
+        IdDictionary copy = SerializationUtils.clone(dict);
+        assertThat(copy, equalTo(dict));
+        assertThat(copy.getUserIndex().getIndex(19), equalTo(1));
+    }
+
+    @Test
+    public void testBuildFromDAO() {
+        IdDictionary dict = new IdDictionaryBuilder(new PrefetchingUserDAO(dao),
+                                                    new PrefetchingItemDAO(dao)).get();
+        assertThat(dict.getUserIndex().getIdList(), contains(3L, 5L, 8L));
+        assertThat(dict.getItemIndex().getIdList(), contains(10L, 20L, 30L));
+    }
+
+    @Test
+    public void testSnapshotUsesDictionary() {
+        // the dictionary has a user with no ratings
+        IdDictionary dict = IdDictionary.create(LongUtils.packedSet(1, 3, 5, 8),
+                                                LongUtils.packedSet(10, 20, 30));
+        PackedPreferenceSnapshot snap =
+                new PackedPreferenceSnapshotBuilder(dao, new Random(), dict).get();
+        assertThat(snap.userIndex(), sameInstance(dict.getUserIndex()));
+        assertThat(snap.itemIndex(), sameInstance(dict.getItemIndex()));
+        assertThat(snap.getRatings(), hasSize(4));
+        for (IndexedPreference pref: snap.getRatings()) {
+            assertThat(pref.getUserIndex(), equalTo(dict.getUserIndex().getIndex(pref.getUserId())));
+            assertThat(pref.getItemIndex(), equalTo(dict.getItemIndex().getIndex(pref.getItemId())));
+        }
+        assertThat(snap.getUserRatings(1), hasSize(0));
+        assertThat(snap.userRatingVector(5).get(20), closeTo(3.0, 1.0e-6));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSnapshotMissingId() {
+        IdDictionary dict = IdDictionary.create(LongUtils.packedSet(3, 5),
+                                                LongUtils.packedSet(10, 20, 30));
+        new PackedPreferenceSnapshotBuilder(dao, new Random(), dict).get();
+    }
+}
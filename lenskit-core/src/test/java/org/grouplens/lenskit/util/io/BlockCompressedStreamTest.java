@@ -0,0 +1,120 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.io;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class BlockCompressedStreamTest {
+    private static byte[] roundTrip(byte[] data, int blockSize, int nthreads) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        OutputStream out = new BlockCompressedOutputStream(buf, blockSize, nthreads);
+        out.write(data);
+        out.close();
+        InputStream in = new BlockCompressedInputStream(new ByteArrayInputStream(buf.toByteArray()), nthreads);
+        try {
+            return ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertThat(roundTrip(new byte[0], 16, 1).length, equalTo(0));
+    }
+
+    @Test
+    public void testCompressibleSingleThread() throws IOException {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 17);
+        }
+        assertThat(roundTrip(data, 4096, 1), equalTo(data));
+    }
+
+    @Test
+    public void testRandomParallel() throws IOException {
+        // random data is incompressible, so blocks are stored
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        assertThat(roundTrip(data, 1000, 4), equalTo(data));
+    }
+
+    @Test
+    public void testMixedParallel() throws IOException {
+        Random rng = new Random(42);
+        byte[] data = new byte[250000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (i / 5000) % 2 == 0 ? (byte) rng.nextInt() : (byte) (i % 7);
+        }
+        assertThat(roundTrip(data, 3000, 3), equalTo(data));
+    }
+
+    @Test
+    public void testCompressionModeAndDetection() throws IOException {
+        assertThat(CompressionMode.AUTO.getEffectiveCompressionMode("model.bin.lkz"),
+                   equalTo(CompressionMode.BLOCK));
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(CompressionMode.BLOCK.wrapOutput(buf));
+        out.writeObject("hello, world");
+        out.close();
+
+        InputStream in = LKFileUtils.transparentlyDecompress(new ByteArrayInputStream(buf.toByteArray()));
+        assertThat(in, instanceOf(BlockCompressedInputStream.class));
+        try {
+            assertThat(new ObjectInputStream(in).readObject(), equalTo((Object) "hello, world"));
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError(e);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testBulkDoubles() throws IOException {
+        double[] data = new double[20000];
+        Random rng = new Random();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = rng.nextGaussian();
+        }
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        BulkArrayIO.writeDoubles(out, data, 0, data.length);
+        out.close();
+        assertThat(buf.size(), equalTo(data.length * 8));
+
+        // bulk data is readable element by element
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf.toByteArray()));
+        assertThat(in.readDouble(), equalTo(data[0]));
+        double[] rest = new double[data.length];
+        BulkArrayIO.readDoubles(in, rest, 1, data.length - 1);
+        for (int i = 1; i < data.length; i++) {
+            assertThat(rest[i], equalTo(data[i]));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.io;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ChunkedStreamTest {
+    @Test
+    public void testEmptyStream() throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        new ChunkedOutputStream(buf).close();
+        assertThat(buf.size(), equalTo(4));
+        InputStream in = new ChunkedInputStream(new ByteArrayInputStream(buf.toByteArray()));
+        assertThat(in.read(), equalTo(-1));
+    }
+
+    @Test
+    public void testRoundTripAndTrailingData() throws IOException {
+        byte[] data = new byte[10000];
+        new Random().nextBytes(data);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        OutputStream out = new ChunkedOutputStream(buf, 1000);
+        out.write(data, 0, 4321);
+        out.write(data[4321]);
+        out.write(data, 4322, data.length - 4322);
+        out.close();
+        buf.write(42);
+
+        InputStream raw = new ByteArrayInputStream(buf.toByteArray());
+        InputStream in = new ChunkedInputStream(raw);
+        assertThat(ByteStreams.toByteArray(in), equalTo(data));
+        // the chunked stream must not over-read its underlying stream
+        assertThat(raw.read(), equalTo(42));
+        assertThat(raw.read(), equalTo(-1));
+    }
+
+    @Test
+    public void testCloseSkipsRemainder() throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        OutputStream out = new ChunkedOutputStream(buf, 16);
+        out.write(new byte[100]);
+        out.close();
+        buf.write(7);
+
+        InputStream raw = new ByteArrayInputStream(buf.toByteArray());
+        InputStream in = new ChunkedInputStream(raw);
+        assertThat(in.read(new byte[20]), greaterThan(0));
+        in.close();
+        assertThat(raw.read(), equalTo(7));
+    }
+}
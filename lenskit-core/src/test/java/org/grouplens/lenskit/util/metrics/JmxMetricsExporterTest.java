@@ -0,0 +1,65 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import org.junit.Test;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class JmxMetricsExporterTest {
+    @Test
+    public void testExport() throws Exception {
+        SimpleMetricRegistry registry = new SimpleMetricRegistry();
+        registry.counter("requests").add(3);
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        JmxMetricsExporter exporter = new JmxMetricsExporter(registry, "test");
+        exporter.register(server);
+        try {
+            assertThat(server.isRegistered(exporter.getObjectName()), equalTo(true));
+            assertThat(server.getAttribute(exporter.getObjectName(), "requests"),
+                       equalTo((Object) 3L));
+
+            // metrics registered later are exported too
+            registry.timer("score").update(2, TimeUnit.MILLISECONDS);
+            assertThat(server.getAttribute(exporter.getObjectName(), "score.count"),
+                       equalTo((Object) 1L));
+            assertThat((Double) server.getAttribute(exporter.getObjectName(), "score.max"),
+                       closeTo(2.0, 1.0e-6));
+
+            List<String> names = new ArrayList<String>();
+            for (MBeanAttributeInfo info: server.getMBeanInfo(exporter.getObjectName()).getAttributes()) {
+                names.add(info.getName());
+            }
+            assertThat(names, hasItems("requests", "score.count", "score.mean", "score.p99"));
+        } finally {
+            exporter.unregister();
+        }
+        assertThat(server.isRegistered(exporter.getObjectName()), equalTo(false));
+    }
+}
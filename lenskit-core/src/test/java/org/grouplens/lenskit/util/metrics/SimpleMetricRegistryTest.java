@@ -0,0 +1,139 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.util.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SimpleMetricRegistryTest {
+    SimpleMetricRegistry registry;
+
+    @Before
+    public void createRegistry() {
+        registry = new SimpleMetricRegistry();
+    }
+
+    @Test
+    public void testName() {
+        assertThat(Metrics.name(String.class, "foo", "bar"),
+                   equalTo("java.lang.String.foo.bar"));
+    }
+
+    @Test
+    public void testCounter() {
+        Counter c = registry.counter("foo");
+        assertThat(c.getCount(), equalTo(0L));
+        c.increment();
+        c.add(5);
+        assertThat(c.getCount(), equalTo(6L));
+        assertThat(registry.counter("foo"), sameInstance(c));
+        assertThat(registry.getCounters().keySet(), contains("foo"));
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        Histogram h = registry.histogram("sizes");
+        assertThat(h.getCount(), equalTo(0L));
+        assertThat(h.getMin(), equalTo(0L));
+        assertThat(h.getMax(), equalTo(0L));
+        assertThat(h.getMean(), equalTo(0.0));
+        assertThat(h.getPercentile(0.5), equalTo(0L));
+    }
+
+    @Test
+    public void testHistogram() {
+        Histogram h = registry.histogram("sizes");
+        for (int i = 1; i <= 100; i++) {
+            h.update(i);
+        }
+        assertThat(h.getCount(), equalTo(100L));
+        assertThat(h.getMin(), equalTo(1L));
+        assertThat(h.getMax(), equalTo(100L));
+        assertThat(h.getMean(), closeTo(50.5, 1.0e-6));
+        // percentiles are accurate to a factor of 2
+        assertThat(h.getPercentile(0.5), allOf(greaterThanOrEqualTo(50L), lessThan(100L)));
+        assertThat(h.getPercentile(1), equalTo(100L));
+        assertThat(h.getPercentile(0), equalTo(1L));
+    }
+
+    @Test
+    public void testHistogramZero() {
+        Histogram h = registry.histogram("zeros");
+        h.update(0);
+        h.update(0);
+        assertThat(h.getPercentile(0.5), equalTo(0L));
+        assertThat(h.getMax(), equalTo(0L));
+    }
+
+    @Test
+    public void testTimer() {
+        Timer t = registry.timer("work");
+        t.update(3, TimeUnit.MILLISECONDS);
+        t.update(5, TimeUnit.MILLISECONDS);
+        Timer.Context ctx = t.start();
+        long elapsed = ctx.stop();
+        assertThat(elapsed, greaterThanOrEqualTo(0L));
+        assertThat(t.getCount(), equalTo(3L));
+        assertThat(t.getTotalTime(TimeUnit.MILLISECONDS), greaterThanOrEqualTo(8L));
+        assertThat(t.getDurations().getMax(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(5)));
+        assertThat(registry.timer("work"), sameInstance(t));
+    }
+
+    @Test
+    public void testNameReusedAcrossTypes() {
+        Counter c = registry.counter("foo");
+        try {
+            registry.timer("foo");
+            fail("reusing a counter name for a timer should fail");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+        try {
+            registry.histogram("foo");
+            fail("reusing a counter name for a histogram should fail");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+        assertThat(registry.counter("foo"), sameInstance(c));
+        assertThat(registry.getTimers().keySet(), empty());
+        assertThat(registry.getHistograms().keySet(), empty());
+        assertThat(registry.getMetrics().keySet(), contains("foo"));
+    }
+
+    @Test
+    public void testNoop() {
+        MetricRegistry noop = new NoopMetricRegistry();
+        Counter c = noop.counter("foo");
+        c.increment();
+        assertThat(c.getCount(), equalTo(0L));
+        Timer t = noop.timer("bar");
+        t.start().stop();
+        assertThat(t.getCount(), equalTo(0L));
+        noop.histogram("baz").update(10);
+        assertThat(noop.histogram("baz").getCount(), equalTo(0L));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors.similarity;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.VectorEntry;
+import org.grouplens.lenskit.vectors.Vectors;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Check that the similarity functions built on the intersection kernels produce exactly the
+ * results of straightforward implementations over {@link Vectors#fastIntersect(SparseVector, SparseVector)}.
+ *
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class FusedSimilarityTest {
+    private final Random random = new Random(1234);
+
+    private SparseVector randomVector(int n, int range, boolean ties) {
+        LongList keys = new LongArrayList();
+        while (keys.size() < n) {
+            long k = random.nextInt(range);
+            if (!keys.contains(k)) {
+                keys.add(k);
+            }
+        }
+        MutableSparseVector v = MutableSparseVector.create(keys);
+        for (VectorEntry e: v.view(VectorEntry.State.EITHER)) {
+            v.set(e, ties ? random.nextInt(5) + 1 : random.nextGaussian() * 2 + 3);
+        }
+        return v.freeze();
+    }
+
+    private static double referencePearson(SparseVector vec1, SparseVector vec2, double shrinkage) {
+        if (vec1.isEmpty() || vec2.isEmpty()) {
+            return 0;
+        }
+        double sum1 = 0;
+        double sum2 = 0;
+        int n = 0;
+        for (Pair<VectorEntry,VectorEntry> pair: Vectors.fastIntersect(vec1, vec2)) {
+            sum1 += pair.getLeft().getValue();
+            sum2 += pair.getRight().getValue();
+            n += 1;
+        }
+        if (n == 0) {
+            return 0;
+        }
+        final double mu1 = sum1 / n;
+        final double mu2 = sum2 / n;
+        double var1 = 0;
+        double var2 = 0;
+        double dot = 0;
+        for (Pair<VectorEntry,VectorEntry> pair: Vectors.fastIntersect(vec1, vec2)) {
+            final double v1 = pair.getLeft().getValue() - mu1;
+            final double v2 = pair.getRight().getValue() - mu2;
+            var1 += v1 * v1;
+            var2 += v2 * v2;
+            dot += v1 * v2;
+        }
+        return dot / (Math.sqrt(var1 * var2) + shrinkage);
+    }
+
+    private static double referenceDistance(SparseVector vec1, SparseVector vec2) {
+        LongSet ts = LongUtils.setUnion(vec1.keySet(), vec2.keySet());
+        MutableSparseVector v1 = MutableSparseVector.create(ts);
+        v1.fill(0);
+        v1.set(vec1);
+        v1.multiply(1.0 / v1.norm());
+        v1.addScaled(vec2, -1.0 / vec2.norm());
+        return 1 - v1.norm();
+    }
+
+    @Test
+    public void testCosine() {
+        VectorSimilarity sim = new CosineVectorSimilarity(10);
+        for (int i = 0; i < 100; i++) {
+            SparseVector v1 = randomVector(40, 100, false);
+            SparseVector v2 = randomVector(i % 2 == 0 ? 30 : 3, 100, false);
+            double expected = v1.dot(v2) / (v1.norm() * v2.norm() + 10);
+            assertThat(sim.similarity(v1, v2), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void testPearson() {
+        VectorSimilarity sim = new PearsonCorrelation(5);
+        for (int i = 0; i < 100; i++) {
+            SparseVector v1 = randomVector(40, 100, false);
+            SparseVector v2 = randomVector(i % 2 == 0 ? 30 : 3, 100, false);
+            assertThat(sim.similarity(v1, v2), equalTo(referencePearson(v1, v2, 5)));
+            assertThat(sim.similarity(v2, v1), equalTo(referencePearson(v2, v1, 5)));
+        }
+    }
+
+    @Test
+    public void testSpearman() {
+        VectorSimilarity sim = new SpearmanRankCorrelation(2);
+        for (int i = 0; i < 100; i++) {
+            SparseVector v1 = randomVector(40, 100, true);
+            SparseVector v2 = randomVector(i % 2 == 0 ? 30 : 3, 100, true);
+            double expected = referencePearson(SpearmanRankCorrelation.rank(v1),
+                                               SpearmanRankCorrelation.rank(v2), 2);
+            assertThat(sim.similarity(v1, v2), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void testDistance() {
+        VectorSimilarity sim = new DistanceVectorSimilarity();
+        for (int i = 0; i < 100; i++) {
+            SparseVector v1 = randomVector(40, 100, false);
+            SparseVector v2 = randomVector(i % 2 == 0 ? 30 : 3, 100, false);
+            assertThat(sim.similarity(v1, v2), equalTo(referenceDistance(v1, v2)));
+        }
+    }
+
+    @Test
+    public void testVectorStatistics() {
+        SparseVector v = MutableSparseVector.wrap(new long[]{1, 3, 7}, new double[]{1, -2, 4});
+        VectorStatistics stats = VectorStatistics.of(v);
+        assertThat(stats.getSize(), equalTo(3));
+        assertThat(stats.getSum(), equalTo(3.0));
+        assertThat(stats.getSumOfSquares(), equalTo(21.0));
+        assertThat(stats.getNorm(), equalTo(v.norm()));
+        assertThat(stats.getMean(), equalTo(1.0));
+        assertThat(Double.isNaN(VectorStatistics.of(MutableSparseVector.create()).getMean()),
+                   equalTo(true));
+    }
+
+    @Test
+    public void testStatisticsVariants() {
+        StatisticsVectorSimilarity[] sims = {
+                new CosineVectorSimilarity(10),
+                new DistanceVectorSimilarity(),
+                new SignificanceWeightedVectorSimilarity(20, new CosineVectorSimilarity()),
+                new SignificanceWeightedVectorSimilarity(20, new PearsonCorrelation())
+        };
+        for (int i = 0; i < 100; i++) {
+            SparseVector v1 = randomVector(40, 100, false);
+            SparseVector v2 = randomVector(i % 2 == 0 ? 30 : 3, 100, false);
+            VectorStatistics s1 = VectorStatistics.of(v1);
+            VectorStatistics s2 = VectorStatistics.of(v2);
+            for (StatisticsVectorSimilarity sim: sims) {
+                assertThat(sim.toString(), sim.similarity(v1, s1, v2, s2),
+                           equalTo(sim.similarity(v1, v2)));
+            }
+        }
+    }
+}
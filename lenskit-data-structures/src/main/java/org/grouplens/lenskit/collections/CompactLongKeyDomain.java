@@ -40,7 +40,8 @@ class CompactLongKeyDomain extends LongKeyDomain {
         keys = ks;
     }
 
-    public int getIndex(long key) {
+    @Override
+    int searchIndex(long key) {
         // this domain does not contain anything outside the range of integers
         if (key > Integer.MAX_VALUE || key < Integer.MIN_VALUE) {
             return -1;
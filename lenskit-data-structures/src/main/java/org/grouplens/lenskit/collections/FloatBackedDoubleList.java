@@ -0,0 +1,76 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.collections;
+
+import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+
+import java.io.Serializable;
+import java.util.RandomAccess;
+
+/**
+ * An immutable double list that stores its values in single precision.  It takes half the memory
+ * of a {@link it.unimi.dsi.fastutil.doubles.DoubleArrayList}, at the cost of rounding each value
+ * to the nearest {@code float}; it is meant for model storage where values such as ratings and
+ * similarities do not need double precision.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public final class FloatBackedDoubleList extends AbstractDoubleList implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final float[] values;
+
+    private FloatBackedDoubleList(float[] vs) {
+        values = vs;
+    }
+
+    /**
+     * Create a single-precision copy of a list of doubles.
+     *
+     * @param list The list to copy.
+     * @return A list containing the values of {@code list}, rounded to {@code float}.
+     */
+    public static FloatBackedDoubleList copyOf(DoubleList list) {
+        if (list instanceof FloatBackedDoubleList) {
+            return (FloatBackedDoubleList) list;
+        }
+        float[] vs = new float[list.size()];
+        DoubleIterator iter = list.iterator();
+        for (int i = 0; i < vs.length; i++) {
+            vs[i] = (float) iter.nextDouble();
+        }
+        return new FloatBackedDoubleList(vs);
+    }
+
+    @Override
+    public double getDouble(int index) {
+        ensureRestrictedIndex(index);
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+}
@@ -39,7 +39,8 @@ class FullLongKeyDomain extends LongKeyDomain {
         keys = ks;
     }
 
-    public int getIndex(long key) {
+    @Override
+    int searchIndex(long key) {
         return Arrays.binarySearch(keys, 0, domainSize, key);
     }
 
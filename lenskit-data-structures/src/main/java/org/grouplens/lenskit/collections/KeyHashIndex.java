@@ -0,0 +1,110 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.collections;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+/**
+ * Auxiliary open-addressing index over the keys of a {@link LongKeyDomain}.  Large domains use it
+ * to answer key lookups in a couple of probes instead of a binary search over the whole key array.
+ * The index stores key positions, not keys, so it is valid for every domain sharing the same keys
+ * and domain size, and is shared among clones.
+ *
+ * <p>The hash table itself is built lazily, once the domain has seen enough lookups to amortize
+ * the cost of building it; until then, {@link #find(LongKeyDomain, long)} reports that it is
+ * unavailable and the domain falls back to binary search.  Lookup counting is deliberately
+ * unsynchronized: a lost update only delays the build.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+final class KeyHashIndex {
+    /**
+     * Return value of {@link #find(LongKeyDomain, long)} when the table has not been built.
+     */
+    static final int UNAVAILABLE = Integer.MIN_VALUE;
+
+    private final int buildAfter;
+    private int lookups;
+    /**
+     * The hash table, holding key index + 1 in each slot (0 for an empty slot).  Volatile so that
+     * a thread that sees the table also sees its contents.
+     */
+    private volatile int[] slots;
+
+    /**
+     * Create a new key index.
+     * @param size The size of the domain to index.
+     */
+    KeyHashIndex(int size) {
+        buildAfter = Math.max(size >> 4, 1);
+    }
+
+    /**
+     * Look up the index of a key.
+     *
+     * @param domain The domain this index belongs to.
+     * @param key    The key to look up.
+     * @return The index of the key, -1 if the key is not in the domain, or {@link #UNAVAILABLE}
+     *         if the hash table has not yet been built.
+     */
+    int find(LongKeyDomain domain, long key) {
+        int[] table = slots;
+        if (table == null) {
+            lookups += 1;
+            if (lookups < buildAfter) {
+                return UNAVAILABLE;
+            }
+            table = build(domain);
+        }
+
+        final int mask = table.length - 1;
+        int pos = (int) HashCommon.murmurHash3(key) & mask;
+        int slot;
+        while ((slot = table[pos]) != 0) {
+            if (domain.getKey(slot - 1) == key) {
+                return slot - 1;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Build the hash table.
+     * @param domain The domain whose keys should be indexed.
+     * @return The hash table.
+     */
+    private int[] build(LongKeyDomain domain) {
+        final int n = domain.domainSize;
+        int[] table = new int[HashCommon.arraySize(n, 0.5f)];
+        final int mask = table.length - 1;
+        for (int i = 0; i < n; i++) {
+            int pos = (int) HashCommon.murmurHash3(domain.getKey(i)) & mask;
+            while (table[pos] != 0) {
+                pos = (pos + 1) & mask;
+            }
+            table[pos] = i + 1;
+        }
+        slots = table;
+        return table;
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.collections;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.longs.*;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable sorted set of longs stored as a bitmap.  The set stores one bit for each possible
+ * key between its smallest and largest elements, so it is only suitable for dense ID spaces (such
+ * as the item IDs of most data sets); for those, it is smaller than a sorted array, and set
+ * operations between two bitmap sets work a word (64 keys) at a time.
+ *
+ * <p>Use {@link LongUtils#compactSet(Collection)} to pick between a bitmap and a packed array
+ * based on the density of the IDs.  The set operations in {@link LongUtils} use the word-parallel
+ * operations of this class when their arguments are bitmap sets.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @compat Public
+ */
+public final class LongBitmapSet extends AbstractLongSortedSet implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of bits per element for a set of IDs to be considered dense.
+     */
+    static final int DENSITY_FACTOR = 32;
+
+    private static final LongBitmapSet EMPTY_SET = new LongBitmapSet(0, new long[0], 0);
+
+    /**
+     * The key of bit 0 of the first word.  Always a multiple of 64.
+     */
+    private final long base;
+    /**
+     * The bitmap.  The first and last words are nonzero, unless the set is empty.
+     */
+    private final long[] words;
+    private final int size;
+
+    private LongBitmapSet(long base, long[] words, int size) {
+        assert (base & 63) == 0;
+        this.base = base;
+        this.words = words;
+        this.size = size;
+    }
+
+    /**
+     * Get the empty bitmap set.
+     * @return An empty bitmap set.
+     */
+    public static LongBitmapSet empty() {
+        return EMPTY_SET;
+    }
+
+    /**
+     * Query whether a set of IDs is dense enough to store as a bitmap.
+     *
+     * @param min  The smallest ID.
+     * @param max  The largest ID.
+     * @param size The number of IDs.
+     * @return {@code true} if a bitmap will use no more than {@link #DENSITY_FACTOR} bits per ID.
+     */
+    static boolean isDense(long min, long max, int size) {
+        long span = max - min;
+        // a negative span means the subtraction overflowed
+        return size > 0 && span >= 0 && span / DENSITY_FACTOR < size;
+    }
+
+    /**
+     * Create a bitmap set from a collection of longs.  This works for any collection, but only
+     * makes sense for dense IDs; see {@link LongUtils#compactSet(Collection)}.
+     *
+     * @param items The items.
+     * @return A bitmap set containing the items.
+     * @throws IllegalArgumentException if the items span too large a range to store in a bitmap.
+     */
+    public static LongBitmapSet fromCollection(Collection<Long> items) {
+        if (items instanceof LongBitmapSet) {
+            return (LongBitmapSet) items;
+        }
+        if (items.isEmpty()) {
+            return EMPTY_SET;
+        }
+        LongCollection longs = LongUtils.asLongCollection(items);
+        long min, max;
+        if (longs instanceof LongSortedSet) {
+            min = ((LongSortedSet) longs).firstLong();
+            max = ((LongSortedSet) longs).lastLong();
+        } else {
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+            LongIterator iter = longs.iterator();
+            while (iter.hasNext()) {
+                long k = iter.nextLong();
+                min = Math.min(min, k);
+                max = Math.max(max, k);
+            }
+        }
+        long base = min & ~63L;
+        long nwords = ((max - base) >>> 6) + 1;
+        Preconditions.checkArgument(max - base >= 0 && nwords <= Integer.MAX_VALUE,
+                                    "key range too large for a bitmap");
+        long[] words = new long[(int) nwords];
+        int n = 0;
+        LongIterator iter = longs.iterator();
+        while (iter.hasNext()) {
+            long off = iter.nextLong() - base;
+            long bit = 1L << off;
+            int w = (int) (off >>> 6);
+            if ((words[w] & bit) == 0) {
+                words[w] |= bit;
+                n++;
+            }
+        }
+        return new LongBitmapSet(base, words, n);
+    }
+
+    /**
+     * Create a bitmap set from a bitmap, trimming empty words from either end.
+     * @param base The key of the first bit.
+     * @param words The bitmap (will be used directly if no trimming is needed).
+     * @return The bitmap set.
+     */
+    private static LongBitmapSet trimmed(long base, long[] words) {
+        int first = 0;
+        while (first < words.length && words[first] == 0) {
+            first++;
+        }
+        if (first == words.length) {
+            return EMPTY_SET;
+        }
+        int last = words.length - 1;
+        while (words[last] == 0) {
+            last--;
+        }
+        long[] trimmed = words;
+        if (first > 0 || last < words.length - 1) {
+            trimmed = Arrays.copyOfRange(words, first, last + 1);
+        }
+        int n = 0;
+        for (long w: trimmed) {
+            n += Long.bitCount(w);
+        }
+        return new LongBitmapSet(base + 64L * first, trimmed, n);
+    }
+
+    /**
+     * Get the number of bits in this bitmap.
+     * @return The number of bits (keys) covered by the bitmap.
+     */
+    private long bitCount() {
+        return 64L * words.length;
+    }
+
+    /**
+     * Get the key of the last bit in the bitmap.  This is not necessarily in the set, but it is
+     * computed so as not to overflow.
+     * @return The key corresponding to the last bit.
+     */
+    private long lastBitKey() {
+        return base + (bitCount() - 1);
+    }
+
+    /**
+     * Get the bit offset of a key, clamped to the range of the bitmap.
+     * @param key The key.
+     * @return The bit offset for the key, clamped to the range [0,{@link #bitCount()}].
+     */
+    private long clampedOffset(long key) {
+        if (key <= base) {
+            return 0;
+        }
+        long off = key - base;
+        if (off < 0 || off > bitCount()) {
+            // off < 0 means overflow, so key is far above our range
+            return bitCount();
+        } else {
+            return off;
+        }
+    }
+
+    private boolean testBit(long off) {
+        return (words[(int) (off >>> 6)] & (1L << off)) != 0;
+    }
+
+    /**
+     * Find the first set bit at or after an offset.
+     * @param from The offset to start at.
+     * @return The offset of the first set bit, or -1 if there is no such bit.
+     */
+    private long nextSetBit(long from) {
+        if (from >= bitCount()) {
+            return -1;
+        }
+        int w = (int) (from >>> 6);
+        long word = words[w] & (-1L << from);
+        while (word == 0) {
+            w++;
+            if (w >= words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return 64L * w + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Find the last set bit before an offset.
+     * @param to The offset to search before (exclusive).
+     * @return The offset of the last set bit before {@code to}, or -1 if there is no such bit.
+     */
+    private long previousSetBit(long to) {
+        if (to <= 0) {
+            return -1;
+        }
+        long from = to - 1;
+        int w = (int) (from >>> 6);
+        long word = words[w] & (-1L >>> (63 - (from & 63)));
+        while (word == 0) {
+            w--;
+            if (w < 0) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return 64L * w + 63 - Long.numberOfLeadingZeros(word);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(long key) {
+        long off = key - base;
+        // overflow in the subtraction can only produce values outside the bitmap
+        return off >= 0 && off < bitCount() && testBit(off);
+    }
+
+    @Override
+    public LongComparator comparator() {
+        return null;
+    }
+
+    @Override
+    public long firstLong() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return base + nextSetBit(0);
+    }
+
+    @Override
+    public long lastLong() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return base + previousSetBit(bitCount());
+    }
+
+    @Override
+    public LongBidirectionalIterator iterator() {
+        return new BitIterator(0);
+    }
+
+    @Override
+    public LongBidirectionalIterator iterator(long from) {
+        // the iterator starts after from
+        if (from < base) {
+            return new BitIterator(0);
+        } else {
+            return new BitIterator(clampedOffset(from) + (contains(from) ? 1 : 0));
+        }
+    }
+
+    @Override
+    public LongSortedSet subSet(long from, long to) {
+        return slice(clampedOffset(from), clampedOffset(to));
+    }
+
+    @Override
+    public LongSortedSet headSet(long to) {
+        return slice(0, clampedOffset(to));
+    }
+
+    @Override
+    public LongSortedSet tailSet(long from) {
+        return slice(clampedOffset(from), bitCount());
+    }
+
+    /**
+     * Make a bitmap set containing a range of this set's bits.
+     * @param lo The first bit offset (inclusive).
+     * @param hi The last bit offset (exclusive).
+     * @return The bitmap set.
+     */
+    private LongBitmapSet slice(long lo, long hi) {
+        if (lo >= hi) {
+            return EMPTY_SET;
+        }
+        int first = (int) (lo >>> 6);
+        int last = (int) ((hi - 1) >>> 6);
+        long[] sliced = Arrays.copyOfRange(words, first, last + 1);
+        sliced[0] &= -1L << lo;
+        sliced[sliced.length - 1] &= -1L >>> (63 - ((hi - 1) & 63));
+        return trimmed(base + 64L * first, sliced);
+    }
+
+    /**
+     * Compute the union of this set with another bitmap set.  The result spans the range of both
+     * sets, so the caller should make sure the two sets are not far apart.
+     *
+     * @param other The other set.
+     * @return A bitmap set containing the elements of both sets.
+     * @throws IllegalArgumentException if the union spans too large a range for a bitmap.
+     */
+    public LongBitmapSet union(LongBitmapSet other) {
+        if (other.isEmpty()) {
+            return this;
+        } else if (isEmpty()) {
+            return other;
+        }
+        long lo = Math.min(base, other.base);
+        long hi = Math.max(lastBitKey(), other.lastBitKey());
+        long nwords = ((hi - lo) >>> 6) + 1;
+        Preconditions.checkArgument(hi - lo >= 0 && nwords <= Integer.MAX_VALUE,
+                                    "key range too large for a bitmap");
+        long[] result = new long[(int) nwords];
+        int off = (int) ((base - lo) >>> 6);
+        System.arraycopy(words, 0, result, off, words.length);
+        int ooff = (int) ((other.base - lo) >>> 6);
+        for (int i = 0; i < other.words.length; i++) {
+            result[ooff + i] |= other.words[i];
+        }
+        return trimmed(lo, result);
+    }
+
+    /**
+     * Compute the intersection of this set with another bitmap set.
+     * @param other The other set.
+     * @return A bitmap set containing the elements in both sets.
+     */
+    public LongBitmapSet intersection(LongBitmapSet other) {
+        if (isEmpty() || other.isEmpty()) {
+            return EMPTY_SET;
+        }
+        long lo = Math.max(base, other.base);
+        long hi = Math.min(lastBitKey(), other.lastBitKey());
+        if (lo > hi) {
+            return EMPTY_SET;
+        }
+        long[] result = new long[(int) ((hi - lo) >>> 6) + 1];
+        int off = (int) ((lo - base) >>> 6);
+        int ooff = (int) ((lo - other.base) >>> 6);
+        for (int i = 0; i < result.length; i++) {
+            result[i] = words[off + i] & other.words[ooff + i];
+        }
+        return trimmed(lo, result);
+    }
+
+    /**
+     * Compute the size of the intersection of this set with another bitmap set, without
+     * materializing it.
+     * @param other The other set.
+     * @return The number of elements in both sets.
+     */
+    public int intersectionSize(LongBitmapSet other) {
+        if (isEmpty() || other.isEmpty()) {
+            return 0;
+        }
+        long lo = Math.max(base, other.base);
+        long hi = Math.min(lastBitKey(), other.lastBitKey());
+        if (lo > hi) {
+            return 0;
+        }
+        int n = (int) ((hi - lo) >>> 6) + 1;
+        int off = (int) ((lo - base) >>> 6);
+        int ooff = (int) ((lo - other.base) >>> 6);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            count += Long.bitCount(words[off + i] & other.words[ooff + i]);
+        }
+        return count;
+    }
+
+    /**
+     * Compute the difference of this set and another set.  If the other set is a bitmap set, the
+     * difference is computed a word at a time; otherwise, each element of the other set is cleared
+     * from a copy of this set's bitmap.
+     *
+     * @param other The set of elements to remove.
+     * @return A bitmap set containing the elements of this set that are not in {@code other}.
+     */
+    public LongBitmapSet difference(LongSet other) {
+        if (isEmpty() || other.isEmpty()) {
+            return this;
+        }
+        long[] result = words.clone();
+        if (other instanceof LongBitmapSet) {
+            LongBitmapSet obm = (LongBitmapSet) other;
+            long lo = Math.max(base, obm.base);
+            long hi = Math.min(lastBitKey(), obm.lastBitKey());
+            if (lo > hi) {
+                return this;
+            }
+            int n = (int) ((hi - lo) >>> 6) + 1;
+            int off = (int) ((lo - base) >>> 6);
+            int ooff = (int) ((lo - obm.base) >>> 6);
+            for (int i = 0; i < n; i++) {
+                result[off + i] &= ~obm.words[ooff + i];
+            }
+        } else {
+            LongIterator iter = other.iterator();
+            while (iter.hasNext()) {
+                long off = iter.nextLong() - base;
+                if (off >= 0 && off < bitCount()) {
+                    result[(int) (off >>> 6)] &= ~(1L << off);
+                }
+            }
+        }
+        return trimmed(base, result);
+    }
+
+    /**
+     * Bidirectional iterator over the set bits.  The cursor is the bit offset from which
+     * {@link #nextLong()} searches forward and before which {@link #previousLong()} searches
+     * backward.
+     */
+    private class BitIterator extends AbstractLongBidirectionalIterator {
+        private long cursor;
+
+        BitIterator(long start) {
+            cursor = start;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextSetBit(cursor) >= 0;
+        }
+
+        @Override
+        public long nextLong() {
+            long bit = nextSetBit(cursor);
+            if (bit < 0) {
+                throw new NoSuchElementException();
+            }
+            cursor = bit + 1;
+            return base + bit;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return previousSetBit(cursor) >= 0;
+        }
+
+        @Override
+        public long previousLong() {
+            long bit = previousSetBit(cursor);
+            if (bit < 0) {
+                throw new NoSuchElementException();
+            }
+            cursor = bit;
+            return base + bit;
+        }
+    }
+}
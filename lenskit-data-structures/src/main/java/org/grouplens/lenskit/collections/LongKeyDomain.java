@@ -38,6 +38,11 @@ import java.util.*;
  * A key set has a <em>domain</em>, which is the set of all possible keys that it can contain.
  * These keys are stored in an array.  The <em>active</em> keys are those that are actually in
  * the set.  Active/inactive status is tracked with a bitmask.
+ * <p>
+ * Lookups in small domains use binary search over the key array.  Domains with at least
+ * {@link #HASH_INDEX_THRESHOLD} keys also build an auxiliary hash index over the keys once they
+ * have seen enough lookups, so that lookups in large sparse vectors do not pay for a long series of
+ * cache-unfriendly probes.  The key array itself always stays sorted.
  *
  * @since 2.0
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
@@ -78,11 +83,39 @@ public abstract class LongKeyDomain implements Serializable {
     public static LongKeyDomain fromCollection(Collection<Long> keys, boolean initiallyActive) {
         if (keys instanceof LongSortedArraySet) {
             return ((LongSortedArraySet) keys).getDomain().compactCopy(initiallyActive);
+        } else if (keys instanceof LongBitmapSet) {
+            return fromSortedSet((LongBitmapSet) keys, initiallyActive);
         } else {
             return fromIterator(keys.size(), keys.iterator(), initiallyActive);
         }
     }
 
+    /**
+     * Build a key domain from a set that iterates its keys in ascending order with no duplicates,
+     * filling the key array directly without sorting or deduplicating.
+     * @param keys The key set.
+     * @param initiallyActive Whether the keys should be initially active.
+     * @return The key domain.
+     */
+    private static LongKeyDomain fromSortedSet(LongSortedSet keys, boolean initiallyActive) {
+        int size = keys.size();
+        BitSet mask = new BitSet(size);
+        mask.set(0, size, initiallyActive);
+        if (size == 0 || (keys.firstLong() >= Integer.MIN_VALUE
+                          && keys.lastLong() <= Integer.MAX_VALUE)) {
+            int[] keyArray = new int[size];
+            LongIterator iter = keys.iterator();
+            for (int i = 0; i < size; i++) {
+                keyArray[i] = (int) iter.nextLong();
+            }
+            return new CompactLongKeyDomain(keyArray, size, mask);
+        } else {
+            long[] keyArray = keys.toLongArray();
+            assert keyArray.length == size;
+            return new FullLongKeyDomain(keyArray, size, mask);
+        }
+    }
+
     /**
      * Build a key domain from an iterator.
      * @param nmax The maximum number of items to include.
@@ -171,9 +204,22 @@ public abstract class LongKeyDomain implements Serializable {
 
     private static final long serialVersionUID = 2L;
 
+    /**
+     * The domain size at which key lookups start using a {@link KeyHashIndex} instead of binary
+     * search.  Hash lookups overtake binary search at around 64 to 128 keys; the threshold is set
+     * somewhat higher to keep the index's memory off small vectors.  Can be overridden with the
+     * {@code lenskit.collections.keyHashThreshold} system property.
+     */
+    static final int HASH_INDEX_THRESHOLD =
+            Integer.getInteger("lenskit.collections.keyHashThreshold", 256);
+
     final int domainSize;
     private final BitSet mask;
     private boolean unowned = false;
+    /**
+     * The hash index, created on first lookup for large domains and shared with clones.
+     */
+    private transient volatile KeyHashIndex hashIndex;
 
     LongKeyDomain(int size, BitSet m) {
         domainSize = size;
@@ -188,7 +234,54 @@ public abstract class LongKeyDomain implements Serializable {
      *         value is the <em>insertion point</em>, as defined by
      *         {@link Arrays#binarySearch(long[], int, int, long)}.
      */
-    public abstract int getIndex(long key);
+    public int getIndex(long key) {
+        KeyHashIndex hidx = getHashIndex();
+        if (hidx != null) {
+            int idx = hidx.find(this, key);
+            if (idx >= 0) {
+                return idx;
+            }
+        }
+        // not found or no index, binary search to find the insertion point
+        return searchIndex(key);
+    }
+
+    /**
+     * Search for the index of a key with binary search.
+     * @param key The key.
+     * @return The index or insertion point, as in {@link #getIndex(long)}.
+     */
+    abstract int searchIndex(long key);
+
+    /**
+     * Find the index of a key without computing the insertion point for missing keys.
+     * @param key The key.
+     * @return The index, or a negative value if the key is not in the domain.
+     */
+    private int findIndex(long key) {
+        KeyHashIndex hidx = getHashIndex();
+        if (hidx != null) {
+            int idx = hidx.find(this, key);
+            if (idx != KeyHashIndex.UNAVAILABLE) {
+                return idx;
+            }
+        }
+        return searchIndex(key);
+    }
+
+    /**
+     * Get the hash index for this domain, creating it if the domain is large enough.
+     * @return The hash index, or {@code null} if this domain is too small to need one.
+     */
+    KeyHashIndex getHashIndex() {
+        KeyHashIndex hidx = hashIndex;
+        if (hidx == null && domainSize >= HASH_INDEX_THRESHOLD) {
+            // racing threads may each create an index; that only wastes a little work
+            hidx = new KeyHashIndex(domainSize);
+            hashIndex = hidx;
+        }
+        return hidx;
+    }
 
     /**
      * Get the index for a key if that key is active.
@@ -196,7 +289,7 @@ public abstract class LongKeyDomain implements Serializable {
      * @return The index, or a negative value if the key is not in the domain or is inactive.
      */
     public int getIndexIfActive(long key) {
-        int idx = getIndex(key);
+        int idx = findIndex(key);
         if(idx >= 0 && !mask.get(idx)) {
             return -idx - 1;
         } else {
@@ -252,10 +345,22 @@ public abstract class LongKeyDomain implements Serializable {
             unowned = false;
             return this;
         } else {
-            return makeClone((BitSet) mask.clone());
+            return shareIndex(makeClone((BitSet) mask.clone()));
         }
     }
 
+    /**
+     * Share this domain's hash index with a domain that has the same keys.
+     * @param copy The domain copy.
+     * @return The domain copy (for chaining).
+     */
+    private LongKeyDomain shareIndex(LongKeyDomain copy) {
+        assert copy.domainSize == domainSize;
+        // create the (lazily-built) index now, so copies made before the first lookup share it
+        copy.hashIndex = getHashIndex();
+        return copy;
+    }
+
     /**
      * Make a clone of this key domain.
      * @param mask The mask for the clone (the clone will use this mask instance directly).
@@ -291,7 +396,7 @@ public abstract class LongKeyDomain implements Serializable {
      * @return The new key set, with the same keys but all of them deactivated.
      */
     public LongKeyDomain inactiveCopy() {
-        return makeClone(new BitSet(domainSize));
+        return shareIndex(makeClone(new BitSet(domainSize)));
     }
 
     /**
@@ -315,7 +420,7 @@ public abstract class LongKeyDomain implements Serializable {
             // fast path: all keys are active, just compact if needed
             BitSet newMask = new BitSet(domainSize);
             newMask.set(0, domainSize, active);
-            return makeCompactCopy(newMask);
+            return shareIndex(makeCompactCopy(newMask));
         } else {
             // slow path: we cannot count on all keys being active
             return fromIterator(size(), keyIterator(activeIndexIterator(false)), active);
@@ -353,7 +458,7 @@ public abstract class LongKeyDomain implements Serializable {
      * @return {@code true} if the key is in the domain.
      */
     public boolean containsKey(long key) {
-        return getIndex(key) >= 0;
+        return findIndex(key) >= 0;
     }
 
     /**
@@ -464,7 +569,7 @@ public abstract class LongKeyDomain implements Serializable {
         // TODO Cache the domain
         BitSet bits = new BitSet(domainSize);
         bits.set(0, domainSize);
-        return new LongSortedArraySet(makeClone(bits));
+        return new LongSortedArraySet(shareIndex(makeClone(bits)));
     }
 
     /**
@@ -52,6 +52,25 @@ public final class LongUtils {
         return LongKeyDomain.create(longs).activeSetView();
     }
 
+    /**
+     * Pack longs into the most compact immutable sorted set for them.  Dense IDs, such as the
+     * item IDs of most data sets, are stored in a {@link LongBitmapSet}; other IDs are packed
+     * into a sorted array as by {@link #packedSet(Collection)}.
+     *
+     * @param longs A collection of longs.
+     * @return An efficient sorted set containing the numbers in {@code longs}.
+     * @since 2.2
+     */
+    public static LongSortedSet compactSet(Collection<Long> longs) {
+        LongSortedSet packed = packedSet(longs);
+        if (!packed.isEmpty()
+                && LongBitmapSet.isDense(packed.firstLong(), packed.lastLong(), packed.size())) {
+            return LongBitmapSet.fromCollection(packed);
+        } else {
+            return packed;
+        }
+    }
+
     /**
      * Get a Fastutil {@link it.unimi.dsi.fastutil.longs.LongCollection} from a {@link java.util.Collection} of longs.
      * This method simply casts the collection, if possible, and returns a
@@ -93,6 +112,12 @@ public final class LongUtils {
      * @return The elements of {@var items} that are not in {@var exclude}.
      */
     public static LongSortedSet setDifference(LongSet items, LongSet exclude) {
+        if (items instanceof LongBitmapSet
+                && (exclude instanceof LongBitmapSet || exclude.size() <= items.size())) {
+            // clear the excluded bits from a copy of the bitmap
+            return ((LongBitmapSet) items).difference(exclude);
+        }
+
         long[] data = new long[items.size()];
         final LongIterator iter = items.iterator();
         int i = 0;
@@ -121,6 +146,9 @@ public final class LongUtils {
      * @return The size of the union of the two sets.
      */
     public static int unionSize(LongSortedSet a, LongSortedSet b) {
+        if (a instanceof LongBitmapSet && b instanceof LongBitmapSet) {
+            return a.size() + b.size() - ((LongBitmapSet) a).intersectionSize((LongBitmapSet) b);
+        }
         if (a instanceof LongSortedArraySet && b instanceof LongSortedArraySet) {
             LongKeyDomain da = ((LongSortedArraySet) a).getDomain();
             LongKeyDomain db = ((LongSortedArraySet) b).getDomain();
@@ -165,6 +193,18 @@ public final class LongUtils {
      * @return The elements of {@var items} that are not in {@var exclude}.
      */
     public static LongSortedSet setUnion(LongSortedSet a, LongSortedSet b) {
+        if (a instanceof LongBitmapSet && b instanceof LongBitmapSet) {
+            if (a.isEmpty()) {
+                return b;
+            } else if (b.isEmpty()) {
+                return a;
+            }
+            long min = Math.min(a.firstLong(), b.firstLong());
+            long max = Math.max(a.lastLong(), b.lastLong());
+            if (LongBitmapSet.isDense(min, max, a.size() + b.size())) {
+                return ((LongBitmapSet) a).union((LongBitmapSet) b);
+            }
+        }
         if (a instanceof LongSortedArraySet && b instanceof LongSortedArraySet) {
             LongKeyDomain da = ((LongSortedArraySet) a).getDomain();
             LongKeyDomain db = ((LongSortedArraySet) b).getDomain();
@@ -68,13 +68,11 @@ public abstract class AbstractCursor<T> implements Cursor<T> {
      */
     @Nonnull
     @Override
-    @Deprecated
     public T fastNext() {
         return next();
     }
 
     @Override
-    @Deprecated
     public Iterable<T> fast() {
         return new FastIterable();
     }
@@ -63,7 +63,6 @@ public abstract class AbstractPollingCursor<T> extends AbstractCursor<T> {
 
     @Nonnull
     @Override
-    @Deprecated
     public T fastNext() {
         if (!hasNextCalled) {
             polled = poll();
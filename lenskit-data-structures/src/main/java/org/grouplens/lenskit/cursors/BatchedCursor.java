@@ -0,0 +1,80 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.cursors;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.WillCloseWhenClosed;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor that groups the elements of another cursor into fixed-size batches.
+ *
+ * @param <T> The element type of the underlying cursor.
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @see Cursors#batch(Cursor, int)
+ */
+class BatchedCursor<T> extends AbstractCursor<List<T>> {
+    private final Cursor<? extends T> cursor;
+    private final int batchSize;
+
+    public BatchedCursor(@WillCloseWhenClosed Cursor<? extends T> cur, int size) {
+        super(batchCount(cur.getRowCount(), size));
+        Preconditions.checkArgument(size > 0, "batch size must be positive");
+        cursor = cur;
+        batchSize = size;
+    }
+
+    private static int batchCount(int rows, int size) {
+        if (rows < 0 || size <= 0) {
+            return -1;
+        } else {
+            return (rows + size - 1) / size;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor.hasNext();
+    }
+
+    @Nonnull
+    @Override
+    public List<T> next() {
+        if (!cursor.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<T> batch = new ArrayList<T>(batchSize);
+        while (batch.size() < batchSize && cursor.hasNext()) {
+            batch.add(cursor.next());
+        }
+        return batch;
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
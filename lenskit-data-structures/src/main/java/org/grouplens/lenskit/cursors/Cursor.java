@@ -81,22 +81,26 @@ public interface Cursor<T> extends Iterable<T>, Closeable {
      * object after the iteration in which it is retrieved, using this iteration
      * method can improve both speed and memory use.
      *
+     * <p>The returned object is only valid until the next call to {@link #hasNext()},
+     * {@link #next()}, or {@code fastNext()}; callers must not retain it, and must copy
+     * any data they need to keep.  Cursors that cannot reuse objects implement this
+     * method by delegating to {@link #next()}, so fast iteration is always safe to
+     * request.
+     *
      * @return The next element from the cursor, reusing objects if possible.
      * @see Cursor#next()
-     * @deprecated Fast iteration is going away
      */
-    @Deprecated
     @Nonnull
     T fastNext();
 
     /**
      * Convert the cursor to an iterable whose {@link Iterator#next()} method is
-     * implemented in terms of {@link #fastNext()}.
+     * implemented in terms of {@link #fastNext()}.  This is intended for full scans
+     * that copy the data they need out of each element, such as loading data into a
+     * model-building structure.
      *
      * @return An iterable for fast iteration.
-     * @deprecated Fast iteration is going away.
      */
-    @Deprecated
     Iterable<T> fast();
 
     /**
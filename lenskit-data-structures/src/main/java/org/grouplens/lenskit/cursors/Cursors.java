@@ -22,6 +22,7 @@ package org.grouplens.lenskit.cursors;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
 
 import javax.annotation.WillClose;
@@ -53,14 +54,19 @@ public final class Cursors {
     }
 
     /**
-     * Wrap a collection in a cursor.
+     * Wrap a collection in a cursor.  If the collection is a random-access list, the resulting
+     * cursor is a {@link SplittableCursor}.
      *
      * @param <T>        The type of data to return.
      * @param collection A collection to wrap
      * @return A cursor returning the elements of the collection.
      */
     public static <T> Cursor<T> wrap(Collection<? extends T> collection) {
-        return new IteratorCursor<T>(collection.iterator(), collection.size());
+        if (collection instanceof List && collection instanceof RandomAccess) {
+            return new ListCursor<T>((List<? extends T>) collection, 0, collection.size());
+        } else {
+            return new IteratorCursor<T>(collection.iterator(), collection.size());
+        }
     }
 
     /**
@@ -88,25 +94,10 @@ public final class Cursors {
      * @return A cursor returning all elements in {@var cursor} which are
      *         instances of type {@var type}.
      */
+    @SuppressWarnings("unchecked")
     public static <T> Cursor<T> filter(@WillCloseWhenClosed final Cursor<?> cursor, final Class<T> type) {
-        return new AbstractPollingCursor<T>() {
-            @SuppressWarnings("unchecked")
-            @Override
-            protected T poll() {
-                while (cursor.hasNext()) {
-                    final Object obj = cursor.next();
-                    if (type.isInstance(obj)) {
-                        return (T) obj;
-                    }
-                }
-                return null;
-            }
-
-            @Override
-            public void close() {
-                cursor.close();
-            }
-        };
+        // the predicate guarantees that every returned object is a T
+        return new FilteredCursor<T>((Cursor<T>) cursor, Predicates.instanceOf(type));
     }
 
     /**
@@ -203,4 +194,62 @@ public final class Cursors {
     public static <T> Cursor<T> concat(Cursor<? extends T>... cursors) {
         return concat(Arrays.asList(cursors));
     }
+
+    /**
+     * Split a cursor into several parts for parallel processing.  If the cursor is a
+     * {@link SplittableCursor}, it is split repeatedly (largest part first) until there are
+     * {@var n} parts or no part can be split further; otherwise, the cursor is returned by itself.
+     * Processing the parts in list order visits elements in the cursor's original order.
+     *
+     * @param cursor The cursor to split.  It becomes one of the returned parts.
+     * @param n      The desired number of parts.
+     * @param <T>    The cursor's element type.
+     * @return A list of at most {@var n} cursors that together return the elements of
+     *         {@var cursor}. All must be closed.
+     * @since 2.2
+     */
+    public static <T> List<Cursor<T>> split(@WillCloseWhenClosed Cursor<T> cursor, int n) {
+        Preconditions.checkArgument(n > 0, "number of parts must be positive");
+        List<Cursor<T>> parts = new ArrayList<Cursor<T>>(n);
+        // whether each part might still be splittable
+        List<Boolean> splittable = new ArrayList<Boolean>(n);
+        parts.add(cursor);
+        splittable.add(cursor instanceof SplittableCursor);
+        while (parts.size() < n) {
+            int best = -1;
+            for (int i = 0; i < parts.size(); i++) {
+                if (splittable.get(i)
+                        && (best < 0 || parts.get(i).getRowCount() > parts.get(best).getRowCount())) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            SplittableCursor<T> prefix = ((SplittableCursor<T>) parts.get(best)).trySplit();
+            if (prefix == null) {
+                splittable.set(best, false);
+            } else {
+                parts.add(best, prefix);
+                splittable.add(best, true);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Group a cursor's elements into batches.  This is useful for handing the elements of a
+     * cursor that cannot be {@linkplain #split(Cursor, int) split} to worker threads in chunks:
+     * one thread reads batches, and each batch is independent of the cursor.
+     *
+     * @param cursor    The cursor to batch.
+     * @param batchSize The number of elements per batch; the last batch may be smaller.
+     * @param <T>       The element type.
+     * @return A cursor of batches.  Each batch is a fresh list of elements obtained with
+     *         {@link Cursor#next()}.
+     * @since 2.2
+     */
+    public static <T> Cursor<List<T>> batch(@WillCloseWhenClosed Cursor<? extends T> cursor, int batchSize) {
+        return new BatchedCursor<T>(cursor, batchSize);
+    }
 }
@@ -20,18 +20,34 @@
  */
 package org.grouplens.lenskit.cursors;
 
-import javax.annotation.WillCloseWhenClosed;
-
 import com.google.common.base.Predicate;
 
+import javax.annotation.Nonnull;
+import javax.annotation.WillCloseWhenClosed;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
 /**
- * A wrapper cursor that filters its underlying cursor.
+ * A wrapper cursor that filters its underlying cursor.  Fast iteration is passed through to the
+ * underlying cursor, so reused objects are not copied.  Since {@link #hasNext()} must fetch the
+ * next element to test it, it looks ahead with the underlying cursor's {@link Cursor#next()},
+ * so the element it finds may be returned by either {@link #next()} or {@link #fastNext()}.
+ * The iterator returned by {@link #fast()} is the exception: its {@code hasNext()} looks ahead
+ * with {@link Cursor#fastNext()}, so fast iteration through it does not copy.
+ *
+ * <p>An element fetched by fast look-ahead cannot be copied, so calling {@link #next()} directly
+ * after the {@link #fast()} iterator's {@code hasNext()} is an error.
+ *
  * @param <T> The cursor's element type.
  */
-class FilteredCursor<T> extends AbstractPollingCursor<T> {
+class FilteredCursor<T> extends AbstractCursor<T> {
     private final Cursor<T> cursor;
     private final Predicate<? super T> filter;
-
+    private T pending;
+    /**
+     * Whether {@link #pending} was fetched with fast iteration, and therefore may be reused.
+     */
+    private boolean pendingIsFast;
     /**
      * Construct a new filtered cursor.
      * @param cur The underlying cursor.
@@ -48,16 +64,81 @@ class FilteredCursor<T> extends AbstractPollingCursor<T> {
         cursor.close();
     }
 
-    @Override
-    protected T poll() {
+    /**
+     * Advance to the next acceptable element, if there is not one pending.
+     * @param fast Whether to use fast iteration on the underlying cursor.
+     * @return {@code true} if there is a pending element.
+     */
+    private boolean advance(boolean fast) {
+        if (pending != null) {
+            return true;
+        }
         while (cursor.hasNext()) {
-            final T next = cursor.next();
+            final T next = fast ? cursor.fastNext() : cursor.next();
             if (filter.apply(next)) {
-                return next;
+                pending = next;
+                pendingIsFast = fast;
+                return true;
             }
         }
+        return false;
+    }
+
+    private T take() {
+        final T n = pending;
+        pending = null;
+        return n;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return advance(false);
+    }
+
+    @Nonnull
+    @Override
+    public T next() {
+        if (!advance(false)) {
+            throw new NoSuchElementException();
+        }
+        if (pendingIsFast) {
+            throw new IllegalStateException("next() called after fast iterator looked ahead");
+        }
+        return take();
+    }
+
+    @Nonnull
+    @Override
+    public T fastNext() {
+        // a pending element fetched with next() is also fine to return
+        if (!advance(true)) {
+            throw new NoSuchElementException();
+        }
+        return take();
+    }
 
-        // Reached the end of the base cursor, so return null
-        return null;
+    @Override
+    public Iterable<T> fast() {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new Iterator<T>() {
+                    @Override
+                    public boolean hasNext() {
+                        return advance(true);
+                    }
+
+                    @Override
+                    public T next() {
+                        return fastNext();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
     }
 }
@@ -0,0 +1,94 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.cursors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Splittable cursor over a range of a random-access list.
+ *
+ * @param <T> The cursor's element type.
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ * @see Cursors#wrap(java.util.Collection)
+ */
+class ListCursor<T> extends AbstractCursor<T> implements SplittableCursor<T> {
+    private List<? extends T> list;
+    private int next;
+    private final int end;
+
+    /**
+     * Construct a new list cursor.
+     * @param lst The list, which should implement {@link java.util.RandomAccess}.
+     * @param start The index of the first element.
+     * @param end The index one past the last element.
+     */
+    public ListCursor(List<? extends T> lst, int start, int end) {
+        list = lst;
+        next = start;
+        this.end = end;
+    }
+
+    @Override
+    public int getRowCount() {
+        return end - next;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return list != null && next < end;
+    }
+
+    @Nonnull
+    @Override
+    public T next() {
+        if (list == null) {
+            throw new IllegalStateException("cursor closed");
+        }
+        if (next >= end) {
+            throw new NoSuchElementException();
+        }
+        T obj = list.get(next);
+        next += 1;
+        return obj;
+    }
+
+    @Nullable
+    @Override
+    public SplittableCursor<T> trySplit() {
+        if (list == null || end - next < 2) {
+            return null;
+        }
+        int mid = (next + end) >>> 1;
+        ListCursor<T> prefix = new ListCursor<T>(list, next, mid);
+        next = mid;
+        return prefix;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        list = null;
+    }
+}
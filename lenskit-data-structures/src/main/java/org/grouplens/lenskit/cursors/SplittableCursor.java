@@ -0,0 +1,51 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.cursors;
+
+import javax.annotation.Nullable;
+
+/**
+ * A cursor whose remaining elements can be partitioned, so that disjoint parts of a scan can be
+ * processed by different threads.  This is modeled on the {@code trySplit} operation of Java 8
+ * spliterators: a successful split hands a prefix of the remaining elements to a new cursor and
+ * leaves this cursor with the rest.  Encounter order is preserved by processing the split-off
+ * cursor's elements before this cursor's.
+ * <p>
+ * For a splittable cursor, {@link #getRowCount()} reports the number of elements <em>remaining</em>,
+ * so it can be used to balance splits.  The cursors produced by splitting are independent of each
+ * other and may be iterated concurrently, but each individual cursor is still only usable from one
+ * thread at a time.  Use {@link Cursors#split(Cursor, int)} to split a cursor into several parts.
+ *
+ * @param <T> The type of data returned by the cursor.
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public interface SplittableCursor<T> extends Cursor<T> {
+    /**
+     * Try to split this cursor.
+     *
+     * @return A cursor over a prefix of this cursor's remaining elements, which have been removed
+     *         from this cursor; or {@code null} if this cursor cannot be split (for example, because
+     *         it has too few elements left).
+     */
+    @Nullable
+    SplittableCursor<T> trySplit();
+}
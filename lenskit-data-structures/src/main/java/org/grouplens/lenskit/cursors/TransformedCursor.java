@@ -65,4 +65,10 @@ class TransformedCursor<S, T> extends AbstractCursor<T> {
     public T next() {
         return function.apply(cursor.next());
     }
+
+    @Nonnull
+    @Override
+    public T fastNext() {
+        return function.apply(cursor.fastNext());
+    }
 }
@@ -21,6 +21,7 @@
 package org.grouplens.lenskit.indexes;
 
 import it.unimi.dsi.fastutil.longs.LongList;
+import org.grouplens.lenskit.collections.LongKeyDomain;
 
 import java.io.Serializable;
 import java.util.Collection;
@@ -96,4 +97,18 @@ public abstract class IdIndexMapping implements Serializable {
         bld.addAll(ids);
         return bld.build();
     }
+
+    /**
+     * Create an index mapping over the keys of a key domain.  Each key's index is its position
+     * in the domain, so the mapping's indexes are interchangeable with the domain's (and with
+     * those of any mapping created by {@link #create(Collection)} from the same IDs).  All keys are
+     * indexed, regardless of their active state.
+     *
+     * @param domain The key domain.  It is not copied, and must not be modified.
+     * @return An index mapping backed by the key domain.
+     * @since 2.2
+     */
+    public static IdIndexMapping fromDomain(LongKeyDomain domain) {
+        return new ImmutableIdIndexMapping(domain);
+    }
 }
@@ -40,6 +40,14 @@ final class ImmutableIdIndexMapping extends IdIndexMapping {
         assert domain.size() == domain.domainSize();
     }
 
+    /**
+     * Create an index mapping over the keys of a key domain, without copying it.
+     * @param keys The key domain.  All keys are indexed, regardless of their active state.
+     */
+    public ImmutableIdIndexMapping(LongKeyDomain keys) {
+        domain = keys;
+    }
+
     @Override
     public int tryGetIndex(long id) {
         return domain.getIndex(id);
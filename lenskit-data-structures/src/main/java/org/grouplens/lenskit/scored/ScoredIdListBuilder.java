@@ -32,6 +32,7 @@ import it.unimi.dsi.fastutil.longs.LongList;
 import it.unimi.dsi.fastutil.objects.Reference2ObjectArrayMap;
 import org.apache.commons.lang3.builder.Builder;
 import org.grouplens.lenskit.collections.CompactableLongArrayList;
+import org.grouplens.lenskit.collections.FloatBackedDoubleList;
 import org.grouplens.lenskit.symbols.DoubleSymbolValue;
 import org.grouplens.lenskit.symbols.Symbol;
 import org.grouplens.lenskit.symbols.SymbolValue;
@@ -57,6 +58,7 @@ public class ScoredIdListBuilder implements Builder<PackedScoredIdList> {
     private CompactableLongArrayList ids;
     private DoubleArrayList scores;
     private boolean ignoreUnknown = false;
+    private boolean floatPrecision = false;
     private Map<Symbol,ChannelStorage> channels;
     private Map<TypedSymbol<?>,TypedChannelStorage<?>> typedChannels;
 
@@ -104,10 +106,12 @@ public class ScoredIdListBuilder implements Builder<PackedScoredIdList> {
         if (size() > 0) {
             ImmutableMap.Builder<Symbol, DoubleList> cbld = ImmutableMap.builder();
             for (ChannelStorage chan: channels.values()) {
-                DoubleArrayList built;
-                if (reuse) {
+                DoubleList built;
+                if (floatPrecision) {
+                    built = FloatBackedDoubleList.copyOf(chan.values);
+                } else if (reuse) {
+                    chan.values.trim();
                     built = chan.values;
-                    built.trim();
                 } else {
                     built = new DoubleArrayList(chan.values);
                 }
@@ -135,12 +139,20 @@ public class ScoredIdListBuilder implements Builder<PackedScoredIdList> {
         if (reuse) {
             ids.trim();
             builtIds = ids;
-            scores.trim();
-            builtScores = scores;
+            if (floatPrecision) {
+                builtScores = FloatBackedDoubleList.copyOf(scores);
+            } else {
+                scores.trim();
+                builtScores = scores;
+            }
             clear();
         } else {
             builtIds = new CompactableLongArrayList(ids);
-            builtScores = new DoubleArrayList(scores);
+            if (floatPrecision) {
+                builtScores = FloatBackedDoubleList.copyOf(scores);
+            } else {
+                builtScores = new DoubleArrayList(scores);
+            }
         }
         return new PackedScoredIdList(builtIds, builtScores, typedChans, chans);
     }
@@ -388,6 +400,19 @@ public class ScoredIdListBuilder implements Builder<PackedScoredIdList> {
         return this;
     }
 
+    /**
+     * Set the builder to store scores and unboxed channel values in single precision.  This
+     * halves the memory used for them in the built list, at the cost of rounding each value to
+     * the nearest {@code float}; the list still presents its values as doubles.
+     *
+     * @return The builder (for chaining).
+     * @since 2.2
+     */
+    public ScoredIdListBuilder useFloatPrecision() {
+        floatPrecision = true;
+        return this;
+    }
+
     /**
      * Sort the list-in-progress by the specified comparator.
      * @param order The comparator.
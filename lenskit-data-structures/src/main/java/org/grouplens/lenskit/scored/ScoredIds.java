@@ -36,6 +36,7 @@ import javax.annotation.Nullable;
 import java.util.AbstractCollection;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Utility classes for working with {@linkplain ScoredId scored IDs}.
@@ -241,6 +242,22 @@ public final class ScoredIds {
         return new VectorIdCollection(vector);
     }
 
+    /**
+     * View a list of scored IDs with the side channels of a vector.  Channel values are looked up
+     * in the vector when they are accessed, rather than copied into the list, so this is cheap
+     * when few channel values are actually read.  Every unboxed channel of the vector is present
+     * on each ID, with the value {@link Double#NaN} if the vector's channel has no value for it.
+     *
+     * @param ids    The scored IDs.  Only their IDs and scores are used.
+     * @param vector The vector supplying the channels.  It must not be modified while the view is
+     *               in use.
+     * @return A view of {@code ids} with the channels of {@code vector}.
+     * @since 2.2
+     */
+    public static List<ScoredId> withVectorChannels(List<ScoredId> ids, SparseVector vector) {
+        return new VectorChannelScoredIdList(ids, vector);
+    }
+
     @SuppressWarnings("deprecation")
     private static class VectorIdCollection extends AbstractCollection<ScoredId> implements FastCollection<ScoredId> {
 
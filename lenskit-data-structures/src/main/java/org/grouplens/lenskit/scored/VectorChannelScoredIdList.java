@@ -0,0 +1,209 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.scored;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import org.grouplens.lenskit.symbols.DoubleSymbolValue;
+import org.grouplens.lenskit.symbols.Symbol;
+import org.grouplens.lenskit.symbols.SymbolValue;
+import org.grouplens.lenskit.symbols.TypedSymbol;
+import org.grouplens.lenskit.vectors.SparseVector;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * List of scored IDs whose side channels are looked up in a sparse vector's channels on access,
+ * rather than copied.  Every unboxed channel of the vector is present on every ID (with a value of
+ * {@link Double#NaN} if the channel has no value for the ID); typed channels are present if they
+ * have a non-null value for the ID.  This matches the result of copying the channels into a
+ * {@link ScoredIdListBuilder} with {@link Double#NaN} as the default unboxed channel value.
+ *
+ * <p>The list reads the vector live, so it should only be used with vectors that will not be
+ * modified.  It is serialized as a packed copy.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+class VectorChannelScoredIdList extends AbstractList<ScoredId> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<ScoredId> ids;
+    private final SparseVector vector;
+
+    /**
+     * Create a new channel-projecting list.
+     * @param ids The IDs and scores.  Their own channels, if any, are ignored.
+     * @param vec The vector whose channels should be projected onto the IDs.
+     */
+    VectorChannelScoredIdList(List<ScoredId> ids, SparseVector vec) {
+        this.ids = ids;
+        vector = vec;
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public ScoredId get(int i) {
+        ScoredId id = ids.get(i);
+        return new ChannelScoredId(id.getId(), id.getScore());
+    }
+
+    /**
+     * Replace the view with a packed copy for serialization.
+     * @return A packed copy of this list.
+     */
+    private Object writeReplace() {
+        ScoredIdListBuilder bld = ScoredIds.newListBuilder(size());
+        for (Symbol sym: vector.getChannelVectorSymbols()) {
+            bld.addChannel(sym, Double.NaN);
+        }
+        for (TypedSymbol<?> sym: vector.getChannelSymbols()) {
+            if (!sym.getType().equals(Double.class)) {
+                bld.addChannel(sym);
+            }
+        }
+        return bld.addAll(this).finish();
+    }
+
+    /**
+     * Scored ID that looks its channels up in the vector.
+     */
+    private class ChannelScoredId extends AbstractScoredId implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+        private final double score;
+
+        ChannelScoredId(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public Object writeReplace() {
+            return ScoredIds.copyBuilder(this).build();
+        }
+
+        @Override
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public Set<Symbol> getUnboxedChannelSymbols() {
+            return vector.getChannelVectorSymbols();
+        }
+
+        @Override
+        public Set<TypedSymbol<?>> getChannelSymbols() {
+            ImmutableSet.Builder<TypedSymbol<?>> bld = ImmutableSet.builder();
+            for (Symbol s: vector.getChannelVectorSymbols()) {
+                bld.add(s.withType(Double.class));
+            }
+            for (TypedSymbol<?> s: vector.getChannelSymbols()) {
+                if (!s.getType().equals(Double.class) && vector.getChannel(s).get(id) != null) {
+                    bld.add(s);
+                }
+            }
+            return bld.build();
+        }
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        @Nonnull
+        @Override
+        public Collection<SymbolValue<?>> getChannels() {
+            List<SymbolValue<?>> channels = Lists.newArrayList();
+            for (TypedSymbol s: vector.getChannelSymbols()) {
+                if (!s.getType().equals(Double.class)) {
+                    Object obj = vector.getChannel(s).get(id);
+                    if (obj != null) {
+                        channels.add(s.withValue(obj));
+                    }
+                }
+            }
+            channels.addAll(getUnboxedChannels());
+            return channels;
+        }
+
+        @Nonnull
+        @Override
+        public Collection<DoubleSymbolValue> getUnboxedChannels() {
+            List<DoubleSymbolValue> channels = Lists.newArrayList();
+            for (Symbol s: vector.getChannelVectorSymbols()) {
+                channels.add(SymbolValue.of(s, vector.getChannelVector(s).get(id, Double.NaN)));
+            }
+            return channels;
+        }
+
+        @Nullable
+        @Override
+        public <T> T getChannelValue(@Nonnull TypedSymbol<T> sym) {
+            if (sym.getType().equals(Double.class) && hasUnboxedChannel(sym.getRawSymbol())) {
+                return sym.getType().cast(getUnboxedChannelValue(sym.getRawSymbol()));
+            } else if (vector.hasChannel(sym)) {
+                Long2ObjectMap<T> channel = vector.getChannel(sym);
+                return channel.get(id);
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        public double getUnboxedChannelValue(Symbol sym) {
+            SparseVector chan = vector.getChannelVector(sym);
+            if (chan != null) {
+                return chan.get(id, Double.NaN);
+            } else {
+                throw new NullPointerException("no symbol " + sym);
+            }
+        }
+
+        @Override
+        public boolean hasUnboxedChannel(Symbol s) {
+            return vector.hasChannelVector(s);
+        }
+
+        @Override
+        public boolean hasChannel(TypedSymbol<?> s) {
+            if (s.getType().equals(Double.class) && hasUnboxedChannel(s.getRawSymbol())) {
+                return true;
+            } else {
+                return vector.hasChannel(s) && vector.getChannel(s).get(id) != null;
+            }
+        }
+    }
+}
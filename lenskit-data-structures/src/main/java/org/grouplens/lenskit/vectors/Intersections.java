@@ -0,0 +1,351 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors;
+
+import org.grouplens.lenskit.collections.LongKeyDomain;
+
+/**
+ * Allocation-free kernels over the common keys of two sparse vectors.  These work directly on
+ * the vectors' sorted key and value arrays, rather than creating an entry pair for each common
+ * key as {@link Vectors#fastIntersect(SparseVector, SparseVector)} does, so they are suitable
+ * for inner loops such as similarity computations over many vector pairs.
+ *
+ * <p>When one vector is much larger than the other, the kernels gallop (exponential search)
+ * through the larger vector's keys for each key of the smaller; otherwise they merge the two key
+ * arrays.  Results are accumulated in key order, so they are numerically identical to the
+ * equivalent loops over {@link Vectors#fastIntersect(SparseVector, SparseVector)}.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public final class Intersections {
+    /**
+     * Size ratio above which the kernels gallop instead of merging.
+     */
+    static final int GALLOP_RATIO = 8;
+
+    private static final ThreadLocal<int[][]> SCRATCH = new ThreadLocal<int[][]>() {
+        @Override
+        protected int[][] initialValue() {
+            return new int[][]{new int[64], new int[64]};
+        }
+    };
+
+    private Intersections() {}
+
+    /**
+     * Count the keys set in both vectors.
+     *
+     * @param v1 The first vector.
+     * @param v2 The second vector.
+     * @return The number of common keys.
+     */
+    public static int countCommonKeys(SparseVector v1, SparseVector v2) {
+        int[][] idx = scratch(v1, v2);
+        return intersectIndexes(v1.keys, v2.keys, idx[0], idx[1]);
+    }
+
+    /**
+     * Compute the dot product of two vectors.
+     *
+     * @param v1 The first vector.
+     * @param v2 The second vector.
+     * @return The dot product, equal to {@link SparseVector#dot(SparseVector)}.
+     */
+    public static double dot(SparseVector v1, SparseVector v2) {
+        int[][] idx = scratch(v1, v2);
+        int n = intersectIndexes(v1.keys, v2.keys, idx[0], idx[1]);
+        final int[] ia = idx[0];
+        final int[] ib = idx[1];
+        final double[] va = v1.values;
+        final double[] vb = v2.values;
+        double dot = 0;
+        for (int i = 0; i < n; i++) {
+            dot += va[ia[i]] * vb[ib[i]];
+        }
+        return dot;
+    }
+
+    /**
+     * Copy the values of the common keys of two vectors into arrays, in key order.
+     *
+     * @param v1   The first vector.
+     * @param v2   The second vector.
+     * @param out1 The array to receive values from {@code v1}.  It must be at least as long as
+     *             the number of common keys; {@code min(v1.size(), v2.size())} always suffices.
+     * @param out2 The array to receive values from {@code v2}, with the same length requirement.
+     * @return The number of common keys (and of values stored in each array).
+     */
+    public static int gatherValues(SparseVector v1, SparseVector v2, double[] out1, double[] out2) {
+        int[][] idx = scratch(v1, v2);
+        int n = intersectIndexes(v1.keys, v2.keys, idx[0], idx[1]);
+        final int[] ia = idx[0];
+        final int[] ib = idx[1];
+        final double[] va = v1.values;
+        final double[] vb = v2.values;
+        for (int i = 0; i < n; i++) {
+            out1[i] = va[ia[i]];
+            out2[i] = vb[ib[i]];
+        }
+        return n;
+    }
+
+    /**
+     * Find the positions of the common keys of two vectors.  A key's position is its index among
+     * the keys set in its vector, in key order; it indexes the array filled by
+     * {@link #copyValues(SparseVector, double[])}.
+     *
+     * @param v1   The first vector.
+     * @param v2   The second vector.
+     * @param pos1 The array to receive positions in {@code v1}, with the same length requirement
+     *             as for {@link #gatherValues(SparseVector, SparseVector, double[], double[])}.
+     * @param pos2 The array to receive positions in {@code v2}.
+     * @return The number of common keys.
+     */
+    public static int gatherPositions(SparseVector v1, SparseVector v2, int[] pos1, int[] pos2) {
+        LongKeyDomain ka = v1.keys;
+        LongKeyDomain kb = v2.keys;
+        if (ka.isCompletelySet() && kb.isCompletelySet()) {
+            // positions are domain indexes
+            return intersectIndexes(ka, kb, pos1, pos2);
+        }
+
+        // merge, counting the set keys as we go
+        final int na = ka.domainSize();
+        final int nb = kb.domainSize();
+        int ia = 0, ib = 0, pa = 0, pb = 0, n = 0;
+        while (ia < na && ib < nb) {
+            if (!ka.indexIsActive(ia)) {
+                ia++;
+            } else if (!kb.indexIsActive(ib)) {
+                ib++;
+            } else {
+                final long a = ka.getKey(ia);
+                final long b = kb.getKey(ib);
+                if (a < b) {
+                    ia++;
+                    pa++;
+                } else if (b < a) {
+                    ib++;
+                    pb++;
+                } else {
+                    pos1[n] = pa;
+                    pos2[n] = pb;
+                    n++;
+                    ia++;
+                    pa++;
+                    ib++;
+                    pb++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Copy the values set in a vector into an array, in key order.
+     *
+     * @param v   The vector.
+     * @param out The output array; it must be at least {@code v.size()} long.
+     * @return The number of values copied.
+     */
+    public static int copyValues(SparseVector v, double[] out) {
+        final LongKeyDomain keys = v.keys;
+        final double[] vals = v.values;
+        final int sz = keys.domainSize();
+        if (keys.isCompletelySet()) {
+            System.arraycopy(vals, 0, out, 0, sz);
+            return sz;
+        }
+        int n = 0;
+        for (int i = 0; i < sz; i++) {
+            if (keys.indexIsActive(i)) {
+                out[n++] = vals[i];
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Compute the Euclidean norm of a linear combination of two vectors, {@code s1 * v1 + s2 * v2},
+     * over the union of their keys.  This is equivalent to (and numerically matches) building the
+     * combined vector and taking its {@link SparseVector#norm()}, without allocating it.
+     *
+     * @param v1 The first vector.
+     * @param s1 The scale for the first vector.
+     * @param v2 The second vector.
+     * @param s2 The scale for the second vector.
+     * @return The norm of the scaled sum.
+     */
+    public static double normOfScaledSum(SparseVector v1, double s1, SparseVector v2, double s2) {
+        final LongKeyDomain ka = v1.keys;
+        final LongKeyDomain kb = v2.keys;
+        final double[] va = v1.values;
+        final double[] vb = v2.values;
+        final int na = ka.domainSize();
+        final int nb = kb.domainSize();
+        double ssq = 0;
+        int ia = 0, ib = 0;
+        while (ia < na || ib < nb) {
+            if (ia < na && !ka.indexIsActive(ia)) {
+                ia++;
+                continue;
+            }
+            if (ib < nb && !kb.indexIsActive(ib)) {
+                ib++;
+                continue;
+            }
+            double x;
+            if (ib >= nb || (ia < na && ka.getKey(ia) < kb.getKey(ib))) {
+                x = va[ia] * s1;
+                ia++;
+            } else if (ia >= na || kb.getKey(ib) < ka.getKey(ia)) {
+                x = 0.0 + vb[ib] * s2;
+                ib++;
+            } else {
+                x = va[ia] * s1 + vb[ib] * s2;
+                ia++;
+                ib++;
+            }
+            ssq += x * x;
+        }
+        return Math.sqrt(ssq);
+    }
+
+    /**
+     * Get index scratch arrays large enough for the intersection of two vectors.
+     */
+    private static int[][] scratch(SparseVector v1, SparseVector v2) {
+        int need = Math.min(v1.keys.domainSize(), v2.keys.domainSize());
+        int[][] bufs = SCRATCH.get();
+        if (bufs[0].length < need) {
+            int cap = Math.max(need, bufs[0].length * 2);
+            bufs[0] = new int[cap];
+            bufs[1] = new int[cap];
+        }
+        return bufs;
+    }
+
+    /**
+     * Find the domain indexes of the keys active in both domains.
+     *
+     * @param ka   The first key domain.
+     * @param kb   The second key domain.
+     * @param outA The array to receive indexes into {@code ka}.
+     * @param outB The array to receive indexes into {@code kb}.
+     * @return The number of common keys.
+     */
+    static int intersectIndexes(LongKeyDomain ka, LongKeyDomain kb, int[] outA, int[] outB) {
+        final int na = ka.domainSize();
+        final int nb = kb.domainSize();
+        if (na == 0 || nb == 0) {
+            return 0;
+        }
+        if (nb > na * GALLOP_RATIO) {
+            return gallop(ka, kb, outA, outB);
+        } else if (na > nb * GALLOP_RATIO) {
+            return gallop(kb, ka, outB, outA);
+        } else {
+            return merge(ka, kb, outA, outB);
+        }
+    }
+
+    private static int merge(LongKeyDomain ka, LongKeyDomain kb, int[] outA, int[] outB) {
+        final int na = ka.domainSize();
+        final int nb = kb.domainSize();
+        final boolean allSet = ka.isCompletelySet() && kb.isCompletelySet();
+        int ia = 0, ib = 0, n = 0;
+        long a = ka.getKey(0);
+        long b = kb.getKey(0);
+        while (true) {
+            if (a < b) {
+                if (++ia >= na) {
+                    break;
+                }
+                a = ka.getKey(ia);
+            } else if (b < a) {
+                if (++ib >= nb) {
+                    break;
+                }
+                b = kb.getKey(ib);
+            } else {
+                if (allSet || (ka.indexIsActive(ia) && kb.indexIsActive(ib))) {
+                    outA[n] = ia;
+                    outB[n] = ib;
+                    n++;
+                }
+                if (++ia >= na || ++ib >= nb) {
+                    break;
+                }
+                a = ka.getKey(ia);
+                b = kb.getKey(ib);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Intersect by searching the large domain for each key of the small one.
+     */
+    private static int gallop(LongKeyDomain small, LongKeyDomain large, int[] outSmall, int[] outLarge) {
+        final int ns = small.domainSize();
+        final int nl = large.domainSize();
+        final boolean smallSet = small.isCompletelySet();
+        final boolean largeSet = large.isCompletelySet();
+        int lo = 0;
+        int n = 0;
+        for (int is = 0; is < ns && lo < nl; is++) {
+            if (!smallSet && !small.indexIsActive(is)) {
+                continue;
+            }
+            final long key = small.getKey(is);
+            // exponential search for the first index in [lo, nl) with key >= the target
+            int step = 1;
+            int hi = lo;
+            while (hi < nl && large.getKey(hi) < key) {
+                lo = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            if (hi > nl) {
+                hi = nl;
+            }
+            // binary search in [lo, hi]
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (large.getKey(mid) < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo < nl && large.getKey(lo) == key) {
+                if (largeSet || large.indexIsActive(lo)) {
+                    outSmall[n] = is;
+                    outLarge[n] = lo;
+                    n++;
+                }
+                lo++;
+            }
+        }
+        return n;
+    }
+}
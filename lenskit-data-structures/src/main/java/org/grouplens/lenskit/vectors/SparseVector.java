@@ -491,10 +491,19 @@ public abstract class SparseVector implements Iterable<VectorEntry>, Serializabl
      */
     public double norm() {
         double ssq = 0;
-        DoubleIterator iter = values().iterator();
-        while (iter.hasNext()) {
-            double v = iter.nextDouble();
-            ssq += v * v;
+        final int sz = keys.domainSize();
+        if (keys.isCompletelySet()) {
+            for (int i = 0; i < sz; i++) {
+                final double v = values[i];
+                ssq += v * v;
+            }
+        } else {
+            for (int i = 0; i < sz; i++) {
+                if (keys.indexIsActive(i)) {
+                    final double v = values[i];
+                    ssq += v * v;
+                }
+            }
         }
         return Math.sqrt(ssq);
     }
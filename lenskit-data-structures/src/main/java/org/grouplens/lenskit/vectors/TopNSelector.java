@@ -0,0 +1,267 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.scored.PackedScoredIdList;
+import org.grouplens.lenskit.scored.ScoredIdListBuilder;
+import org.grouplens.lenskit.scored.ScoredIds;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Select the top <i>N</i> entries of a sparse vector by value.  The selector scans the vector's
+ * key and value arrays directly, keeping the best entries in a bounded min-heap over primitive
+ * arrays; once the heap is full, most entries are rejected by a single comparison against its
+ * smallest value.  Large vectors can be split across the threads of an executor, with the
+ * partial heaps merged at the end.
+ *
+ * <p>Entries are ordered by decreasing value, with ties broken by increasing key, so the
+ * selection is deterministic and does not depend on how the vector was split.  Values are
+ * compared as by {@link Double#compare(double, double)}.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public final class TopNSelector {
+    /**
+     * The minimum number of entries for each part of a parallel selection.  Smaller vectors are
+     * not worth the overhead of dispatching to other threads.
+     */
+    static final int MIN_PART_SIZE = 1 << 15;
+
+    private final int count;
+
+    /**
+     * Create a new top-N selector.
+     * @param n The number of entries to select, or a negative number to select (and sort) all
+     *          entries.
+     */
+    public TopNSelector(int n) {
+        count = n;
+    }
+
+    /**
+     * Select the top entries of a vector.
+     * @param vec The vector.
+     * @return The top entries of the vector, in decreasing order of value.
+     */
+    public PackedScoredIdList select(SparseVector vec) {
+        Heap heap = new Heap(capacity(vec));
+        if (heap.capacity > 0) {
+            scan(vec, 0, vec.keys.domainSize(), heap);
+        }
+        return heap.finish(vec.keys);
+    }
+
+    /**
+     * Select the top entries of a vector, splitting the work across the threads of an executor.
+     * Vectors too small to be worth splitting are processed on the calling thread.
+     *
+     * @param vec      The vector.
+     * @param executor The executor to run the parts on.
+     * @param parts    The maximum number of parts to split the vector into.
+     * @return The top entries of the vector, in decreasing order of value.
+     */
+    public PackedScoredIdList select(SparseVector vec, ExecutorService executor, int parts) {
+        final int dsize = vec.keys.domainSize();
+        int nparts = Math.min(parts, dsize / MIN_PART_SIZE);
+        final int cap = capacity(vec);
+        if (nparts <= 1 || cap == 0) {
+            return select(vec);
+        }
+
+        List<Future<Heap>> results = Lists.newArrayListWithCapacity(nparts);
+        for (int p = 0; p < nparts; p++) {
+            int lo = (int) ((long) dsize * p / nparts);
+            int hi = (int) ((long) dsize * (p + 1) / nparts);
+            results.add(executor.submit(new ScanTask(vec, lo, hi, cap)));
+        }
+
+        Heap heap = new Heap(cap);
+        try {
+            for (Future<Heap> result: results) {
+                heap.merge(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("top-N selection interrupted", e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        return heap.finish(vec.keys);
+    }
+
+    private int capacity(SparseVector vec) {
+        int size = vec.size();
+        return count < 0 ? size : Math.min(count, size);
+    }
+
+    /**
+     * Scan a range of a vector's entries into a heap.
+     * @param vec  The vector.
+     * @param lo   The first index (inclusive).
+     * @param hi   The last index (exclusive).
+     * @param heap The heap to add entries to.
+     */
+    private static void scan(SparseVector vec, int lo, int hi, Heap heap) {
+        final double[] values = vec.values;
+        if (vec.keys.isCompletelySet()) {
+            for (int i = lo; i < hi; i++) {
+                heap.offer(values[i], i);
+            }
+        } else {
+            BitSet mask = vec.keys.getActiveMask();
+            for (int i = mask.nextSetBit(lo); i >= 0 && i < hi; i = mask.nextSetBit(i + 1)) {
+                heap.offer(values[i], i);
+            }
+        }
+    }
+
+    /**
+     * Task scanning one part of a vector.
+     */
+    private static class ScanTask implements Callable<Heap> {
+        private final SparseVector vector;
+        private final int lo;
+        private final int hi;
+        private final int capacity;
+
+        ScanTask(SparseVector vec, int lo, int hi, int cap) {
+            vector = vec;
+            this.lo = lo;
+            this.hi = hi;
+            capacity = cap;
+        }
+
+        @Override
+        public Heap call() {
+            Heap heap = new Heap(capacity);
+            scan(vector, lo, hi, heap);
+            return heap;
+        }
+    }
+
+    /**
+     * Bounded min-heap of (value, index) pairs, with the worst entry at the root.
+     */
+    private static final class Heap {
+        private final int capacity;
+        private final double[] values;
+        private final int[] indexes;
+        private int size;
+
+        Heap(int cap) {
+            capacity = cap;
+            values = new double[cap];
+            indexes = new int[cap];
+        }
+
+        /**
+         * Query whether one entry ranks above another.
+         */
+        private static boolean better(double v1, int i1, double v2, int i2) {
+            int cmp = Double.compare(v1, v2);
+            return cmp > 0 || (cmp == 0 && i1 < i2);
+        }
+
+        void offer(double v, int idx) {
+            if (size < capacity) {
+                siftUp(size, v, idx);
+                size += 1;
+            } else if (!(v < values[0]) && better(v, idx, values[0], indexes[0])) {
+                // the first test is a quick reject for the common case
+                siftDown(0, v, idx, size);
+            }
+        }
+
+        void merge(Heap other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.values[i], other.indexes[i]);
+            }
+        }
+
+        /**
+         * Place an entry at a position, moving it up towards the root as needed.
+         */
+        private void siftUp(int pos, double v, int idx) {
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (!better(values[parent], indexes[parent], v, idx)) {
+                    break;
+                }
+                values[pos] = values[parent];
+                indexes[pos] = indexes[parent];
+                pos = parent;
+            }
+            values[pos] = v;
+            indexes[pos] = idx;
+        }
+
+        /**
+         * Place an entry at a position, moving it down away from the root as needed.
+         */
+        private void siftDown(int pos, double v, int idx, int n) {
+            int child;
+            while ((child = 2 * pos + 1) < n) {
+                if (child + 1 < n && better(values[child], indexes[child],
+                                            values[child + 1], indexes[child + 1])) {
+                    child += 1;
+                }
+                if (!better(v, idx, values[child], indexes[child])) {
+                    break;
+                }
+                values[pos] = values[child];
+                indexes[pos] = indexes[child];
+                pos = child;
+            }
+            values[pos] = v;
+            indexes[pos] = idx;
+        }
+
+        /**
+         * Sort the heap in decreasing order and build the result list.  The heap is unusable
+         * afterwards.
+         */
+        PackedScoredIdList finish(LongKeyDomain keys) {
+            // heap sort: repeatedly swap the worst remaining entry to the end
+            for (int n = size - 1; n > 0; n--) {
+                double v = values[n];
+                int idx = indexes[n];
+                values[n] = values[0];
+                indexes[n] = indexes[0];
+                siftDown(0, v, idx, n);
+            }
+            ScoredIdListBuilder bld = ScoredIds.newListBuilder(size);
+            for (int i = 0; i < size; i++) {
+                bld.add(keys.getKey(indexes[i]), values[i]);
+            }
+            return bld.finish();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.collections;
+
+import it.unimi.dsi.fastutil.longs.*;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test bitmap sets.
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class LongBitmapSetTest {
+    private static LongSortedSet randomSet(Random rng, long min, int span, double density) {
+        LongSortedSet set = new LongRBTreeSet();
+        for (int i = 0; i < span; i++) {
+            if (rng.nextDouble() < density) {
+                set.add(min + i);
+            }
+        }
+        return set;
+    }
+
+    @Test
+    public void testEmpty() {
+        LongBitmapSet set = LongBitmapSet.fromCollection(LongLists.EMPTY_LIST);
+        assertThat(set.size(), equalTo(0));
+        assertThat(set.isEmpty(), equalTo(true));
+        assertThat(set.contains(0), equalTo(false));
+        assertThat(set.iterator().hasNext(), equalTo(false));
+        assertThat(set.iterator().hasPrevious(), equalTo(false));
+    }
+
+    @Test
+    public void testSomeKeys() {
+        LongBitmapSet set = LongBitmapSet.fromCollection(LongArrayList.wrap(new long[]{70, 5, 63, 64, 5}));
+        assertThat(set.size(), equalTo(4));
+        assertThat(set, contains(5L, 63L, 64L, 70L));
+        assertThat(set.firstLong(), equalTo(5L));
+        assertThat(set.lastLong(), equalTo(70L));
+        assertThat(set.contains(5), equalTo(true));
+        assertThat(set.contains(6), equalTo(false));
+        assertThat(set.contains(-5), equalTo(false));
+        assertThat(set.contains(Long.MAX_VALUE), equalTo(false));
+        assertThat(set.contains(Long.MIN_VALUE), equalTo(false));
+        assertThat(set, equalTo((LongSet) LongUtils.packedSet(5, 63, 64, 70)));
+    }
+
+    @Test
+    public void testNegativeKeys() {
+        LongBitmapSet set = LongBitmapSet.fromCollection(LongArrayList.wrap(new long[]{-65, -1, 0, 3}));
+        assertThat(set, contains(-65L, -1L, 0L, 3L));
+        assertThat(set.contains(-64), equalTo(false));
+        assertThat(set.headSet(0), contains(-65L, -1L));
+        assertThat(set.tailSet(-1), contains(-1L, 0L, 3L));
+    }
+
+    @Test
+    public void testIterateFrom() {
+        LongBitmapSet set = LongBitmapSet.fromCollection(LongArrayList.wrap(new long[]{5, 63, 64, 70}));
+        LongBidirectionalIterator iter = set.iterator(63);
+        assertThat(iter.nextLong(), equalTo(64L));
+        assertThat(iter.nextLong(), equalTo(70L));
+        assertThat(iter.hasNext(), equalTo(false));
+        assertThat(iter.previousLong(), equalTo(70L));
+        assertThat(iter.previousLong(), equalTo(64L));
+        assertThat(iter.previousLong(), equalTo(63L));
+        assertThat(iter.previousLong(), equalTo(5L));
+        assertThat(iter.hasPrevious(), equalTo(false));
+
+        iter = set.iterator(10);
+        assertThat(iter.nextLong(), equalTo(63L));
+        iter = set.iterator(0);
+        assertThat(iter.hasPrevious(), equalTo(false));
+        assertThat(iter.nextLong(), equalTo(5L));
+        iter = set.iterator(100);
+        assertThat(iter.hasNext(), equalTo(false));
+        assertThat(iter.previousLong(), equalTo(70L));
+    }
+
+    @Test
+    public void testSubSets() {
+        LongBitmapSet set = LongBitmapSet.fromCollection(LongArrayList.wrap(new long[]{5, 63, 64, 70, 200}));
+        assertThat(set.subSet(6, 70), contains(63L, 64L));
+        assertThat(set.subSet(5, 71), contains(5L, 63L, 64L, 70L));
+        assertThat(set.subSet(71, 200), hasSize(0));
+        assertThat(set.headSet(64), contains(5L, 63L));
+        assertThat(set.tailSet(64), contains(64L, 70L, 200L));
+        assertThat(set.tailSet(1000), hasSize(0));
+        assertThat(set.headSet(-1000), hasSize(0));
+    }
+
+    @Test
+    public void testRandomSetOperations() {
+        Random rng = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            LongSortedSet a = randomSet(rng, rng.nextInt(200) - 100, 1000, 0.3);
+            LongSortedSet b = randomSet(rng, rng.nextInt(500), 800, 0.5);
+            LongBitmapSet ba = LongBitmapSet.fromCollection(a);
+            LongBitmapSet bb = LongBitmapSet.fromCollection(b);
+            assertThat(ba, equalTo((LongSet) a));
+            assertThat(ba.size(), equalTo(a.size()));
+
+            LongSortedSet union = new LongRBTreeSet(a);
+            union.addAll(b);
+            LongSortedSet inter = new LongRBTreeSet(a);
+            inter.retainAll(b);
+            LongSortedSet diff = new LongRBTreeSet(a);
+            diff.removeAll(b);
+
+            assertThat(ba.union(bb), equalTo((LongSet) union));
+            assertThat(ba.intersection(bb), equalTo((LongSet) inter));
+            assertThat(ba.intersectionSize(bb), equalTo(inter.size()));
+            assertThat(ba.difference(bb), equalTo((LongSet) diff));
+            assertThat(ba.difference(b), equalTo((LongSet) diff));
+            assertThat(LongUtils.setDifference(ba, bb), equalTo((LongSortedSet) diff));
+            assertThat(LongUtils.setUnion(ba, bb), equalTo((LongSortedSet) union));
+            assertThat(LongUtils.unionSize(ba, bb), equalTo(union.size()));
+
+            LongList reversed = new LongArrayList();
+            LongBidirectionalIterator iter = ba.iterator(ba.lastLong());
+            while (iter.hasPrevious()) {
+                reversed.add(iter.previousLong());
+            }
+            assertThat(reversed.size(), equalTo(a.size()));
+            assertThat(reversed.getLong(0), equalTo(a.lastLong()));
+        }
+    }
+
+    @Test
+    public void testCompactSet() {
+        Random rng = new Random(42);
+        LongSortedSet dense = randomSet(rng, 1, 5000, 0.5);
+        assertThat(LongUtils.compactSet(dense), instanceOf(LongBitmapSet.class));
+        assertThat(LongUtils.compactSet(dense), equalTo(dense));
+
+        LongSortedSet sparse = new LongRBTreeSet();
+        for (int i = 0; i < 100; i++) {
+            sparse.add(rng.nextLong());
+        }
+        assertThat(LongUtils.compactSet(sparse), not(instanceOf(LongBitmapSet.class)));
+        assertThat(LongUtils.compactSet(sparse), equalTo(sparse));
+        assertThat(LongUtils.compactSet(LongLists.EMPTY_LIST), hasSize(0));
+    }
+
+    @Test
+    public void testUnionOfDistantSets() {
+        LongBitmapSet a = LongBitmapSet.fromCollection(LongArrayList.wrap(new long[]{1, 2, 3}));
+        LongBitmapSet b = LongBitmapSet.fromCollection(LongArrayList.wrap(new long[]{1L << 40}));
+        LongSortedSet union = LongUtils.setUnion(a, b);
+        assertThat(union, not(instanceOf(LongBitmapSet.class)));
+        assertThat(union, contains(1L, 2L, 3L, 1L << 40));
+    }
+}
@@ -23,6 +23,9 @@ package org.grouplens.lenskit.collections;
 import it.unimi.dsi.fastutil.longs.LongLists;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 
@@ -52,6 +55,26 @@ public class LongKeyDomainTest {
         assertThat(keys.isCompletelySet(), equalTo(true));
     }
 
+    @Test
+    public void testFromBitmapSet() {
+        LongBitmapSet set = LongBitmapSet.fromCollection(Arrays.asList(42L, 5L, 7L, 100L));
+        LongKeyDomain keys = LongKeyDomain.fromCollection(set, false);
+        assertThat(keys.domainSize(), equalTo(4));
+        assertThat(keys.size(), equalTo(0));
+        assertThat(keys.domain(), contains(5L, 7L, 42L, 100L));
+        assertThat(keys.getIndex(42), equalTo(2));
+    }
+
+    @Test
+    public void testFromLargeBitmapSet() {
+        long big = Integer.MAX_VALUE + 10L;
+        LongBitmapSet set = LongBitmapSet.fromCollection(Arrays.asList(big + 3, big, big - 70));
+        LongKeyDomain keys = LongKeyDomain.fromCollection(set, true);
+        assertThat(keys.domainSize(), equalTo(3));
+        assertThat(keys.size(), equalTo(3));
+        assertThat(keys.activeSetView(), contains(big - 70, big, big + 3));
+    }
+
     @Test
     public void testEmptyUpperBound() {
         LongKeyDomain keys = LongKeyDomain.empty();
@@ -101,4 +124,69 @@ public class LongKeyDomainTest {
         assertThat(keys.lowerBound(8), equalTo(2));
         assertThat(keys.lowerBound(10), equalTo(3));
     }
+
+    private void checkLargeDomain(long[] rawKeys) {
+        LongKeyDomain keys = LongKeyDomain.create(rawKeys);
+        int n = rawKeys.length;
+        assertThat(n, greaterThanOrEqualTo(LongKeyDomain.HASH_INDEX_THRESHOLD));
+        LongKeyDomain copy = keys.clone();
+        copy.setActive(0, false);
+        // enough passes to get the hash index built part of the way through
+        for (int pass = 0; pass < 2; pass++) {
+            for (long k = rawKeys[0] - 2; k <= rawKeys[n - 1] + 2; k++) {
+                int idx = Arrays.binarySearch(rawKeys, k);
+                assertThat(keys.getIndex(k), equalTo(idx));
+                assertThat(keys.containsKey(k), equalTo(idx >= 0));
+                assertThat(keys.keyIsActive(k), equalTo(idx >= 0));
+                if (idx >= 0) {
+                    assertThat(keys.getIndexIfActive(k), equalTo(idx));
+                    assertThat(copy.getIndexIfActive(k), equalTo(idx == 0 ? -1 : idx));
+                } else {
+                    assertThat(keys.getIndexIfActive(k), lessThan(0));
+                    assertThat(copy.getIndexIfActive(k), lessThan(0));
+                }
+                assertThat(keys.lowerBound(k), equalTo(idx >= 0 ? idx : -idx - 1));
+                assertThat(keys.upperBound(k), equalTo(idx >= 0 ? idx + 1 : -idx - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testLargeDomainLookup() {
+        Random rng = new Random(42);
+        long[] rawKeys = new long[3000];
+        long next = 10;
+        for (int i = 0; i < rawKeys.length; i++) {
+            next += 1 + rng.nextInt(3);
+            rawKeys[i] = next;
+        }
+        checkLargeDomain(rawKeys);
+    }
+
+    @Test
+    public void testLargeWideDomainLookup() {
+        // keys outside the integer range use the full 64-bit domain
+        long[] rawKeys = new long[2000];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = Integer.MAX_VALUE + 3L * i;
+        }
+        checkLargeDomain(rawKeys);
+    }
+
+    @Test
+    public void testCloneBeforeLookupSharesIndex() {
+        long[] rawKeys = new long[LongKeyDomain.HASH_INDEX_THRESHOLD * 2];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = 5 * i + 3;
+        }
+        LongKeyDomain keys = LongKeyDomain.wrap(rawKeys, rawKeys.length, true);
+        // copy before anything has looked a key up and built the index
+        LongKeyDomain copy = keys.clone();
+        LongKeyDomain inactive = keys.inactiveCopy();
+        assertThat(copy.getIndex(13), equalTo(2));
+        assertThat(keys.getIndex(13), equalTo(2));
+        assertThat(copy.getHashIndex(), notNullValue());
+        assertThat(copy.getHashIndex(), sameInstance(keys.getHashIndex()));
+        assertThat(inactive.getHashIndex(), sameInstance(keys.getHashIndex()));
+    }
 }
@@ -20,15 +20,20 @@
  */
 package org.grouplens.lenskit.cursors;
 
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import org.junit.Test;
 
+import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
@@ -292,4 +297,185 @@ public class CursorsTest {
         assertThat(cursor.hasNext(), equalTo(false));
     }
     //endregion
+
+    //region Fast iteration
+    /**
+     * Cursor that counts up to a maximum, reusing a counter object in fast iteration.
+     */
+    private static class CounterCursor extends AbstractPollingCursor<AtomicInteger> {
+        private final AtomicInteger counter = new AtomicInteger();
+        private final int max;
+
+        CounterCursor(int m) {
+            super(m);
+            max = m;
+        }
+
+        @Override
+        protected AtomicInteger poll() {
+            if (counter.get() < max) {
+                counter.incrementAndGet();
+                return counter;
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        protected AtomicInteger copy(AtomicInteger obj) {
+            return new AtomicInteger(obj.get());
+        }
+    }
+
+    private static final Predicate<AtomicInteger> IS_EVEN = new Predicate<AtomicInteger>() {
+        @Override
+        public boolean apply(@Nullable AtomicInteger input) {
+            return input != null && input.get() % 2 == 0;
+        }
+    };
+
+    @Test
+    public void testFilterCopies() {
+        Cursor<AtomicInteger> cursor = Cursors.filter(new CounterCursor(5), IS_EVEN);
+        List<AtomicInteger> evens = Cursors.makeList(cursor);
+        assertThat(evens, hasSize(2));
+        assertThat(evens.get(0).get(), equalTo(2));
+        assertThat(evens.get(1).get(), equalTo(4));
+    }
+
+    @Test
+    public void testFilterFast() {
+        Cursor<AtomicInteger> cursor = Cursors.filter(new CounterCursor(5), IS_EVEN);
+        List<Integer> values = Lists.newArrayList();
+        AtomicInteger last = null;
+        for (AtomicInteger n: cursor.fast()) {
+            if (last != null) {
+                assertThat(n, sameInstance(last));
+            }
+            last = n;
+            values.add(n.get());
+        }
+        assertThat(values, contains(2, 4));
+        assertThat(cursor.hasNext(), equalTo(false));
+    }
+
+    @Test
+    public void testFilterFastNextHasNextNext() {
+        Cursor<AtomicInteger> cursor = Cursors.filter(new CounterCursor(7), IS_EVEN);
+        AtomicInteger first = cursor.fastNext();
+        assertThat(first.get(), equalTo(2));
+        assertThat(cursor.hasNext(), equalTo(true));
+        // the look-ahead after fastNext() must not leave a reused object for next()
+        AtomicInteger second = cursor.next();
+        assertThat(second.get(), equalTo(4));
+        AtomicInteger third = cursor.next();
+        assertThat(third, not(sameInstance(second)));
+        assertThat(second.get(), equalTo(4));
+        assertThat(third.get(), equalTo(6));
+        assertThat(cursor.hasNext(), equalTo(false));
+    }
+
+    @Test
+    public void testFilterHasNextThenNext() {
+        Cursor<AtomicInteger> cursor = Cursors.filter(new CounterCursor(5), IS_EVEN);
+        Iterator<AtomicInteger> iter = cursor.iterator();
+        assertThat(iter.hasNext(), equalTo(true));
+        AtomicInteger first = cursor.next();
+        assertThat(cursor.hasNext(), equalTo(true));
+        AtomicInteger second = cursor.next();
+        assertThat(first.get(), equalTo(2));
+        assertThat(second.get(), equalTo(4));
+        assertThat(cursor.hasNext(), equalTo(false));
+    }
+
+    @Test
+    public void testFilterNextAfterFastNext() {
+        Cursor<AtomicInteger> cursor = Cursors.filter(new CounterCursor(7), IS_EVEN);
+        assertThat(cursor.fastNext().get(), equalTo(2));
+        // switching back to next() without a fast look-ahead in between is fine
+        AtomicInteger n = cursor.next();
+        assertThat(cursor.next(), not(sameInstance(n)));
+        assertThat(n.get(), equalTo(4));
+    }
+
+    @Test
+    public void testFilterTypeFast() {
+        Cursor<Number> cursor = Cursors.filter(new CounterCursor(3), Number.class);
+        Number first = cursor.fastNext();
+        assertThat(first.intValue(), equalTo(1));
+        assertThat(cursor.fastNext(), sameInstance(first));
+        assertThat(first.intValue(), equalTo(2));
+    }
+
+    @Test
+    public void testTransformFast() {
+        Cursor<Integer> cursor = Cursors.transform(new CounterCursor(3), new Function<AtomicInteger, Integer>() {
+            @Nullable
+            @Override
+            public Integer apply(@Nullable AtomicInteger input) {
+                assert input != null;
+                return input.get() * 10;
+            }
+        });
+        List<Integer> values = Lists.newArrayList(cursor.fast());
+        assertThat(values, contains(10, 20, 30));
+    }
+    //endregion
+
+    //region Splitting and batching
+    @Test
+    public void testWrapListIsSplittable() {
+        Cursor<String> cursor = Cursors.wrap(Arrays.asList("a", "b", "c", "d", "e"));
+        assertThat(cursor, instanceOf(SplittableCursor.class));
+        SplittableCursor<String> prefix = ((SplittableCursor<String>) cursor).trySplit();
+        assertThat(prefix, notNullValue());
+        assertThat(prefix.getRowCount(), equalTo(2));
+        assertThat(cursor.getRowCount(), equalTo(3));
+        assertThat(Cursors.makeList(prefix), contains("a", "b"));
+        assertThat(Cursors.makeList(cursor), contains("c", "d", "e"));
+    }
+
+    @Test
+    public void testSplitList() {
+        List<Integer> nums = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            nums.add(i);
+        }
+        List<Cursor<Integer>> parts = Cursors.split(Cursors.wrap(nums), 4);
+        assertThat(parts, hasSize(4));
+        List<Integer> all = Lists.newArrayList();
+        for (Cursor<Integer> part: parts) {
+            assertThat(part.getRowCount(), equalTo(25));
+            all.addAll(Cursors.makeList(part));
+        }
+        assertThat(all, equalTo(nums));
+    }
+
+    @Test
+    public void testSplitSmallList() {
+        List<Cursor<String>> parts = Cursors.split(Cursors.wrap(Arrays.asList("a", "b")), 4);
+        assertThat(parts, hasSize(2));
+        assertThat(Cursors.makeList(parts.get(0)), contains("a"));
+        assertThat(Cursors.makeList(parts.get(1)), contains("b"));
+    }
+
+    @Test
+    public void testSplitUnsplittable() {
+        Cursor<String> cursor = Cursors.wrap(Iterators.forArray("a", "b", "c"));
+        List<Cursor<String>> parts = Cursors.split(cursor, 4);
+        assertThat(parts, hasSize(1));
+        assertThat(parts.get(0), sameInstance(cursor));
+    }
+
+    @Test
+    public void testBatch() {
+        Cursor<List<String>> batches = Cursors.batch(Cursors.of("a", "b", "c", "d", "e"), 2);
+        assertThat(batches.getRowCount(), equalTo(3));
+        List<List<String>> lists = Cursors.makeList(batches);
+        assertThat(lists, hasSize(3));
+        assertThat(lists.get(0), contains("a", "b"));
+        assertThat(lists.get(1), contains("c", "d"));
+        assertThat(lists.get(2), contains("e"));
+    }
+    //endregion
 }
@@ -360,4 +360,22 @@ public class PackedScoredIdListTest {
         assertThat(sid.getChannels().iterator().next().getSymbol(),
                    equalTo((TypedSymbol) tsym));
     }
+
+    @Test
+    public void testFloatPrecision() {
+        Symbol sym = Symbol.of("foo");
+        builder.addChannel(sym, 0)
+               .useFloatPrecision()
+               .add(new ScoredIdBuilder(42, 3.5).addChannel(sym, 0.1).build())
+               .add(new ScoredIdBuilder(39, 1.0 / 3).build());
+        PackedScoredIdList list = builder.build();
+        assertThat(list, hasSize(2));
+        assertThat(list.get(0).getId(), equalTo(42L));
+        assertThat(list.get(0).getScore(), equalTo(3.5));
+        assertThat(list.get(0).getUnboxedChannelValue(sym), equalTo((double) 0.1f));
+        assertThat(list.get(1).getScore(), equalTo((double) (1.0f / 3)));
+        assertThat(list.get(1).getUnboxedChannelValue(sym), equalTo(0.0));
+        // destructive finish should produce the same values
+        assertThat(builder.finish(), equalTo((List<ScoredId>) list));
+    }
 }
@@ -21,13 +21,17 @@
 package org.grouplens.lenskit.scored;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import org.apache.commons.lang3.SerializationUtils;
 import org.grouplens.lenskit.collections.LongUtils;
 import org.grouplens.lenskit.symbols.Symbol;
 import org.grouplens.lenskit.symbols.TypedSymbol;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.junit.Test;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -83,4 +87,43 @@ public class SparseVectorScoredIdsTest {
         // get the scored ids and put them in a hashset (for comparison).
         assertEquals(expected, new HashSet<ScoredId>(ScoredIds.collectionFromVector(sv)));
     }
+
+    @Test
+    public void testWithVectorChannels() {
+        MutableSparseVector sv = MutableSparseVector.create(LongUtils.packedSet(1, 2, 4));
+        sv.set(1, 1.0);
+        sv.set(2, 4.0);
+        sv.set(4, 16.0);
+
+        MutableSparseVector foo = sv.addChannelVector(fooSym);
+        foo.set(1, 2.0);
+        foo.set(4, 5.0);
+
+        Long2ObjectMap<String> wombat = sv.addChannel(tsym);
+        wombat.put(4, "goodbye");
+
+        List<ScoredId> ids = new ScoredIdListBuilder().add(4, 16.0).add(2, 4.0).finish();
+        List<ScoredId> lazy = ScoredIds.withVectorChannels(ids, sv);
+
+        assertEquals(2, lazy.size());
+        assertEquals(4, lazy.get(0).getId());
+        assertEquals(5.0, lazy.get(0).getUnboxedChannelValue(fooSym), 1.0e-6);
+        assertEquals("goodbye", lazy.get(0).getChannelValue(tsym));
+        assertTrue(lazy.get(0).hasChannel(tsym));
+        assertEquals(2, lazy.get(1).getId());
+        assertTrue(lazy.get(1).hasUnboxedChannel(fooSym));
+        assertTrue(Double.isNaN(lazy.get(1).getUnboxedChannelValue(fooSym)));
+        assertFalse(lazy.get(1).hasChannel(tsym));
+        assertNull(lazy.get(1).getChannelValue(tsym));
+
+        List<ScoredId> copies = new ArrayList<ScoredId>();
+        for (ScoredId id: lazy) {
+            copies.add(ScoredIds.copyBuilder(id).build());
+        }
+        assertEquals(copies, lazy);
+
+        @SuppressWarnings("unchecked")
+        List<ScoredId> cloned = (List<ScoredId>) SerializationUtils.clone((Serializable) lazy);
+        assertEquals(lazy, cloned);
+    }
 }
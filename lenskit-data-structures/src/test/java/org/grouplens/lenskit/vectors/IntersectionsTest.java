@@ -0,0 +1,153 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class IntersectionsTest {
+    private final Random random = new Random(42);
+
+    /**
+     * Make a random vector.
+     * @param n The number of keys.
+     * @param range The key range.
+     * @param unset Whether to leave some keys in the domain unset.
+     */
+    private MutableSparseVector randomVector(int n, int range, boolean unset) {
+        LongList keys = new LongArrayList();
+        while (keys.size() < n) {
+            long k = random.nextInt(range);
+            if (!keys.contains(k)) {
+                keys.add(k);
+            }
+        }
+        MutableSparseVector v = MutableSparseVector.create(keys);
+        for (VectorEntry e: v.view(VectorEntry.State.EITHER)) {
+            if (!unset || random.nextInt(4) > 0) {
+                v.set(e, random.nextInt(5) + 1 + random.nextDouble());
+            }
+        }
+        return v;
+    }
+
+    private void checkAgainstFastIntersect(SparseVector v1, SparseVector v2) {
+        LongList keys = new LongArrayList();
+        LongList exp1 = new LongArrayList();
+        double dot = 0;
+        int n = 0;
+        double[] e1 = new double[Math.min(v1.size(), v2.size())];
+        double[] e2 = new double[e1.length];
+        for (Pair<VectorEntry,VectorEntry> p: Vectors.fastIntersect(v1, v2)) {
+            keys.add(p.getLeft().getKey());
+            e1[n] = p.getLeft().getValue();
+            e2[n] = p.getRight().getValue();
+            dot += e1[n] * e2[n];
+            n++;
+        }
+        assertThat(Intersections.countCommonKeys(v1, v2), equalTo(n));
+        assertThat(Intersections.dot(v1, v2), equalTo(dot));
+        assertThat(Intersections.dot(v1, v2), equalTo(v1.dot(v2)));
+
+        double[] g1 = new double[e1.length];
+        double[] g2 = new double[e1.length];
+        assertThat(Intersections.gatherValues(v1, v2, g1, g2), equalTo(n));
+        for (int i = 0; i < n; i++) {
+            assertThat(g1[i], equalTo(e1[i]));
+            assertThat(g2[i], equalTo(e2[i]));
+        }
+
+        int[] p1 = new int[e1.length];
+        int[] p2 = new int[e1.length];
+        double[] all1 = new double[v1.size()];
+        double[] all2 = new double[v2.size()];
+        assertThat(Intersections.gatherPositions(v1, v2, p1, p2), equalTo(n));
+        assertThat(Intersections.copyValues(v1, all1), equalTo(v1.size()));
+        assertThat(Intersections.copyValues(v2, all2), equalTo(v2.size()));
+        LongList keys1 = new LongArrayList(v1.keySet());
+        for (int i = 0; i < n; i++) {
+            assertThat(keys1.getLong(p1[i]), equalTo(keys.getLong(i)));
+            assertThat(all1[p1[i]], equalTo(e1[i]));
+            assertThat(all2[p2[i]], equalTo(e2[i]));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        SparseVector empty = MutableSparseVector.create();
+        SparseVector v = randomVector(10, 20, false);
+        assertThat(Intersections.countCommonKeys(empty, v), equalTo(0));
+        assertThat(Intersections.dot(v, empty), equalTo(0.0));
+        assertThat(Intersections.normOfScaledSum(empty, 1, v, 1), closeTo(v.norm(), 1.0e-10));
+    }
+
+    @Test
+    public void testMerge() {
+        for (int i = 0; i < 50; i++) {
+            checkAgainstFastIntersect(randomVector(50, 100, false), randomVector(60, 100, false));
+        }
+    }
+
+    @Test
+    public void testGallop() {
+        for (int i = 0; i < 50; i++) {
+            SparseVector small = randomVector(5, 1000, false);
+            SparseVector large = randomVector(500, 1000, false);
+            checkAgainstFastIntersect(small, large);
+            checkAgainstFastIntersect(large, small);
+        }
+    }
+
+    @Test
+    public void testUnsetKeys() {
+        for (int i = 0; i < 50; i++) {
+            checkAgainstFastIntersect(randomVector(50, 100, true), randomVector(60, 100, true));
+            SparseVector small = randomVector(5, 500, true);
+            SparseVector large = randomVector(200, 500, true);
+            checkAgainstFastIntersect(small, large);
+            checkAgainstFastIntersect(large, small);
+        }
+    }
+
+    @Test
+    public void testNormOfScaledSum() {
+        for (int i = 0; i < 50; i++) {
+            SparseVector v1 = randomVector(30, 60, i % 2 == 0);
+            SparseVector v2 = randomVector(20, 60, i % 3 == 0);
+            LongSet union = LongUtils.setUnion(v1.keySet(), v2.keySet());
+            MutableSparseVector sum = MutableSparseVector.create(union);
+            sum.fill(0);
+            sum.set(v1);
+            sum.multiply(0.5);
+            sum.addScaled(v2, -2.0);
+            assertThat(Intersections.normOfScaledSum(v1, 0.5, v2, -2.0), equalTo(sum.norm()));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.vectors;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test top-N selection from sparse vectors.
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class TopNSelectorTest {
+    private static SparseVector randomVector(Random rng, int size, int levels) {
+        long[] keys = new long[size];
+        long key = 0;
+        for (int i = 0; i < size; i++) {
+            key += 1 + rng.nextInt(3);
+            keys[i] = key;
+        }
+        MutableSparseVector msv = MutableSparseVector.create(keys);
+        for (long k: keys) {
+            // a small number of levels produces plenty of ties
+            msv.set(k, rng.nextInt(levels));
+        }
+        return msv;
+    }
+
+    /**
+     * Check a selection against sorting all the keys by value.
+     */
+    private static void checkSelection(SparseVector vec, int n, List<ScoredId> selected) {
+        LongList expected = vec.keysByValue(true);
+        int count = n < 0 ? vec.size() : Math.min(n, vec.size());
+        assertThat(selected, hasSize(count));
+        for (int i = 0; i < count; i++) {
+            ScoredId id = selected.get(i);
+            assertThat(id.getScore(), equalTo(vec.get(expected.getLong(i))));
+            assertThat(id.getScore(), equalTo(vec.get(id.getId())));
+            if (i > 0) {
+                ScoredId prev = selected.get(i - 1);
+                assertThat(id.getScore(), lessThanOrEqualTo(prev.getScore()));
+                if (id.getScore() == prev.getScore()) {
+                    assertThat(id.getId(), greaterThan(prev.getId()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        List<ScoredId> selected = new TopNSelector(5).select(MutableSparseVector.create());
+        assertThat(selected, hasSize(0));
+    }
+
+    @Test
+    public void testSimple() {
+        MutableSparseVector msv = MutableSparseVector.create(1, 2, 3, 4, 5);
+        msv.set(1, 3.0);
+        msv.set(2, 5.0);
+        msv.set(3, 1.0);
+        msv.set(4, 5.0);
+        msv.set(5, 2.0);
+        List<ScoredId> selected = new TopNSelector(3).select(msv);
+        assertThat(selected, hasSize(3));
+        assertThat(selected.get(0).getId(), equalTo(2L));
+        assertThat(selected.get(1).getId(), equalTo(4L));
+        assertThat(selected.get(2).getId(), equalTo(1L));
+        assertThat(selected.get(2).getScore(), equalTo(3.0));
+    }
+
+    @Test
+    public void testSelectAll() {
+        Random rng = new Random(42);
+        SparseVector vec = randomVector(rng, 100, 1000);
+        checkSelection(vec, -1, new TopNSelector(-1).select(vec));
+        checkSelection(vec, 500, new TopNSelector(500).select(vec));
+    }
+
+    @Test
+    public void testRandomSelections() {
+        Random rng = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            SparseVector vec = randomVector(rng, 1 + rng.nextInt(2000), 50);
+            int n = rng.nextInt(100);
+            checkSelection(vec, n, new TopNSelector(n).select(vec));
+        }
+    }
+
+    @Test
+    public void testUnsetEntries() {
+        Random rng = new Random(42);
+        MutableSparseVector vec = (MutableSparseVector) randomVector(rng, 500, 100);
+        LongArrayList keys = new LongArrayList(vec.keySet());
+        for (int i = 0; i < keys.size(); i += 3) {
+            vec.unset(keys.getLong(i));
+        }
+        List<ScoredId> selected = new TopNSelector(50).select(vec);
+        checkSelection(vec, 50, selected);
+        for (ScoredId id: selected) {
+            assertThat(vec.containsKey(id.getId()), equalTo(true));
+        }
+    }
+
+    @Test
+    public void testParallelSelection() {
+        Random rng = new Random(42);
+        SparseVector vec = randomVector(rng, TopNSelector.MIN_PART_SIZE * 4 + 17, 10000);
+        List<ScoredId> sequential = new TopNSelector(100).select(vec);
+        checkSelection(vec, 100, sequential);
+        ExecutorService exec = Executors.newFixedThreadPool(3);
+        try {
+            List<ScoredId> parallel = new TopNSelector(100).select(vec, exec, 4);
+            assertThat(parallel, equalTo(sequential));
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+}
@@ -49,19 +49,37 @@ public abstract class AbstractDataSource implements DataSource {
             MoreSuppliers.softMemoize(Suppliers.compose(PrefetchingUserDAO.wrapper(),
                                                         eventDAOSupplier));
     private final Supplier<UserEventDAO> userEventDAOCache =
-            MoreSuppliers.softMemoize(Suppliers.compose(PrefetchingUserEventDAO.wrapper(),
-                                                        eventDAOSupplier));
+            MoreSuppliers.softMemoize(new Supplier<UserEventDAO>() {
+                @Override
+                public UserEventDAO get() {
+                    EventDAO dao = getEventDAO();
+                    if (dao instanceof UserEventDAO) {
+                        return (UserEventDAO) dao;
+                    } else {
+                        return new PrefetchingUserEventDAO(dao, CachingDAOProvider.getRatingStore(dao));
+                    }
+                }
+            });
     private final Supplier<ItemDAO> itemDAOCache =
             MoreSuppliers.softMemoize(Suppliers.compose(PrefetchingItemDAO.wrapper(),
                                                         eventDAOSupplier));
     private final Supplier<ItemEventDAO> itemEventDAOCache =
-            MoreSuppliers.softMemoize(Suppliers.compose(PrefetchingItemEventDAO.wrapper(),
-                                                        eventDAOSupplier));
+            MoreSuppliers.softMemoize(new Supplier<ItemEventDAO>() {
+                @Override
+                public ItemEventDAO get() {
+                    EventDAO dao = getEventDAO();
+                    if (dao instanceof ItemEventDAO) {
+                        return (ItemEventDAO) dao;
+                    } else {
+                        return new PrefetchingItemEventDAO(dao, CachingDAOProvider.getRatingStore(dao));
+                    }
+                }
+            });
 
     /**
      * Default user-event DAO implementation.  If the {@linkplain #getEventDAO() event DAO}
      * implements {@link UserEventDAO}, it is returned directly; otherwise, a new {@link PrefetchingUserEventDAO}
-     * is created.
+     * is created.  The user- and item-event DAOs share a single {@link CompactRatingStore}.
      *
      * @return The user-event DAO.
      */
@@ -73,7 +91,7 @@ public abstract class AbstractDataSource implements DataSource {
     /**
      * Default item-event DAO implementation.  If the {@linkplain #getEventDAO() event DAO}
      * implements {@link ItemEventDAO}, it is returned directly; otherwise, a new {@link PrefetchingItemEventDAO}
-     * is created.
+     * is created.  The user- and item-event DAOs share a single {@link CompactRatingStore}.
      *
      * @return The item-event DAO.
      */
@@ -20,6 +20,7 @@
  */
 package org.grouplens.lenskit.eval.traintest;
 
+import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -44,6 +45,35 @@ import java.util.concurrent.ExecutionException;
 public abstract class CachingDAOProvider<T> implements Provider<T> {
     private static final ConcurrentMap<Class<?>,Cache<EventDAO,Object>> CACHE_MAP =
             Maps.newConcurrentMap();
+    /**
+     * Compact rating stores, shared by the user and item event DAOs over the same event DAO.
+     * The DAOs hold the suppliers strongly, so a store lives as long as any DAO using it.
+     */
+    private static final Cache<EventDAO,Supplier<CompactRatingStore>> STORE_CACHE =
+            CacheBuilder.newBuilder()
+                        .weakKeys()
+                        .softValues()
+                        .build();
+
+    /**
+     * Get the compact rating store supplier shared by all prefetching event DAOs over a DAO.
+     *
+     * @param dao The event DAO.
+     * @return The shared supplier of the DAO's compact rating store.
+     * @since 2.2
+     */
+    public static Supplier<CompactRatingStore> getRatingStore(final EventDAO dao) {
+        try {
+            return STORE_CACHE.get(dao, new Callable<Supplier<CompactRatingStore>>() {
+                @Override
+                public Supplier<CompactRatingStore> call() {
+                    return CompactRatingStore.supplier(dao);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
 
     private static void registerProviderClass(Class<?> cls) {
         Cache<EventDAO,Object> cache = CACHE_MAP.get(cls);
@@ -114,7 +144,7 @@ public abstract class CachingDAOProvider<T> implements Provider<T> {
 
         @Override
         protected PrefetchingUserEventDAO create(EventDAO dao) {
-            return new PrefetchingUserEventDAO(dao);
+            return new PrefetchingUserEventDAO(dao, getRatingStore(dao));
         }
     }
 
@@ -126,7 +156,7 @@ public abstract class CachingDAOProvider<T> implements Provider<T> {
 
         @Override
         protected PrefetchingItemEventDAO create(EventDAO dao) {
-            return new PrefetchingItemEventDAO(dao);
+            return new PrefetchingItemEventDAO(dao, getRatingStore(dao));
         }
     }
 }
@@ -49,8 +49,6 @@ import java.lang.ref.SoftReference;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Shared cache for components in merged compilations.  This is a node processor, instantiating
@@ -226,11 +224,16 @@ class ComponentCache implements NodeProcessor {
 
             File cacheFile = null;
             if (tryDisk && cacheDir != null) {
-                cacheFile = new File(cacheDir, key + ".dat.gz");
-                if (cacheFile.exists()) {
+                cacheFile = new File(cacheDir, key + ".dat.lkz");
+                File inputFile = cacheFile;
+                if (!inputFile.exists()) {
+                    // fall back to caches written with GZIP compression
+                    inputFile = new File(cacheDir, key + ".dat.gz");
+                }
+                if (inputFile.exists()) {
                     logger.debug("reading object for {} from cache (key {})",
                                  node.getLabel().getSatisfaction(), key);
-                    Object obj = readCompressedObject(cacheFile, node.getLabel().getSatisfaction().getErasedType());
+                    Object obj = readCompressedObject(inputFile, node.getLabel().getSatisfaction().getErasedType());
                     logger.debug("read object {} from key {}", obj, key);
                     return obj;
                 }
@@ -279,8 +282,8 @@ class ComponentCache implements NodeProcessor {
                 Closer closer = Closer.create();
                 try {
                     OutputStream out = closer.register(stage.openOutputStream());
-                    OutputStream gzOut = closer.register(new GZIPOutputStream(out));
-                    ObjectOutputStream objOut = closer.register(new ObjectOutputStream(gzOut));
+                    OutputStream compOut = closer.register(CompressionMode.BLOCK.wrapOutput(out));
+                    ObjectOutputStream objOut = closer.register(new ObjectOutputStream(compOut));
                     objOut.writeObject(obj);
                 } catch (Throwable th) { // NOSONAR using a closer
                     throw closer.rethrow(th);
@@ -299,8 +302,8 @@ class ComponentCache implements NodeProcessor {
                 Closer closer = Closer.create();
                 try {
                     InputStream in = closer.register(new FileInputStream(cacheFile));
-                    InputStream gzin = closer.register(new GZIPInputStream(in));
-                    ObjectInputStream oin = closer.register(new CustomClassLoaderObjectInputStream(gzin, classLoader));
+                    InputStream decomp = closer.register(LKFileUtils.transparentlyDecompress(in));
+                    ObjectInputStream oin = closer.register(new CustomClassLoaderObjectInputStream(decomp, classLoader));
                     return type.cast(oin.readObject());
                 } catch (Throwable th) { // NOSONAR using a closer
                     throw closer.rethrow(th);
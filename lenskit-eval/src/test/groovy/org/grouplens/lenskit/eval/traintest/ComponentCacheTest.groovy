@@ -77,7 +77,7 @@ class ComponentCacheTest {
         def other = cache.instantiate(node)
         assertThat object,
                    sameInstance(other)
-        assertThat new File(folder.root, "${cache.makeNodeKey(node)}.dat.gz"),
+        assertThat new File(folder.root, "${cache.makeNodeKey(node)}.dat.lkz"),
                    existingFile()
     }
 
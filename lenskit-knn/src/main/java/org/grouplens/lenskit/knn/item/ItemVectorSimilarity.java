@@ -22,7 +22,9 @@ package org.grouplens.lenskit.knn.item;
 
 import org.grouplens.lenskit.core.Shareable;
 import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.StatisticsVectorSimilarity;
 import org.grouplens.lenskit.vectors.similarity.VectorSimilarity;
+import org.grouplens.lenskit.vectors.similarity.VectorStatistics;
 
 import javax.inject.Inject;
 import java.io.Serializable;
@@ -43,11 +45,44 @@ public class ItemVectorSimilarity implements ItemSimilarity, Serializable {
         delegate = sim;
     }
 
+    /**
+     * Get the underlying vector similarity.
+     *
+     * @return The wrapped vector similarity.
+     * @since 2.2
+     */
+    public VectorSimilarity getDelegate() {
+        return delegate;
+    }
+
     @Override
     public double similarity(long i1, SparseVector v1, long i2, SparseVector v2) {
         return delegate.similarity(v1, v2);
     }
 
+    /**
+     * Compute the similarity between two items using precomputed vector statistics.  If the
+     * underlying vector similarity is a {@link StatisticsVectorSimilarity}, the statistics are
+     * passed to it; otherwise, they are ignored.
+     *
+     * @param i1 The first item ID.
+     * @param v1 The first item vector.
+     * @param s1 The statistics of {@code v1}.
+     * @param i2 The second item ID.
+     * @param v2 The second item vector.
+     * @param s2 The statistics of {@code v2}.
+     * @return The similarity between the two items.
+     * @since 2.2
+     */
+    public double similarity(long i1, SparseVector v1, VectorStatistics s1,
+                             long i2, SparseVector v2, VectorStatistics s2) {
+        if (delegate instanceof StatisticsVectorSimilarity) {
+            return ((StatisticsVectorSimilarity) delegate).similarity(v1, s1, v2, s2);
+        } else {
+            return delegate.similarity(v1, v2);
+        }
+    }
+
     @Override
     public boolean isSparse() {
         return delegate.isSparse();
@@ -0,0 +1,436 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import it.unimi.dsi.fastutil.doubles.DoubleHeapPriorityQueue;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.grouplens.lenskit.core.FloatPrecision;
+import org.grouplens.lenskit.core.Transient;
+import org.grouplens.lenskit.knn.item.ItemSimilarity;
+import org.grouplens.lenskit.knn.item.ItemSimilarityThreshold;
+import org.grouplens.lenskit.knn.item.ItemVectorSimilarity;
+import org.grouplens.lenskit.knn.item.ModelSize;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.transform.threshold.AbsoluteThreshold;
+import org.grouplens.lenskit.transform.threshold.RealThreshold;
+import org.grouplens.lenskit.transform.threshold.Threshold;
+import org.grouplens.lenskit.util.ScoredItemAccumulator;
+import org.grouplens.lenskit.util.TopNScoredItemAccumulator;
+import org.grouplens.lenskit.util.UnlimitedScoredItemAccumulator;
+import org.grouplens.lenskit.util.metrics.Counter;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.NoopMetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
+import org.grouplens.lenskit.vectors.similarity.CosineVectorSimilarity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build an item-item model with an all-pairs similarity search that prunes pairs which cannot
+ * make it into the model.  For each item, it scans the item lists of the item's users in order of
+ * decreasing rating magnitude, using Cauchy-Schwarz bounds on the part of the item's vector not
+ * yet scanned (prefix filtering, as in L2AP):
+ *
+ * <ul>
+ * <li>once no unseen item can pass the {@linkplain ItemSimilarityThreshold similarity threshold},
+ * it stops scanning for candidates;</li>
+ * <li>candidates whose similarity bound cannot pass the threshold are dropped; and</li>
+ * <li>when the {@linkplain ModelSize model size} is limited, candidates are verified in order of
+ * decreasing bound, stopping as soon as no remaining candidate can beat the current
+ * <i>k</i>th-best neighbor.</li>
+ * </ul>
+ *
+ * <p>Surviving candidates are verified with the exact similarity function, so the model is the same
+ * as the one built by {@link ItemItemModelBuilder} with a sparse neighbor iteration strategy, up to
+ * the order of neighbors with exactly tied similarities and except that items with no users in
+ * common are never considered (the pairwise builder may retain their zero similarities if the
+ * threshold admits them).  It supports cosine similarity with a
+ * nonnegative damping term; threshold pruning works with {@link RealThreshold} and
+ * {@link AbsoluteThreshold}, and other thresholds only get top-<i>k</i> pruning.</p>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@NotThreadSafe
+public class AllPairsItemItemModelBuilder implements Provider<ItemItemModel> {
+    private static final Logger logger = LoggerFactory.getLogger(AllPairsItemItemModelBuilder.class);
+    /**
+     * Relative slack added to bounds, so that rounding error in computing them never prunes a pair
+     * that would have passed.
+     */
+    private static final double BOUND_SLACK = 1.0e-9;
+
+    private final ItemVectorSimilarity itemSimilarity;
+    private final CosineVectorSimilarity similarity;
+    private final ItemItemBuildContext buildContext;
+    private final Threshold threshold;
+    private final int modelSize;
+    private final boolean floatPrecision;
+    private final Timer buildTimer;
+    private final Counter verifiedCount;
+    private final Counter prunedCount;
+
+    /**
+     * Construct an all-pairs model builder.
+     *
+     * @param sim     The item similarity.  It must be an {@link ItemVectorSimilarity} over a
+     *                {@link CosineVectorSimilarity} with nonnegative damping.
+     * @param context The item-item build context.
+     * @param thresh  The threshold for retaining similarities.
+     * @param size    The number of neighbors to retain for each item (0 for all).
+     */
+    public AllPairsItemItemModelBuilder(@Transient ItemSimilarity sim,
+                                        @Transient ItemItemBuildContext context,
+                                        @Transient @ItemSimilarityThreshold Threshold thresh,
+                                        @ModelSize int size) {
+        this(sim, context, thresh, size, new NoopMetricRegistry(), false);
+    }
+
+    /**
+     * Construct an all-pairs model builder that records build metrics.  It times the build and
+     * counts the candidate pairs verified and pruned.
+     *
+     * @param sim     The item similarity.  It must be an {@link ItemVectorSimilarity} over a
+     *                {@link CosineVectorSimilarity} with nonnegative damping.
+     * @param context The item-item build context.
+     * @param thresh  The threshold for retaining similarities.
+     * @param size    The number of neighbors to retain for each item (0 for all).
+     * @param metrics The metric registry.
+     * @param floatPrec Whether to store similarities in single precision.
+     * @throws IllegalArgumentException if the similarity function is not supported.
+     */
+    @Inject
+    public AllPairsItemItemModelBuilder(@Transient ItemSimilarity sim,
+                                        @Transient ItemItemBuildContext context,
+                                        @Transient @ItemSimilarityThreshold Threshold thresh,
+                                        @ModelSize int size,
+                                        @Transient MetricRegistry metrics,
+                                        @FloatPrecision boolean floatPrec) {
+        Preconditions.checkArgument(sim instanceof ItemVectorSimilarity
+                                    && ((ItemVectorSimilarity) sim).getDelegate() instanceof CosineVectorSimilarity,
+                                    "similarity %s is not a cosine similarity", sim);
+        itemSimilarity = (ItemVectorSimilarity) sim;
+        similarity = (CosineVectorSimilarity) itemSimilarity.getDelegate();
+        Preconditions.checkArgument(similarity.getDampingFactor() >= 0,
+                                    "negative damping factor not supported");
+        buildContext = context;
+        threshold = thresh;
+        modelSize = size;
+        floatPrecision = floatPrec;
+        buildTimer = metrics.timer(Metrics.name(AllPairsItemItemModelBuilder.class, "build"));
+        verifiedCount = metrics.counter(Metrics.name(AllPairsItemItemModelBuilder.class, "verified"));
+        prunedCount = metrics.counter(Metrics.name(AllPairsItemItemModelBuilder.class, "pruned"));
+    }
+
+    @Override
+    public SimilarityMatrixModel get() {
+        logger.debug("building item-item model by all-pairs search");
+        logger.debug("using similarity function {}", similarity);
+
+        Stopwatch timer = Stopwatch.createStarted();
+        Timer.Context phase = buildTimer.start();
+        try {
+            UserItemMatrix matrix = new UserItemMatrix(buildContext);
+            final int nitems = matrix.itemCount();
+            Search search = new Search(matrix);
+            List<List<ScoredId>> rows = new ArrayList<List<ScoredId>>(nitems);
+            for (int i = 0; i < nitems; i++) {
+                rows.add(search.computeRow(i));
+                if (logger.isDebugEnabled() && (i + 1) % 100 == 0) {
+                    logger.debug("computed {} of {} model rows ({}s/row)",
+                                 i + 1, nitems,
+                                 String.format("%.3f", timer.elapsed(TimeUnit.MILLISECONDS) * 0.001 / (i + 1)));
+                }
+            }
+            verifiedCount.add(search.verified);
+            prunedCount.add(search.pruned);
+            timer.stop();
+            logger.info("built model for {} items in {} ({} pairs verified, {} pruned)",
+                        nitems, timer, search.verified, search.pruned);
+            // the rows are indexed by the matrix's item domain, which only this constructor takes
+            @SuppressWarnings("deprecation")
+            SimilarityMatrixModel model = new SimilarityMatrixModel(matrix.items, rows);
+            return model;
+        } finally {
+            phase.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(AllPairsItemItemModelBuilder.class)
+                      .add("similarity", itemSimilarity)
+                      .add("threshold", threshold)
+                      .add("size", modelSize)
+                      .toString();
+    }
+
+    /**
+     * The search state, with working space reused between rows.
+     */
+    private class Search {
+        private static final byte UNSEEN = 0;
+        private static final byte CANDIDATE = 1;
+        private static final byte REJECTED = 2;
+
+        private final UserItemMatrix matrix;
+        /**
+         * Whether the threshold can prune, and the value a similarity bound must exceed.
+         */
+        private final boolean thresholdPrunes;
+        private final double thresholdValue;
+        private final double[] norms;
+
+        private final byte[] state;
+        private final double[] partial;
+        private final double[] bounds;
+        private final int[] candidates;
+        private final int[] touched;
+        private final int[] retained;
+        private final double[] sims;
+        private final DoubleHeapPriorityQueue best;
+
+        private int[] rowUsers = new int[0];
+        private double[] rowMagnitudes = new double[0];
+        private int[] rowOrder = new int[0];
+        private double[] suffixSquares = new double[1];
+
+        long verified;
+        long pruned;
+
+        Search(UserItemMatrix m) {
+            matrix = m;
+            if (threshold instanceof RealThreshold) {
+                thresholdPrunes = true;
+                thresholdValue = ((RealThreshold) threshold).getValue();
+            } else if (threshold instanceof AbsoluteThreshold) {
+                thresholdPrunes = true;
+                thresholdValue = ((AbsoluteThreshold) threshold).getValue();
+            } else {
+                thresholdPrunes = false;
+                thresholdValue = Double.NaN;
+            }
+
+            final int nitems = m.itemCount();
+            norms = new double[nitems];
+            for (int i = 0; i < nitems; i++) {
+                norms[i] = m.itemStats[i].getNorm();
+            }
+            state = new byte[nitems];
+            partial = new double[nitems];
+            bounds = new double[nitems];
+            candidates = new int[nitems];
+            touched = new int[nitems];
+            retained = new int[nitems];
+            sims = new double[nitems];
+            best = new DoubleHeapPriorityQueue(Math.max(modelSize, 1));
+        }
+
+        /**
+         * Bound the similarity of two items from a bound on the absolute value of their dot
+         * product.  Cosine similarity is odd and increasing in the dot product, so this bounds
+         * both the similarity and its absolute value, and therefore works for both real and
+         * absolute thresholds.
+         */
+        private double similarityBound(int row, int col, double dotBound) {
+            double b = dotBound * (1 + BOUND_SLACK);
+            return similarity.similarityFromDotProduct(b, matrix.itemStats[row], matrix.itemStats[col]);
+        }
+
+        /**
+         * Query whether a similarity bound could pass the threshold.
+         */
+        private boolean mayPass(double simBound) {
+            return !thresholdPrunes || simBound > thresholdValue;
+        }
+
+        /**
+         * Query whether any unseen item could pass the threshold.  If the unscanned part of the
+         * row vector has norm {@code rem}, its dot product with any item vector \(y\) is at most
+         * \(rem \cdot |y|\), so (since damping only decreases it) the cosine similarity is at
+         * most {@code rem / norm}.
+         */
+        private boolean anyMayPass(double rem, double norm) {
+            if (!thresholdPrunes || norm == 0) {
+                return true;
+            }
+            return (rem / norm) * (1 + BOUND_SLACK) > thresholdValue;
+        }
+
+        private void prepareRow(int row) {
+            final int start = matrix.itemOffsets[row];
+            final int len = matrix.itemOffsets[row + 1] - start;
+            if (rowUsers.length < len) {
+                int cap = Math.max(len, rowUsers.length * 2);
+                rowUsers = new int[cap];
+                rowMagnitudes = new double[cap];
+                rowOrder = new int[cap];
+                suffixSquares = new double[cap + 1];
+            }
+            for (int n = 0; n < len; n++) {
+                rowUsers[n] = matrix.itemUsers[start + n];
+                rowMagnitudes[n] = Math.abs(matrix.itemValues[start + n]);
+                rowOrder[n] = n;
+            }
+            IntArrays.quickSort(rowOrder, 0, len, decreasingMagnitude);
+            suffixSquares[len] = 0;
+            for (int p = len - 1; p >= 0; p--) {
+                final double v = rowMagnitudes[rowOrder[p]];
+                suffixSquares[p] = suffixSquares[p + 1] + v * v;
+            }
+        }
+
+        List<ScoredId> computeRow(int row) {
+            prepareRow(row);
+            final int len = matrix.itemOffsets[row + 1] - matrix.itemOffsets[row];
+            final double norm = norms[row];
+
+            // scan users in decreasing order of rating magnitude to generate candidates
+            int ncands = 0;
+            int ntouched = 0;
+            int p = 0;
+            for (; p < len; p++) {
+                final double rem = Math.sqrt(suffixSquares[p]);
+                if (!anyMayPass(rem, norm)) {
+                    break;
+                }
+                final int pos = rowOrder[p];
+                final int user = rowUsers[pos];
+                final double mag = rowMagnitudes[pos];
+                final int end = matrix.userOffsets[user + 1];
+                for (int k = matrix.userOffsets[user]; k < end; k++) {
+                    final int col = matrix.userItems[k];
+                    if (col == row) {
+                        continue;
+                    }
+                    if (state[col] == UNSEEN) {
+                        touched[ntouched++] = col;
+                        // a new candidate only overlaps the row on the unscanned users
+                        if (mayPass(similarityBound(row, col, rem * norms[col]))) {
+                            state[col] = CANDIDATE;
+                            partial[col] = 0;
+                            candidates[ncands++] = col;
+                        } else {
+                            state[col] = REJECTED;
+                            pruned += 1;
+                        }
+                    }
+                    // accumulate the bound of new and existing candidates; rejected items are done
+                    if (state[col] == CANDIDATE) {
+                        partial[col] += mag * Math.abs(matrix.userValues[k]);
+                    }
+                }
+            }
+            final double rem = p < len ? Math.sqrt(suffixSquares[p]) : 0;
+
+            // bound the remaining candidates and drop the ones that cannot pass
+            int nlive = 0;
+            for (int c = 0; c < ncands; c++) {
+                final int col = candidates[c];
+                double dotBound = Math.min(partial[col] + rem * norms[col], norm * norms[col]);
+                double b = similarityBound(row, col, dotBound);
+                if (mayPass(b)) {
+                    bounds[col] = b;
+                    candidates[nlive++] = col;
+                } else {
+                    pruned += 1;
+                }
+            }
+
+            // verify candidates, in decreasing bound order if we can stop at the k-th best
+            int nretained = 0;
+            if (modelSize > 0) {
+                IntArrays.quickSort(candidates, 0, nlive, decreasingBound);
+                best.clear();
+            }
+            for (int c = 0; c < nlive; c++) {
+                final int col = candidates[c];
+                if (modelSize > 0 && best.size() == modelSize && bounds[col] < best.firstDouble()) {
+                    pruned += nlive - c;
+                    break;
+                }
+                verified += 1;
+                double sim = itemSimilarity.similarity(matrix.items.getKey(row), matrix.itemVectors[row],
+                                                       matrix.itemStats[row],
+                                                       matrix.items.getKey(col), matrix.itemVectors[col],
+                                                       matrix.itemStats[col]);
+                if (threshold.retain(sim)) {
+                    sims[col] = sim;
+                    retained[nretained++] = col;
+                    if (modelSize > 0) {
+                        if (best.size() < modelSize) {
+                            best.enqueue(sim);
+                        } else if (sim > best.firstDouble()) {
+                            best.dequeueDouble();
+                            best.enqueue(sim);
+                        }
+                    }
+                }
+            }
+
+            for (int t = 0; t < ntouched; t++) {
+                state[touched[t]] = UNSEEN;
+            }
+
+            // add neighbors in item order, as the pairwise builder does
+            Arrays.sort(retained, 0, nretained);
+            ScoredItemAccumulator accum;
+            if (modelSize == 0) {
+                accum = new UnlimitedScoredItemAccumulator();
+            } else {
+                accum = new TopNScoredItemAccumulator(modelSize);
+            }
+            for (int r = 0; r < nretained; r++) {
+                final int col = retained[r];
+                accum.put(matrix.items.getKey(col), sims[col]);
+            }
+            List<ScoredId> result = accum.finish();
+            return floatPrecision ? SimilarityMatrixModel.floatPrecisionRow(result) : result;
+        }
+
+        private final AbstractIntComparator decreasingMagnitude = new AbstractIntComparator() {
+            @Override
+            public int compare(int i, int j) {
+                return Double.compare(rowMagnitudes[j], rowMagnitudes[i]);
+            }
+        };
+
+        private final AbstractIntComparator decreasingBound = new AbstractIntComparator() {
+            @Override
+            public int compare(int i, int j) {
+                return Double.compare(bounds[j], bounds[i]);
+            }
+        };
+    }
+}
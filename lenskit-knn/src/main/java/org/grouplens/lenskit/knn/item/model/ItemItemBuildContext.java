@@ -30,6 +30,7 @@ import org.grouplens.lenskit.collections.LongKeyDomain;
 import org.grouplens.lenskit.core.Shareable;
 import org.grouplens.lenskit.transform.normalize.VectorNormalizer;
 import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.VectorStatistics;
 
 import javax.annotation.Nonnull;
 import java.io.Serializable;
@@ -57,6 +58,9 @@ public class ItemItemBuildContext implements Serializable {
     @Nonnull
     private
     SparseVector[] itemVectors;
+    @Nonnull
+    private
+    VectorStatistics[] itemStatistics;
 
     @Nonnull
     private Long2ObjectMap<LongSortedSet> userItems;
@@ -74,6 +78,7 @@ public class ItemItemBuildContext implements Serializable {
         this.userItems = userItems;
         items = universe;
         itemVectors = vectors;
+        itemStatistics = new VectorStatistics[universe.domainSize()];
     }
 
     /**
@@ -101,6 +106,29 @@ public class ItemItemBuildContext implements Serializable {
         return itemVectors[idx];
     }
 
+    /**
+     * Get the statistics (norm, sum, etc.) of an item's rating vector.  These are computed the
+     * first time they are requested and then cached, so similarity functions do not need to
+     * recompute them for every pair of items.
+     *
+     * @param item The item to query.
+     * @return The statistics of {@link #itemVector(long) itemVector(item)}.
+     * @throws IllegalArgumentException if {@code item} is not a valid item.
+     * @since 2.2
+     */
+    @Nonnull
+    public VectorStatistics itemStatistics(long item) {
+        int idx = items.getIndex(item);
+        Preconditions.checkArgument(idx >= 0, "unknown item");
+        VectorStatistics stats = itemStatistics[idx];
+        if (stats == null) {
+            // statistics are immutable, so a racing thread at worst computes them again
+            stats = VectorStatistics.of(itemVectors[idx]);
+            itemStatistics[idx] = stats;
+        }
+        return stats;
+    }
+
     /**
      * Get the items rated by a particular user.
      * 
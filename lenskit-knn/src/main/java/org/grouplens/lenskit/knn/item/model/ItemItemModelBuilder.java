@@ -22,16 +22,24 @@ package org.grouplens.lenskit.knn.item.model;
 
 import com.google.common.base.Stopwatch;
 import it.unimi.dsi.fastutil.longs.*;
+import org.grouplens.lenskit.core.FloatPrecision;
 import org.grouplens.lenskit.core.Transient;
 import org.grouplens.lenskit.knn.item.ItemSimilarity;
 import org.grouplens.lenskit.knn.item.ItemSimilarityThreshold;
+import org.grouplens.lenskit.knn.item.ItemVectorSimilarity;
 import org.grouplens.lenskit.knn.item.ModelSize;
 import org.grouplens.lenskit.scored.ScoredId;
 import org.grouplens.lenskit.transform.threshold.Threshold;
 import org.grouplens.lenskit.util.ScoredItemAccumulator;
 import org.grouplens.lenskit.util.TopNScoredItemAccumulator;
 import org.grouplens.lenskit.util.UnlimitedScoredItemAccumulator;
+import org.grouplens.lenskit.util.metrics.Counter;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.NoopMetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
 import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.VectorStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,18 +65,45 @@ public class ItemItemModelBuilder implements Provider<ItemItemModel> {
     private final Threshold threshold;
     private final NeighborIterationStrategy neighborStrategy;
     private final int modelSize;
+    private final boolean floatPrecision;
+    private final Timer similarityTimer;
+    private final Timer finishTimer;
+    private final Counter pairCount;
 
-    @Inject
     public ItemItemModelBuilder(@Transient ItemSimilarity similarity,
                                 @Transient ItemItemBuildContext context,
                                 @Transient @ItemSimilarityThreshold Threshold thresh,
                                 @Transient NeighborIterationStrategy nbrStrat,
                                 @ModelSize int size) {
+        this(similarity, context, thresh, nbrStrat, size, new NoopMetricRegistry(), false);
+    }
+
+    /**
+     * Construct a model builder that records build metrics and can store the model's
+     * similarities in single precision.  It times the similarity computation and row finishing
+     * phases, and counts the item pairs compared.
+     *
+     * @param metrics   The metric registry.
+     * @param floatPrec Whether to store similarities in single precision.
+     * @since 2.2
+     */
+    @Inject
+    public ItemItemModelBuilder(@Transient ItemSimilarity similarity,
+                                @Transient ItemItemBuildContext context,
+                                @Transient @ItemSimilarityThreshold Threshold thresh,
+                                @Transient NeighborIterationStrategy nbrStrat,
+                                @ModelSize int size,
+                                @Transient MetricRegistry metrics,
+                                @FloatPrecision boolean floatPrec) {
         itemSimilarity = similarity;
         buildContext = context;
         threshold = thresh;
         neighborStrategy = nbrStrat;
         modelSize = size;
+        floatPrecision = floatPrec;
+        similarityTimer = metrics.timer(Metrics.name(ItemItemModelBuilder.class, "similarities"));
+        finishTimer = metrics.timer(Metrics.name(ItemItemModelBuilder.class, "finish"));
+        pairCount = metrics.counter(Metrics.name(ItemItemModelBuilder.class, "pairs"));
     }
 
     @Override
@@ -87,45 +122,69 @@ public class ItemItemModelBuilder implements Provider<ItemItemModel> {
         final int nitems = allItems.size();
         LongIterator outer = allItems.iterator();
 
+        // use the context's cached vector statistics if the similarity can take them
+        final ItemVectorSimilarity vectorSimilarity =
+                itemSimilarity instanceof ItemVectorSimilarity ? (ItemVectorSimilarity) itemSimilarity : null;
+
         Stopwatch timer = Stopwatch.createStarted();
+        Timer.Context phase = similarityTimer.start();
         int ndone = 0;
-        while (outer.hasNext()) {
-            ndone += 1;
-            final long itemId1 = outer.nextLong();
-            if (logger.isTraceEnabled()) {
-                logger.trace("computing similarities for item {} ({} of {})",
-                             itemId1, ndone, nitems);
-            }
-            SparseVector vec1 = buildContext.itemVector(itemId1);
-
-            LongIterator itemIter = neighborStrategy.neighborIterator(buildContext, itemId1,
-                                                                      itemSimilarity.isSymmetric());
-
-            ScoredItemAccumulator row = rows.get(itemId1);
-            while (itemIter.hasNext()) {
-                long itemId2 = itemIter.nextLong();
-                if (itemId1 != itemId2) {
-                    SparseVector vec2 = buildContext.itemVector(itemId2);
-                    double sim = itemSimilarity.similarity(itemId1, vec1, itemId2, vec2);
-                    if (threshold.retain(sim)) {
-                        row.put(itemId2, sim);
-                        if (itemSimilarity.isSymmetric()) {
-                            rows.get(itemId2).put(itemId1, sim);
+        long npairs = 0;
+        try {
+            while (outer.hasNext()) {
+                ndone += 1;
+                final long itemId1 = outer.nextLong();
+                if (logger.isTraceEnabled()) {
+                    logger.trace("computing similarities for item {} ({} of {})",
+                                 itemId1, ndone, nitems);
+                }
+                SparseVector vec1 = buildContext.itemVector(itemId1);
+                VectorStatistics stats1 = buildContext.itemStatistics(itemId1);
+
+                LongIterator itemIter = neighborStrategy.neighborIterator(buildContext, itemId1,
+                                                                          itemSimilarity.isSymmetric());
+
+                ScoredItemAccumulator row = rows.get(itemId1);
+                while (itemIter.hasNext()) {
+                    long itemId2 = itemIter.nextLong();
+                    if (itemId1 != itemId2) {
+                        npairs += 1;
+                        SparseVector vec2 = buildContext.itemVector(itemId2);
+                        double sim;
+                        if (vectorSimilarity != null) {
+                            sim = vectorSimilarity.similarity(itemId1, vec1, stats1,
+                                                              itemId2, vec2, buildContext.itemStatistics(itemId2));
+                        } else {
+                            sim = itemSimilarity.similarity(itemId1, vec1, itemId2, vec2);
+                        }
+                        if (threshold.retain(sim)) {
+                            row.put(itemId2, sim);
+                            if (itemSimilarity.isSymmetric()) {
+                                rows.get(itemId2).put(itemId1, sim);
+                            }
                         }
                     }
                 }
-            }
 
-            if (logger.isDebugEnabled() && ndone % 100 == 0) {
-                logger.debug("computed {} of {} model rows ({}s/row)",
-                             ndone, nitems,
-                             String.format("%.3f", timer.elapsed(TimeUnit.MILLISECONDS) * 0.001 / ndone));
+                if (logger.isDebugEnabled() && ndone % 100 == 0) {
+                    logger.debug("computed {} of {} model rows ({}s/row)",
+                                 ndone, nitems,
+                                 String.format("%.3f", timer.elapsed(TimeUnit.MILLISECONDS) * 0.001 / ndone));
+                }
             }
+        } finally {
+            phase.stop();
         }
+        pairCount.add(npairs);
         timer.stop();
         logger.info("built model for {} items in {}", ndone, timer);
 
-        return new SimilarityMatrixModel(finishRows(rows));
+        phase = finishTimer.start();
+        try {
+            return new SimilarityMatrixModel(finishRows(rows));
+        } finally {
+            phase.stop();
+        }
     }
 
     private Long2ObjectMap<ScoredItemAccumulator> makeAccumulators(LongSet items) {
@@ -147,7 +206,11 @@ public class ItemItemModelBuilder implements Provider<ItemItemModel> {
     private Long2ObjectMap<List<ScoredId>> finishRows(Long2ObjectMap<ScoredItemAccumulator> rows) {
         Long2ObjectMap<List<ScoredId>> results = new Long2ObjectOpenHashMap<List<ScoredId>>(rows.size());
         for (Long2ObjectMap.Entry<ScoredItemAccumulator> e: rows.long2ObjectEntrySet()) {
-            results.put(e.getLongKey(), e.getValue().finish());
+            List<ScoredId> row = e.getValue().finish();
+            if (floatPrecision) {
+                row = SimilarityMatrixModel.floatPrecisionRow(row);
+            }
+            results.put(e.getLongKey(), row);
         }
         return results;
     }
@@ -0,0 +1,285 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.grouplens.lenskit.core.FloatPrecision;
+import org.grouplens.lenskit.core.Transient;
+import org.grouplens.lenskit.knn.item.ItemSimilarity;
+import org.grouplens.lenskit.knn.item.ItemSimilarityThreshold;
+import org.grouplens.lenskit.knn.item.ItemVectorSimilarity;
+import org.grouplens.lenskit.knn.item.ModelBuildThreads;
+import org.grouplens.lenskit.knn.item.ModelSize;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.transform.threshold.Threshold;
+import org.grouplens.lenskit.util.ScoredItemAccumulator;
+import org.grouplens.lenskit.util.TopNScoredItemAccumulator;
+import org.grouplens.lenskit.util.UnlimitedScoredItemAccumulator;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.NoopMetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
+import org.grouplens.lenskit.vectors.similarity.DotProductVectorSimilarity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Build an item-item model by sparse matrix multiplication.  For similarity functions that are
+ * {@linkplain DotProductVectorSimilarity functions of the dot product} of the item vectors (such
+ * as cosine similarity), the item-item dot products are the entries of the product
+ * \(R^T R\) of the user-item rating matrix with itself.  This builder computes each row of that
+ * product by streaming the item lists of the users who rated the row's item into a dense
+ * accumulator, so it only ever touches co-rated item pairs and never intersects two item vectors.
+ * Rows are independent and are computed in parallel (see {@link ModelBuildThreads}).
+ *
+ * <p>It produces the same model as {@link ItemItemModelBuilder} with a sparse neighbor iteration
+ * strategy.  To use it, bind it as the provider of {@link ItemItemModel}:</p>
+ *
+ * <pre>{@code config.bind(ItemItemModel.class).toProvider(MatrixProductItemItemModelBuilder.class);}</pre>
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class MatrixProductItemItemModelBuilder implements Provider<ItemItemModel> {
+    private static final Logger logger = LoggerFactory.getLogger(MatrixProductItemItemModelBuilder.class);
+
+    private final ItemSimilarity itemSimilarity;
+    private final DotProductVectorSimilarity similarity;
+    private final ItemItemBuildContext buildContext;
+    private final Threshold threshold;
+    private final int modelSize;
+    private final int threadCount;
+    private final boolean floatPrecision;
+    private final Timer buildTimer;
+
+    /**
+     * Construct a matrix product model builder.
+     *
+     * @param sim     The item similarity.  It must be an {@link ItemVectorSimilarity} over a
+     *                {@link DotProductVectorSimilarity}.
+     * @param context The item-item build context.
+     * @param thresh  The threshold for retaining similarities.
+     * @param size    The number of neighbors to retain for each item (0 for all).
+     * @param nthreads The number of threads to use (0 for the number of processors).
+     */
+    public MatrixProductItemItemModelBuilder(@Transient ItemSimilarity sim,
+                                             @Transient ItemItemBuildContext context,
+                                             @Transient @ItemSimilarityThreshold Threshold thresh,
+                                             @ModelSize int size,
+                                             @ModelBuildThreads int nthreads) {
+        this(sim, context, thresh, size, nthreads, new NoopMetricRegistry(), false);
+    }
+
+    /**
+     * Construct a matrix product model builder that records its build time.
+     *
+     * @param sim     The item similarity.  It must be an {@link ItemVectorSimilarity} over a
+     *                {@link DotProductVectorSimilarity}.
+     * @param context The item-item build context.
+     * @param thresh  The threshold for retaining similarities.
+     * @param size    The number of neighbors to retain for each item (0 for all).
+     * @param nthreads The number of threads to use (0 for the number of processors).
+     * @param metrics The metric registry.
+     * @param floatPrec Whether to store similarities in single precision.
+     * @throws IllegalArgumentException if the similarity function cannot be computed from dot
+     *                                  products.
+     */
+    @Inject
+    public MatrixProductItemItemModelBuilder(@Transient ItemSimilarity sim,
+                                             @Transient ItemItemBuildContext context,
+                                             @Transient @ItemSimilarityThreshold Threshold thresh,
+                                             @ModelSize int size,
+                                             @ModelBuildThreads int nthreads,
+                                             @Transient MetricRegistry metrics,
+                                             @FloatPrecision boolean floatPrec) {
+        Preconditions.checkArgument(sim instanceof ItemVectorSimilarity
+                                    && ((ItemVectorSimilarity) sim).getDelegate() instanceof DotProductVectorSimilarity,
+                                    "similarity %s is not a dot-product similarity", sim);
+        Preconditions.checkArgument(nthreads >= 0, "negative thread count");
+        itemSimilarity = sim;
+        similarity = (DotProductVectorSimilarity) ((ItemVectorSimilarity) sim).getDelegate();
+        buildContext = context;
+        threshold = thresh;
+        modelSize = size;
+        floatPrecision = floatPrec;
+        threadCount = nthreads > 0 ? nthreads : Runtime.getRuntime().availableProcessors();
+        buildTimer = metrics.timer(Metrics.name(MatrixProductItemItemModelBuilder.class, "build"));
+    }
+
+    @Override
+    public SimilarityMatrixModel get() {
+        logger.debug("building item-item model by matrix product");
+        logger.debug("using similarity function {}", similarity);
+
+        Stopwatch timer = Stopwatch.createStarted();
+        Timer.Context phase = buildTimer.start();
+        try {
+            UserItemMatrix matrix = new UserItemMatrix(buildContext);
+            logger.debug("transposed {} ratings of {} items by {} users",
+                         matrix.ratingCount(), matrix.itemCount(), matrix.users.domainSize());
+            List<List<ScoredId>> rows = computeRows(matrix);
+            timer.stop();
+            logger.info("built model for {} items in {}", rows.size(), timer);
+            // the rows are indexed by the matrix's item domain, which only this constructor takes
+            @SuppressWarnings("deprecation")
+            SimilarityMatrixModel model = new SimilarityMatrixModel(matrix.items, rows);
+            return model;
+        } finally {
+            phase.stop();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(MatrixProductItemItemModelBuilder.class)
+                      .add("similarity", itemSimilarity)
+                      .add("threshold", threshold)
+                      .add("size", modelSize)
+                      .toString();
+    }
+
+    private List<List<ScoredId>> computeRows(UserItemMatrix matrix) {
+        final int nitems = matrix.itemCount();
+        // each task sets the rows it claims; the list is never resized
+        List<List<ScoredId>> rows =
+                new ArrayList<List<ScoredId>>(Collections.<List<ScoredId>>nCopies(nitems, null));
+        AtomicInteger nextRow = new AtomicInteger();
+        int nthreads = Math.max(1, Math.min(threadCount, nitems));
+        if (nthreads == 1) {
+            new RowTask(matrix, rows, nextRow).call();
+            return rows;
+        }
+
+        logger.debug("computing {} rows on {} threads", nitems, nthreads);
+        ExecutorService exec = Executors.newFixedThreadPool(nthreads, new ThreadFactoryBuilder()
+                .setNameFormat("item-item-build-%d")
+                .setDaemon(true)
+                .build());
+        try {
+            List<Future<Void>> results = Lists.newArrayListWithCapacity(nthreads);
+            for (int t = 0; t < nthreads; t++) {
+                results.add(exec.submit(new RowTask(matrix, rows, nextRow)));
+            }
+            for (Future<Void> result: results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("model build interrupted", e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            exec.shutdownNow();
+        }
+        return rows;
+    }
+
+    /**
+     * Task that claims and computes rows until none are left.  Each task has its own dense
+     * accumulator, so the only shared state is the row counter.
+     */
+    private class RowTask implements Callable<Void> {
+        private final UserItemMatrix matrix;
+        private final List<List<ScoredId>> rows;
+        private final AtomicInteger nextRow;
+        private final double[] dots;
+        private final boolean[] seen;
+        private final int[] touched;
+
+        RowTask(UserItemMatrix m, List<List<ScoredId>> rs, AtomicInteger counter) {
+            matrix = m;
+            rows = rs;
+            nextRow = counter;
+            final int nitems = m.itemCount();
+            dots = new double[nitems];
+            seen = new boolean[nitems];
+            touched = new int[nitems];
+        }
+
+        @Override
+        public Void call() {
+            final int nitems = matrix.itemCount();
+            int row;
+            while ((row = nextRow.getAndIncrement()) < nitems) {
+                rows.set(row, computeRow(row));
+            }
+            return null;
+        }
+
+        private List<ScoredId> computeRow(int row) {
+            int ntouched = 0;
+            // accumulate the row's dot products in increasing user order, as a dot product would
+            for (int p = matrix.itemOffsets[row], pend = matrix.itemOffsets[row + 1]; p < pend; p++) {
+                final double rating = matrix.itemValues[p];
+                final int user = matrix.itemUsers[p];
+                final int end = matrix.userOffsets[user + 1];
+                for (int k = matrix.userOffsets[user]; k < end; k++) {
+                    final int col = matrix.userItems[k];
+                    if (col == row) {
+                        continue;
+                    }
+                    if (!seen[col]) {
+                        seen[col] = true;
+                        dots[col] = 0;
+                        touched[ntouched++] = col;
+                    }
+                    dots[col] += rating * matrix.userValues[k];
+                }
+            }
+
+            Arrays.sort(touched, 0, ntouched);
+            ScoredItemAccumulator accum;
+            if (modelSize == 0) {
+                accum = new UnlimitedScoredItemAccumulator();
+            } else {
+                accum = new TopNScoredItemAccumulator(modelSize);
+            }
+            for (int t = 0; t < ntouched; t++) {
+                final int col = touched[t];
+                seen[col] = false;
+                double sim = similarity.similarityFromDotProduct(dots[col], matrix.itemStats[row], matrix.itemStats[col]);
+                if (threshold.retain(sim)) {
+                    accum.put(matrix.items.getKey(col), sim);
+                }
+            }
+            List<ScoredId> result = accum.finish();
+            return floatPrecision ? SimilarityMatrixModel.floatPrecisionRow(result) : result;
+        }
+    }
+}
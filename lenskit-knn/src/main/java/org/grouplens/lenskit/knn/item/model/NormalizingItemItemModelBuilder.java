@@ -26,15 +26,22 @@ import com.google.common.collect.Lists;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongSortedSet;
 import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.core.FloatPrecision;
 import org.grouplens.lenskit.core.Transient;
 import org.grouplens.lenskit.knn.item.ItemSimilarity;
+import org.grouplens.lenskit.knn.item.ItemVectorSimilarity;
 import org.grouplens.lenskit.scored.ScoredId;
 import org.grouplens.lenskit.scored.ScoredIdListBuilder;
 import org.grouplens.lenskit.scored.ScoredIds;
 import org.grouplens.lenskit.transform.normalize.ItemVectorNormalizer;
 import org.grouplens.lenskit.transform.truncate.VectorTruncator;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.NoopMetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.VectorStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +62,8 @@ public class NormalizingItemItemModelBuilder implements Provider<ItemItemModel>
     private final ItemVectorNormalizer rowNormalizer;
     private final VectorTruncator truncator;
     private final NeighborIterationStrategy iterationStrategy;
+    private final boolean floatPrecision;
+    private final Timer buildTimer;
 
     /**
      * Construct a normalizing item-item model builder.
@@ -67,17 +76,42 @@ public class NormalizingItemItemModelBuilder implements Provider<ItemItemModel>
      *                size configuration behavior as {@link ItemItemModelBuilder}.
      * @param iterStrat The neighbor iteration strategy.
      */
-    @Inject
     public NormalizingItemItemModelBuilder(@Transient ItemSimilarity sim,
                                            @Transient ItemItemBuildContext context,
                                            @Transient ItemVectorNormalizer rowNorm,
                                            @Transient VectorTruncator trunc,
                                            @Transient NeighborIterationStrategy iterStrat) {
+        this(sim, context, rowNorm, trunc, iterStrat, new NoopMetricRegistry(), false);
+    }
+
+    /**
+     * Construct a normalizing item-item model builder that records its build time and can store
+     * the model in single precision.
+     *
+     * @param sim     The item similarity function.
+     * @param context The item-item build context.
+     * @param rowNorm The normalizer for item neighborhood vectors.
+     * @param trunc   The truncator for truncating neighborhood vectors.
+     * @param iterStrat The neighbor iteration strategy.
+     * @param metrics The metric registry.
+     * @param floatPrec Whether to store similarities (and channels) in single precision.
+     * @since 2.2
+     */
+    @Inject
+    public NormalizingItemItemModelBuilder(@Transient ItemSimilarity sim,
+                                           @Transient ItemItemBuildContext context,
+                                           @Transient ItemVectorNormalizer rowNorm,
+                                           @Transient VectorTruncator trunc,
+                                           @Transient NeighborIterationStrategy iterStrat,
+                                           @Transient MetricRegistry metrics,
+                                           @FloatPrecision boolean floatPrec) {
         similarity = sim;
         buildContext = context;
         rowNormalizer = rowNorm;
         truncator = trunc;
         iterationStrategy = iterStrat;
+        floatPrecision = floatPrec;
+        buildTimer = metrics.timer(Metrics.name(NormalizingItemItemModelBuilder.class, "build"));
     }
 
 
@@ -97,43 +131,60 @@ public class NormalizingItemItemModelBuilder implements Provider<ItemItemModel>
 
         // working space for accumulating each row (reuse between rows)
         MutableSparseVector currentRow = MutableSparseVector.create(itemUniverse);
+        // use the context's cached vector statistics if the similarity can take them
+        final ItemVectorSimilarity vectorSimilarity =
+                similarity instanceof ItemVectorSimilarity ? (ItemVectorSimilarity) similarity : null;
         Stopwatch timer = Stopwatch.createStarted();
-
-        for (int i = 0; i < nitems; i++) {
-            assert matrix.size() == i;
-            final long rowItem = itemDomain.getKey(i);
-            final SparseVector vec1 = buildContext.itemVector(rowItem);
-
-            // Take advantage of sparsity if we can
-            LongIterator neighbors = iterationStrategy.neighborIterator(buildContext, rowItem, false);
-            currentRow.fill(0);
-
-            // Compute similarities and populate the vector
-            while (neighbors.hasNext()) {
-                final long colItem = neighbors.nextLong();
-                final SparseVector vec2 = buildContext.itemVector(colItem);
-                assert currentRow.containsKey(colItem);
-                currentRow.set(colItem, similarity.similarity(rowItem, vec1, colItem, vec2));
+        Timer.Context phase = buildTimer.start();
+        try {
+            for (int i = 0; i < nitems; i++) {
+                assert matrix.size() == i;
+                final long rowItem = itemDomain.getKey(i);
+                final SparseVector vec1 = buildContext.itemVector(rowItem);
+                final VectorStatistics stats1 = buildContext.itemStatistics(rowItem);
+
+                // Take advantage of sparsity if we can
+                LongIterator neighbors = iterationStrategy.neighborIterator(buildContext, rowItem, false);
+                currentRow.fill(0);
+
+                // Compute similarities and populate the vector
+                while (neighbors.hasNext()) {
+                    final long colItem = neighbors.nextLong();
+                    final SparseVector vec2 = buildContext.itemVector(colItem);
+                    assert currentRow.containsKey(colItem);
+                    final double sim;
+                    if (vectorSimilarity != null) {
+                        sim = vectorSimilarity.similarity(rowItem, vec1, stats1,
+                                                          colItem, vec2, buildContext.itemStatistics(colItem));
+                    } else {
+                        sim = similarity.similarity(rowItem, vec1, colItem, vec2);
+                    }
+                    currentRow.set(colItem, sim);
+                }
+
+                // Remove the current item (it is not its own neighbor)
+                currentRow.unset(rowItem);
+
+                // Normalize and truncate the row
+                MutableSparseVector normalized = rowNormalizer.normalize(rowItem, currentRow, null);
+                truncator.truncate(normalized);
+
+                // Build up and save the row
+                ScoredIdListBuilder bld = new ScoredIdListBuilder(normalized.size());
+                if (floatPrecision) {
+                    bld.useFloatPrecision();
+                }
+                // TODO Allow the symbols in use to be customized
+                List<ScoredId> row = bld.addChannels(normalized.getChannelVectorSymbols())
+                                        .addTypedChannels(normalized.getChannelSymbols())
+                                        .addAll(ScoredIds.collectionFromVector(normalized))
+                                        .sort(ScoredIds.scoreOrder().reverse())
+                                        .finish();
+                matrix.add(row);
             }
-
-            // Remove the current item (it is not its own neighbor)
-            currentRow.unset(rowItem);
-
-            // Normalize and truncate the row
-            MutableSparseVector normalized = rowNormalizer.normalize(rowItem, currentRow, null);
-            truncator.truncate(normalized);
-
-            // Build up and save the row
-            ScoredIdListBuilder bld = new ScoredIdListBuilder(normalized.size());
-            // TODO Allow the symbols in use to be customized
-            List<ScoredId> row = bld.addChannels(normalized.getChannelVectorSymbols())
-                                    .addTypedChannels(normalized.getChannelSymbols())
-                                    .addAll(ScoredIds.collectionFromVector(normalized))
-                                    .sort(ScoredIds.scoreOrder().reverse())
-                                    .finish();
-            matrix.add(row);
+        } finally {
+            phase.stop();
         }
-
         timer.stop();
         logger.info("built model for {} items in {}", nitems, timer);
 
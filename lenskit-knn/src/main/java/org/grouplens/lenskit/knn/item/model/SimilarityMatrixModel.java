@@ -26,6 +26,7 @@ import org.grouplens.grapht.annotation.DefaultProvider;
 import org.grouplens.lenskit.collections.LongKeyDomain;
 import org.grouplens.lenskit.core.Shareable;
 import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.scored.ScoredIds;
 
 import javax.annotation.Nonnull;
 import java.io.Serializable;
@@ -82,6 +83,20 @@ public class SimilarityMatrixModel implements Serializable, ItemItemModel {
         neighborhoods = neighbors.build();
     }
 
+    /**
+     * Repack a neighborhood with single-precision scores, for builders storing their models with
+     * {@link org.grouplens.lenskit.core.FloatPrecision}.
+     *
+     * @param row The neighborhood (with no side channels).
+     * @return A copy of the neighborhood storing its scores as floats.
+     */
+    static List<ScoredId> floatPrecisionRow(List<ScoredId> row) {
+        return ScoredIds.newListBuilder(row.size())
+                        .useFloatPrecision()
+                        .addAll(row)
+                        .finish();
+    }
+
     @Override
     public LongSortedSet getItemUniverse() {
         return itemDomain.activeSetView();
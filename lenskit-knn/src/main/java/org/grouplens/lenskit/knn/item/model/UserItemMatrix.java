@@ -0,0 +1,133 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.VectorStatistics;
+
+import java.util.Arrays;
+
+/**
+ * The item rating vectors of a build context, indexed by item, both as vectors and as compressed
+ * item rows of user indexes, and also transposed into compressed user rows, for builders that
+ * walk the rating matrix by user.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+final class UserItemMatrix {
+    /**
+     * The items, indexed as in {@link #itemVectors} and {@link #userItems}.
+     */
+    final LongKeyDomain items;
+    final SparseVector[] itemVectors;
+    final VectorStatistics[] itemStats;
+    final LongKeyDomain users;
+    /**
+     * Item row offsets.  The users who rated item <i>i</i> are at positions
+     * {@code itemOffsets[i]} (inclusive) to {@code itemOffsets[i+1]} (exclusive) of
+     * {@link #itemUsers} and {@link #itemValues}, in increasing order of user index.
+     */
+    final int[] itemOffsets;
+    final int[] itemUsers;
+    final double[] itemValues;
+    /**
+     * User row offsets.  The items rated by user <i>u</i> are at positions
+     * {@code userOffsets[u]} (inclusive) to {@code userOffsets[u+1]} (exclusive) of
+     * {@link #userItems} and {@link #userValues}, in increasing order of item index.
+     */
+    final int[] userOffsets;
+    final int[] userItems;
+    final double[] userValues;
+
+    UserItemMatrix(ItemItemBuildContext context) {
+        items = LongKeyDomain.fromCollection(context.getItems(), true);
+        final int nitems = items.domainSize();
+        itemVectors = new SparseVector[nitems];
+        itemStats = new VectorStatistics[nitems];
+        itemOffsets = new int[nitems + 1];
+        LongSet userIds = new LongOpenHashSet();
+        for (int i = 0; i < nitems; i++) {
+            final long item = items.getKey(i);
+            itemVectors[i] = context.itemVector(item);
+            itemStats[i] = context.itemStatistics(item);
+            userIds.addAll(itemVectors[i].keySet());
+            itemOffsets[i + 1] = itemOffsets[i] + itemVectors[i].size();
+        }
+        final int nnz = itemOffsets[nitems];
+
+        users = LongKeyDomain.fromCollection(userIds, true);
+        final int nusers = users.domainSize();
+        itemUsers = new int[nnz];
+        itemValues = new double[nnz];
+        userOffsets = new int[nusers + 1];
+        for (int i = 0; i < nitems; i++) {
+            // the keys and values of a vector are both in key order
+            LongIterator keys = itemVectors[i].keySet().iterator();
+            DoubleIterator values = itemVectors[i].values().iterator();
+            for (int p = itemOffsets[i]; p < itemOffsets[i + 1]; p++) {
+                final int user = users.getIndex(keys.nextLong());
+                itemUsers[p] = user;
+                itemValues[p] = values.nextDouble();
+                userOffsets[user + 1] += 1;
+            }
+        }
+        for (int u = 0; u < nusers; u++) {
+            userOffsets[u + 1] += userOffsets[u];
+        }
+        assert userOffsets[nusers] == nnz;
+
+        // items are scanned in index order, so each user's row comes out sorted
+        userItems = new int[nnz];
+        userValues = new double[nnz];
+        int[] fill = Arrays.copyOf(userOffsets, nusers);
+        for (int i = 0; i < nitems; i++) {
+            for (int p = itemOffsets[i]; p < itemOffsets[i + 1]; p++) {
+                int pos = fill[itemUsers[p]]++;
+                userItems[pos] = i;
+                userValues[pos] = itemValues[p];
+            }
+        }
+    }
+
+    /**
+     * Get the number of items.
+     *
+     * @return The number of items (rows of the item-item model).
+     */
+    int itemCount() {
+        return items.domainSize();
+    }
+
+    /**
+     * Get the number of ratings.
+     *
+     * @return The number of nonzero entries in the matrix.
+     */
+    int ratingCount() {
+        return userItems.length;
+    }
+}
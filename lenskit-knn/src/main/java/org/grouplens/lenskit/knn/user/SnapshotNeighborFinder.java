@@ -21,9 +21,12 @@
 package org.grouplens.lenskit.knn.user;
 
 import com.google.common.collect.AbstractIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
 import it.unimi.dsi.fastutil.longs.LongCollection;
 import it.unimi.dsi.fastutil.longs.LongIterator;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 import org.grouplens.lenskit.data.event.Event;
 import org.grouplens.lenskit.data.history.UserHistory;
@@ -32,6 +35,7 @@ import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
 import org.grouplens.lenskit.transform.threshold.Threshold;
 import org.grouplens.lenskit.vectors.ImmutableSparseVector;
 import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.VectorStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -80,15 +84,19 @@ public class SnapshotNeighborFinder implements NeighborFinder {
         if (vector.size() < qset.size()) {
             qset = vector.keySet();
         }
-        final LongSet candidates = new LongOpenHashSet();
+        // collect candidates by snapshot index so scoring them needs no ID lookups
+        final IntSet candidates = new IntOpenHashSet();
         for (LongIterator iter = qset.iterator(); iter.hasNext();) {
             final long item = iter.nextLong();
-            LongSet users = snapshot.getItemUsers(item);
+            IntList users = snapshot.getItemUserIndexes(item);
             if (users != null) {
                 candidates.addAll(users);
             }
         }
-        candidates.remove(uid);
+        int uidx = snapshot.getUserIndex(uid);
+        if (uidx >= 0) {
+            candidates.remove(uidx);
+        }
         logger.debug("Found {} candidate neighbors for user {}", candidates.size(), uid);
         return new Iterable<Neighbor>() {
             @Override
@@ -112,21 +120,38 @@ public class SnapshotNeighborFinder implements NeighborFinder {
     private class NeighborIterator extends AbstractIterator<Neighbor> {
         private final long user;
         private final SparseVector userVector;
-        private final LongIterator neighborIter;
+        private final VectorStatistics userStats;
+        private final UserVectorSimilarity vectorSimilarity;
+        private final IntIterator neighborIter;
 
-        public NeighborIterator(long uid, SparseVector uvec, LongSet nbrs) {
+        public NeighborIterator(long uid, SparseVector uvec, IntSet nbrs) {
             user = uid;
             userVector = uvec;
             neighborIter = nbrs.iterator();
+            // use the snapshot's cached vector statistics if the similarity can take them
+            if (similarity instanceof UserVectorSimilarity) {
+                vectorSimilarity = (UserVectorSimilarity) similarity;
+                userStats = VectorStatistics.of(uvec);
+            } else {
+                vectorSimilarity = null;
+                userStats = null;
+            }
         }
         @Override
         protected Neighbor computeNext() {
             while (neighborIter.hasNext()) {
-                final long neighbor = neighborIter.nextLong();
-                SparseVector vector = snapshot.getNormalizedUserVector(neighbor);
-                double sim = similarity.similarity(user, userVector, neighbor, vector);
+                final int nidx = neighborIter.nextInt();
+                final long neighbor = snapshot.getUserId(nidx);
+                SparseVector vector = snapshot.getNormalizedUserVectorAt(nidx);
+                double sim;
+                if (vectorSimilarity != null) {
+                    sim = vectorSimilarity.similarity(user, userVector, userStats, neighbor, vector,
+                                                      snapshot.getNormalizedUserStatisticsAt(nidx));
+                } else {
+                    sim = similarity.similarity(user, userVector, neighbor, vector);
+                }
                 if (acceptSimilarity(sim)) {
-                    return new Neighbor(neighbor, snapshot.getUserVector(neighbor), sim);
+                    return new Neighbor(neighbor, snapshot.getUserVectorAt(nidx), sim);
                 }
 
             }
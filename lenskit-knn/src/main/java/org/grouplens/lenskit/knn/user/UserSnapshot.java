@@ -22,6 +22,9 @@ package org.grouplens.lenskit.knn.user;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntLists;
 import it.unimi.dsi.fastutil.longs.*;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.grouplens.lenskit.collections.LongKeyDomain;
@@ -33,10 +36,14 @@ import org.grouplens.lenskit.data.dao.UserEventDAO;
 import org.grouplens.lenskit.data.event.Event;
 import org.grouplens.lenskit.data.history.UserHistory;
 import org.grouplens.lenskit.data.history.UserHistorySummarizer;
+import org.grouplens.lenskit.data.snapshot.IdDictionary;
 import org.grouplens.lenskit.transform.normalize.UserVectorNormalizer;
 import org.grouplens.lenskit.vectors.ImmutableSparseVector;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.VectorStatistics;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -44,7 +51,10 @@ import java.io.Serializable;
 import java.util.List;
 
 /**
- * User snapshot used by {@link SnapshotNeighborFinder}.
+ * User snapshot used by {@link SnapshotNeighborFinder}.  Users are numbered by their index in the
+ * snapshot's user domain (the {@link IdDictionary}'s user indexes, if one is configured); the
+ * index-based accessors let neighbor search work with these indexes without looking each
+ * candidate up by ID.
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  * @since 2.1
  */
@@ -52,20 +62,22 @@ import java.util.List;
 @ThreadSafe
 @DefaultProvider(UserSnapshot.Builder.class)
 public class UserSnapshot implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     private final LongKeyDomain users;
     private final List<ImmutableSparseVector> vectors;
     private final List<ImmutableSparseVector> normedVectors;
-    private final Long2ObjectMap<LongSortedSet> itemUserSets;
+    private final VectorStatistics[] normedStatistics;
+    private final Long2ObjectMap<int[]> itemUserIndexes;
 
     /**
      * Construct a user snapshot.
      * @param us The set of users.
      * @param vs The list of raw user vectors.
      * @param nvs The list of normalized user vectors.
+     * @param iuIdx The sorted indexes of the users who have rated each item.
      */
     UserSnapshot(LongKeyDomain us, List<ImmutableSparseVector> vs, List<ImmutableSparseVector> nvs,
-                 Long2ObjectMap<LongSortedSet> iuSets) {
+                 Long2ObjectMap<int[]> iuIdx) {
         Preconditions.checkArgument(vs.size() == us.domainSize(),
                                     "incorrectly sized vector list");
         Preconditions.checkArgument(nvs.size() == us.domainSize(),
@@ -73,7 +85,11 @@ public class UserSnapshot implements Serializable {
         users = us.clone();
         vectors = ImmutableList.copyOf(vs);
         normedVectors = ImmutableList.copyOf(nvs);
-        itemUserSets = iuSets;
+        normedStatistics = new VectorStatistics[normedVectors.size()];
+        for (int i = 0; i < normedStatistics.length; i++) {
+            normedStatistics[i] = VectorStatistics.of(normedVectors.get(i));
+        }
+        itemUserIndexes = iuIdx;
     }
 
     public ImmutableSparseVector getUserVector(long user) {
@@ -88,22 +104,139 @@ public class UserSnapshot implements Serializable {
         return normedVectors.get(idx);
     }
 
+    /**
+     * Get the statistics (norm, sum, etc.) of a user's normalized vector.  These are computed
+     * when the snapshot is built, so neighbor search does not recompute them for each candidate.
+     *
+     * @param user The user ID.
+     * @return The statistics of {@link #getNormalizedUserVector(long)}.
+     * @since 2.2
+     */
+    public VectorStatistics getNormalizedUserStatistics(long user) {
+        int idx = users.getIndexIfActive(user);
+        Preconditions.checkArgument(idx >= 0, "invalid user " + user);
+        return normedStatistics[idx];
+    }
+
     public LongSet getItemUsers(long item) {
-        return itemUserSets.get(item);
+        int[] idxes = itemUserIndexes.get(item);
+        if (idxes == null) {
+            return null;
+        }
+        long[] ids = new long[idxes.length];
+        for (int i = 0; i < idxes.length; i++) {
+            ids[i] = users.getKey(idxes[i]);
+        }
+        return LongUtils.packedSet(ids);
+    }
+
+    /**
+     * Get the index of a user in this snapshot.
+     *
+     * @param user The user ID.
+     * @return The user's index, or a negative value if the user has no vector in the snapshot.
+     * @since 2.2
+     */
+    public int getUserIndex(long user) {
+        return users.getIndexIfActive(user);
+    }
+
+    /**
+     * Get the ID of the user at an index.
+     *
+     * @param idx The user index.
+     * @return The user ID.
+     * @since 2.2
+     */
+    public long getUserId(int idx) {
+        return users.getKey(idx);
+    }
+
+    /**
+     * Get the raw vector of the user at an index.
+     *
+     * @param idx The user index.
+     * @return The user's vector.
+     * @see #getUserVector(long)
+     * @since 2.2
+     */
+    public ImmutableSparseVector getUserVectorAt(int idx) {
+        return vectors.get(idx);
+    }
+
+    /**
+     * Get the normalized vector of the user at an index.
+     *
+     * @param idx The user index.
+     * @return The user's normalized vector.
+     * @see #getNormalizedUserVector(long)
+     * @since 2.2
+     */
+    public ImmutableSparseVector getNormalizedUserVectorAt(int idx) {
+        return normedVectors.get(idx);
+    }
+
+    /**
+     * Get the statistics of the normalized vector of the user at an index.
+     *
+     * @param idx The user index.
+     * @return The statistics of the user's normalized vector.
+     * @see #getNormalizedUserStatistics(long)
+     * @since 2.2
+     */
+    public VectorStatistics getNormalizedUserStatisticsAt(int idx) {
+        return normedStatistics[idx];
+    }
+
+    /**
+     * Get the indexes of the users who have rated an item.
+     *
+     * @param item The item ID.
+     * @return The users' indexes in increasing order, or {@code null} if no user has rated the item.
+     * @since 2.2
+     */
+    @Nullable
+    public IntList getItemUserIndexes(long item) {
+        int[] idxes = itemUserIndexes.get(item);
+        if (idxes == null) {
+            return null;
+        } else {
+            return IntLists.unmodifiable(IntArrayList.wrap(idxes));
+        }
     }
 
     public static class Builder implements Provider<UserSnapshot> {
         private final UserEventDAO userEventDAO;
         private final UserVectorNormalizer normalizer;
         private final UserHistorySummarizer summarizer;
+        @Nullable
+        private final IdDictionary dictionary;
 
-        @Inject
         public Builder(@Transient UserEventDAO dao,
                        @Transient UserVectorNormalizer norm,
                        @Transient UserHistorySummarizer sum) {
+            this(dao, norm, sum, null);
+        }
+
+        /**
+         * Create a user snapshot builder.
+         *
+         * @param dao  The user event DAO.
+         * @param norm The user vector normalizer.
+         * @param sum  The user history summarizer.
+         * @param dict The ID dictionary whose user indexes the snapshot should use, or {@code null}
+         *             to index the users with histories.
+         * @since 2.2
+         */
+        @Inject
+        public Builder(@Transient UserEventDAO dao,
+                       @Transient UserVectorNormalizer norm,
+                       @Transient UserHistorySummarizer sum,
+                       @Nullable IdDictionary dict) {
             userEventDAO = dao;
             normalizer = norm;
             summarizer = sum;
+            dictionary = dict;
         }
 
         @Override
@@ -119,14 +252,34 @@ public class UserSnapshot implements Serializable {
                 users.close();
             }
 
-            Long2ObjectMap<LongList> itemUserLists = new Long2ObjectOpenHashMap<LongList>();
-            LongKeyDomain domain = LongKeyDomain.fromCollection(vectors.keySet()).compactCopy(true);
-            assert domain.size() == domain.domainSize();
+            Long2ObjectMap<IntList> itemUserLists = new Long2ObjectOpenHashMap<IntList>();
+            LongKeyDomain domain;
+            if (dictionary == null) {
+                domain = LongKeyDomain.fromCollection(vectors.keySet()).compactCopy(true);
+                assert domain.size() == domain.domainSize();
+            } else {
+                // use the dictionary's user indexes; only users with histories are active
+                domain = dictionary.newUserDomain().setAllActive(false);
+                for (LongIterator uiter = vectors.keySet().iterator(); uiter.hasNext();) {
+                    final long user = uiter.nextLong();
+                    int idx = domain.getIndex(user);
+                    Preconditions.checkArgument(idx >= 0, "user %s not in ID dictionary", user);
+                    domain.setActive(idx, true);
+                }
+            }
             ImmutableList.Builder<ImmutableSparseVector> vecs = ImmutableList.builder();
             ImmutableList.Builder<ImmutableSparseVector> nvecs = ImmutableList.builder();
-            for (LongIterator uiter = domain.activeSetView().iterator(); uiter.hasNext();) {
+            int uidx = 0;
+            for (LongIterator uiter = domain.domain().iterator(); uiter.hasNext(); uidx++) {
                 final long user = uiter.nextLong();
+                assert domain.getKey(uidx) == user;
                 MutableSparseVector vec = vectors.get(user);
+                if (vec == null) {
+                    // a dictionary user with no history
+                    vecs.add(SparseVector.empty());
+                    nvecs.add(SparseVector.empty());
+                    continue;
+                }
                 // save user's original vector
                 ImmutableSparseVector userVector = vec.immutable();
                 vecs.add(userVector);
@@ -136,20 +289,21 @@ public class UserSnapshot implements Serializable {
                 nvecs.add(vec.immutable());
                 for (LongIterator iiter = userVector.keySet().iterator(); iiter.hasNext();) {
                     final long item = iiter.nextLong();
-                    LongList itemUsers = itemUserLists.get(item);
+                    IntList itemUsers = itemUserLists.get(item);
                     if (itemUsers == null) {
-                        itemUsers = new LongArrayList();
+                        itemUsers = new IntArrayList();
                         itemUserLists.put(item, itemUsers);
                     }
-                    itemUsers.add(user);
+                    itemUsers.add(uidx);
                 }
             }
 
-            Long2ObjectMap<LongSortedSet> itemUserSets = new Long2ObjectOpenHashMap<LongSortedSet>();
-            for (Long2ObjectMap.Entry<LongList> entry: itemUserLists.long2ObjectEntrySet()) {
-                itemUserSets.put(entry.getLongKey(), LongUtils.packedSet(entry.getValue()));
+            // users are visited in index order, so each item's index list is already sorted
+            Long2ObjectMap<int[]> itemUserIndexes = new Long2ObjectOpenHashMap<int[]>();
+            for (Long2ObjectMap.Entry<IntList> entry: itemUserLists.long2ObjectEntrySet()) {
+                itemUserIndexes.put(entry.getLongKey(), entry.getValue().toIntArray());
             }
-            return new UserSnapshot(domain.unowned(), vecs.build(), nvecs.build(), itemUserSets);
+            return new UserSnapshot(domain.unowned(), vecs.build(), nvecs.build(), itemUserIndexes);
         }
     }
 }
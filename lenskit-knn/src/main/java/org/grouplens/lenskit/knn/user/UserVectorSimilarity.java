@@ -22,7 +22,9 @@ package org.grouplens.lenskit.knn.user;
 
 import org.grouplens.lenskit.core.Shareable;
 import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.StatisticsVectorSimilarity;
 import org.grouplens.lenskit.vectors.similarity.VectorSimilarity;
+import org.grouplens.lenskit.vectors.similarity.VectorStatistics;
 
 import javax.inject.Inject;
 import java.io.Serializable;
@@ -49,6 +51,29 @@ public class UserVectorSimilarity implements UserSimilarity, Serializable {
         return delegate.similarity(v1, v2);
     }
 
+    /**
+     * Compute the similarity between two users using precomputed vector statistics.  If the
+     * underlying vector similarity is a {@link StatisticsVectorSimilarity}, the statistics are
+     * passed to it; otherwise, they are ignored.
+     *
+     * @param u1 The first user ID.
+     * @param v1 The first user vector.
+     * @param s1 The statistics of {@code v1}.
+     * @param u2 The second user ID.
+     * @param v2 The second user vector.
+     * @param s2 The statistics of {@code v2}.
+     * @return The similarity between the two users.
+     * @since 2.2
+     */
+    public double similarity(long u1, SparseVector v1, VectorStatistics s1,
+                             long u2, SparseVector v2, VectorStatistics s2) {
+        if (delegate instanceof StatisticsVectorSimilarity) {
+            return ((StatisticsVectorSimilarity) delegate).similarity(v1, s1, v2, s2);
+        } else {
+            return delegate.similarity(v1, v2);
+        }
+    }
+
     @Override
     public boolean isSparse() {
         return delegate.isSparse();
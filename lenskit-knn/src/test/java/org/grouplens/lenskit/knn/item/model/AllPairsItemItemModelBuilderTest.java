@@ -0,0 +1,158 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.knn.item.model;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongSortedSet;
+import org.grouplens.lenskit.collections.LongKeyDomain;
+import org.grouplens.lenskit.collections.LongUtils;
+import org.grouplens.lenskit.knn.item.ItemSimilarity;
+import org.grouplens.lenskit.knn.item.ItemVectorSimilarity;
+import org.grouplens.lenskit.scored.ScoredId;
+import org.grouplens.lenskit.transform.threshold.AbsoluteThreshold;
+import org.grouplens.lenskit.transform.threshold.RealThreshold;
+import org.grouplens.lenskit.transform.threshold.Threshold;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.SimpleMetricRegistry;
+import org.grouplens.lenskit.vectors.MutableSparseVector;
+import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.CosineVectorSimilarity;
+import org.grouplens.lenskit.vectors.similarity.PearsonCorrelation;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+
+public class AllPairsItemItemModelBuilderTest {
+    private static final int ITEM_COUNT = 100;
+    private static final int USER_COUNT = 300;
+
+    private ItemItemBuildContext context;
+    private ItemSimilarity similarity;
+
+    @Before
+    public void createContext() {
+        Random rng = new Random(42);
+        long[] itemIds = new long[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            itemIds[i] = i * 3 + 1;
+        }
+        Long2ObjectMap<LongList> userItemLists = new Long2ObjectOpenHashMap<LongList>();
+        SparseVector[] vectors = new SparseVector[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            LongList users = new LongArrayList();
+            for (long u = 0; u < USER_COUNT; u++) {
+                if (rng.nextDouble() < 0.1) {
+                    users.add(u);
+                    if (!userItemLists.containsKey(u)) {
+                        userItemLists.put(u, new LongArrayList());
+                    }
+                    userItemLists.get(u).add(itemIds[i]);
+                }
+            }
+            MutableSparseVector v = MutableSparseVector.create(users);
+            for (long u: users) {
+                v.set(u, rng.nextGaussian());
+            }
+            vectors[i] = v.freeze();
+        }
+        Long2ObjectMap<LongSortedSet> userItems = new Long2ObjectOpenHashMap<LongSortedSet>();
+        for (Long2ObjectMap.Entry<LongList> e: userItemLists.long2ObjectEntrySet()) {
+            userItems.put(e.getLongKey(), LongUtils.packedSet(e.getValue()));
+        }
+        context = new ItemItemBuildContext(LongKeyDomain.create(itemIds), vectors, userItems);
+        similarity = new ItemVectorSimilarity(new CosineVectorSimilarity(1));
+    }
+
+    private void assertSameModel(ItemItemModel expected, ItemItemModel actual) {
+        assertThat(actual.getItemUniverse(), equalTo(expected.getItemUniverse()));
+        for (long item: expected.getItemUniverse()) {
+            List<ScoredId> enbrs = expected.getNeighbors(item);
+            List<ScoredId> anbrs = actual.getNeighbors(item);
+            assertThat(anbrs.size(), equalTo(enbrs.size()));
+            for (int i = 0; i < enbrs.size(); i++) {
+                assertThat(anbrs.get(i).getId(), equalTo(enbrs.get(i).getId()));
+                assertThat(anbrs.get(i).getScore(), equalTo(enbrs.get(i).getScore()));
+            }
+        }
+    }
+
+    private ItemItemModel pairwiseModel(Threshold thresh, int size) {
+        return new ItemItemModelBuilder(similarity, context, thresh,
+                                        new SparseNeighborIterationStrategy(), size).get();
+    }
+
+    @Test
+    public void testUnprunedBuild() {
+        // the pairwise builder may also retain zero similarities with non-co-rated items
+        Threshold thresh = new AbsoluteThreshold(0);
+        assertSameModel(pairwiseModel(thresh, 0),
+                        new AllPairsItemItemModelBuilder(similarity, context, thresh, 0).get());
+    }
+
+    @Test
+    public void testThresholdPrunedBuild() {
+        Threshold thresh = new RealThreshold(0.25);
+        SimpleMetricRegistry metrics = new SimpleMetricRegistry();
+        ItemItemModel model = new AllPairsItemItemModelBuilder(similarity, context, thresh, 0, metrics, false).get();
+        assertSameModel(pairwiseModel(thresh, 0), model);
+        assertThat(metrics.counter(Metrics.name(AllPairsItemItemModelBuilder.class, "pruned")).getCount(),
+                   greaterThan(0L));
+    }
+
+    @Test
+    public void testAbsoluteThresholdPrunedBuild() {
+        Threshold thresh = new AbsoluteThreshold(0.25);
+        assertSameModel(pairwiseModel(thresh, 0),
+                        new AllPairsItemItemModelBuilder(similarity, context, thresh, 0).get());
+    }
+
+    @Test
+    public void testTopKPrunedBuild() {
+        Threshold thresh = new AbsoluteThreshold(0);
+        SimpleMetricRegistry metrics = new SimpleMetricRegistry();
+        ItemItemModel model = new AllPairsItemItemModelBuilder(similarity, context, thresh, 5, metrics, false).get();
+        assertSameModel(pairwiseModel(thresh, 5), model);
+        assertThat(metrics.counter(Metrics.name(AllPairsItemItemModelBuilder.class, "pruned")).getCount(),
+                   greaterThan(0L));
+    }
+
+    @Test
+    public void testThresholdAndTopKPrunedBuild() {
+        Threshold thresh = new RealThreshold(0.1);
+        assertSameModel(pairwiseModel(thresh, 3),
+                        new AllPairsItemItemModelBuilder(similarity, context, thresh, 3).get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonCosineSimilarity() {
+        new AllPairsItemItemModelBuilder(new ItemVectorSimilarity(new PearsonCorrelation()),
+                                         context, new RealThreshold(0), 0);
+    }
+}
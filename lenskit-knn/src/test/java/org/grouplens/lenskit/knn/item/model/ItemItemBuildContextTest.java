@@ -26,6 +26,7 @@ import org.grouplens.lenskit.collections.LongKeyDomain;
 import org.grouplens.lenskit.knn.item.model.ItemItemBuildContext.ItemVecPair;
 import org.grouplens.lenskit.vectors.MutableSparseVector;
 import org.grouplens.lenskit.vectors.SparseVector;
+import org.grouplens.lenskit.vectors.similarity.VectorStatistics;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -117,6 +118,11 @@ public class ItemItemBuildContextTest {
     private void testRatingIntegrity(LongKeyDomain items, SparseVector[] trueRatings, ItemItemBuildContext context) {
         for (long itemId : context.getItems()) {
             assertEquals(trueRatings[items.getIndex(itemId)], context.itemVector(itemId));
+            SparseVector vec = context.itemVector(itemId);
+            VectorStatistics stats = context.itemStatistics(itemId);
+            assertEquals(vec.size(), stats.getSize());
+            assertEquals(vec.sum(), stats.getSum(), 1.0e-10);
+            assertEquals(vec.norm(), stats.getNorm(), 1.0e-10);
         }
 
         for (ItemVecPair pair : context.getItemPairs()) {
@@ -23,12 +23,15 @@ package org.grouplens.lenskit.knn.user;
 import org.grouplens.lenskit.*;
 import org.grouplens.lenskit.basic.SimpleRatingPredictor;
 import org.grouplens.lenskit.basic.TopNItemRecommender;
+import org.grouplens.lenskit.collections.LongUtils;
 import org.grouplens.lenskit.core.LenskitConfiguration;
+import org.grouplens.lenskit.core.LenskitRecommender;
 import org.grouplens.lenskit.core.LenskitRecommenderEngine;
 import org.grouplens.lenskit.data.dao.EventCollectionDAO;
 import org.grouplens.lenskit.data.dao.EventDAO;
 import org.grouplens.lenskit.data.event.Rating;
 import org.grouplens.lenskit.data.event.Ratings;
+import org.grouplens.lenskit.data.snapshot.IdDictionary;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -103,4 +106,39 @@ public class UserUserRecommenderBuildTest {
         Recommender rec2 = engine.createRecommender();
         assertThat(rec2.getItemScorer(), not(sameInstance(rec.getItemScorer())));
     }
+
+    @Test
+    public void testSnapshotWithDictionary() throws RecommenderBuildException {
+        List<Rating> rs = new ArrayList<Rating>();
+        rs.add(Ratings.make(1, 5, 2));
+        rs.add(Ratings.make(1, 7, 4));
+        rs.add(Ratings.make(8, 4, 5));
+        rs.add(Ratings.make(8, 5, 4));
+
+        EventDAO dao = EventCollectionDAO.create(rs);
+        // user 3 has no ratings
+        IdDictionary dict = IdDictionary.create(LongUtils.packedSet(1, 3, 8),
+                                                LongUtils.packedSet(4, 5, 7));
+
+        LenskitConfiguration config = new LenskitConfiguration();
+        config.bind(EventDAO.class).to(dao);
+        config.bind(IdDictionary.class).to(dict);
+        config.bind(ItemScorer.class).to(UserUserItemScorer.class);
+        config.bind(NeighborFinder.class).to(SnapshotNeighborFinder.class);
+
+        LenskitRecommender rec = LenskitRecommenderEngine.build(config).createRecommender();
+        UserSnapshot snap = rec.get(UserSnapshot.class);
+        assertThat(snap, notNullValue());
+        assertThat(snap.getUserVector(8).get(4), closeTo(5, 1.0e-6));
+        assertThat(snap.getUserVector(1).keySet(), contains(5L, 7L));
+        // users are numbered by their dictionary indexes
+        assertThat(snap.getUserIndex(8), equalTo(2));
+        assertThat(snap.getUserIndex(3), lessThan(0));
+        assertThat(snap.getUserId(2), equalTo(8L));
+        assertThat(snap.getNormalizedUserVectorAt(2).keySet(), contains(4L, 5L));
+        assertThat(snap.getItemUserIndexes(5), contains(0, 2));
+        assertThat(snap.getItemUsers(5), contains(1L, 8L));
+        assertThat(snap.getItemUserIndexes(6), nullValue());
+        assertThat(rec.getItemScorer().score(1, 4), notNullValue());
+    }
 }
@@ -20,18 +20,24 @@
  */
 package org.grouplens.lenskit.slopeone;
 
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import org.grouplens.grapht.annotation.DefaultProvider;
 import org.grouplens.lenskit.core.Shareable;
 import org.grouplens.lenskit.symbols.Symbol;
 import org.grouplens.lenskit.vectors.ImmutableSparseVector;
 import org.grouplens.lenskit.vectors.SparseVector;
 
+import javax.annotation.Nullable;
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * A model for a {@link SlopeOneItemScorer} or {@link WeightedSlopeOneItemScorer}.
  * Stores calculated deviation values and number of co-rating users for each item pair.
+ * The deviations can be stored in single precision (see
+ * {@link org.grouplens.lenskit.core.FloatPrecision}).
  */
 @DefaultProvider(SlopeOneModelBuilder.class)
 @Shareable
@@ -39,31 +45,64 @@ public class SlopeOneModel implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    // exactly one of these is non-null
+    @Nullable
     private final Long2ObjectMap<ImmutableSparseVector> matrix;
+    @Nullable
+    private final Long2ObjectMap<FloatRow> floatMatrix;
 
     public static final Symbol CORATINGS_SYMBOL = Symbol.of("coratings");
 
     public SlopeOneModel(Long2ObjectMap<ImmutableSparseVector> matrix) {
-        this.matrix = matrix;
+        this(matrix, false);
+    }
+
+    /**
+     * Construct a slope-one model.
+     *
+     * @param matrix         The deviation rows, indexed by the lower item ID, with co-rating
+     *                       counts in the {@link #CORATINGS_SYMBOL} channel.
+     * @param floatPrecision Whether to store the deviations in single precision.  If
+     *                       {@code true}, the rows are repacked into float and int arrays, and
+     *                       {@code matrix} is not retained.
+     * @since 2.2
+     */
+    public SlopeOneModel(Long2ObjectMap<ImmutableSparseVector> matrix, boolean floatPrecision) {
+        if (floatPrecision) {
+            floatMatrix = new Long2ObjectOpenHashMap<FloatRow>(matrix.size());
+            for (Long2ObjectMap.Entry<ImmutableSparseVector> e: matrix.long2ObjectEntrySet()) {
+                floatMatrix.put(e.getLongKey(), new FloatRow(e.getValue()));
+            }
+            this.matrix = null;
+        } else {
+            this.matrix = matrix;
+            floatMatrix = null;
+        }
     }
 
     public double getDeviation(long item1, long item2) {
         if (item1 == item2) {
             return 0;
         } else if (item1 < item2) {
-            SparseVector row = matrix.get(item1);
-            if (row == null) {
-                return Double.NaN;
-            } else {
-                return row.get(item2);
-            }
+            return rowDeviation(item1, item2);
         } else {
-            SparseVector row = matrix.get(item2);
-            if (row == null) {
-                return Double.NaN;
-            } else {
-                return -row.get(item1);
-            }
+            return -rowDeviation(item2, item1);
+        }
+    }
+
+    /**
+     * Get a deviation from the stored rows.
+     * @param row The lower item ID.
+     * @param col The higher item ID.
+     * @return The deviation, or NaN if it is not stored.
+     */
+    private double rowDeviation(long row, long col) {
+        if (floatMatrix != null) {
+            FloatRow frow = floatMatrix.get(row);
+            return frow == null ? Double.NaN : frow.getDeviation(col);
+        } else {
+            SparseVector vrow = matrix.get(row);
+            return vrow == null ? Double.NaN : vrow.get(col);
         }
     }
 
@@ -71,21 +110,65 @@ public class SlopeOneModel implements Serializable {
         if (item1 == item2) {
             return 0;
         } else if (item1 < item2) {
-            SparseVector row = matrix.get(item1);
-            if (row == null) {
-                return 0;
-            } else {
-                double coratings = row.getChannelVector(CORATINGS_SYMBOL).get(item2, 0);
-                return (int) coratings;
-            }
+            return rowCoratings(item1, item2);
+        } else {
+            return rowCoratings(item2, item1);
+        }
+    }
+
+    /**
+     * Get a co-rating count from the stored rows.
+     * @param row The lower item ID.
+     * @param col The higher item ID.
+     * @return The number of co-rating users, or 0 if it is not stored.
+     */
+    private int rowCoratings(long row, long col) {
+        if (floatMatrix != null) {
+            FloatRow frow = floatMatrix.get(row);
+            return frow == null ? 0 : frow.getCoratings(col);
         } else {
-            SparseVector row = matrix.get(item2);
-            if (row == null) {
+            SparseVector vrow = matrix.get(row);
+            if (vrow == null) {
                 return 0;
             } else {
-                double coratings = row.getChannelVector(CORATINGS_SYMBOL).get(item1, 0);
+                double coratings = vrow.getChannelVector(CORATINGS_SYMBOL).get(col, 0);
                 return (int) coratings;
             }
         }
     }
+
+    /**
+     * A deviation row packed into parallel arrays, with single-precision deviations.
+     */
+    private static final class FloatRow implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] items;
+        private final float[] deviations;
+        private final int[] coratings;
+
+        FloatRow(SparseVector row) {
+            final int n = row.size();
+            SparseVector counts = row.getChannelVector(CORATINGS_SYMBOL);
+            items = row.keySet().toLongArray();
+            deviations = new float[n];
+            coratings = new int[n];
+            // the values are in key order
+            DoubleIterator values = row.values().iterator();
+            for (int i = 0; i < n; i++) {
+                deviations[i] = (float) values.nextDouble();
+                coratings[i] = counts == null ? 0 : (int) counts.get(items[i], 0);
+            }
+        }
+
+        double getDeviation(long item) {
+            int idx = Arrays.binarySearch(items, item);
+            return idx >= 0 ? deviations[idx] : Double.NaN;
+        }
+
+        int getCoratings(long item) {
+            int idx = Arrays.binarySearch(items, item);
+            return idx >= 0 ? coratings[idx] : 0;
+        }
+    }
 }
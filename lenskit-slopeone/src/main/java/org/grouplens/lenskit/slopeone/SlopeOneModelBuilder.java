@@ -22,9 +22,14 @@ package org.grouplens.lenskit.slopeone;
 
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongSet;
+import org.grouplens.lenskit.core.FloatPrecision;
 import org.grouplens.lenskit.core.Transient;
 import org.grouplens.lenskit.data.dao.ItemDAO;
 import org.grouplens.lenskit.knn.item.model.ItemItemBuildContext;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.NoopMetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
 import org.grouplens.lenskit.vectors.SparseVector;
 
 import javax.annotation.Nonnull;
@@ -42,13 +47,35 @@ public class SlopeOneModelBuilder implements Provider<SlopeOneModel> {
 
     private final ItemItemBuildContext buildContext;
 
-    @Inject
+    private final boolean floatPrecision;
+    private final Timer deviationTimer;
+    private final Timer matrixTimer;
+
     public SlopeOneModelBuilder(@Transient @Nonnull ItemDAO dao,
                                 @Transient ItemItemBuildContext context,
                                 @DeviationDamping double damping) {
+        this(dao, context, damping, new NoopMetricRegistry(), false);
+    }
 
+    /**
+     * Construct a model builder that times its deviation accumulation and matrix building phases
+     * and can store the model in single precision.
+     *
+     * @param metrics        The metric registry.
+     * @param floatPrecision Whether to store deviations in single precision.
+     * @since 2.2
+     */
+    @Inject
+    public SlopeOneModelBuilder(@Transient @Nonnull ItemDAO dao,
+                                @Transient ItemItemBuildContext context,
+                                @DeviationDamping double damping,
+                                @Transient MetricRegistry metrics,
+                                @FloatPrecision boolean floatPrecision) {
         buildContext = context;
+        this.floatPrecision = floatPrecision;
         accumulator = new SlopeOneModelDataAccumulator(damping, dao);
+        deviationTimer = metrics.timer(Metrics.name(SlopeOneModelBuilder.class, "deviations"));
+        matrixTimer = metrics.timer(Metrics.name(SlopeOneModelBuilder.class, "matrix"));
     }
 
     /**
@@ -57,19 +84,29 @@ public class SlopeOneModelBuilder implements Provider<SlopeOneModel> {
     @Override
     public SlopeOneModel get() {
         LongSet items = buildContext.getItems();
-        LongIterator outer = items.iterator();
-        while (outer.hasNext()) {
-            final long item1 = outer.nextLong();
-            final SparseVector vec1 = buildContext.itemVector(item1);
-            LongIterator inner = items.iterator();
-            while (inner.hasNext()) {
-                final long item2 = inner.nextLong();
-                if (item1 != item2) {
-                    SparseVector vec2 = buildContext.itemVector(item2);
-                    accumulator.putItemPair(item1, vec1, item2, vec2);
+        Timer.Context phase = deviationTimer.start();
+        try {
+            LongIterator outer = items.iterator();
+            while (outer.hasNext()) {
+                final long item1 = outer.nextLong();
+                final SparseVector vec1 = buildContext.itemVector(item1);
+                LongIterator inner = items.iterator();
+                while (inner.hasNext()) {
+                    final long item2 = inner.nextLong();
+                    if (item1 != item2) {
+                        SparseVector vec2 = buildContext.itemVector(item2);
+                        accumulator.putItemPair(item1, vec1, item2, vec2);
+                    }
                 }
             }
+        } finally {
+            phase.stop();
+        }
+        phase = matrixTimer.start();
+        try {
+            return new SlopeOneModel(accumulator.buildMatrix(), floatPrecision);
+        } finally {
+            phase.stop();
         }
-        return new SlopeOneModel(accumulator.buildMatrix());
     }
 }
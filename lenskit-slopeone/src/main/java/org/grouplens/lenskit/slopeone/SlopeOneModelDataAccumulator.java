@@ -24,7 +24,6 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongSet;
-import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.lenskit.data.dao.ItemDAO;
 import org.grouplens.lenskit.vectors.*;
 
@@ -34,6 +33,9 @@ public class SlopeOneModelDataAccumulator {
 
     private Long2ObjectMap<MutableSparseVector> workMatrix;
     private double damping;
+    // scratch buffers for the co-rated values of an item pair
+    private double[] values1 = new double[0];
+    private double[] values2 = new double[0];
 
     /**
      * Creates an accumulator to process rating data and generate the necessary data for
@@ -70,11 +72,15 @@ public class SlopeOneModelDataAccumulator {
 
         // to profit from matrix symmetry, always store by the lesser id
         if (id1 < id2) {
-            int coratings = 0;
+            int cap = Math.min(itemVec1.size(), itemVec2.size());
+            if (values1.length < cap) {
+                values1 = new double[Math.max(cap, values1.length * 2)];
+                values2 = new double[values1.length];
+            }
+            int coratings = Intersections.gatherValues(itemVec1, itemVec2, values1, values2);
             double deviation = 0.0;
-            for (Pair<VectorEntry,VectorEntry> pair: Vectors.fastIntersect(itemVec1, itemVec2)) {
-                coratings++;
-                deviation += pair.getLeft().getValue() - pair.getRight().getValue();
+            for (int i = 0; i < coratings; i++) {
+                deviation += values1[i] - values2[i];
             }
             deviation = (coratings == 0) ? Double.NaN : deviation;
 
@@ -27,25 +27,33 @@ import org.grouplens.lenskit.data.history.RatingVectorUserHistorySummarizer;
 import org.grouplens.lenskit.data.history.UserHistorySummarizer;
 import org.grouplens.lenskit.knn.item.model.ItemItemBuildContextProvider;
 import org.grouplens.lenskit.transform.normalize.DefaultUserVectorNormalizer;
+import org.grouplens.lenskit.util.metrics.NoopMetricRegistry;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class SlopeOneModelBuilderTest {
 
     public static final double EPSILON = 1.0e-6;
 
     private SlopeOneModel getModel(List<Rating> ratings) {
+        return getModel(ratings, false);
+    }
+
+    private SlopeOneModel getModel(List<Rating> ratings, boolean floatPrecision) {
         EventDAO dao = EventCollectionDAO.create(ratings);
         UserEventDAO udao = new PrefetchingUserEventDAO(dao);
         ItemDAO idao = new PrefetchingItemDAO(dao);
         UserHistorySummarizer summarizer = new RatingVectorUserHistorySummarizer();
         ItemItemBuildContextProvider contextFactory = new ItemItemBuildContextProvider(
                 udao, new DefaultUserVectorNormalizer(), summarizer);
-        SlopeOneModelBuilder provider = new SlopeOneModelBuilder(idao, contextFactory.get(), 0);
+        SlopeOneModelBuilder provider = new SlopeOneModelBuilder(idao, contextFactory.get(), 0,
+                                                                 new NoopMetricRegistry(),
+                                                                 floatPrecision);
         return provider.get();
     }
 
@@ -181,4 +189,35 @@ public class SlopeOneModelBuilderTest {
         assertEquals(-1, model4.getDeviation(6, 7), EPSILON);
         assertEquals(1, model4.getDeviation(7, 6), EPSILON);
     }
+
+    @Test
+    public void testFloatPrecision() {
+        List<Rating> rs = new ArrayList<Rating>();
+        rs.add(Ratings.make(1, 4, 4));
+        rs.add(Ratings.make(2, 4, 5));
+        rs.add(Ratings.make(3, 4, 4));
+        rs.add(Ratings.make(1, 5, 3));
+        rs.add(Ratings.make(2, 5, 5));
+        rs.add(Ratings.make(3, 5, 1));
+        rs.add(Ratings.make(1, 6, 1));
+        rs.add(Ratings.make(2, 6, 5));
+        rs.add(Ratings.make(4, 7, 2));
+
+        SlopeOneModel dmodel = getModel(rs, false);
+        SlopeOneModel fmodel = getModel(rs, true);
+        long[] items = {4, 5, 6, 7};
+        for (long i: items) {
+            for (long j: items) {
+                assertEquals(dmodel.getCoratings(i, j), fmodel.getCoratings(i, j));
+                double dev = dmodel.getDeviation(i, j);
+                if (Double.isNaN(dev)) {
+                    assertTrue(Double.isNaN(fmodel.getDeviation(i, j)));
+                } else {
+                    assertEquals((float) dev, fmodel.getDeviation(i, j), 0);
+                }
+            }
+        }
+        assertEquals(2, fmodel.getCoratings(6, 5));
+        assertTrue(Double.isNaN(fmodel.getDeviation(4, 7)));
+    }
 }
@@ -187,6 +187,15 @@ public class FeatureInfo implements Serializable {
             return this;
         }
 
+        /**
+         * Get the errors of the training rounds added so far.
+         * @return The training errors.
+         * @since 2.2
+         */
+        public DoubleList getTrainingErrors() {
+            return DoubleLists.unmodifiable(trainingError);
+        }
+
         /**
          * Add the error for a training round.
          * @param err The error for the training round.
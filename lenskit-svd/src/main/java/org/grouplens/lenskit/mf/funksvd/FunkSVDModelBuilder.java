@@ -20,6 +20,8 @@
  */
 package org.grouplens.lenskit.mf.funksvd;
 
+import com.google.common.hash.HashCode;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
 import mikera.matrixx.Matrix;
 import mikera.matrixx.impl.ImmutableMatrix;
 import mikera.vectorz.AVector;
@@ -28,13 +30,22 @@ import org.apache.commons.lang3.time.StopWatch;
 import org.grouplens.lenskit.core.Transient;
 import org.grouplens.lenskit.data.pref.IndexedPreference;
 import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.grouplens.lenskit.iterative.TrainingCheckpointer;
 import org.grouplens.lenskit.iterative.TrainingLoopController;
+import org.grouplens.lenskit.util.io.Descriptions;
+import org.grouplens.lenskit.util.io.HashDescriptionWriter;
+import org.grouplens.lenskit.util.metrics.Counter;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.NoopMetricRegistry;
+import org.grouplens.lenskit.util.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import javax.inject.Provider;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -51,10 +62,15 @@ import java.util.List;
  * <a href="http://www.timelydevelopment.com/demos/NetflixPrize.aspx">Timely
  * Development's sample code</a>.</p>
  *
+ * <p>If a {@linkplain org.grouplens.lenskit.iterative.CheckpointDirectory checkpoint directory}
+ * is configured, the builder periodically saves its progress and, when rebuilt on the same data
+ * with the same parameters, resumes from the last checkpoint.</p>
+ *
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
     private static Logger logger = LoggerFactory.getLogger(FunkSVDModelBuilder.class);
+    private static final String CHECKPOINT_NAME = FunkSVDModelBuilder.class.getName();
 
     protected final int featureCount;
     protected final PreferenceSnapshot snapshot;
@@ -62,18 +78,46 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
 
     protected final FunkSVDUpdateRule rule;
 
-    @Inject
+    private final Timer featureTimer;
+    private final Counter roundCount;
+    private final TrainingCheckpointer checkpointer;
+    /**
+     * The state of the training run in progress, for checkpointing.
+     */
+    private Training training;
+
     public FunkSVDModelBuilder(@Transient @Nonnull PreferenceSnapshot snapshot,
                                @Transient @Nonnull FunkSVDUpdateRule rule,
                                @FeatureCount int featureCount,
                                @InitialFeatureValue double initVal) {
+        this(snapshot, rule, featureCount, initVal, new NoopMetricRegistry(),
+             TrainingCheckpointer.disabled());
+    }
+
+    /**
+     * Construct a model builder that records build metrics and checkpoints its training.  It
+     * times the training of each feature and counts the training rounds.
+     *
+     * @param metrics The metric registry.
+     * @param ckpt    The checkpointer for saving and resuming training.
+     * @since 2.2
+     */
+    @Inject
+    public FunkSVDModelBuilder(@Transient @Nonnull PreferenceSnapshot snapshot,
+                               @Transient @Nonnull FunkSVDUpdateRule rule,
+                               @FeatureCount int featureCount,
+                               @InitialFeatureValue double initVal,
+                               @Transient @Nonnull MetricRegistry metrics,
+                               @Transient @Nonnull TrainingCheckpointer ckpt) {
         this.featureCount = featureCount;
         this.initialValue = initVal;
         this.snapshot = snapshot;
         this.rule = rule;
+        featureTimer = metrics.timer(Metrics.name(FunkSVDModelBuilder.class, "feature"));
+        roundCount = metrics.counter(Metrics.name(FunkSVDModelBuilder.class, "rounds"));
+        checkpointer = ckpt;
     }
 
-
     @Override
     public FunkSVDModel get() {
         int userCount = snapshot.getUserIds().size();
@@ -97,31 +141,58 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
         Vector uvec = Vector.createLength(userCount);
         Vector ivec = Vector.createLength(itemCount);
 
-        for (int f = 0; f < featureCount; f++) {
+        training = new Training(userFeatures, itemFeatures, featureInfo);
+        FunkSVDTrainingState saved = training.restore(estimates);
+        int start = saved == null ? 0 : saved.getFeature();
+
+        for (int f = start; f < featureCount; f++) {
             logger.debug("Training feature {}", f);
             StopWatch timer = new StopWatch();
             timer.start();
-
-            uvec.fill(initialValue);
-            ivec.fill(initialValue);
+            Timer.Context phase = featureTimer.start();
 
             FeatureInfo.Builder fib = new FeatureInfo.Builder(f);
-            trainFeature(f, estimates, uvec, ivec, fib);
-            summarizeFeature(uvec, ivec, fib);
-            featureInfo.add(fib.build());
+            int restoredRounds = 0;
+            try {
+                if (f == start && saved != null && saved.isMidFeature()) {
+                    logger.info("resuming feature {} after {} rounds", f, saved.getErrors().length);
+                    uvec.setElements(saved.getUserVector());
+                    ivec.setElements(saved.getItemVector());
+                    for (double err: saved.getErrors()) {
+                        fib.addTrainingRound(err);
+                    }
+                    restoredRounds = saved.getErrors().length;
+                } else {
+                    uvec.fill(initialValue);
+                    ivec.fill(initialValue);
+                }
 
-            // Update each rating's cached value to accommodate the feature values.
-            estimates.update(uvec, ivec);
+                trainFeature(f, estimates, uvec, ivec, fib);
+                summarizeFeature(uvec, ivec, fib);
+                featureInfo.add(fib.build());
 
-            // And store the data into the matrix
-            userFeatures.setColumn(f, uvec);
-            assert Math.abs(userFeatures.getColumnView(f).elementSum() - uvec.elementSum()) < 1.0e-4 : "user column sum matches";
-            itemFeatures.setColumn(f, ivec);
-            assert Math.abs(itemFeatures.getColumnView(f).elementSum() - ivec.elementSum()) < 1.0e-4 : "item column sum matches";
+                // Update each rating's cached value to accommodate the feature values.
+                estimates.update(uvec, ivec);
 
+                // And store the data into the matrix
+                userFeatures.setColumn(f, uvec);
+                assert Math.abs(userFeatures.getColumnView(f).elementSum() - uvec.elementSum()) < 1.0e-4 : "user column sum matches";
+                itemFeatures.setColumn(f, ivec);
+                assert Math.abs(itemFeatures.getColumnView(f).elementSum() - ivec.elementSum()) < 1.0e-4 : "item column sum matches";
+            } finally {
+                phase.stop();
+            }
+            // only count the rounds trained in this build
+            roundCount.add(featureInfo.get(f).getIterCount() - restoredRounds);
             timer.stop();
             logger.info("Finished feature {} in {}", f, timer);
+
+            if (checkpointer.isDue()) {
+                training.save(f + 1, null, null, null);
+            }
         }
+        training.clear();
+        training = null;
 
         // Wrap the user/item matrices because we won't use or modify them again
         return new FunkSVDModel(ImmutableMatrix.wrap(userFeatures),
@@ -150,21 +221,25 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
      *                  and may be reused between features.
      * @param fib       The feature info builder. This method is only expected to add information
      *                  about its training rounds to the builder; the caller takes care of feature
-     *                  number and summary data.
+     *                  number and summary data.  If training is resuming from a checkpoint, the
+     *                  builder already contains the rounds completed before the checkpoint.
      * @see #doFeatureIteration(TrainingEstimator, Collection, Vector, Vector, double)
      * @see #summarizeFeature(AVector, AVector, FeatureInfo.Builder)
      */
     protected void trainFeature(int feature, TrainingEstimator estimates,
                                 Vector userFeatureVector, Vector itemFeatureVector,
                                 FeatureInfo.Builder fib) {
-        double rmse = Double.MAX_VALUE;
         double trail = initialValue * initialValue * (featureCount - feature - 1);
         TrainingLoopController controller = rule.getTrainingLoopController();
+        // replay any rounds restored from a checkpoint so the controller picks up where it was
+        double rmse = TrainingCheckpointer.resumeLoop(controller, Double.MAX_VALUE,
+                                                      fib.getTrainingErrors().toDoubleArray());
         Collection<IndexedPreference> ratings = snapshot.getRatings();
         while (controller.keepTraining(rmse)) {
             rmse = doFeatureIteration(estimates, ratings, userFeatureVector, itemFeatureVector, trail);
             fib.addTrainingRound(rmse);
             logger.trace("iteration {} finished with RMSE {}", controller.getIterationCount(), rmse);
+            checkpointFeature(feature, estimates, userFeatureVector, itemFeatureVector, fib);
         }
     }
 
@@ -215,4 +290,113 @@ public class FunkSVDModelBuilder implements Provider<FunkSVDModel> {
            .setItemAverage(ifv.elementSum() / ifv.length())
            .setSingularValue(ufv.magnitude() * ifv.magnitude());
     }
+
+    /**
+     * Save a checkpoint in the middle of training a feature, if one is due.  The default {@link
+     * #trainFeature(int, TrainingEstimator, Vector, Vector, FeatureInfo.Builder)} calls this
+     * after each training round; implementations that override it should do the same.
+     *
+     * @param feature   The number of the feature being trained.
+     * @param estimates The current estimator.
+     * @param userFeatureVector The user feature values so far.
+     * @param itemFeatureVector The item feature values so far.
+     * @param fib       The feature info builder, with the completed training rounds.
+     * @since 2.2
+     */
+    protected void checkpointFeature(int feature, TrainingEstimator estimates,
+                                     Vector userFeatureVector, Vector itemFeatureVector,
+                                     FeatureInfo.Builder fib) {
+        if (training != null && checkpointer.isDue()) {
+            training.save(feature, userFeatureVector, itemFeatureVector,
+                          fib.getTrainingErrors());
+        }
+    }
+
+    /**
+     * The state of a training run, for saving and restoring checkpoints.
+     */
+    private class Training {
+        private final Matrix userFeatures;
+        private final Matrix itemFeatures;
+        private final List<FeatureInfo> featureInfo;
+        private final HashCode fingerprint;
+
+        Training(Matrix ufs, Matrix ifs, List<FeatureInfo> info) {
+            userFeatures = ufs;
+            itemFeatures = ifs;
+            featureInfo = info;
+            if (checkpointer.isEnabled()) {
+                HashDescriptionWriter fp = Descriptions.sha1Writer();
+                fp.putField("featureCount", featureCount)
+                  .putField("initialValue", initialValue)
+                  .putField("learningRate", rule.getLearningRate())
+                  .putField("regularization", rule.getTrainingRegularization())
+                  .putField("domain", String.valueOf(rule.getDomain()))
+                  .putField("ratings", TrainingCheckpointer.hashRatings(snapshot.getRatings()).toString());
+                fingerprint = fp.finish();
+            } else {
+                fingerprint = null;
+            }
+        }
+
+        /**
+         * Restore the last checkpoint, if there is one.
+         * @param estimates The estimator to restore.
+         * @return The restored state, or {@code null} to train from scratch.
+         */
+        FunkSVDTrainingState restore(TrainingEstimator estimates) {
+            if (fingerprint == null) {
+                return null;
+            }
+            FunkSVDTrainingState state =
+                    checkpointer.restore(CHECKPOINT_NAME, fingerprint, FunkSVDTrainingState.class);
+            if (state == null) {
+                return null;
+            }
+            double[] ufs = userFeatures.getArray();
+            double[] ifs = itemFeatures.getArray();
+            if (state.getUserFeatures().length != ufs.length
+                    || state.getItemFeatures().length != ifs.length) {
+                logger.warn("checkpoint does not match model dimensions, ignoring");
+                return null;
+            }
+            System.arraycopy(state.getUserFeatures(), 0, ufs, 0, ufs.length);
+            System.arraycopy(state.getItemFeatures(), 0, ifs, 0, ifs.length);
+            featureInfo.addAll(state.getFeatureInfo());
+            // the estimates are the baseline plus the completed features, so replay the features
+            // rather than restoring values indexed by the (possibly reshuffled) rating order
+            for (int f = 0; f < state.getFeature(); f++) {
+                estimates.update(userFeatures.getColumn(f), itemFeatures.getColumn(f));
+            }
+            logger.info("resuming training with {} of {} features complete",
+                        state.getFeature(), featureCount);
+            return state;
+        }
+
+        /**
+         * Delete the checkpoint once training has finished.
+         */
+        void clear() {
+            if (fingerprint != null) {
+                checkpointer.clear(CHECKPOINT_NAME, fingerprint);
+            }
+        }
+
+        /**
+         * Save a checkpoint.  Failures are logged, but do not stop training.
+         */
+        void save(int feature, AVector uvec, AVector ivec, DoubleList errors) {
+            FunkSVDTrainingState state =
+                    new FunkSVDTrainingState(feature, userFeatures.toDoubleArray(),
+                                             itemFeatures.toDoubleArray(), featureInfo,
+                                             uvec == null ? null : uvec.toDoubleArray(),
+                                             ivec == null ? null : ivec.toDoubleArray(),
+                                             errors == null ? new double[0] : errors.toDoubleArray());
+            try {
+                checkpointer.save(CHECKPOINT_NAME, fingerprint, state);
+            } catch (IOException e) {
+                logger.warn("cannot save training checkpoint", e);
+            }
+        }
+    }
 }
@@ -0,0 +1,110 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.mf.funksvd;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checkpointed state of a FunkSVD training run.  It holds the features trained so far and (if
+ * saved in the middle of a feature) the current feature's vectors and the errors of its completed
+ * training rounds.  The training estimator's cached estimates are not saved, as they are indexed
+ * by the order of the snapshot's ratings; they are recomputed from the completed features.
+ *
+ * @since 2.2
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+class FunkSVDTrainingState implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    private final int feature;
+    private final double[] userFeatures;
+    private final double[] itemFeatures;
+    private final ArrayList<FeatureInfo> featureInfo;
+    @Nullable
+    private final double[] userVector;
+    @Nullable
+    private final double[] itemVector;
+    private final double[] errors;
+
+    /**
+     * Create a training state.  Arrays are stored as-is; the caller must pass copies.
+     *
+     * @param f      The current feature (the number of completed features).
+     * @param ufs    The user-feature matrix, in row-major order.
+     * @param ifs    The item-feature matrix, in row-major order.
+     * @param info   The info for the completed features.
+     * @param uvec   The current feature's user vector, or {@code null} at a feature boundary.
+     * @param ivec   The current feature's item vector, or {@code null} at a feature boundary.
+     * @param errs   The errors of the current feature's completed training rounds.
+     */
+    FunkSVDTrainingState(int f, double[] ufs, double[] ifs, List<FeatureInfo> info,
+                         @Nullable double[] uvec, @Nullable double[] ivec,
+                         double[] errs) {
+        feature = f;
+        userFeatures = ufs;
+        itemFeatures = ifs;
+        featureInfo = new ArrayList<FeatureInfo>(info);
+        userVector = uvec;
+        itemVector = ivec;
+        errors = errs;
+    }
+
+    public int getFeature() {
+        return feature;
+    }
+
+    public double[] getUserFeatures() {
+        return userFeatures;
+    }
+
+    public double[] getItemFeatures() {
+        return itemFeatures;
+    }
+
+    public List<FeatureInfo> getFeatureInfo() {
+        return featureInfo;
+    }
+
+    /**
+     * Query whether this state was saved partway through training a feature.
+     * @return {@code true} if the state includes the current feature's vectors.
+     */
+    public boolean isMidFeature() {
+        return userVector != null && itemVector != null;
+    }
+
+    @Nullable
+    public double[] getUserVector() {
+        return userVector;
+    }
+
+    @Nullable
+    public double[] getItemVector() {
+        return itemVector;
+    }
+
+    public double[] getErrors() {
+        return errors;
+    }
+}
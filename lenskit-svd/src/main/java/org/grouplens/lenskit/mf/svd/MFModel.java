@@ -22,10 +22,10 @@ package org.grouplens.lenskit.mf.svd;
 
 import com.google.common.base.Preconditions;
 import mikera.matrixx.IMatrix;
-import mikera.matrixx.Matrix;
 import mikera.matrixx.impl.ImmutableMatrix;
 import mikera.vectorz.AVector;
 import org.grouplens.lenskit.indexes.IdIndexMapping;
+import org.grouplens.lenskit.util.io.BulkArrayIO;
 
 import javax.annotation.Nullable;
 import java.io.*;
@@ -82,42 +82,33 @@ public class MFModel implements Serializable {
         out.writeInt(userCount);
         out.writeInt(itemCount);
 
-        for (int i = 0; i < userCount; i++) {
-            for (int j = 0; j < featureCount; j++) {
-                out.writeDouble(userMatrix.get(i, j));
-            }
-        }
-
-        for (int i = 0; i < itemCount; i++) {
-            for (int j = 0; j < featureCount; j++) {
-                out.writeDouble(itemMatrix.get(i, j));
-            }
-        }
+        // matrices are written in row-major order, a row at a time
+        double[] row = new double[featureCount];
+        writeMatrix(out, userMatrix, row);
+        writeMatrix(out, itemMatrix, row);
 
         out.writeObject(userIndex);
         out.writeObject(itemIndex);
     }
 
+    private static void writeMatrix(ObjectOutputStream out, ImmutableMatrix mat,
+                                    double[] row) throws IOException {
+        for (int i = 0, n = mat.rowCount(); i < n; i++) {
+            mat.copyRowTo(i, row, 0);
+            BulkArrayIO.writeDoubles(out, row, 0, row.length);
+        }
+    }
+
     private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
         featureCount = input.readInt();
         userCount = input.readInt();
         itemCount = input.readInt();
-
-        Matrix umat = Matrix.create(userCount, featureCount);
-        for (int i = 0; i < userCount; i++) {
-            for (int j = 0; j < featureCount; j++) {
-                umat.set(i, j, input.readDouble());
-            }
+        if (featureCount < 0 || userCount < 0 || itemCount < 0) {
+            throw new InvalidObjectException("negative model dimension");
         }
-        userMatrix = ImmutableMatrix.wrap(umat);
 
-        Matrix imat = Matrix.create(itemCount, featureCount);
-        for (int i = 0; i < itemCount; i++) {
-            for (int j = 0; j < featureCount; j++) {
-                imat.set(i, j, input.readDouble());
-            }
-        }
-        itemMatrix = ImmutableMatrix.wrap(imat);
+        userMatrix = readMatrix(input, userCount, featureCount);
+        itemMatrix = readMatrix(input, itemCount, featureCount);
 
         userIndex = (IdIndexMapping) input.readObject();
         itemIndex = (IdIndexMapping) input.readObject();
@@ -130,6 +121,19 @@ public class MFModel implements Serializable {
         }
     }
 
+    private static ImmutableMatrix readMatrix(ObjectInputStream input,
+                                              int rows, int cols) throws IOException {
+        long size = (long) rows * cols;
+        if (size > Integer.MAX_VALUE) {
+            throw new InvalidObjectException("matrix of " + rows + "x" + cols + " is too large");
+        }
+        double[] values = new double[(int) size];
+        for (int i = 0; i < rows; i++) {
+            BulkArrayIO.readDoubles(input, values, i * cols, cols);
+        }
+        return ImmutableMatrix.wrap(rows, cols, values);
+    }
+
     /**
      * Get the model's feature count.
      *
@@ -39,19 +39,33 @@ import org.grouplens.lenskit.data.event.Rating;
 import org.grouplens.lenskit.data.event.Ratings;
 import org.grouplens.lenskit.data.snapshot.PackedPreferenceSnapshot;
 import org.grouplens.lenskit.data.snapshot.PreferenceSnapshot;
+import org.grouplens.lenskit.iterative.CheckpointDirectory;
+import org.grouplens.lenskit.iterative.CheckpointInterval;
 import org.grouplens.lenskit.iterative.IterationCount;
 import org.grouplens.lenskit.iterative.IterationCountStoppingCondition;
 import org.grouplens.lenskit.iterative.StoppingCondition;
+import org.grouplens.lenskit.iterative.TrainingLoopController;
+import org.grouplens.lenskit.util.metrics.MetricRegistry;
+import org.grouplens.lenskit.util.metrics.Metrics;
+import org.grouplens.lenskit.util.metrics.SimpleMetricRegistry;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class FunkSVDRecommenderBuildTest {
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
     private EventDAO dao;
 
     @Before
@@ -65,8 +79,15 @@ public class FunkSVDRecommenderBuildTest {
         dao = EventCollectionDAO.create(rs);
     }
 
-    @SuppressWarnings({"deprecation", "unchecked"})
     private LenskitRecommenderEngine makeEngine() throws RecommenderBuildException {
+        LenskitConfiguration config = makeConfig();
+        config.bind(StoppingCondition.class)
+              .to(IterationCountStoppingCondition.class);
+        return LenskitRecommenderEngine.build(config);
+    }
+
+    @SuppressWarnings({"deprecation", "unchecked"})
+    private LenskitConfiguration makeConfig() {
         LenskitConfiguration config = new LenskitConfiguration();
         config.bind(EventDAO.class).to(dao);
         config.bind(PreferenceSnapshot.class)
@@ -77,14 +98,11 @@ public class FunkSVDRecommenderBuildTest {
               .to(UserMeanItemScorer.class);
         config.bind(UserMeanBaseline.class, ItemScorer.class)
               .to(ItemMeanRatingItemScorer.class);
-        config.bind(StoppingCondition.class)
-              .to(IterationCountStoppingCondition.class);
         config.set(IterationCount.class)
               .to(10);
         config.set(FeatureCount.class)
               .to(20);
-
-        return LenskitRecommenderEngine.build(config);
+        return config;
     }
 
     @SuppressWarnings("deprecation")
@@ -163,4 +181,112 @@ public class FunkSVDRecommenderBuildTest {
         assertThat(fsvd.getUpdateRule(),
                    not(nullValue()));
     }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        File dir = tempDir.getRoot();
+        LenskitConfiguration crashing = makeConfig();
+        crashing.set(CheckpointDirectory.class).to(dir);
+        crashing.set(CheckpointInterval.class).to(0);
+        // crash partway through the 8th feature
+        crashing.bind(StoppingCondition.class).to(new CrashingCondition(75));
+        try {
+            LenskitRecommenderEngine.build(crashing);
+            fail("training should have been interrupted");
+        } catch (Exception e) {
+            /* expected */
+        }
+        File[] files = dir.listFiles();
+        assertThat(files, arrayWithSize(1));
+        File ckpt = files[0];
+        assertThat(ckpt.getName(), allOf(startsWith(FunkSVDModelBuilder.class.getName() + "-"),
+                                         endsWith(".ckpt")));
+        FunkSVDTrainingState saved = readCheckpoint(ckpt);
+        assertThat(saved.getFeature(), equalTo(7));
+        assertThat(saved.isMidFeature(), equalTo(true));
+        assertThat(saved.getErrors().length, equalTo(5));
+
+        // the snapshot reshuffles the ratings with a new random seed, as in any rebuild
+        SimpleMetricRegistry metrics = new SimpleMetricRegistry();
+        LenskitConfiguration config = makeConfig();
+        config.bind(StoppingCondition.class)
+              .to(IterationCountStoppingCondition.class);
+        config.bind(MetricRegistry.class).to(metrics);
+        config.set(CheckpointDirectory.class).to(dir);
+        FunkSVDModel resumed = LenskitRecommenderEngine.build(config)
+                                                       .createRecommender()
+                                                       .get(FunkSVDModel.class);
+        // only the rounds after the checkpoint were trained
+        String rounds = Metrics.name(FunkSVDModelBuilder.class, "rounds");
+        assertThat(metrics.counter(rounds).getCount(), equalTo(200L - 75L));
+        assertThat(resumed.getFeatureInfo().size(), equalTo(20));
+        for (FeatureInfo feat: resumed.getFeatureInfo()) {
+            assertThat(feat.getIterCount(), equalTo(10));
+        }
+        // the completed features are the ones from the checkpoint
+        for (long item: new long[]{4, 5, 7}) {
+            int idx = resumed.getItemIndex().getIndex(item);
+            for (int f = 0; f < saved.getFeature(); f++) {
+                assertThat(resumed.getItemVector(item).get(f),
+                           equalTo(saved.getItemFeatures()[idx * 20 + f]));
+            }
+        }
+        assertThat(dir.listFiles(), emptyArray());
+    }
+
+    @Test
+    public void testBuildCountsAllRounds() throws RecommenderBuildException {
+        SimpleMetricRegistry metrics = new SimpleMetricRegistry();
+        LenskitConfiguration config = makeConfig();
+        config.bind(StoppingCondition.class)
+              .to(IterationCountStoppingCondition.class);
+        config.bind(MetricRegistry.class).to(metrics);
+        config.set(CheckpointDirectory.class).to(tempDir.getRoot());
+        LenskitRecommenderEngine.build(config);
+        String rounds = Metrics.name(FunkSVDModelBuilder.class, "rounds");
+        assertThat(metrics.counter(rounds).getCount(), equalTo(200L));
+    }
+
+    private static FunkSVDTrainingState readCheckpoint(File file) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+        try {
+            in.readUTF(); // fingerprint
+            return (FunkSVDTrainingState) in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Stopping condition that trains 10 rounds per feature, but fails after a total number of
+     * training rounds to simulate a crash.
+     */
+    private static class CrashingCondition implements StoppingCondition {
+        private final int crashAfter;
+        private int rounds;
+
+        CrashingCondition(int n) {
+            crashAfter = n;
+        }
+
+        @Override
+        public TrainingLoopController newLoop() {
+            final TrainingLoopController loop = new IterationCountStoppingCondition(10).newLoop();
+            return new TrainingLoopController() {
+                @Override
+                public boolean keepTraining(double error) {
+                    boolean keep = loop.keepTraining(error);
+                    if (keep && rounds++ >= crashAfter) {
+                        throw new IllegalStateException("simulated crash");
+                    }
+                    return keep;
+                }
+
+                @Override
+                public int getIterationCount() {
+                    return loop.getIterationCount();
+                }
+            };
+        }
+    }
 }
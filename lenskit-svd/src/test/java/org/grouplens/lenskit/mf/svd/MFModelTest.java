@@ -0,0 +1,53 @@
+/*
+ * LensKit, an open source recommender systems toolkit.
+ * Copyright 2010-2014 LensKit Contributors.  See CONTRIBUTORS.md.
+ * Work on LensKit has been funded by the National Science Foundation under
+ * grants IIS 05-34939, 08-08692, 08-12148, and 10-17697.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.lenskit.mf.svd;
+
+import mikera.matrixx.impl.ImmutableMatrix;
+import org.apache.commons.lang3.SerializationUtils;
+import org.grouplens.lenskit.indexes.IdIndexMapping;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class MFModelTest {
+    @Test
+    public void testSerializeRoundTrip() {
+        ImmutableMatrix umat = ImmutableMatrix.wrap(3, 2, new double[]{1, 2, 3, 4, 5, 6});
+        ImmutableMatrix imat = ImmutableMatrix.wrap(2, 2, new double[]{-1, 0.5, 0.25, 7});
+        MFModel model = new MFModel(umat, imat,
+                                    IdIndexMapping.create(Arrays.asList(10L, 20L, 30L)),
+                                    IdIndexMapping.create(Arrays.asList(5L, 6L)));
+        MFModel copy = SerializationUtils.clone(model);
+        assertThat(copy.getFeatureCount(), equalTo(2));
+        assertThat(copy.getUserCount(), equalTo(3));
+        assertThat(copy.getItemCount(), equalTo(2));
+        assertThat(copy.getUserIndex().getIdList(), equalTo(model.getUserIndex().getIdList()));
+        assertThat(copy.getItemIndex().getIdList(), equalTo(model.getItemIndex().getIdList()));
+        assertThat(copy.userMatrix.equals(umat), equalTo(true));
+        assertThat(copy.itemMatrix.equals(imat), equalTo(true));
+    }
+}